@@ -0,0 +1,315 @@
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when the auto trader should next evaluate the market. The interval shrinks when recent market states or the
+ * realized volatility of the price are high, and stretches when the market is flat. Ticks are placed just after candle
+ * close boundaries, so each evaluation sees a freshly closed candle, and are held back if the trailing minute's
+ * requests plus those expected of the next tick would exceed the request budget.
+ *
+ * The schedule is also compared with the fixed one it replaces: every tick that changes the trading state records how
+ * much earlier (or later) than the fixed schedule the change was acted on.
+ */
+public class AdaptiveCadence implements TickScheduler.Cadence
+{
+    /** Delay after a candle closes before evaluating, giving the exchange time to publish it. */
+    private static final long SETTLE_MS = 1500;
+    /** Number of recent market states considered. */
+    private static final int STATE_WINDOW = 5;
+    /** Per-minute realized volatility, in percent, treated as a volatility score of 1. */
+    private static final double REFERENCE_VOLATILITY = 0.1;
+    /** Scores at or below which the interval is stretched to the maximum, at which it is the fixed interval, and at
+     * or above which it is shrunk to the minimum. */
+    private static final double CALM_SCORE = 0.25;
+    private static final double NORMAL_SCORE = 0.75;
+    private static final double FAST_SCORE = 2.0;
+    private static final double EWMA_ALPHA = 0.3;
+
+    private static final LatencyHistogram intervals = Metrics.histogram("aether_cadence_interval_seconds");
+    private static final LatencyHistogram leads = Metrics.histogram("aether_cadence_lead_seconds");
+    private static final LongAdder lateDecisions = Metrics.counter("aether_cadence_late_decisions_total");
+    private static final LongAdder budgetDelays = Metrics.counter("aether_cadence_budget_delays_total");
+
+    private final long fixedIntervalMs;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final long candleStepMs;
+    private final int requestBudget;
+
+    private final double[] recentStates = new double[STATE_WINDOW];
+    private int stateCount = 0;
+    private double lastPrice = Double.NaN;
+    private long lastPriceTime = -1;
+    private double varianceEwma = 0;
+    private double requestsPerTick = 0;
+    private long lastRequests = -1;
+    // (time, cumulative requests) samples over the trailing minute
+    private final ArrayDeque<long[]> requestWindow = new ArrayDeque<long[]>();
+
+    private long firstTick = -1;
+    private long lastTick = -1;
+    private long interval;
+    private long ticks = 0;
+    private long decisions = 0;
+    private long totalLeadMs = 0;
+
+    /**
+     * Creates a new cadence.
+     *
+     * @param fixedIntervalMs The fixed interval this replaces, used when the market is neither calm nor fast, and as
+     * the baseline decisions are compared against
+     * @param minIntervalMs Shortest interval, used in fast markets
+     * @param maxIntervalMs Longest interval, used in flat markets
+     * @param candleStep Candle length in seconds; ticks are aligned to its close
+     * @param requestBudget Maximum API requests per minute
+     */
+    public AdaptiveCadence(long fixedIntervalMs, long minIntervalMs, long maxIntervalMs, int candleStep, int requestBudget)
+    {
+        this.fixedIntervalMs = fixedIntervalMs;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.candleStepMs = candleStep * 1000L;
+        this.requestBudget = requestBudget;
+        this.interval = fixedIntervalMs;
+    }
+
+    /**
+     * Tells the cadence about a tick that has just been evaluated.
+     *
+     * @param now Time of the tick, Unix milliseconds
+     * @param state Market state measured by the tick
+     * @param price Last price seen by the tick, or NaN if none
+     * @param requests Total API requests made by the process so far
+     * @param decided True if the tick changed the trading state
+     */
+    public synchronized void onTick(long now, AetherTrader.MarketState state, double price, long requests, boolean decided)
+    {
+        recentStates[stateCount++ % STATE_WINDOW] = Math.abs(state.v);
+
+        if (!Double.isNaN(price))
+        {
+            if (!Double.isNaN(lastPrice) && now > lastPriceTime)
+            {
+                double r = Math.log(price / lastPrice) * 100;
+                double minutes = (now - lastPriceTime) / 60000.0;
+                varianceEwma += EWMA_ALPHA * ((r * r) / minutes - varianceEwma);
+            }
+            lastPrice = price;
+            lastPriceTime = now;
+        }
+
+        if (lastRequests != -1)
+        {
+            requestsPerTick += EWMA_ALPHA * ((requests - lastRequests) - requestsPerTick);
+        }
+        lastRequests = requests;
+        requestWindow.addLast(new long[] {now, requests});
+        while (requestWindow.size() > 1 && requestWindow.peekFirst()[0] < now - 60000)
+        {
+            requestWindow.removeFirst();
+        }
+
+        if (firstTick == -1)
+        {
+            firstTick = now;
+        }
+        else if (decided)
+        {
+            long lead = leadOverFixed(lastTick, now);
+            decisions++;
+            totalLeadMs += lead;
+            if (lead >= 0)
+            {
+                leads.record(lead * 1000000);
+            }
+            else
+            {
+                lateDecisions.increment();
+            }
+        }
+        if (lastTick != -1)
+        {
+            intervals.record((now - lastTick) * 1000000);
+        }
+        lastTick = now;
+        ticks++;
+    }
+
+    /**
+     * Works out when the next tick should run.
+     *
+     * @param now Current time, Unix milliseconds
+     * @return Time of the next tick, Unix milliseconds
+     */
+    public synchronized long nextTick(long now)
+    {
+        interval = targetInterval();
+        boolean budgetBound = false;
+        if (requestBudget > 0)
+        {
+            // The steady state rate must fit the budget...
+            long budgetInterval = (long)Math.ceil(60000.0 * requestsPerTick / requestBudget);
+            if (budgetInterval > interval)
+            {
+                interval = budgetInterval;
+                budgetBound = true;
+            }
+        }
+        long next = align(now, interval, budgetBound);
+
+        // ...and so must the trailing minute, so hold back until it leaves room for another tick
+        if (requestBudget > 0 && !requestWindow.isEmpty())
+        {
+            long[] oldest = requestWindow.peekFirst();
+            if (lastRequests - oldest[1] + (long)Math.ceil(requestsPerTick) > requestBudget)
+            {
+                budgetDelays.increment();
+                next = Math.max(next, align(oldest[0] + 60000, interval, true));
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Maps the volatility score to an interval, interpolating in log space between the minimum, fixed and maximum.
+     */
+    private long targetInterval()
+    {
+        double score = getVolatilityScore();
+        if (score <= CALM_SCORE)
+        {
+            return maxIntervalMs;
+        }
+        if (score >= FAST_SCORE)
+        {
+            return minIntervalMs;
+        }
+        if (score <= NORMAL_SCORE)
+        {
+            return logInterpolate(maxIntervalMs, fixedIntervalMs, (score - CALM_SCORE) / (NORMAL_SCORE - CALM_SCORE));
+        }
+        return logInterpolate(fixedIntervalMs, minIntervalMs, (score - NORMAL_SCORE) / (FAST_SCORE - NORMAL_SCORE));
+    }
+
+    private static long logInterpolate(long from, long to, double fraction)
+    {
+        return Math.round(Math.exp(Math.log(from) + (Math.log(to) - Math.log(from)) * fraction));
+    }
+
+    /**
+     * Finds the first boundary at least one grid step after the last tick (or now, if later) and just after a candle
+     * close. The grid is the nearest whole number of candles to the interval, or for intervals shorter than a candle,
+     * the nearest whole fraction of one, so every candle close still gets a tick.
+     *
+     * @param roundUp If true, the grid is never shorter than the interval
+     */
+    private long align(long now, long interval, boolean roundUp)
+    {
+        long grid;
+        if (interval >= candleStepMs)
+        {
+            long candles = roundUp ? (interval + candleStepMs - 1) / candleStepMs : Math.round((double)interval / candleStepMs);
+            grid = Math.max(1, candles) * candleStepMs;
+        }
+        else if (roundUp)
+        {
+            long parts = Math.max(1, candleStepMs / interval);
+            while (candleStepMs % parts != 0)
+            {
+                parts--;
+            }
+            grid = candleStepMs / parts;
+        }
+        else
+        {
+            long parts = (candleStepMs + interval - 1) / interval;
+            while (candleStepMs % parts != 0)
+            {
+                parts++;
+            }
+            grid = candleStepMs / parts;
+        }
+        long earliest = Math.max(now, lastTick == -1 ? now : lastTick + grid - SETTLE_MS);
+        long boundary = Math.floorDiv(earliest - SETTLE_MS, grid) * grid + grid;
+        return boundary + SETTLE_MS;
+    }
+
+    /**
+     * Estimates how much earlier a change acted on at {@code now} was caught than the fixed schedule would have caught
+     * it. All that is known is that the change happened after the previous tick, so this is the expected lead over
+     * that span: a change just after a fixed tick would have waited for the next one, while a change just before a
+     * fixed tick that falls between the two adaptive ticks would have been caught sooner by the fixed schedule.
+     */
+    private long leadOverFixed(long previous, long now)
+    {
+        if (now <= previous)
+        {
+            return 0;
+        }
+        double weighted = 0;
+        long from = previous;
+        long fixed = firstTick + (Math.floorDiv(previous - firstTick, fixedIntervalMs) + 1) * fixedIntervalMs;
+        while (from < now)
+        {
+            // Changes in (from, min(fixed, now)] are caught by the fixed schedule at "fixed"
+            long to = Math.min(fixed, now);
+            weighted += (double)(to - from) * (fixed - now);
+            from = to;
+            fixed += fixedIntervalMs;
+        }
+        return Math.round(weighted / (now - previous));
+    }
+
+    /**
+     * @return The current volatility score: the greater of the mean magnitude of recent market states (0 flat, 0.5 up
+     * or down, 1 strongly, 2 volatile) and the per-minute realized volatility relative to {@value #REFERENCE_VOLATILITY}%
+     */
+    public synchronized double getVolatilityScore()
+    {
+        int n = Math.min(stateCount, STATE_WINDOW);
+        double stateScore = 0;
+        for (int i = 0; i < n; i++)
+        {
+            stateScore += recentStates[i];
+        }
+        stateScore = n == 0 ? 1 : stateScore / n;
+        double volatilityScore = Math.sqrt(varianceEwma) / REFERENCE_VOLATILITY;
+        return Math.max(stateScore, volatilityScore);
+    }
+
+    /**
+     * @return The interval chosen for the most recent schedule, in milliseconds
+     */
+    public synchronized long getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * @return The fixed interval the cadence is compared against, in milliseconds
+     */
+    public long getFixedInterval()
+    {
+        return fixedIntervalMs;
+    }
+
+    /**
+     * @return The mean number of milliseconds by which trading state changes were acted on before the fixed schedule
+     * would have, or 0 if there have been none. Negative if the cadence was later on average.
+     */
+    public synchronized double getMeanLeadMillis()
+    {
+        return decisions == 0 ? 0 : (double)totalLeadMs / decisions;
+    }
+
+    /**
+     * @param now Current time, Unix milliseconds
+     * @return A one line summary of ticks, requests saved and decision lead compared with the fixed schedule
+     */
+    public synchronized String summary(long now)
+    {
+        long fixedTicks = firstTick == -1 ? 0 : (now - firstTick) / fixedIntervalMs + 1;
+        return String.format(Locale.ROOT, "%d ticks (fixed schedule: %d), %d decisions with a mean lead of %+.1fs over the fixed schedule, ~%.1f requests per tick", ticks, fixedTicks, decisions, getMeanLeadMillis() / 1000, requestsPerTick);
+    }
+}
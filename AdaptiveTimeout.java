@@ -0,0 +1,81 @@
+/**
+ * A request timeout that follows the latency an endpoint has actually shown. Latencies are recorded into a window of
+ * recent samples, from which the p95 and p99 are read every {@value #REFRESH} samples: the timeout is the p99 times a
+ * multiplier, kept between a floor and a ceiling, and the p95 is the delay after which a request may be hedged. The
+ * window starts over every {@value #WINDOW} samples, so the timeout tracks the endpoint's recent behaviour; the values
+ * read from the last window are kept until the new one holds {@value #RESTART_SAMPLES} samples.
+ *
+ * Until {@value #MIN_SAMPLES} samples have been seen the timeout is the ceiling and nothing is hedged.
+ */
+public class AdaptiveTimeout
+{
+    static final int MIN_SAMPLES = 20;
+    static final int REFRESH = 20;
+    static final int WINDOW = 1000;
+    static final int RESTART_SAMPLES = 100;
+
+    private final long minNanos;
+    private final long maxNanos;
+    private final double multiplier;
+    private final LatencyHistogram window = new LatencyHistogram();
+    private volatile long timeoutNanos;
+    private volatile long hedgeNanos = Long.MAX_VALUE;
+    private volatile boolean restarted;
+
+    /**
+     * @param minMs Shortest timeout, in milliseconds
+     * @param maxMs Longest timeout, and the timeout before enough samples are seen, in milliseconds
+     * @param multiplier Multiple of the p99 latency to allow, e.g. 3
+     */
+    public AdaptiveTimeout(long minMs, long maxMs, double multiplier)
+    {
+        this.minNanos = minMs * 1000000;
+        this.maxNanos = maxMs * 1000000;
+        this.multiplier = multiplier;
+        this.timeoutNanos = maxNanos;
+    }
+
+    /**
+     * Records how long a request took. A request that timed out should be recorded with the timeout it was given.
+     *
+     * @param nanos Latency in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        window.record(nanos);
+        long n = window.getCount();
+        if (n >= (restarted ? RESTART_SAMPLES : MIN_SAMPLES) && n % REFRESH == 0)
+        {
+            refresh(n >= WINDOW);
+        }
+    }
+
+    /**
+     * @return The time to wait for a response before giving up, in nanoseconds
+     */
+    public long getTimeoutNanos()
+    {
+        return timeoutNanos;
+    }
+
+    /**
+     * @return The time to wait for a response before sending a hedge, in nanoseconds, or {@code Long.MAX_VALUE} if
+     * too few samples have been seen
+     */
+    public long getHedgeNanos()
+    {
+        return hedgeNanos;
+    }
+
+    private synchronized void refresh(boolean restart)
+    {
+        long p99 = window.getValueAtPercentile(99);
+        timeoutNanos = Math.max(minNanos, Math.min(maxNanos, (long)(p99 * multiplier)));
+        hedgeNanos = Math.min(window.getValueAtPercentile(95), timeoutNanos);
+        if (restart)
+        {
+            window.reset();
+            restarted = true;
+        }
+    }
+}
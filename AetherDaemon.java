@@ -0,0 +1,457 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.codec.binary.Hex;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the auto trader unattended, controlled and watched through a small HTTP API on the loopback interface rather
+ * than the console menu or the GUI. Routes, all JSON unless noted:
+ *
+ * <ul>
+ * <li>{@code GET /status}: the trader's state, from memory</li>
+ * <li>{@code GET /balance}: the account's balances</li>
+ * <li>{@code GET /orders}: the account's open orders, fetched at most every {@code aether.daemon.cacheMs}</li>
+ * <li>{@code POST /auto/start}: starts auto trading, or resumes it if paused</li>
+ * <li>{@code POST /auto/stop}: pauses auto trading, leaving its feeds running so it can resume at once</li>
+ * <li>{@code GET /metrics}: metrics in Prometheus text format</li>
+ * <li>{@code GET /events}: a server-sent event stream of each tick and each strategy decision</li>
+ * </ul>
+ *
+ * Requests are served on virtual threads when the JDK has them, else on a pool of {@code aether.daemon.threads}
+ * threads (200), each event stream holding one. The tick thread never writes to a client: it serialises each event once
+ * into a ring of recent events, which every stream reads at its own pace, so slow or numerous clients cannot hold up
+ * a tick. A client that falls more than {@value #EVENT_HISTORY} events behind skips ahead, and the events it missed
+ * are counted in {@code aether_daemon_events_dropped_total}.
+ *
+ * Every request must carry {@code Authorization: Bearer <token>}, with the token the daemon writes to
+ * {@code -Daether.daemon.tokenFile} ({@code daemon.token}, readable only by its owner) each time it starts, so that
+ * only the user running the daemon can control it. Binding to the loopback interface alone would not do, as any web
+ * page open in a local browser can send requests to it; requests carrying an {@code Origin} header, as those from a
+ * page do, are refused outright.
+ *
+ * Usage: {@code java AetherDaemon [pair]}, serving on {@code -Daether.daemon.port} (8090). Auto trading starts at once
+ * unless {@code -Daether.daemon.autostart=false} is given.
+ */
+public class AetherDaemon implements AetherTrader.TickListener
+{
+    static final int EVENT_HISTORY = 256;
+    private static final long KEEPALIVE_MS = 15000;
+    private static final long CACHE_MS = Long.getLong("aether.daemon.cacheMs", 2000);
+    private static final int THREADS = Integer.getInteger("aether.daemon.threads", 200);
+    // Pool threads kept free of event streams, for the other routes
+    private static final int RESERVED_THREADS = 16;
+    private static final LongAdder dropped = Metrics.counter("aether_daemon_events_dropped_total");
+    private static final LatencyHistogram publishLatency = Metrics.histogram("aether_daemon_publish_seconds");
+
+    private final AetherTrader trader;
+    private final long startedAt = System.currentTimeMillis();
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile boolean stopped;
+
+    // Recent events, already in event stream form, guarded by lock
+    private final String[] events = new String[EVENT_HISTORY];
+    private long published = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition newEvent = lock.newCondition();
+    private final AtomicInteger streams = new AtomicInteger();
+    private int maxStreams;
+
+    private JSONObject openOrders;
+    private long openOrdersAt;
+
+    // Bearer token every request must carry, new each time the daemon starts
+    private final Path tokenFile = Paths.get(System.getProperty("aether.daemon.tokenFile", "daemon.token"));
+    private String token;
+
+    /**
+     * @param trader The trader to control; its ticks are streamed from when the daemon starts
+     */
+    public AetherDaemon(AetherTrader trader)
+    {
+        this.trader = trader;
+    }
+
+    /**
+     * Starts serving the API.
+     *
+     * @param port Port to listen on, or 0 for any free port
+     * @return The URL the API is served at
+     * @throws IOException if the server cannot be started
+     */
+    public String start(int port) throws IOException
+    {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        token = new String(Hex.encodeHex(secret));
+        writeToken();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handleExchange);
+        executor = newExecutor();
+        maxStreams = executor instanceof ThreadPoolExecutor ? Math.max(1, THREADS - RESERVED_THREADS) : Integer.MAX_VALUE;
+        server.setExecutor(executor);
+        Metrics.gauge("aether_daemon_streams", streams::get);
+        trader.addTickListener(this);
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return The token requests must carry, as {@code Authorization: Bearer <token>}, once started
+     */
+    String getToken()
+    {
+        return token;
+    }
+
+    /**
+     * Stops the server, ending every event stream, and deletes the token file. The trader is left as it is.
+     */
+    public void stop()
+    {
+        stopped = true;
+        trader.removeTickListener(this);
+        lock.lock();
+        try
+        {
+            newEvent.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        if (server != null)
+        {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+            try
+            {
+                Files.deleteIfExists(tokenFile);
+            }
+            catch (IOException e)
+            {
+                System.out.println("[Daemon]: Unable to delete " + tokenFile + ". " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return An executor starting a virtual thread per request if the JDK has them, else a bounded pool
+     */
+    static ExecutorService newExecutor()
+    {
+        try
+        {
+            // Looked up by name, as the sources still build for JDKs without virtual threads
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r ->
+            {
+                Thread thread = new Thread(r, "aether-daemon");
+                thread.setDaemon(true);
+                return thread;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    public void onTick(JSONObject tick)
+    {
+        long start = System.nanoTime();
+        lock.lock();
+        try
+        {
+            publish("tick", tick);
+            JSONArray decisions = tick.getJSONArray("decisions");
+            for (int i = 0; i < decisions.length(); i++)
+            {
+                JSONObject decision = decisions.getJSONObject(i);
+                decision.put("pair", tick.getString("pair"));
+                decision.put("time", tick.getLong("time"));
+                publish("decision", decision);
+            }
+            newEvent.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        publishLatency.recordSince(start);
+    }
+
+    /**
+     * Adds an event to the ring. Called holding the lock.
+     */
+    private void publish(String type, JSONObject data)
+    {
+        events[(int)(published % EVENT_HISTORY)] = "id: " + published + "\nevent: " + type + "\ndata: " + data + "\n\n";
+        published++;
+    }
+
+    private void handleExchange(HttpExchange exchange) throws IOException
+    {
+        try (exchange)
+        {
+            // Browsers send an Origin with any request a page makes, which the API never needs to serve
+            if (exchange.getRequestHeaders().containsKey("Origin"))
+            {
+                send(exchange, 403, "application/json", new JSONObject().put("status", "failure").put("error", "Cross-origin requests are not allowed.").toString());
+                return;
+            }
+            if (!authorised(exchange.getRequestHeaders().getFirst("Authorization")))
+            {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                send(exchange, 401, "application/json", new JSONObject().put("status", "failure").put("error", "Missing or wrong token, see " + tokenFile + ".").toString());
+                return;
+            }
+            String route = exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath();
+            if (route.equals("GET /events"))
+            {
+                stream(exchange);
+                return;
+            }
+            if (route.equals("GET /metrics"))
+            {
+                send(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", Metrics.toPrometheus());
+                return;
+            }
+
+            JSONObject body;
+            int status = 200;
+            try
+            {
+                switch (route)
+                {
+                    case "GET /status":
+                        body = status();
+                        break;
+                    case "GET /balance":
+                        body = trader.getBalance();
+                        break;
+                    case "GET /orders":
+                        body = openOrders();
+                        break;
+                    case "POST /auto/start":
+                        body = startAuto();
+                        break;
+                    case "POST /auto/stop":
+                        trader.setPaused(true);
+                        body = status();
+                        break;
+                    default:
+                        status = 404;
+                        body = new JSONObject().put("status", "failure").put("error", "No route " + route);
+                        break;
+                }
+            }
+            catch (RuntimeException e)
+            {
+                // The exchange could not be reached or answered badly
+                status = 502;
+                body = new JSONObject().put("status", "failure").put("error", String.valueOf(e.getMessage()));
+            }
+            send(exchange, status, "application/json", body.toString());
+        }
+    }
+
+    /**
+     * @param authorization The request's Authorization header
+     * @return True if it carries the daemon's token
+     */
+    private boolean authorised(String authorization)
+    {
+        return authorization != null && authorization.startsWith("Bearer ")
+            && MessageDigest.isEqual(authorization.substring(7).strip().getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the token to its file, readable only by the user running the daemon where the file system allows.
+     */
+    private void writeToken() throws IOException
+    {
+        Files.deleteIfExists(tokenFile);
+        try
+        {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        catch (UnsupportedOperationException e)
+        {
+            Files.createFile(tokenFile);
+        }
+        Files.writeString(tokenFile, token);
+    }
+
+    private JSONObject status()
+    {
+        JSONObject status = trader.getStatus();
+        status.put("uptimeSeconds", (System.currentTimeMillis() - startedAt) / 1000);
+        status.put("streams", streams.get());
+        return status;
+    }
+
+    private synchronized JSONObject startAuto()
+    {
+        if (!trader.getIsAutoTrading())
+        {
+            trader.startAuto();
+        }
+        else if (trader.isPaused())
+        {
+            trader.setPaused(false);
+        }
+        return status();
+    }
+
+    /**
+     * @return The account's open orders, fetched again only if the last fetch is older than the cache period, so any
+     * number of clients polling cost the exchange one request per period
+     */
+    private synchronized JSONObject openOrders()
+    {
+        long now = System.currentTimeMillis();
+        if (openOrders == null || now - openOrdersAt >= CACHE_MS)
+        {
+            openOrders = trader.getAccountWallet().getOpenOrders();
+            openOrdersAt = now;
+        }
+        return openOrders;
+    }
+
+    /**
+     * Streams events to a client until it disconnects or the daemon stops. A client reconnecting with a
+     * {@code Last-Event-ID} header carries on after that event, if it is still held. Without virtual threads each
+     * stream holds a pool thread, so streams beyond what the pool can spare are refused with 503.
+     */
+    private void stream(HttpExchange exchange) throws IOException
+    {
+        if (streams.incrementAndGet() > maxStreams)
+        {
+            streams.decrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "10");
+            send(exchange, 503, "application/json", new JSONObject().put("status", "failure").put("error", "Too many event streams.").toString());
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            exchange.sendResponseHeaders(200, 0);
+            long next;
+            lock.lock();
+            try
+            {
+                next = published;
+                String last = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+                if (last != null && last.matches("\\d{1,18}"))
+                {
+                    next = Math.min(published, Long.parseLong(last) + 1);
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            out.write(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            while (!stopped)
+            {
+                String event = null;
+                lock.lock();
+                try
+                {
+                    if (next == published)
+                    {
+                        newEvent.await(KEEPALIVE_MS, TimeUnit.MILLISECONDS);
+                    }
+                    if (published - next > EVENT_HISTORY)
+                    {
+                        dropped.add(published - EVENT_HISTORY - next);
+                        next = published - EVENT_HISTORY;
+                    }
+                    if (next < published)
+                    {
+                        event = events[(int)(next++ % EVENT_HISTORY)];
+                    }
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+                // Written outside the lock, so a slow client holds up no one else
+                out.write((event == null ? ": keepalive\n\n" : event).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            // The client went away
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            streams.decrementAndGet();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        AetherTrader.configureTransport();
+        AetherTrader.configureMetrics();
+        CurrencyPair pair = CurrencyPair.parse(args.length > 0 ? args[0] : "btceur");
+        AetherTrader trader = new AetherTrader(pair, new BitstampAPIConnection("key", "keySecret"));
+        AetherDaemon daemon = new AetherDaemon(trader);
+        System.out.println("[Daemon]: Serving control API at " + daemon.start(Integer.getInteger("aether.daemon.port", 8090)) + ", token in " + daemon.tokenFile + ".");
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            daemon.stop();
+            trader.stopAuto();
+        }));
+        if (Boolean.parseBoolean(System.getProperty("aether.daemon.autostart", "true")))
+        {
+            trader.startAuto();
+            System.out.println("[Daemon]: Trading " + pair + ".");
+        }
+    }
+}
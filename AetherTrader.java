@@ -1,12 +1,20 @@
 import java.io.IOError;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Timer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -18,28 +26,10 @@ import org.json.JSONObject;
 
 public class AetherTrader
 {
-    /**
-     * Represents possible status of BTC holding.
-     * Expected progression: HOLD_IN -> LONG -> HOLD_OUT -> SHORT -> [repeat].
-     */
-    private enum TradingState
-    {
-        /** Value in market. Waiting for sell indications. */
-        HOLD_IN,
-        /** Value in market. Waiting to sell high (limit sell placed). */
-        LONG,
-        /** Value out of market. Waiting for buy indications. */
-        HOLD_OUT,
-        /** Value out of market. Waiting to buy low (limit buy placed). */
-        SHORT,
-        /** Value of account is split between BTC/EUR (ratio more even than 95%/5%). */
-        UNKNOWN
-    }
-
     /**
      * Represents the movement of the market in the short-term.
      */
-    private enum MarketState
+    enum MarketState
     {
         /** Up > 5% */
         VOLATILE_UP (2),
@@ -69,32 +59,95 @@ public class AetherTrader
     /**
      * Represents the trend the market is currently following.
      */
-    private enum Trend
+    enum Trend
     {
         UP,
         FLAT,
         DOWN
     }
 
-    private BitstampAPIConnection conn = new BitstampAPIConnection("key", "keySecret");
-    private TradingState tradingState = TradingState.HOLD_IN;
+    /**
+     * Told of each auto trading tick as it completes, on the trader's scheduler thread, so it must return promptly.
+     */
+    public interface TickListener
+    {
+        /**
+         * @param tick JSONObject with keys "pair", "time", "price", "percentChange", "marketState", "trend",
+         * "strategies" (each one's "name", "state" and "net" P&L) and "decisions" (each strategy that changed state,
+         * with "name", "from" and "to"). "price" is absent if the tick failed to measure the market.
+         */
+        void onTick(JSONObject tick);
+    }
+
+    private final CurrencyPair pair;
+    private final BitstampAPIConnection conn;
+    // Where the auto trader reports each tick, so traders running side by side can keep their output apart
+    private PrintStream out = System.out;
     private MarketState marketState = MarketState.UNKNOWN;
     private double priceAtLastTransaction = -1;
     private long lastOrderID;
     private JSONObject internalError;
     private JSONObject externalError;
     private SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yy HH:mm");
-    private Timer autoTradingTimer;
+    private TickScheduler autoTradingScheduler;
     private boolean isAutotrading = false;
+    // Set to skip ticks without tearing down the scheduler and feeds, so trading can be resumed at once
+    private volatile boolean paused = false;
+    private final CopyOnWriteArrayList<TickListener> tickListeners = new CopyOnWriteArrayList<TickListener>();
     private double lastTrendVal = 0;
+    private Trend lastTrend = Trend.FLAT;
+    private double lastPrice = Double.NaN;
 
     private final int TIME_STEP = 60;
     private final int STEPS = 60;
     private final int MARKET_HISTORY_LENGTH = 20;
-    private final double PROFIT_MARGIN = 0.015;
-    private final double OVERALL_TREND_WEIGHT = 1.0;
-    private final double ALL_UP_DW_WEIGHT = 1.5;
-    private TestWallet wallet;
+    private static final double OVERALL_TREND_WEIGHT = 1.0;
+    private static final double ALL_UP_DW_WEIGHT = 1.5;
+    private final String CANDLE_ARCHIVE_PATH = "candles";
+    private final String TAPE_PATH = "tape";
+    private final int BACKFILL_THREADS = 4;
+    private final long AUTO_INTERVAL_MS = 60000;
+    private final long AUTO_OFFSET_MS = 1500; // Just after the minute's candle closes
+    private final long CANDLE_CLOSE_DELAY_MS = 1000; // Time allowed for a period's last trades to arrive
+    private final long MIN_AUTO_INTERVAL_MS = 15000;
+    private final long MAX_AUTO_INTERVAL_MS = 300000;
+    private final int DEFAULT_REQUEST_BUDGET = 30;
+    private int requestBudget = Integer.getInteger("aether.cadence.budget", DEFAULT_REQUEST_BUDGET);
+    private AdaptiveCadence cadence;
+    private CandleArchive candleArchive;
+    private CandleAggregator candleAggregator;
+    private TickScheduler candleClock;
+    private BitstampLiveFeed liveFeed;
+    private TapeRecorder tape;
+    private BitstampOrderFeed orderFeed;
+    // Orders placed through the exchange, and everything told of changes to them
+    private final OrderManager exchangeOrders = new OrderManager();
+    private final BalanceBook accountBalances;
+    private final CopyOnWriteArrayList<OrderListener> accountListeners = new CopyOnWriteArrayList<OrderListener>();
+    // Pre-trade checks for orders on the exchange
+    private final RiskEngine accountRisk;
+    // The strategies the auto trader runs, the first being the one its flight recordings follow
+    private final List<StrategyRunner> strategies = new CopyOnWriteArrayList<StrategyRunner>();
+    // Test wallets the trader fills at each tick's price, in place of each polling the exchange
+    private final List<TestWallet> fedWallets = new CopyOnWriteArrayList<TestWallet>();
+    private final Wallet accountWallet = new ExchangeWallet();
+    private boolean candleArchiveEnabled = true;
+    private static MetricsServer metricsServer;
+
+    // Per-tick latency, split into the phases of a tick. "action" covers running every strategy, including their wallet
+    // calls; "decision" is everything before reporting. Each trader's metrics are labelled with its pair, so traders
+    // running side by side do not share them.
+    private final LatencyHistogram tickLatency;
+    private final LatencyHistogram decisionLatency;
+    private final LatencyHistogram percentChangeLatency;
+    private final LatencyHistogram tickerLatency;
+    private final LatencyHistogram predictLatency;
+    private final LatencyHistogram actionLatency;
+    private final LatencyHistogram reportLatency;
+    private final LongAdder candlesFromAggregator;
+    private final LongAdder candlesFromArchive;
+    private final LongAdder candlesFromExchange;
+    private final LongAdder failedTicks;
 
     /**
      * Market history represents the history trends of the market a number of increments back in time. Each increment
@@ -105,6 +158,44 @@ public class AetherTrader
 
     public AetherTrader()
     {
+        this(CurrencyPair.BTCEUR, new BitstampAPIConnection("key", "keySecret"));
+    }
+
+    /**
+     * Creates a trader for one currency pair. Traders for different pairs keep their own market data, balances,
+     * orders and metrics, so any number of them can run at once; give each a connection from
+     * {@link BitstampAPIConnection#share()} to have them share one request budget.
+     * 
+     * @param pair The pair to trade
+     * @param conn The connection to send requests with
+     */
+    public AetherTrader(CurrencyPair pair, BitstampAPIConnection conn)
+    {
+        this.pair = pair;
+        this.conn = conn;
+        accountBalances = new BalanceBook(pair);
+        accountListeners.add(exchangeOrders);
+        accountListeners.add(accountBalances);
+        conn.addUnknownOutcomeListener(this::reconcileAccount);
+        accountRisk = new RiskEngine(pair, accountBalances, () ->
+        {
+            BigDecimal value = accountBalances.getValue();
+            return value == null ? Double.NaN : value.doubleValue();
+        });
+
+        String p = pair.getSymbol();
+        tickLatency = Metrics.histogram("aether_tick_seconds", "pair", p);
+        decisionLatency = Metrics.histogram("aether_decision_seconds", "pair", p);
+        percentChangeLatency = Metrics.histogram("aether_tick_phase_seconds", "pair", p, "phase", "percent_change");
+        tickerLatency = Metrics.histogram("aether_tick_phase_seconds", "pair", p, "phase", "ticker");
+        predictLatency = Metrics.histogram("aether_tick_phase_seconds", "pair", p, "phase", "predict");
+        actionLatency = Metrics.histogram("aether_tick_phase_seconds", "pair", p, "phase", "action");
+        reportLatency = Metrics.histogram("aether_tick_phase_seconds", "pair", p, "phase", "report");
+        candlesFromAggregator = Metrics.counter("aether_percent_change_source_total", "pair", p, "source", "aggregator");
+        candlesFromArchive = Metrics.counter("aether_percent_change_source_total", "pair", p, "source", "archive");
+        candlesFromExchange = Metrics.counter("aether_percent_change_source_total", "pair", p, "source", "exchange");
+        failedTicks = Metrics.counter("aether_tick_failures_total", "pair", p);
+
         internalError = new JSONObject();
         internalError.put("error", "Internal AetherTrader Error");
 
@@ -115,36 +206,101 @@ public class AetherTrader
     //#region Trading methods
 
     /**
-     * Get data on BTC/EUR trading at this instant.
+     * @return The pair this trader trades
+     */
+    public CurrencyPair getPair()
+    {
+        return pair;
+    }
+
+    /**
+     * Sets where the auto trader reports each tick; by default, standard output.
+     * 
+     * @param out The stream to report to
+     */
+    public void setOutput(PrintStream out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Sets the requests per minute the adaptive cadence keeps the auto trader within, e.g. to split one account's
+     * budget between several traders. Takes effect when auto trading is next started.
+     * 
+     * @param requestBudget Requests allowed per minute
+     */
+    public void setRequestBudget(int requestBudget)
+    {
+        this.requestBudget = requestBudget;
+    }
+
+    /**
+     * Get data on the trader's pair trading at this instant.
      * 
      * @return JSONObject with keys "last", "high", "low", "vwap", "volume", "bid", "ask", "timestamp" and "open".
      */
     public JSONObject getBTCData()
     {
-        JSONObject data = new JSONObject(conn.sendPublicRequest("/api/v2/ticker/btceur"));
+        JSONObject data = conn.sendPublicRequest(pair.endpoint("/api/v2/ticker/"), BitstampAPIConnection.JSON);
         return data;
     }
 
     /**
-     * Get balance of account. Gives BTC and EUR balance, available balance and BTC-EUR trading fee
+     * Get balance of account. Gives the pair's base and quote balances, available balances and trading fee
      * as a percentage of trade value.
      * 
-     * @return JSONObject with keys "eur_available", "eur_balance", "btc_available", "btc_balance", "btceur_fee", "value".
+     * Balances are read from memory, kept up to date by our own orders, and only fetched from the exchange when a
+     * reconciliation is due. The value uses the latest traded price, fetching the ticker only if none has been seen
+     * in the last minute.
+     * 
+     * @return JSONObject with the pair's balance keys, e.g. "eur_available", "eur_balance", "btc_available",
+     * "btc_balance" and "btceur_fee", and "value" and "value_base".
      */
     public JSONObject getBalance()
     {
-        JSONObject data = new JSONObject(conn.sendPrivateRequest("/api/v2/balance/"));
-        JSONObject btcData = new JSONObject(conn.sendPublicRequest("/api/v2/ticker/btceur"));
-
-        BigDecimal value = data.getBigDecimal("eur_balance").add(data.getBigDecimal("btc_balance").multiply(btcData.getBigDecimal("last")));
-        List<String> balKeys = Arrays.asList("eur_available", "eur_balance", "btc_available", "btc_balance", "btceur_fee");
-        JSONObject result = new JSONObject();
-        for (String k : balKeys)
+        long now = System.currentTimeMillis();
+        accountBalances.setStreamConnected(orderFeed != null && orderFeed.isConnected());
+        if (accountBalances.isReconcileDue(now))
         {
-            result.put(k, data.get(k));
+            JSONObject data = new JSONObject(conn.sendPrivateRequest("/api/v2/balance/"));
+            accountBalances.reconcile(data, now);
         }
-        result.put("value", value);
-        return result;
+        if (accountBalances.isPriceStale(now))
+        {
+            JSONObject btcData = conn.sendPublicRequest(pair.endpoint("/api/v2/ticker/"), BitstampAPIConnection.JSON);
+            accountBalances.setPrice(btcData.getDouble("last"), now);
+        }
+        return accountBalances.toJSON();
+    }
+
+    /**
+     * Checks the account's balances and open orders against the exchange after a request that may have placed or
+     * cancelled an order timed out, so that an order carried out despite the timeout is tracked and its funds
+     * counted. Both are marked due first, so they are checked when next read even if this check fails.
+     * 
+     * @param endPoint The endpoint that timed out
+     */
+    private void reconcileAccount(String endPoint)
+    {
+        accountBalances.markSuspect("Request to " + endPoint + " timed out.");
+        exchangeOrders.requireReconcile();
+        CompletableFuture.runAsync(() ->
+        {
+            try
+            {
+                getBalance();
+                JSONObject orderData = getOpenOrders();
+                if (orderData.getString("status").equals("success"))
+                {
+                    int fixed = exchangeOrders.reconcile(orderData.getJSONArray("orders"), System.currentTimeMillis());
+                    System.out.println("[Order Manager]: Reconciled after " + endPoint + " timed out, " + fixed + " correction" + (fixed == 1 ? "" : "s") + ".");
+                }
+            }
+            catch (RuntimeException e)
+            {
+                System.out.println("[Order Manager]: Unable to reconcile after " + endPoint + " timed out. " + e.getMessage());
+            }
+        });
     }
 
     /**
@@ -206,6 +362,61 @@ public class AetherTrader
         return result;
     }
     
+    /**
+     * Runs the pre-trade risk checks on an order for the exchange account, first bringing the balances and market
+     * price they are checked against up to date if they are due a refresh.
+     * 
+     * @param type 0 for buy, 1 for sell
+     * @param instant True for an instant order, false for a limit order
+     * @param amt Amount of the order, as it will be placed
+     * @param price Limit price, ignored for instant orders
+     * @return null if the order may be placed, else a JSONObject with keys "status", "error" and "reason"
+     */
+    private JSONObject checkAccountRisk(int type, boolean instant, BigDecimal amt, double price)
+    {
+        getBalance();
+        long now = System.currentTimeMillis();
+        if (accountRisk.isMarkStale(now))
+        {
+            accountRisk.mark(accountBalances.getPrice(), now);
+        }
+        RiskEngine.Reason reason = instant ? accountRisk.checkInstant(type, amt.doubleValue()) : accountRisk.checkLimit(type, amt.doubleValue(), price);
+        return reason == RiskEngine.Reason.ACCEPTED ? null : rejection(reason);
+    }
+
+    static JSONObject rejection(RiskEngine.Reason reason)
+    {
+        JSONObject err = new JSONObject();
+        err.put("status", "failure");
+        err.put("error", reason.getMessage());
+        err.put("reason", reason.name());
+        return err;
+    }
+
+    /**
+     * Starts tracking an order just placed on the exchange, starting the order feed if it is not already running so
+     * that later changes to the order arrive as events.
+     * 
+     * @param data The exchange's response to placing the order
+     * @param type 0 for buy, 1 for sell
+     * @param instant True if the order filled as it was placed
+     */
+    private void trackPlacedOrder(JSONObject data, int type, boolean instant)
+    {
+        startOrderFeed();
+        long id = data.getLong("id");
+        double amount = data.optDouble("amount", 0);
+        double price = data.optDouble("price", 0);
+        for (OrderListener l : accountListeners)
+        {
+            l.onOrderPlaced(id, type, amount, price);
+            if (instant)
+            {
+                l.onOrderFilled(id, amount, price);
+            }
+        }
+    }
+
     /**
      * Cancels an order.
      * 
@@ -219,10 +430,24 @@ public class AetherTrader
         {
             "id=" + id
         };
-        JSONObject data = new JSONObject();
-        data = new JSONObject(conn.sendPrivateRequest("/api/v2/cancel_order/", params));
+        return orderCancelled(id, new JSONObject(conn.sendPrivateRequest("/api/v2/cancel_order/", params)));
+    }
+
+    /**
+     * Stops tracking an order if the exchange says it was cancelled.
+     * 
+     * @param id The order
+     * @param data The exchange's response to cancelling it
+     * @return data, with "status" set to "success" or "failure"
+     */
+    private JSONObject orderCancelled(long id, JSONObject data)
+    {
         if (!data.has("error"))
         {
+            for (OrderListener l : accountListeners)
+            {
+                l.onOrderCancelled(id);
+            }
             priceAtLastTransaction = -1;
             lastOrderID = -1;
             data.put("status", "success");
@@ -232,6 +457,157 @@ public class AetherTrader
         return data; 
     }
 
+    /**
+     * Cancels several orders, sending the cancellations all at once rather than one after another.
+     * 
+     * @param ids The orders to cancel
+     * @return JSONObject with keys "status" and "results", the outcome of each cancellation in the order given, with
+     * its round trip in "latencyMs"
+     */
+    private JSONObject cancelOrders(List<Long> ids)
+    {
+        List<CompletableFuture<String>> sent = new ArrayList<CompletableFuture<String>>();
+        long[] latencies = new long[ids.size()];
+        for (int i = 0; i < ids.size(); i++)
+        {
+            sent.add(timed(conn.sendPrivateRequestAsync("/api/v2/cancel_order/", new String[] {"id=" + ids.get(i)}), latencies, i));
+        }
+        JSONArray results = new JSONArray();
+        for (int i = 0; i < sent.size(); i++)
+        {
+            JSONObject data = await(sent.get(i));
+            data = data.has("status") ? data : orderCancelled(ids.get(i), data);
+            results.put(data.put("latencyMs", latencies[i] / 1e6));
+        }
+        return Wallet.batchResult(results);
+    }
+
+    /**
+     * Cancels every open order for the pair, in a single request.
+     * 
+     * @return JSONObject with keys "status" and "results", the cancelled orders. If an error is encountered, returns
+     * a JSONObject with keys "status" and "error".
+     */
+    private JSONObject cancelAllOrders()
+    {
+        JSONObject data = new JSONObject(conn.sendPrivateRequest(pair.endpoint("/api/v2/cancel_all_orders/") + "/"));
+        if (!data.optBoolean("success"))
+        {
+            data.put("status", "failure");
+            data.put("error", data.optString("reason", data.optString("error", "Orders not cancelled.")));
+            return data;
+        }
+        JSONArray results = new JSONArray();
+        JSONArray canceled = data.getJSONArray("canceled");
+        for (int i = 0; i < canceled.length(); i++)
+        {
+            JSONObject order = canceled.getJSONObject(i);
+            results.put(orderCancelled(order.getLong("id"), order));
+        }
+        return Wallet.batchResult(results);
+    }
+
+    /**
+     * Places several orders, such as a ladder, sending them all at once rather than one after another. The orders
+     * are risk checked together, so between them they cannot use more funds than are available. Each order is
+     * tracked as it would be if placed alone, and a failure of one does not stop the others being placed. Orders over
+     * the order rate limit ({@code aether.risk.maxOrdersPerMinute}) are rejected rather than held back, as a
+     * strategy's orders are placed from its tick; callers placing more wait for room with
+     * {@link RiskEngine#getOrderRateWaitMs}, as the ladder prompt and {@link OrderScript} do.
+     * 
+     * @param intents The orders
+     * @return JSONObject with keys "status" and "results", the outcome of each order in the order given, with the
+     * round trip of each order sent in "latencyMs"
+     */
+    private JSONObject placeOrders(List<OrderIntent> intents)
+    {
+        getBalance();
+        long now = System.currentTimeMillis();
+        if (accountRisk.isMarkStale(now))
+        {
+            accountRisk.mark(accountBalances.getPrice(), now);
+        }
+        RiskEngine.Reason[] reasons = accountRisk.checkAll(intents);
+
+        List<CompletableFuture<String>> sent = new ArrayList<CompletableFuture<String>>();
+        long[] latencies = new long[intents.size()];
+        for (int i = 0; i < intents.size(); i++)
+        {
+            OrderIntent intent = intents.get(i);
+            if (reasons[i] != RiskEngine.Reason.ACCEPTED)
+            {
+                sent.add(null);
+                continue;
+            }
+            String side = intent.getType() == 0 ? "buy" : "sell";
+            String[] params = intent.isInstant() ? new String[] {"amount=" + intent.getAmount()} : new String[] {"amount=" + intent.getAmount(), "price=" + intent.getPrice()};
+            sent.add(timed(conn.sendPrivateRequestAsync(pair.endpoint("/api/v2/" + side + (intent.isInstant() ? "/instant/" : "/")) + "/", params), latencies, i));
+        }
+
+        JSONArray results = new JSONArray();
+        long lastPlaced = -1;
+        for (int i = 0; i < intents.size(); i++)
+        {
+            if (sent.get(i) == null)
+            {
+                results.put(rejection(reasons[i]));
+                continue;
+            }
+            JSONObject data = await(sent.get(i));
+            if (!data.has("status"))
+            {
+                trackPlacedOrder(data, intents.get(i).getType(), intents.get(i).isInstant());
+                lastPlaced = data.getLong("id");
+                data.put("status", "success");
+            }
+            else if (!data.getString("status").equals("failure"))
+            {
+                data.put("status", "failure");
+                data.put("error", data.optString("reason"));
+                data.remove("reason");
+            }
+            results.put(data.put("latencyMs", latencies[i] / 1e6));
+        }
+        if (lastPlaced != -1)
+        {
+            priceAtLastTransaction = getBTCPrice();
+            lastOrderID = lastPlaced;
+        }
+        return Wallet.batchResult(results);
+    }
+
+    /**
+     * Times a request from now until it completes, successfully or not.
+     * 
+     * @param latencies Where the round trip is stored, in nanoseconds, by the time the returned future completes
+     * @param index Slot of latencies for this request
+     */
+    private static CompletableFuture<String> timed(CompletableFuture<String> request, long[] latencies, int index)
+    {
+        long start = System.nanoTime();
+        return request.whenComplete((body, e) -> latencies[index] = System.nanoTime() - start);
+    }
+
+    /**
+     * Waits for a private request sent with {@link BitstampAPIConnection#sendPrivateRequestAsync}.
+     * 
+     * @return The response, or a JSONObject with keys "status" and "error" if the request failed
+     */
+    private static JSONObject await(CompletableFuture<String> response)
+    {
+        try
+        {
+            return new JSONObject(response.join());
+        }
+        catch (CompletionException e)
+        {
+            JSONObject err = new JSONObject();
+            err.put("status", "failure");
+            err.put("error", String.valueOf(e.getCause().getMessage()));
+            return err;
+        }
+    }
+
     /**
      * Cancels order with ID prompted for at command line.
      * 
@@ -240,7 +616,12 @@ public class AetherTrader
     public String userCancelOrder()
     {
         System.out.println();
-        long id = Long.parseLong(getUserInput("Order ID: "));
+        String input = getUserInput("Order ID (several separated by commas, or \"all\"): ").trim();
+        if (input.equalsIgnoreCase("all") || input.contains(","))
+        {
+            return userCancelOrders(input);
+        }
+        long id = Long.parseLong(input);
 
         String result;
         JSONObject order = getOrder(id);
@@ -271,10 +652,44 @@ public class AetherTrader
         return result;        
     }
 
+    /**
+     * Cancels several orders, or all of them, after confirmation.
+     * 
+     * @param input Comma separated order IDs, or "all"
+     * @return Status message indicating the result of each cancellation.
+     */
+    private String userCancelOrders(String input)
+    {
+        boolean all = input.equalsIgnoreCase("all");
+        List<Long> ids = new ArrayList<Long>();
+        if (!all)
+        {
+            for (String id : input.split(","))
+            {
+                if (!id.isBlank())
+                {
+                    ids.add(Long.parseLong(id.trim()));
+                }
+            }
+        }
+        System.out.println(all ? "Cancel all open " + pair.getSymbol() + " orders" : "Cancel orders " + ids);
+        if (!userConfirm())
+        {
+            return "Operation cancelled.\n";
+        }
+        JSONObject cancelled = all ? cancelAllOrders() : cancelOrders(ids);
+        if (!cancelled.has("results"))
+        {
+            return "WARNING: orders not cancelled.\n" + formatJSON(cancelled);
+        }
+        return (cancelled.getString("status").equals("success") ? "Success, orders cancelled:\n" : "WARNING: " + cancelled.getString("error") + "\n")
+            + formatJSONArray(cancelled.getJSONArray("results"));
+    }
+
     /**
      * Places an instant sell order.
      * 
-     * @param amt Amount of BTC to sell
+     * @param amt Amount of the base currency to sell
      * @return JSONObject reprenting the placed order. If an error is encountered, returns a JSONObject
      * with keys "status" and "error".
      */
@@ -284,9 +699,15 @@ public class AetherTrader
         {
             "amount=" + amt,
         };
-        JSONObject data = new JSONObject(conn.sendPrivateRequest("/api/v2/sell/instant/btceur/", params));
+        JSONObject rejected = checkAccountRisk(1, true, amt, 0);
+        if (rejected != null)
+        {
+            return rejected;
+        }
+        JSONObject data = new JSONObject(conn.sendPrivateRequest(pair.endpoint("/api/v2/sell/instant/") + "/", params));
         if (!data.has("status"))
         {
+            trackPlacedOrder(data, 1, true);
             priceAtLastTransaction = data.getDouble("price");
             lastOrderID = data.getLong("id");
             data.put("status", "success");
@@ -309,15 +730,15 @@ public class AetherTrader
     public String userSellInstantOrder()
     {
         System.out.println();
-        BigDecimal amt =  new BigDecimal(getUserInput("Amount (BTC): "));
+        BigDecimal amt =  new BigDecimal(getUserInput("Amount (" + pair.getBase().toUpperCase() + "): "));
 
         double price = getBTCPrice();
         if (price == -1)
         {
-            return "Unable to get BTC price. Unable to place order. Try again.";
+            return "Unable to get " + pair.getBase().toUpperCase() + " price. Unable to place order. Try again.";
         }
         String result;
-        System.out.println(String.format("Place sell instant order for %.8f BTC at ~€%.2f (Value: ~€%.2f)", amt, price, amt.multiply(new BigDecimal(price))));
+        System.out.println(String.format("Place sell instant order for %.8f %s at ~%s (Value: ~%s)", amt, pair.getBase().toUpperCase(), pair.formatQuote(price), pair.formatQuote(amt.doubleValue() * price)));
         if (userConfirm())
         {
             JSONObject sellOrder = placeSellInstantOrder(amt);
@@ -341,7 +762,7 @@ public class AetherTrader
     /**
      * Places an instant buy order.
      * 
-     * @param amt Amount of BTC to buy
+     * @param amt Amount of the quote currency to spend
      * @return JSONObject reprenting the placed order. If an error is encountered, returns a JSONObject
      * with keys "status" and "error".
      */
@@ -351,9 +772,15 @@ public class AetherTrader
         {
             "amount=" + amt,
         };
-        JSONObject data = new JSONObject(conn.sendPrivateRequest("/api/v2/buy/instant/btceur/", params));
+        JSONObject rejected = checkAccountRisk(0, true, amt, 0);
+        if (rejected != null)
+        {
+            return rejected;
+        }
+        JSONObject data = new JSONObject(conn.sendPrivateRequest(pair.endpoint("/api/v2/buy/instant/") + "/", params));
         if (!data.has("status"))
         {
+            trackPlacedOrder(data, 0, true);
             priceAtLastTransaction = data.getDouble("price");
             lastOrderID = data.getLong("id");
             data.put("status", "success");
@@ -376,15 +803,15 @@ public class AetherTrader
     public String userBuyInstantOrder()
     {
         System.out.println();
-        BigDecimal amt = new BigDecimal((getUserInput("Amount (EUR): ")));
+        BigDecimal amt = new BigDecimal((getUserInput("Amount (" + pair.getQuote().toUpperCase() + "): ")));
 
         double price = getBTCPrice();
         if (price == -1)
         {
-            return "Unable to get BTC price. Unable to place order. Try again.";
+            return "Unable to get " + pair.getBase().toUpperCase() + " price. Unable to place order. Try again.";
         }
         String result;
-        System.out.println(String.format("Place buy instant order for %.8f BTC at ~€%.2f (Value: ~%.8fBTC)", amt, price, amt.divide(new BigDecimal(price), RoundingMode.HALF_DOWN)));
+        System.out.println(String.format("Place buy instant order for %s at ~%s (Value: ~%.8f %s)", pair.formatQuote(amt.doubleValue()), pair.formatQuote(price), amt.divide(new BigDecimal(price), 8, RoundingMode.HALF_DOWN), pair.getBase().toUpperCase()));
         if (userConfirm())
         {
             JSONObject buyOrder = placeBuyInstantOrder(amt);
@@ -409,8 +836,8 @@ public class AetherTrader
     /**
      * Places a sell limit order.
      * 
-     * @param amt Amount to buy (BTC)
-     * @param price Price to buy at (EUR)
+     * @param amt Amount to sell, in the base currency
+     * @param price Price to sell at, in the quote currency
      * @return JSONObject repesenting the placed order.
      */
     private JSONObject placeSellLimitOrder(BigDecimal amt, double price)
@@ -420,9 +847,15 @@ public class AetherTrader
             "amount=" + amt,
             "price=" + price
         };
-        JSONObject data = new JSONObject(conn.sendPrivateRequest("/api/v2/sell/btceur/", params));
+        JSONObject rejected = checkAccountRisk(1, false, amt, price);
+        if (rejected != null)
+        {
+            return rejected;
+        }
+        JSONObject data = new JSONObject(conn.sendPrivateRequest(pair.endpoint("/api/v2/sell/") + "/", params));
         if (!data.has("status"))
         {
+            trackPlacedOrder(data, 1, false);
             priceAtLastTransaction = getBTCPrice();
             if (priceAtLastTransaction != -1)
             {
@@ -433,7 +866,7 @@ public class AetherTrader
             else
             {
                 data.put("status", "failure");
-                data.put("error", "Could not get BTC price.");
+                data.put("error", "Could not get " + pair.getBase().toUpperCase() + " price.");
                 data.remove("reason");
                 return data;
             }
@@ -455,11 +888,11 @@ public class AetherTrader
     public String userSellLimitOrder()
     {
         System.out.println();
-        BigDecimal amt =  new BigDecimal(getUserInput("Amount (BTC): "));
-        double price = Double.parseDouble(getUserInput("Price (EUR): "));
+        BigDecimal amt =  new BigDecimal(getUserInput("Amount (" + pair.getBase().toUpperCase() + "): "));
+        double price = Double.parseDouble(getUserInput("Price (" + pair.getQuote().toUpperCase() + "): "));
 
         String result;
-        System.out.println(String.format("Place sell limit order for %.8f BTC at €%.2f (Value: €%.2f)", amt, price, amt.multiply(new BigDecimal(price))));
+        System.out.println(String.format("Place sell limit order for %.8f %s at %s (Value: %s)", amt, pair.getBase().toUpperCase(), pair.formatQuote(price), pair.formatQuote(amt.doubleValue() * price)));
         if (userConfirm())
         {
             JSONObject sellOrder = placeSellLimitOrder(amt, price);
@@ -484,8 +917,8 @@ public class AetherTrader
     /**
      * Places a buy limit order.
      * 
-     * @param amt Amount to buy (BTC)
-     * @param price Price to buy at (EUR)
+     * @param amt Amount to buy, in the base currency
+     * @param price Price to buy at, in the quote currency
      * @return JSONObject repesenting the placed order.
      */
     private JSONObject placeBuyLimitOrder(BigDecimal amt, double price)
@@ -495,9 +928,15 @@ public class AetherTrader
             "amount=" + amt,
             "price=" + price
         };
-        JSONObject data = new JSONObject(conn.sendPrivateRequest("/api/v2/buy/btceur/", params));
+        JSONObject rejected = checkAccountRisk(0, false, amt, price);
+        if (rejected != null)
+        {
+            return rejected;
+        }
+        JSONObject data = new JSONObject(conn.sendPrivateRequest(pair.endpoint("/api/v2/buy/") + "/", params));
         if (!data.has("status"))
         {
+            trackPlacedOrder(data, 0, false);
             priceAtLastTransaction = getBTCPrice();
             if (priceAtLastTransaction != -1)
             {
@@ -508,7 +947,7 @@ public class AetherTrader
             else
             {
                 data.put("status", "failure");
-                data.put("error", "Could not get BTC price.");
+                data.put("error", "Could not get " + pair.getBase().toUpperCase() + " price.");
                 data.remove("reason");
                 return data;
             }
@@ -530,13 +969,13 @@ public class AetherTrader
     public String userBuyLimitOrder()
     {
         System.out.println();
-        BigDecimal amt =  new BigDecimal(getUserInput("Amount (BTC): "));
-        double price = Double.parseDouble(getUserInput("Price (EUR): "));
+        BigDecimal amt =  new BigDecimal(getUserInput("Amount (" + pair.getBase().toUpperCase() + "): "));
+        double price = Double.parseDouble(getUserInput("Price (" + pair.getQuote().toUpperCase() + "): "));
 
         JSONObject buyOrder = placeBuyLimitOrder(amt, price);
         String result;
 
-        System.out.println(String.format("Place buy limit order for %.8f BTC at €%.2f (Value: €%.2f)", amt, price, amt.multiply(new BigDecimal(price))));
+        System.out.println(String.format("Place buy limit order for %.8f %s at %s (Value: %s)", amt, pair.getBase().toUpperCase(), pair.formatQuote(price), pair.formatQuote(amt.doubleValue() * price)));
         if (userConfirm())
         {
             if (buyOrder.getString("status").equals("success"))
@@ -557,229 +996,589 @@ public class AetherTrader
         return result;
     }
 
-    //#endregion
-    
-    //#region Auto Trading methods
-
     /**
-     * Begins running the automatic trading programme.
+     * Places a ladder of limit orders, with the side, size, prices and number of orders prompted for at command line.
+     * 
+     * @return Status message indicating the result of each order.
      */
-    public void startAuto()
+    public String userPlaceLadder()
     {
-        wallet = new TestWallet(new BigDecimal(0.00338066), new BigDecimal(0));
-        isAutotrading = true;
+        System.out.println();
+        int type = getUserInput("Buy or sell: ").trim().toLowerCase().startsWith("s") ? 1 : 0;
+        BigDecimal amt = new BigDecimal(getUserInput("Amount of each order (" + pair.getBase().toUpperCase() + "): "));
+        double first = Double.parseDouble(getUserInput("First price (" + pair.getQuote().toUpperCase() + "): "));
+        double step = Double.parseDouble(getUserInput("Price step, negative to step down: "));
+        int count = Integer.parseInt(getUserInput("Number of orders: "));
+        // Checked here, as a ladder over the order rate limit would only have its extra orders rejected one by one
+        int maxOrders = accountRisk.getMaxOrdersPerMinute();
+        if (count > maxOrders)
+        {
+            return "A ladder may have at most " + maxOrders + " orders, the order rate limit. Raise -Daether.risk.maxOrdersPerMinute to place more.\n";
+        }
 
-        // TODO setup: cancel current orders
-        tradingState = getTradingState();
-        setUpMarketHistory();
-        autoTradingTimer = new Timer("Auto Trader");
-        autoTradingTimer.scheduleAtFixedRate(new AutoTraderTask(this), 0, 60000);
+        List<OrderIntent> ladder = OrderIntent.ladder(type, amt, first, step, count);
+        for (OrderIntent intent : ladder)
+        {
+            System.out.println(intent);
+        }
+        if (!userConfirm())
+        {
+            return "Operation cancelled.\n";
+        }
+        long wait = accountRisk.getOrderRateWaitMs(count, System.currentTimeMillis());
+        if (wait > 0)
+        {
+            System.out.println(String.format("Waiting %.0fs for the order rate limit...", Math.ceil(wait / 1000.0)));
+            try
+            {
+                Thread.sleep(wait);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return "Operation cancelled.\n";
+            }
+        }
+        JSONObject placed = placeOrders(ladder);
+        return (placed.getString("status").equals("success") ? "Success, orders placed:\n" : "WARNING: " + placed.getString("error") + "\n")
+            + formatJSONArray(placed.getJSONArray("results"));
     }
 
     /**
-     * Advances the auto trader to it's next state.
+     * The exchange account as a {@link Wallet}. Its orders go through the same risk checks and tracking as those
+     * placed at the command line.
      */
-    public void doNextAutoTrade()
-    {        
-        //get market state now
-        float percentChange = calculatePercentChange(TIME_STEP, STEPS, 0);
-        if (percentChange == -999)
+    private class ExchangeWallet implements Wallet
+    {
+        public JSONObject getBalance()
         {
-            return;
+            return AetherTrader.this.getBalance();
         }
 
-        marketState = getMarketState(percentChange);
-        marketHistory.push(marketState);
-        System.out.print(String.format("[%s]: %-4s (%+.2f%%, %-2dm)", dateFormat.format(new Date()), marketState, percentChange, (TIME_STEP / 60) * STEPS));
+        public JSONObject getOpenOrders()
+        {
+            return AetherTrader.this.getOpenOrders();
+        }
 
-        // TODO Get better flow, this is nasty
-        tradingState = doAction();
-    }
+        public JSONObject placeBuyInstantOrder(BigDecimal amt)
+        {
+            return AetherTrader.this.placeBuyInstantOrder(amt);
+        }
 
-    /**
-     * Disposes of threads related to automatic trading so that the application can terminate.
-     */
-    public void stopAuto()
-    {
-        if (autoTradingTimer != null)
+        public JSONObject placeSellInstantOrder(BigDecimal amt)
         {
-            autoTradingTimer.cancel();
-            autoTradingTimer.purge();
-            System.out.println("Auto trader halted.");
+            return AetherTrader.this.placeSellInstantOrder(amt);
         }
-    }
 
-    /**
-     * Examines current trading and market state to decide next action. Executes next action if
-     * applicable and returns new trading state.
-     * 
-     * @return resultant trading state
-     * @see TradingState
-     */
-    private TradingState doAction()
-    {
-        JSONObject btcData = getBTCData();
-        JSONObject bal;
-        TradingState nextState = TradingState.UNKNOWN;
+        public JSONObject placeBuyLimitOrder(BigDecimal amt, double price)
+        {
+            return AetherTrader.this.placeBuyLimitOrder(amt, price);
+        }
 
-        if (priceAtLastTransaction == -1) // If programme just started, take last price as last transaction
+        public JSONObject placeSellLimitOrder(BigDecimal amt, double price)
         {
-            priceAtLastTransaction = btcData.getDouble("last");
+            return AetherTrader.this.placeSellLimitOrder(amt, price);
         }
 
-        Trend currentTrend = predictMarket();
-        JSONObject orderData;
-        
-        double percentOnPosition = ((btcData.getDouble("last") / priceAtLastTransaction) - 1) * 100;
-        System.out.print(String.format(" | Ent: €%.2f, Cur: €%.2f (%+.2f%%) | Trend: %4s (%+5.1f) | %-8s -> ", priceAtLastTransaction, btcData.getDouble("last"), percentOnPosition, currentTrend.name(), lastTrendVal, tradingState));
-        switch (tradingState)
+        public JSONObject cancelOrder(long id)
         {
-            case HOLD_IN:
-                if (currentTrend == Trend.UP)
-                {
-                    // Trend is up, place limit sell assuming sustained rise
-                    priceAtLastTransaction = btcData.getDouble("last");
-
-                    bal = wallet.getBalance();
-                    JSONObject o = wallet.placeSellLimitOrder(bal.getBigDecimal("btc_available"), priceAtLastTransaction * (1 + PROFIT_MARGIN));
-                    lastOrderID = o.getLong("id"); //only needed with TestWallet
-                    System.out.print(String.format("LONG (Limit sell placed at €%.2f)", o.getDouble("price")));
-                    nextState = TradingState.LONG;
-                }
-                else if (currentTrend == Trend.DOWN) // && btcData.getDouble("last") < priceAtLastTransaction * (1 - PROFIT_MARGIN))
-                {
-                    // Panic-sell out, trend is down and current price is less than PROFIT_MARGIN BELOW our position
-                    bal = wallet.getBalance();
-                    JSONObject o = wallet.placeSellInstantOrder(bal.getBigDecimal("btc_available"));
-                    lastOrderID = o.getLong("id"); //only needed with TestWallet
-                    System.out.print(String.format("HOLD_OUT (Instant sell placed at €%.2f)", o.getDouble("price")));
-                    nextState = TradingState.HOLD_OUT;
-                }
-                else
-                {
-                    nextState = tradingState;
-                }
-                break;
-            case LONG:
-                orderData = wallet.getOpenOrders();
-                if (orderData.getString("status").equals("success"))
-                {
-                    if (orderData.getJSONArray("orders").length() > 0) // Long position still open
-                    {
-                        btcData = getBTCData();
-
-                        // Panic-close LONG position, predicted trend is down or last price lower than one PROFIT_MARGIN BELOW our position
-                        if (currentTrend == Trend.DOWN && btcData.getDouble("last") < priceAtLastTransaction * (1 - PROFIT_MARGIN))
-                        {
-                            JSONObject cancelledOrder = wallet.cancelOrder(lastOrderID);
-                            if (cancelledOrder.getString("status").equals("success"))
-                            {
-                                System.out.print(String.format("HOLD_IN (Order cancelled, LONG position closed)"));
-                                nextState =  TradingState.HOLD_IN;
-                            }
-                            else
-                            {
-                                System.out.println(String.format("LONG (Failed to cancel order)"));
-                                System.out.print("WARNING: Unable to cancel limit sell order. Market falling while in a LONG position.");
-                                nextState =  TradingState.LONG;
-                            }
-                        }
-                        else
-                        {
-                            nextState = tradingState;
-                        }
-                    }
-                    else // Long position closed (executed)
-                    {
-                        System.out.print(String.format("HOLD_OUT (Limit sell executed)"));
-                        nextState = TradingState.HOLD_OUT;
-                    }
-                }
-                break;
-            case HOLD_OUT:
-                if (currentTrend == Trend.DOWN)
-                {
-                    // Trend is down, place limit buy assuming sustained drop
-                    priceAtLastTransaction = btcData.getDouble("last");
-                    
-                    bal = wallet.getBalance();
-                    JSONObject o = wallet.placeBuyLimitOrder(bal.getBigDecimal("btc_available"), priceAtLastTransaction * (1 - PROFIT_MARGIN));
-                    lastOrderID = o.getLong("id"); //only needed with TestWallet
-                    System.out.print(String.format("SHORT (Limit buy placed at €%.2f)", o.getDouble("price")));
-                    nextState =  TradingState.SHORT;
-                }
-                else if (currentTrend == Trend.UP) // && btcData.getDouble("last") > priceAtLastTransaction * (1 + PROFIT_MARGIN))
-                {
-                    // Panic-buy in, trend is up and current price is more than PROFIT_MARGIN ABOVE our position
-                    bal = wallet.getBalance();
-                    JSONObject o = wallet.placeBuyInstantOrder(bal.getBigDecimal("eur_available"));
-                    lastOrderID = o.getLong("id"); //only needed with TestWallet
-                    System.out.print(String.format("HOLD_IN (Instant buy placed at €%.2f)", o.getDouble("price")));
-                    nextState = TradingState.HOLD_IN;
-                }
-                else
-                {
-                    nextState = tradingState;
-                }
-                break;
-            case SHORT:
-                orderData = wallet.getOpenOrders();
-                if (orderData.getString("status").equals("success"))
-                {
-                    if (orderData.getJSONArray("orders").length() > 0) // Short position still open
-                    {
-                        btcData = getBTCData();
-
-                        // Panic-close SHORT position, predicted trend is UP or last price higher than one PROFIT_MARGIN ABOVE our position
-                        if (currentTrend == Trend.UP && btcData.getDouble("last") > priceAtLastTransaction * (1 + PROFIT_MARGIN))
-                        {
-                            JSONObject cancelledOrder = wallet.cancelOrder(lastOrderID);
-                            if (cancelledOrder.getString("status").equals("success"))
-                            {
-                                System.out.print(String.format("HOLD_OUT (Order cancelled, SHORT position closed)"));
-                                nextState =  TradingState.HOLD_OUT;
-                            }
-                            else
-                            {
-                                System.out.println(String.format("SHORT (Failed to cancel order)"));
-                                System.out.print("WARNING: Unable to cancel limit buy order. Market rising while in a SHORT position.");
-                                nextState =  TradingState.SHORT;
-                            }  
-                        }
-                        else
-                        {
-                            nextState = tradingState;
-                        }
-                    }
-                    else // Short position closed (executed)
-                    {
-                        System.out.print(String.format("HOLD_IN (Limit buy executed)"));
-                        nextState = TradingState.HOLD_IN;
-                    }
-                }
-                
-                break;
-            default:
-                System.out.print(String.format("%s (Unsure what has happened to reach here)", tradingState));
-                break;
+            return AetherTrader.this.cancelOrder(id);
         }
 
-        if (nextState == tradingState) // Print the lack of change in state
+        public JSONObject placeOrders(List<OrderIntent> intents)
         {
-            System.out.print(String.format("%s", nextState));
+            return AetherTrader.this.placeOrders(intents);
         }
 
-        System.out.print(" | " + wallet.toString());
-        System.out.println();
-        return nextState;
-    }
+        public JSONObject cancelOrders(List<Long> ids)
+        {
+            return AetherTrader.this.cancelOrders(ids);
+        }
+
+        public int getMaxOrdersPerMinute()
+        {
+            return accountRisk.getMaxOrdersPerMinute();
+        }
+
+        public long getOrderRateWaitMs(int orders)
+        {
+            return accountRisk.getOrderRateWaitMs(orders, System.currentTimeMillis());
+        }
+
+        public JSONObject cancelAllOrders()
+        {
+            return AetherTrader.this.cancelAllOrders();
+        }
+
+        public void addOrderListener(OrderListener listener)
+        {
+            synchronized (AetherTrader.this)
+            {
+                accountListeners.add(listener);
+                if (orderFeed != null)
+                {
+                    orderFeed.addOrderListener(listener);
+                }
+            }
+        }
+
+        public boolean isStreamingOrders()
+        {
+            return orderFeed != null && orderFeed.isConnected();
+        }
+
+        public String toString()
+        {
+            JSONObject balance = getBalance();
+            return String.format("{Account: %s%s, %s%s}", balance.getBigDecimal(pair.baseKey("balance")).toPlainString(), pair.getBase().toUpperCase(), balance.getBigDecimal(pair.quoteKey("balance")).toPlainString(), pair.getQuote().toUpperCase());
+        }
+    }
+
+    //#endregion
+    
+    //#region Auto Trading methods
+
+    /**
+     * Begins running the automatic trading programme, with the strategies listed in the {@code aether.strategies}
+     * property (by default just "trend"). Each strategy trades its own test wallet, which the trader fills at each
+     * tick's price.
+     */
+    public void startAuto()
+    {
+        isAutotrading = true;
+
+        // TODO setup: cancel current orders
+        double price = getBTCPrice();
+        for (String spec : System.getProperty("aether.strategies", "trend").split(","))
+        {
+            TestWallet wallet = new TestWallet(pair, conn, new BigDecimal(0.00338066), new BigDecimal(0), false);
+            wallet.processPrice(price);
+            fedWallets.add(wallet);
+            addStrategy(spec.trim(), strategyFor(spec.trim()), wallet);
+        }
+        setUpMarketHistory();
+        startLiveCandles();
+        autoTradingScheduler = new TickScheduler("Auto Trader " + pair.getSymbol());
+        if ("fixed".equalsIgnoreCase(System.getProperty("aether.cadence")))
+        {
+            autoTradingScheduler.scheduleAligned(this::doNextAutoTrade, AUTO_INTERVAL_MS, AUTO_OFFSET_MS);
+        }
+        else
+        {
+            cadence = new AdaptiveCadence(AUTO_INTERVAL_MS, MIN_AUTO_INTERVAL_MS, MAX_AUTO_INTERVAL_MS, TIME_STEP, requestBudget);
+            autoTradingScheduler.schedule(this::doNextAutoTrade, cadence);
+        }
+    }
+
+    /**
+     * Creates a built-in strategy from its name and parameters, as given in {@code aether.strategies}.
+     * 
+     * @param spec "trend", or "trend:&lt;profit margin&gt;", e.g. "trend:0.03"
+     * @return The strategy
+     */
+    static Strategy strategyFor(String spec)
+    {
+        String[] parts = spec.split(":", 2);
+        if (parts[0].equals("trend"))
+        {
+            return parts.length == 1 ? new TrendStrategy() : new TrendStrategy(Double.parseDouble(parts[1]));
+        }
+        throw new IllegalArgumentException("Unknown strategy: " + spec);
+    }
+
+    /**
+     * Adds a strategy for the auto trader to run on each tick, alongside any already added. Strategies share the
+     * trader's market data but each trades through its own wallet, with its own P&L and, for simulated wallets, its
+     * own risk checks.
+     * 
+     * @param name Name of the strategy, unique within this trader; labels its log lines and metrics
+     * @param strategy The strategy
+     * @param wallet The wallet it trades through, e.g. a {@link TestWallet} or {@link #getAccountWallet()}
+     * @return The strategy's runner
+     */
+    public StrategyRunner addStrategy(String name, Strategy strategy, Wallet wallet)
+    {
+        for (StrategyRunner r : strategies)
+        {
+            if (r.getName().equals(name))
+            {
+                throw new IllegalArgumentException("Strategy " + name + " already added");
+            }
+        }
+        StrategyRunner runner = new StrategyRunner(name, pair, strategy, wallet);
+        // The first strategy keeps the book name it had when the trader ran only one
+        String book = wallet instanceof TestWallet ? "test_wallet" : "account";
+        runner.getPnl().registerMetrics(pair, strategies.isEmpty() ? book : book + "_" + name);
+        runner.start();
+        strategies.add(runner);
+        if (liveFeed != null)
+        {
+            liveFeed.addTradeListener(runner);
+        }
+        return runner;
+    }
+
+    /**
+     * @return The strategies the auto trader runs, in the order they were added
+     */
+    public List<StrategyRunner> getStrategies()
+    {
+        return strategies;
+    }
+
+    /**
+     * @return The exchange account, as a wallet a strategy can trade through
+     */
+    public Wallet getAccountWallet()
+    {
+        return accountWallet;
+    }
+
+    /**
+     * @return The first strategy's P&L engine, or null if no strategy has been added
+     */
+    PnlEngine getPnl()
+    {
+        return strategies.isEmpty() ? null : strategies.get(0).getPnl();
+    }
+
+    /**
+     * Scales a display refresh interval with the auto trader's cadence, so displays poll less in flat markets and
+     * more in volatile ones.
+     * 
+     * @param fixedMs The refresh interval to use at the normal cadence, in milliseconds
+     * @return The interval to use now, between half and three times {@code fixedMs}
+     */
+    long getRefreshInterval(long fixedMs)
+    {
+        if (cadence == null)
+        {
+            return fixedMs;
+        }
+        long scaled = fixedMs * cadence.getInterval() / cadence.getFixedInterval();
+        return Math.max(fixedMs / 2, Math.min(fixedMs * 3, scaled));
+    }
+
+    /**
+     * Readies the auto trader to run the trend strategy with the given wallet, measuring recent market history.
+     * Nothing is scheduled; each call to {@link #doNextAutoTrade()} then advances it one tick.
+     * 
+     * @param wallet The wallet to trade with
+     */
+    void prepareAuto(TestWallet wallet)
+    {
+        addStrategy("trend", new TrendStrategy(), wallet);
+        setUpMarketHistory();
+    }
+
+    /**
+     * Advances the auto trader one tick: measures the market once, then passes the result to every strategy.
+     */
+    public void doNextAutoTrade()
+    {        
+        if (paused)
+        {
+            return;
+        }
+        long tickStart = System.nanoTime();
+        TickEvent event = new TickEvent();
+        event.begin();
+        String fromState = strategies.isEmpty() ? "" : strategies.get(0).getStrategy().getState();
+
+        //get market state now
+        float percentChange = calculatePercentChange(TIME_STEP, STEPS, 0);
+        percentChangeLatency.recordSince(tickStart);
+        if (percentChange == -999)
+        {
+            failedTicks.increment();
+            lastPrice = Double.NaN;
+            commitTick(event, percentChange, MarketState.UNKNOWN, fromState);
+            publishTick(percentChange, MarketState.UNKNOWN, null);
+            if (cadence != null)
+            {
+                cadence.onTick(System.currentTimeMillis(), MarketState.UNKNOWN, Double.NaN, conn.getSentCount(), false);
+            }
+            return;
+        }
+
+        marketState = getMarketState(percentChange);
+        marketHistory.push(marketState);
+        String header = String.format("[%s] %s: %-4s (%+.2f%%, %-2dm)", dateFormat.format(new Date()), pair, marketState, percentChange, (TIME_STEP / 60) * STEPS);
+
+        long phaseStart = System.nanoTime();
+        Strategy.Ticker ticker = Strategy.Ticker.of(getBTCData());
+        tickerLatency.recordSince(phaseStart);
+        lastPrice = ticker.last;
+        if (tape != null)
+        {
+            tape.onTicker(ticker);
+        }
+        for (TestWallet wallet : fedWallets)
+        {
+            wallet.processPrice(lastPrice);
+        }
+
+        phaseStart = System.nanoTime();
+        Trend currentTrend = predictMarket();
+        predictLatency.recordSince(phaseStart);
+        lastTrend = currentTrend;
+        Strategy.Signals signals = new Strategy.Signals(percentChange, marketState, currentTrend, lastTrendVal);
+
+        phaseStart = System.nanoTime();
+        boolean decided = false;
+        // Only kept if anyone is listening for ticks
+        JSONArray decisions = tickListeners.isEmpty() ? null : new JSONArray();
+        for (StrategyRunner runner : strategies)
+        {
+            String from = decisions == null ? null : runner.getStrategy().getState();
+            boolean changed = runner.onTicker(ticker, signals);
+            decided |= changed;
+            if (changed && decisions != null)
+            {
+                decisions.put(new JSONObject().put("name", runner.getName()).put("from", from).put("to", runner.getStrategy().getState()));
+            }
+        }
+        long end = System.nanoTime();
+        actionLatency.record(end - phaseStart);
+        decisionLatency.record(end - tickStart);
+
+        boolean named = strategies.size() > 1;
+        for (StrategyRunner runner : strategies)
+        {
+            out.println(header + (named ? " | " + runner.getName() : "") + runner.report());
+        }
+        reportLatency.recordSince(end);
+        tickLatency.recordSince(tickStart);
+        commitTick(event, percentChange, marketState, fromState);
+        publishTick(percentChange, marketState, decisions);
+        if (cadence != null)
+        {
+            cadence.onTick(System.currentTimeMillis(), marketState, lastPrice, conn.getSentCount(), decided);
+        }
+    }
+
+    /**
+     * Tells the tick listeners, if there are any, of the tick just completed.
+     * 
+     * @param decisions The strategies that changed state, or null if none did or the tick failed
+     */
+    private void publishTick(float percentChange, MarketState measured, JSONArray decisions)
+    {
+        if (tickListeners.isEmpty())
+        {
+            return;
+        }
+        JSONObject tick = getStatus();
+        tick.put("percentChange", percentChange);
+        tick.put("marketState", measured.name());
+        tick.put("decisions", decisions == null ? new JSONArray() : decisions);
+        for (TickListener l : tickListeners)
+        {
+            l.onTick(tick);
+        }
+    }
+
+    public void addTickListener(TickListener listener)
+    {
+        tickListeners.add(listener);
+    }
+
+    public void removeTickListener(TickListener listener)
+    {
+        tickListeners.remove(listener);
+    }
+
+    /**
+     * A snapshot of the auto trader, read from memory without asking the exchange for anything.
+     * 
+     * @return JSONObject with keys "pair", "time", "autoTrading", "paused", "price" (if known), "marketState", "trend"
+     * and "strategies", each one's "name", "state" and "net" P&L
+     */
+    JSONObject getStatus()
+    {
+        JSONObject status = new JSONObject();
+        status.put("pair", pair.getSymbol());
+        status.put("time", System.currentTimeMillis());
+        status.put("autoTrading", isAutotrading);
+        status.put("paused", paused);
+        if (!Double.isNaN(lastPrice))
+        {
+            status.put("price", lastPrice);
+        }
+        status.put("marketState", marketState.name());
+        status.put("trend", lastTrend.name());
+        JSONArray running = new JSONArray();
+        for (StrategyRunner runner : strategies)
+        {
+            double net = runner.getPnl().getNet();
+            running.put(new JSONObject().put("name", runner.getName()).put("state", runner.getStrategy().getState()).put("net", Double.isFinite(net) ? net : JSONObject.NULL));
+        }
+        status.put("strategies", running);
+        return status;
+    }
+
+    /**
+     * Pauses or resumes auto trading. While paused, ticks are skipped but the scheduler, feeds and strategies keep
+     * running, so trading resumes from where it was at the next tick.
+     * 
+     * @param paused True to pause
+     */
+    public void setPaused(boolean paused)
+    {
+        this.paused = paused;
+        out.println(paused ? "Auto trader paused." : "Auto trader resumed.");
+    }
+
+    public boolean isPaused()
+    {
+        return paused;
+    }
+
+    /**
+     * Ends and commits a tick's flight recorder event, if enabled.
+     */
+    private void commitTick(TickEvent event, float percentChange, MarketState measured, String fromState)
+    {
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.pair = pair.getSymbol();
+            event.percentChange = percentChange;
+            event.marketState = measured.name();
+            event.trend = lastTrend.name();
+            event.trendValue = lastTrendVal;
+            event.fromState = fromState;
+            event.toState = strategies.isEmpty() ? "" : strategies.get(0).getStrategy().getState();
+            event.price = lastPrice;
+            event.commit();
+        }
+    }
+
+    /**
+     * Disposes of threads related to automatic trading so that the application can terminate.
+     */
+    public void stopAuto()
+    {
+        if (autoTradingScheduler != null)
+        {
+            autoTradingScheduler.stop();
+            out.println("Auto trader halted.");
+            if (cadence != null)
+            {
+                out.println("Adaptive cadence: " + cadence.summary(System.currentTimeMillis()) + ".");
+            }
+        }
+        if (liveFeed != null)
+        {
+            liveFeed.stop();
+        }
+        if (candleClock != null)
+        {
+            candleClock.stop();
+            candleClock = null;
+        }
+        if (tape != null)
+        {
+            try
+            {
+                tape.close();
+            }
+            catch (IOException e)
+            {
+                out.println("[Tape]: Unable to close tape. " + e.getMessage());
+            }
+            tape = null;
+        }
+        if (orderFeed != null)
+        {
+            orderFeed.stop();
+        }
+    }
+
+    /**
+     * Starts streaming changes to the account's orders to {@link #accountListeners}, if API keys are loaded and it is
+     * not already running.
+     */
+    private synchronized void startOrderFeed()
+    {
+        if (orderFeed != null || !conn.hasKeys())
+        {
+            return;
+        }
+        orderFeed = new BitstampOrderFeed(conn, pair);
+        for (OrderListener l : accountListeners)
+        {
+            orderFeed.addOrderListener(l);
+        }
+        if (!orderFeed.start())
+        {
+            out.println("Order feed unavailable - open orders will be polled from the exchange until it connects.");
+        }
+    }
+
+    /**
+     * Starts building candles locally from the live trade feed, so that market state can be measured without
+     * requesting OHLC data from the exchange once enough candles have closed. The feed and each tick's ticker are
+     * recorded to the pair's tape under {@code -Daether.tape.dir} ({@code tape}) unless {@code -Daether.tape=false}.
+     */
+    private void startLiveCandles()
+    {
+        candleAggregator = new CandleAggregator();
+        liveFeed = new BitstampLiveFeed(pair);
+        if (Boolean.parseBoolean(System.getProperty("aether.tape", "true")))
+        {
+            try
+            {
+                tape = new TapeRecorder(Paths.get(System.getProperty("aether.tape.dir", TAPE_PATH)), pair);
+                liveFeed.addTradeListener(tape);
+            }
+            catch (IOException e)
+            {
+                out.println("Unable to open tape - the live feed will not be recorded. " + e.getMessage());
+            }
+        }
+        liveFeed.addTradeListener(candleAggregator);
+        liveFeed.addTradeListener(accountBalances);
+        liveFeed.addTradeListener(accountRisk);
+        for (StrategyRunner runner : strategies)
+        {
+            liveFeed.addTradeListener(runner);
+        }
+        candleAggregator.addListener((step, time, open, high, low, close, volume) ->
+        {
+            Strategy.Candle candle = new Strategy.Candle(step, time, open, high, low, close, volume);
+            for (StrategyRunner runner : strategies)
+            {
+                runner.onCandle(candle);
+            }
+        });
+        // Candles close on time in a quiet market, rather than when its next trade comes
+        candleClock = new TickScheduler("Candle Clock " + pair.getSymbol());
+        candleClock.scheduleAligned(() -> candleAggregator.advanceTo(System.currentTimeMillis() - CANDLE_CLOSE_DELAY_MS), TIME_STEP * 1000L, CANDLE_CLOSE_DELAY_MS);
+        if (!liveFeed.start())
+        {
+            out.println("Live trade feed unavailable - OHLC data will be fetched from the exchange until it connects.");
+        }
+    }
 
     /**
      * Predicts the likely movement of the market based upon previous data. (HEAVYILY WIP).
      * @return The {@code Trend} the market will follow 
      * @see Trend
      */
-    private Trend predictMarket()
+    Trend predictMarket()
+    {
+        lastTrendVal = trendValue(marketHistory);
+        return trendOf(lastTrendVal, marketHistory);
+    }
+
+    /**
+     * Scores a market history for {@link #predictMarket()}.
+     * 
+     * @param marketHistory The market history, most recent first
+     * @return The score; positive for an upward trend, negative for a downward one
+     */
+    static double trendValue(List<MarketState> marketHistory)
     {
         int overall = 0;
         boolean allUp = true;
@@ -831,8 +1630,16 @@ public class AetherTrader
             last = ms;
         }
         
-        double decider = (overall * OVERALL_TREND_WEIGHT) + (((allUp ? 1 : 0) + (allDw ? -1 : 0)) * ALL_UP_DW_WEIGHT);
-        lastTrendVal = decider;
+        return (overall * OVERALL_TREND_WEIGHT) + (((allUp ? 1 : 0) + (allDw ? -1 : 0)) * ALL_UP_DW_WEIGHT);
+    }
+
+    /**
+     * @param decider Score of the market history, from {@link #trendValue(List)}
+     * @param marketHistory The market history
+     * @return The {@code Trend} the market will follow
+     */
+    static Trend trendOf(double decider, List<MarketState> marketHistory)
+    {
         if (marketHistory.contains(MarketState.UNKNOWN))
         {
             return Trend.FLAT;
@@ -852,12 +1659,31 @@ public class AetherTrader
         }
     }
 
+    /**
+     * Replaces the market history, e.g. with a synthetic one for benchmarking {@link #predictMarket()}.
+     * 
+     * @param history The market history, most recent first
+     */
+    void setMarketHistory(CircularList<MarketState> history)
+    {
+        marketHistory = history;
+    }
+
     private void setUpMarketHistory()
     {
         marketHistory = new CircularList<MarketState>(MARKET_HISTORY_LENGTH);
 
         float percentChange = 0;
         long maxOffset = -MARKET_HISTORY_LENGTH * TIME_STEP ;
+
+        // Pull any history not already on disk in one go, rather than one window at a time
+        CandleArchive archive = getCandleArchive();
+        if (archive != null)
+        {
+            long now = Instant.now().getEpochSecond();
+            archive.backfill(conn, now - (TIME_STEP * STEPS), now - maxOffset, BACKFILL_THREADS);
+        }
+
         for (long offset = maxOffset; offset <= 0; offset += TIME_STEP )
         {
             percentChange = calculatePercentChange(TIME_STEP, STEPS, offset);
@@ -872,13 +1698,13 @@ public class AetherTrader
     //#region Trading Utilities
 
     /**
-     * Gets the current price of BTC in EUR.
+     * Gets the current price of the pair's base currency in its quote currency.
      * 
      * @return the price
      */
     public double getBTCPrice()
     {
-        JSONObject data = new JSONObject(conn.sendPublicRequest("/api/v2/ticker/btceur"));
+        JSONObject data = conn.sendPublicRequest(pair.endpoint("/api/v2/ticker/"), BitstampAPIConnection.JSON);
         return (data.getDouble("last"));      
     }
 
@@ -897,7 +1723,7 @@ public class AetherTrader
             "limit=" + limit,
             "start=" + startTime
         };
-        JSONObject ohlcData = new JSONObject(conn.sendPublicRequest("/api/v2/ohlc/btceur/", params));
+        JSONObject ohlcData = conn.sendPublicRequest(pair.endpoint("/api/v2/ohlc/") + "/", params, BitstampAPIConnection.JSON);
 
         JSONObject resData = new JSONObject();
         if (!ohlcData.has("code"))
@@ -915,36 +1741,58 @@ public class AetherTrader
     }
 
     /**
-     * Get details of an order.
+     * Gets the on-disk candle archive for {@code TIME_STEP} candles, opening it on first use.
+     * 
+     * @return The archive, or null if it could not be opened
+     */
+    private CandleArchive getCandleArchive()
+    {
+        if (candleArchive == null && candleArchiveEnabled)
+        {
+            try
+            {
+                candleArchive = new CandleArchive(Paths.get(CANDLE_ARCHIVE_PATH), pair, TIME_STEP);
+            }
+            catch (IOException e)
+            {
+                System.out.println("Unable to open candle archive - OHLC data will be fetched from the exchange. " + e.getMessage());
+            }
+        }
+        return candleArchive;
+    }
+
+    /**
+     * Get details of an open order. Orders are looked up in memory, as tracked from the order feed, and the exchange
+     * is only asked for its open orders if the order is unknown or a reconciliation is due.
      * 
      * @param id The ID of the order
-     * @return JSONObject containing order details. Key "status" is "success" if order retrieved successfully, else it
-     * is "failure".
+     * @return JSONObject containing order details. Key "status" is "success" if the order is open, else it is
+     * "failure".
      */
     private JSONObject getOrder(long id)
     {
-        JSONObject orderData = getOpenOrders();
-        if (orderData.getString("status").equals("success"))
+        startOrderFeed();
+        exchangeOrders.setStreamConnected(orderFeed != null && orderFeed.isConnected());
+        long now = System.currentTimeMillis();
+        if (exchangeOrders.get(id) == null || exchangeOrders.isReconcileDue(now))
         {
-            JSONArray orders = orderData.getJSONArray("orders");
-            for (Object o : orders)
+            JSONObject orderData = getOpenOrders();
+            if (!orderData.getString("status").equals("success"))
             {
-                JSONObject order = (JSONObject)o;
-                if (((JSONObject)order).getLong("id") == id)
-                {
-                    return order;
-                }
+                return orderData;
             }
-            JSONObject err = new JSONObject();
-            err.put("status", "failure");
-            err.put("error", "No order with id " + id + ".");
-            return err;
+            exchangeOrders.reconcile(orderData.getJSONArray("orders"), now);
         }
-        else
+
+        OrderManager.Order order = exchangeOrders.get(id);
+        if (order != null && order.getState() == OrderManager.State.OPEN)
         {
-            return orderData;
+            return order.toJSON();
         }
-        
+        JSONObject err = new JSONObject();
+        err.put("status", "failure");
+        err.put("error", order == null ? "No order with id " + id + "." : "Order " + id + " is " + order.getState().name().toLowerCase() + ".");
+        return err;
     }
 
     /**
@@ -960,9 +1808,39 @@ public class AetherTrader
      */
     private float calculatePercentChange(int timeStep, int steps, long offset)
     {
-        JSONObject data = getOHLCData(timeStep, steps, Instant.now().getEpochSecond() - (timeStep * steps) - offset); //one minute interval, for one hour back, starting on hour ago
+        long startTime = Instant.now().getEpochSecond() - (timeStep * steps) - offset;
+
+        // Candles built from the live trade feed cover the most recent window without any request
+        if (offset == 0 && candleAggregator != null)
+        {
+            // Close the candles of periods that have ended, even if no trade has come since
+            candleAggregator.advanceTo(System.currentTimeMillis() - CANDLE_CLOSE_DELAY_MS);
+            double percentChange = candleAggregator.percentChange(timeStep, steps);
+            if (!Double.isNaN(percentChange))
+            {
+                candlesFromAggregator.increment();
+                return (float)percentChange;
+            }
+        }
+
+        // Prefer the local archive, falling back to the exchange if the window is not fully on disk
+        CandleArchive archive = getCandleArchive();
+        if (archive != null && archive.getStep() == timeStep)
+        {
+            CandleArchive.Range window = archive.range(startTime, startTime + (timeStep * steps));
+            if (window.size() == steps && window.isContinuous())
+            {
+                double firstOpen = window.open(0);
+                double lastClose = window.close(steps - 1);
+                candlesFromArchive.increment();
+                return (float)(((lastClose - firstOpen) / firstOpen) * 100);
+            }
+        }
+
+        JSONObject data = getOHLCData(timeStep, steps, startTime); //one minute interval, for one hour back, starting on hour ago
         if (data.getString("status").equals("success"))
         {
+            candlesFromExchange.increment();
             JSONArray vals = data.getJSONArray("data");
             // float diff = 0;
             // JSONObject v;
@@ -998,7 +1876,7 @@ public class AetherTrader
      * @return The observed {@code MarketState}
      * @see MarketState
      */
-    private MarketState getMarketState(float percent)
+    static MarketState getMarketState(float percent)
     {
         if (percent < 0.20 && percent > -0.20) //too small to consider
         {
@@ -1039,55 +1917,6 @@ public class AetherTrader
         }
     }
 
-    /**
-     * Gets the current trading state using the balances of BTC and EUR
-     * @return The {@code TradingState} of this account
-     * @see TradingState
-     */
-    private TradingState getTradingState()
-    {
-        JSONObject balance = wallet.getBalance();
-        BigDecimal eurAvail = balance.getBigDecimal("eur_available");
-        BigDecimal eurBal = balance.getBigDecimal("eur_balance");
-        BigDecimal btcAvail = balance.getBigDecimal("btc_available");
-        BigDecimal btcBal = balance.getBigDecimal("btc_balance");
-        BigDecimal value = balance.getBigDecimal("value");
-        BigDecimal btcBalValue = btcBal.multiply(getBTCData().getBigDecimal("last"));
-
-        double percentInBTC = btcBalValue.divide(value, RoundingMode.HALF_DOWN).doubleValue();
-        double percentInEUR = eurBal.divide(value, RoundingMode.HALF_DOWN).doubleValue();
-
-        //If more than value is split in a ratio more even than 95%/5%
-        if (Math.abs(percentInBTC - percentInEUR) <= 0.9)
-        {
-            return TradingState.UNKNOWN;
-        }
-
-        //Assuming "correct" case (all funds fully IN or OUT)
-        if (btcBal.compareTo(eurBal) == 1)  // More BTC held than EUR: HOLD_IN or LONG
-        {
-            if (btcBal.compareTo(btcAvail) == 1)    // More BTC in balance than available (open sell order present): LONG
-            {
-                return TradingState.LONG;
-            }
-            else                                    // More (equal) BTC avaiable as in balance (no open orders): HOLD_IN
-            {
-                return TradingState.HOLD_IN;
-            }
-        }
-        else                                // More EUR held than BTC
-        {
-            if (eurBal.compareTo(eurAvail) == 1)    // More EUR in balance than available (open buy order present): SHORT
-            {
-                return TradingState.SHORT;
-            }
-            else
-            {
-                return TradingState.HOLD_OUT;       // More (equal) EUR available as in balacne (no open orders): HOLD_OUT
-            }
-        }
-    }
-
     //#endregion
 
     //#region Interface Utilities
@@ -1098,12 +1927,13 @@ public class AetherTrader
     public void showMenu()
     {
         System.out.println("----- MENU -----");
-        System.out.println("1. Get BTC Info");
+        System.out.println("1. Get " + pair.getBase().toUpperCase() + " Info");
         System.out.println("2. Get balance");
         System.out.println("3. Get open orders");
         System.out.println("4. Cancel order");
         System.out.println("5. Place sell limit order");
         System.out.println("6. Place buy limit order");
+        System.out.println("7. Place limit order ladder");
         System.out.println("9. Start automatic trading programme");
         System.out.println("0. Quit");
     }
@@ -1199,11 +2029,94 @@ public class AetherTrader
         return s;
     }
 
-    private boolean getIsAutoTrading()
+    boolean getIsAutoTrading()
     {
         return isAutotrading;
     }
 
+    /**
+     * Enables or disables the on-disk candle archive. With it disabled, all OHLC data comes from the exchange (or the
+     * live feed), which keeps a replayed session independent of what happens to be on disk.
+     * 
+     * @param enabled True to use the archive
+     */
+    void setCandleArchiveEnabled(boolean enabled)
+    {
+        candleArchiveEnabled = enabled;
+    }
+
+    /**
+     * Sets up the exchange transport from system properties. {@code -Daether.exchange.url=<url>} sends requests
+     * somewhere other than Bitstamp, such as a {@link MockBitstampServer}. {@code -Daether.record=<file>} records every
+     * request and response of the session to a log; {@code -Daether.replay=<file>} serves the session back from a log
+     * instead of the exchange, at recorded pace unless {@code -Daether.replay.pace=fast} is given.
+     */
+    static void configureTransport()
+    {
+        String record = System.getProperty("aether.record");
+        String replay = System.getProperty("aether.replay");
+        String exchangeUrl = System.getProperty("aether.exchange.url");
+        if (exchangeUrl != null)
+        {
+            BitstampAPIConnection.setDefaultTransport(new HttpClientTransport(exchangeUrl));
+            System.out.println("Using exchange at " + exchangeUrl + ".");
+        }
+        try
+        {
+            if (replay != null)
+            {
+                ReplayTransport.Pace pace = "fast".equalsIgnoreCase(System.getProperty("aether.replay.pace")) ? ReplayTransport.Pace.FAST : ReplayTransport.Pace.RECORDED;
+                String secret = Files.exists(Paths.get("keySecret")) ? Files.readString(Paths.get("keySecret")) : null;
+                BitstampAPIConnection.setDefaultTransport(new ReplayTransport(Paths.get(replay), pace, secret));
+                System.out.println("Replaying session from " + replay + ".");
+            }
+            else if (record != null)
+            {
+                RecordingTransport recorder = new RecordingTransport(BitstampAPIConnection.getDefaultTransport(), Paths.get(record));
+                BitstampAPIConnection.setDefaultTransport(recorder);
+                Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                {
+                    try
+                    {
+                        recorder.close();
+                    }
+                    catch (IOException e)
+                    {
+                        System.out.println("Error closing session log. " + e.getMessage());
+                    }
+                }));
+                System.out.println("Recording session to " + record + ".");
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println("Unable to set up session " + (replay != null ? "replay" : "recording") + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registers the metrics MBean ({@code aethertrader:type=Metrics}) and, if {@code -Daether.metrics.port=<port>} is
+     * given, serves metrics in Prometheus text format on that port of the loopback interface.
+     */
+    static void configureMetrics()
+    {
+        Metrics.registerMBean();
+        String port = System.getProperty("aether.metrics.port");
+        if (port != null && metricsServer == null)
+        {
+            try
+            {
+                metricsServer = new MetricsServer();
+                System.out.println("Serving metrics at " + metricsServer.start(Integer.parseInt(port)) + ".");
+            }
+            catch (IOException | NumberFormatException e)
+            {
+                metricsServer = null;
+                System.out.println("Unable to serve metrics on port " + port + ". " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Prompts the user to confirm if they want to begin running the automatic trading programme.
      * 
@@ -1230,6 +2143,21 @@ public class AetherTrader
 
     public static void main(String[] args)
     {
+        if (args.length > 0 && args[0].equals("--script"))
+        {
+            // Orders from a script, without prompting
+            try
+            {
+                OrderScript.main(Arrays.copyOfRange(args, 1, args.length));
+            }
+            catch (IOException e)
+            {
+                System.out.println("Unable to run order script. " + e.getMessage());
+            }
+            return;
+        }
+        configureTransport();
+        configureMetrics();
         AetherTrader trader = new AetherTrader();
 
         menu:
@@ -1258,6 +2186,9 @@ public class AetherTrader
                 case 6:
                     System.out.println(trader.userBuyLimitOrder());
                     break;
+                case 7:
+                    System.out.println(trader.userPlaceLadder());
+                    break;
                 case 9:
                     System.out.println(trader.userStartAuto());
                     break menu;
@@ -6,14 +6,12 @@ import org.json.JSONObject;
 import java.awt.*;
 import java.awt.event.*;
 import java.math.RoundingMode;
-import java.util.Timer;
-import java.util.TimerTask;
 
-public class AetherTraderGUI extends TimerTask implements ActionListener
+public class AetherTraderGUI implements ActionListener
 {
     private JFrame frame = new JFrame("Aether Trader");
     private JPanel panMain = new JPanel(new BorderLayout());
-    private JPanel panData = new JPanel(new GridLayout(4, 2));
+    private JPanel panData = new JPanel(new GridLayout(8, 2));
     private JPanel panDash = new JPanel(new FlowLayout());
     private JPanel panInstantOrders = new JPanel(new FlowLayout());
     private JPanel panTradingBot = new JPanel(new FlowLayout());
@@ -27,9 +25,14 @@ public class AetherTraderGUI extends TimerTask implements ActionListener
     private JLabel lblHigh = new JLabel();
     private JLabel lblLow = new JLabel();
     private JLabel lblVolume = new JLabel();
+    private JLabel lblPosition = new JLabel("-");
+    private JLabel lblRealized = new JLabel("-");
+    private JLabel lblUnrealized = new JLabel("-");
+    private JLabel lblDrawdown = new JLabel("-");
     private JLabel lblHello = new JLabel("Hello!");
     private AetherTrader trader;
-    private Timer ticker;
+    private TickScheduler ticker;
+    private final long REFRESH_INTERVAL_MS = 10000;
 
     public AetherTraderGUI()
     {
@@ -53,6 +56,14 @@ public class AetherTraderGUI extends TimerTask implements ActionListener
         panData.add(lblHigh);
         panData.add(new JLabel("Volume: "));
         panData.add(lblVolume);
+        panData.add(new JLabel("Position: "));
+        panData.add(lblPosition);
+        panData.add(new JLabel("Realized: "));
+        panData.add(lblRealized);
+        panData.add(new JLabel("Unrealized: "));
+        panData.add(lblUnrealized);
+        panData.add(new JLabel("Max DD: "));
+        panData.add(lblDrawdown);
 
         tabCtl.addTab("Dashboard", panDash);
         tabCtl.addTab("Limit Order", panLimit);
@@ -75,8 +86,9 @@ public class AetherTraderGUI extends TimerTask implements ActionListener
         btnStopAutoTrading.addActionListener(this);
         btnStopAutoTrading.setEnabled(false);
 
-        ticker = new Timer("GUI Ticker");
-        ticker.scheduleAtFixedRate(this, 0, 10000);
+        // Refresh at a rate that follows the trading bot's cadence while it runs
+        ticker = new TickScheduler("GUI Ticker");
+        ticker.schedule(this::run, now -> now + trader.getRefreshInterval(REFRESH_INTERVAL_MS));
 
         frame.setContentPane(panMain);
         frame.setVisible(true);
@@ -134,15 +146,30 @@ public class AetherTraderGUI extends TimerTask implements ActionListener
 
     public void run()
     {
+        CurrencyPair pair = trader.getPair();
+        String base = pair.getBase().toUpperCase();
+        String signed = "%+." + pair.getQuoteDecimals() + "f " + pair.getQuote().toUpperCase();
         JSONObject data = trader.getBTCData();
-        lblLast.setText("€" + data.getString("last"));
-        lblHigh.setText("€" + data.getString("high"));
-        lblLow.setText("€" + data.getString("low"));
-        lblVolume.setText(data.getBigDecimal("volume").setScale(2, RoundingMode.FLOOR).toString() + "BTC");
+        lblLast.setText(pair.formatQuote(data.getDouble("last")));
+        lblHigh.setText(pair.formatQuote(data.getDouble("high")));
+        lblLow.setText(pair.formatQuote(data.getDouble("low")));
+        lblVolume.setText(data.getBigDecimal("volume").setScale(2, RoundingMode.FLOOR).toString() + base);
+
+        PnlEngine pnl = trader.getPnl();
+        if (pnl != null)
+        {
+            PnlEngine.Snapshot snap = pnl.snapshot();
+            lblPosition.setText(String.format("%.8f%s", snap.position, base));
+            lblRealized.setText(String.format(signed, snap.realized - snap.fees));
+            lblUnrealized.setText(String.format(signed, snap.unrealized));
+            lblDrawdown.setText(pair.formatQuote(snap.maxDrawdown));
+        }
     }
 
     public static void main(String[] args)
     {
+        AetherTrader.configureTransport();
+        AetherTrader.configureMetrics();
         AetherTraderGUI gui = new AetherTraderGUI();
     }
 }
@@ -0,0 +1,74 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for one attempt at an API request, from sending it to receiving (and for private
+ * requests, verifying) the response. Disabled unless turned on by a recording, e.g. with {@code aethertrader.jfc}.
+ */
+@Name("aethertrader.ApiCall")
+@Label("API Call")
+@Category({"AetherTrader", "Exchange"})
+@Description("An attempt at a request to the exchange")
+@Enabled(false)
+@StackTrace(false)
+public class ApiCallEvent extends jdk.jfr.Event
+{
+    @Label("Method")
+    String method;
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Attempt")
+    @Description("1 for the first attempt, 2 for the first retry and so on")
+    int attempt;
+
+    @Label("Status")
+    @Description("HTTP status code, or -1 if no response was received")
+    int status;
+
+    @Label("Outcome")
+    @Description("ok, bad_response, signature, connect or other")
+    String outcome;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestSize;
+
+    @Label("Response Size")
+    @DataAmount
+    long responseSize;
+
+    /**
+     * Ends the event and commits it, if enabled and over the recording's threshold. The fields are only filled in if
+     * the event is to be committed.
+     *
+     * @param method HTTP method
+     * @param endpoint Endpoint path, without any query string
+     * @param attempt Attempt number, starting from 1
+     * @param status HTTP status code, or -1 if no response was received
+     * @param requestBody Request body, or null if there was none
+     * @param response Response, or null if there was none
+     * @param outcome Short description of how the attempt went
+     */
+    void finish(String method, String endpoint, int attempt, int status, String requestBody, ExchangeResponse response, String outcome)
+    {
+        end();
+        if (shouldCommit())
+        {
+            this.method = method;
+            this.endpoint = endpoint;
+            this.attempt = attempt;
+            this.status = status;
+            this.requestSize = requestBody == null ? 0 : requestBody.length();
+            this.responseSize = response == null ? 0 : response.getBodyLength();
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for a triangular arbitrage opportunity opening in an {@link ArbitrageScanner}. Disabled
+ * unless turned on by a recording, e.g. with {@code aethertrader.jfc}.
+ */
+@Name("aethertrader.Arbitrage")
+@Label("Arbitrage Opportunity")
+@Category({"AetherTrader", "Trading"})
+@Description("A triangular cycle whose return after fees crossed the scanner's minimum edge")
+@Enabled(false)
+@StackTrace(false)
+public class ArbitrageEvent extends jdk.jfr.Event
+{
+    @Label("Cycle")
+    @Description("Currencies traded through, e.g. EUR > BTC > USD > EUR")
+    String cycle;
+
+    @Label("Edge")
+    @Description("Return of one pass round the cycle after fees, in percent")
+    double edgePercent;
+
+    @Label("Size")
+    @Description("Most of the start currency the top of each book can take")
+    double size;
+
+    /**
+     * Commits an event, if enabled. Nothing is allocated otherwise.
+     *
+     * @param cycle The cycle
+     * @param edge Return of one pass round the cycle after fees, as a fraction
+     * @param size Most of the start currency the top of each book can take
+     */
+    static void emit(ArbitrageScanner.Cycle cycle, double edge, double size)
+    {
+        ArbitrageEvent event = new ArbitrageEvent();
+        if (event.shouldCommit())
+        {
+            event.cycle = cycle.toString();
+            event.edgePercent = edge * 100;
+            event.size = size;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,447 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * Looks for triangular arbitrage between a set of currency pairs, such as BTC/EUR, BTC/USD and EUR/USD, from the top
+ * of each pair's order book.
+ *
+ * Every triangle of pairs that links three currencies is found up front, and walked in both directions. When a book
+ * changes, only the cycles through that pair are recomputed: each leg sells the base currency at the bid or buys it
+ * at the ask, less the pair's fee, and the amount at the top of each book limits how much can go round. A cycle whose
+ * return after fees is above the minimum edge is passed to listeners on every update while it lasts. Books older than
+ * the maximum age, relative to the update being processed, are not traded against.
+ *
+ * Books are held in primitive arrays indexed by pair and cycles are precomputed, so an update costs a few dozen
+ * arithmetic operations per affected cycle and allocates nothing. Opportunities are counted in
+ * {@code aether_arb_opportunities_total} and their lifetimes recorded in {@code aether_arb_opportunity_seconds}.
+ *
+ * Usage: {@code java ArbitrageScanner [pair ...]}, by default BTC/EUR, BTC/USD and EUR/USD.
+ */
+public class ArbitrageScanner
+{
+    /**
+     * Receives profitable cycles.
+     */
+    public interface OpportunityListener
+    {
+        /**
+         * @param cycle The cycle
+         * @param edge Return of one pass round the cycle after fees, as a fraction, e.g. 0.002 for 0.2%
+         * @param size Most of the cycle's start currency the top of each book can take
+         * @param openedAt Time of the update that first found the opportunity, Unix milliseconds; equal to
+         * {@code timestamp} when it is new
+         * @param timestamp Time of the update, Unix milliseconds
+         */
+        void onOpportunity(Cycle cycle, double edge, double size, long openedAt, long timestamp);
+    }
+
+    /**
+     * Three trades that start and end in the same currency, e.g. EUR to BTC to USD to EUR.
+     */
+    public static final class Cycle
+    {
+        private final String start;
+        private final CurrencyPair[] pairs;
+        // Per leg: index of the pair in the scanner, and whether the base currency is sold (else bought)
+        private final int[] legPair;
+        private final boolean[] sells;
+        private final String description;
+
+        private Cycle(String start, CurrencyPair[] pairs, int[] legPair, boolean[] sells)
+        {
+            this.start = start;
+            this.pairs = pairs;
+            this.legPair = legPair;
+            this.sells = sells;
+            StringBuilder sb = new StringBuilder(start.toUpperCase(Locale.ROOT));
+            for (int l = 0; l < pairs.length; l++)
+            {
+                sb.append(" > ").append((sells[l] ? pairs[l].getQuote() : pairs[l].getBase()).toUpperCase(Locale.ROOT));
+            }
+            this.description = sb.toString();
+        }
+
+        /**
+         * @return The currency the cycle starts and ends in
+         */
+        public String getStart()
+        {
+            return start;
+        }
+
+        /**
+         * @param leg Leg of the cycle, 0 to 2
+         * @return The pair traded on the leg
+         */
+        public CurrencyPair getPair(int leg)
+        {
+            return pairs[leg];
+        }
+
+        /**
+         * @param leg Leg of the cycle, 0 to 2
+         * @return True if the leg sells the pair's base currency, false if it buys it
+         */
+        public boolean isSell(int leg)
+        {
+            return sells[leg];
+        }
+
+        /**
+         * @return The currencies traded through, e.g. "EUR > BTC > USD > EUR"
+         */
+        public String toString()
+        {
+            return description;
+        }
+    }
+
+    private static final LongAdder updates = Metrics.counter("aether_arb_updates_total");
+    private static final LongAdder opportunities = Metrics.counter("aether_arb_opportunities_total");
+    private static final LatencyHistogram lifetimes = Metrics.histogram("aether_arb_opportunity_seconds");
+
+    private final CurrencyPair[] pairs;
+    // Top of each pair's book, and the fee charged on it as a fraction of each trade's value
+    private final double[] bid;
+    private final double[] bidAmount;
+    private final double[] ask;
+    private final double[] askAmount;
+    private final long[] updated;
+    private final double[] fee;
+
+    private final Cycle[] cycles;
+    private final int[][] cyclesByPair;
+    // Time each cycle's current opportunity opened, or -1 if it has none
+    private final long[] openedAt;
+
+    private double minEdge = Double.parseDouble(System.getProperty("aether.arb.minEdgePercent", "0")) / 100;
+    private long maxBookAgeMs = Long.getLong("aether.arb.maxBookAgeMs", 5000);
+    private final CopyOnWriteArrayList<OpportunityListener> listeners = new CopyOnWriteArrayList<OpportunityListener>();
+
+    /**
+     * Creates a scanner over the given pairs, finding every triangular cycle between them. Each pair's fee starts at
+     * {@code -Daether.arb.feePercent}, 0.5% unless given.
+     *
+     * @param pairs The pairs to scan
+     */
+    public ArbitrageScanner(Collection<CurrencyPair> pairs)
+    {
+        this.pairs = pairs.stream().distinct().toArray(CurrencyPair[]::new);
+        int n = this.pairs.length;
+        bid = new double[n];
+        bidAmount = new double[n];
+        ask = new double[n];
+        askAmount = new double[n];
+        updated = new long[n];
+        fee = new double[n];
+        Arrays.fill(updated, Long.MIN_VALUE / 2);
+        Arrays.fill(fee, Double.parseDouble(System.getProperty("aether.arb.feePercent", "0.5")) / 100);
+
+        List<Cycle> found = new ArrayList<Cycle>();
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = i + 1; j < n; j++)
+            {
+                for (int k = j + 1; k < n; k++)
+                {
+                    if (isTriangle(i, j, k))
+                    {
+                        // Start in the first pair's quote currency and go round each way
+                        String start = this.pairs[i].getQuote();
+                        int viaBase = other(j, k, this.pairs[i].getBase());
+                        int viaQuote = other(j, k, start);
+                        found.add(cycle(start, i, viaBase, viaBase == j ? k : j));
+                        found.add(cycle(start, viaQuote, viaQuote == j ? k : j, i));
+                    }
+                }
+            }
+        }
+        cycles = found.toArray(new Cycle[0]);
+        openedAt = new long[cycles.length];
+        Arrays.fill(openedAt, -1);
+
+        cyclesByPair = new int[n][];
+        for (int p = 0; p < n; p++)
+        {
+            int count = 0;
+            int[] through = new int[cycles.length];
+            for (int c = 0; c < cycles.length; c++)
+            {
+                for (int leg : cycles[c].legPair)
+                {
+                    if (leg == p)
+                    {
+                        through[count++] = c;
+                        break;
+                    }
+                }
+            }
+            cyclesByPair[p] = Arrays.copyOf(through, count);
+        }
+    }
+
+    /**
+     * @return True if the three pairs link exactly three currencies, each traded in two of them
+     */
+    private boolean isTriangle(int i, int j, int k)
+    {
+        List<String> currencies = new ArrayList<String>();
+        for (int p : new int[] {i, j, k})
+        {
+            currencies.add(pairs[p].getBase());
+            currencies.add(pairs[p].getQuote());
+        }
+        for (String c : currencies)
+        {
+            if (Collections.frequency(currencies, c) != 2)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whichever of {@code j} and {@code k} trades the currency
+     */
+    private int other(int j, int k, String currency)
+    {
+        return pairs[j].getBase().equals(currency) || pairs[j].getQuote().equals(currency) ? j : k;
+    }
+
+    /**
+     * Builds a cycle through three pairs in order, working out the direction of each trade.
+     */
+    private Cycle cycle(String start, int... legPair)
+    {
+        boolean[] sells = new boolean[legPair.length];
+        CurrencyPair[] legs = new CurrencyPair[legPair.length];
+        String currency = start;
+        for (int l = 0; l < legPair.length; l++)
+        {
+            CurrencyPair pair = pairs[legPair[l]];
+            legs[l] = pair;
+            sells[l] = pair.getBase().equals(currency);
+            currency = sells[l] ? pair.getQuote() : pair.getBase();
+        }
+        return new Cycle(start, legs, legPair, sells);
+    }
+
+    public void addOpportunityListener(OpportunityListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeOpportunityListener(OpportunityListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Every cycle the scanner evaluates
+     */
+    public List<Cycle> getCycles()
+    {
+        return Collections.unmodifiableList(Arrays.asList(cycles));
+    }
+
+    /**
+     * @param pair One of the scanner's pairs
+     * @return A listener feeding the pair's book into the scanner, e.g. for a {@link BitstampBookFeed}
+     * @throws IllegalArgumentException if the scanner does not scan the pair
+     */
+    public BitstampBookFeed.BookListener bookListener(CurrencyPair pair)
+    {
+        int index = indexOf(pair);
+        return (timestamp, bid, bidAmount, ask, askAmount) -> onBook(index, timestamp, bid, bidAmount, ask, askAmount);
+    }
+
+    private int indexOf(CurrencyPair pair)
+    {
+        for (int p = 0; p < pairs.length; p++)
+        {
+            if (pairs[p].equals(pair))
+            {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("Not scanning " + pair);
+    }
+
+    /**
+     * Records a new top of book for a pair and re-evaluates every cycle through it.
+     *
+     * @param pair Index of the pair, in the order the scanner was given them
+     * @param timestamp Time of the book, Unix milliseconds
+     * @param bid Best bid price
+     * @param bidAmount Amount bid at the best bid
+     * @param ask Best ask price
+     * @param askAmount Amount asked at the best ask
+     */
+    public synchronized void onBook(int pair, long timestamp, double bid, double bidAmount, double ask, double askAmount)
+    {
+        updates.increment();
+        this.bid[pair] = bid;
+        this.bidAmount[pair] = bidAmount;
+        this.ask[pair] = ask;
+        this.askAmount[pair] = askAmount;
+        this.updated[pair] = timestamp;
+        for (int c : cyclesByPair[pair])
+        {
+            evaluate(c, timestamp);
+        }
+    }
+
+    private void evaluate(int c, long now)
+    {
+        Cycle cycle = cycles[c];
+        double rate = 1;
+        double size = Double.POSITIVE_INFINITY;
+        for (int l = 0; l < 3; l++)
+        {
+            int p = cycle.legPair[l];
+            if (now - updated[p] > maxBookAgeMs || !(bid[p] > 0) || !(ask[p] > 0))
+            {
+                close(c, now);
+                return;
+            }
+            // Rate is what one unit of the leg's input currency becomes; capacity is the most input the top of the
+            // book takes, converted back to the start currency through the legs before it
+            double legRate;
+            double capacity;
+            if (cycle.sells[l])
+            {
+                legRate = bid[p] * (1 - fee[p]);
+                capacity = bidAmount[p];
+            }
+            else
+            {
+                legRate = 1 / (ask[p] * (1 + fee[p]));
+                capacity = askAmount[p] * ask[p] * (1 + fee[p]);
+            }
+            size = Math.min(size, capacity / rate);
+            rate *= legRate;
+        }
+        double edge = rate - 1;
+        if (edge <= minEdge)
+        {
+            close(c, now);
+            return;
+        }
+        if (openedAt[c] < 0)
+        {
+            openedAt[c] = now;
+            opportunities.increment();
+            ArbitrageEvent.emit(cycle, edge, size);
+        }
+        for (OpportunityListener listener : listeners)
+        {
+            listener.onOpportunity(cycle, edge, size, openedAt[c], now);
+        }
+    }
+
+    private void close(int c, long now)
+    {
+        if (openedAt[c] >= 0)
+        {
+            lifetimes.record((now - openedAt[c]) * 1000000);
+            openedAt[c] = -1;
+        }
+    }
+
+    /**
+     * @param pair One of the scanner's pairs
+     * @param feePercent Fee charged on the pair's trades, as a percentage of their value
+     */
+    public synchronized void setFee(CurrencyPair pair, double feePercent)
+    {
+        fee[indexOf(pair)] = feePercent / 100;
+    }
+
+    /**
+     * Sets each pair's fee from an account balance, which gives it under the pair's fee key, e.g. "btceur_fee". Pairs
+     * missing from the balance keep their fee.
+     *
+     * @param balance The balance, as returned by {@code /api/v2/balance/}
+     */
+    public synchronized void setFees(JSONObject balance)
+    {
+        for (int p = 0; p < pairs.length; p++)
+        {
+            if (balance.has(pairs[p].feeKey()))
+            {
+                fee[p] = balance.getDouble(pairs[p].feeKey()) / 100;
+            }
+        }
+    }
+
+    /**
+     * @param minEdgePercent Return after fees a cycle must beat to be an opportunity, in percent
+     */
+    public synchronized void setMinEdgePercent(double minEdgePercent)
+    {
+        this.minEdge = minEdgePercent / 100;
+    }
+
+    /**
+     * @param maxBookAgeMs Age after which a pair's book is too old to trade against
+     */
+    public synchronized void setMaxBookAge(long maxBookAgeMs)
+    {
+        this.maxBookAgeMs = maxBookAgeMs;
+    }
+
+    public static void main(String[] args)
+    {
+        List<CurrencyPair> pairs = new ArrayList<CurrencyPair>();
+        for (String name : args.length > 0 ? args : new String[] {"btceur", "btcusd", "eurusd"})
+        {
+            pairs.add(CurrencyPair.parse(name));
+        }
+        AetherTrader.configureMetrics();
+        ArbitrageScanner scanner = new ArbitrageScanner(pairs);
+        if (scanner.cycles.length == 0)
+        {
+            System.out.println("No triangular cycles between " + pairs + ".");
+            return;
+        }
+
+        BitstampAPIConnection conn = new BitstampAPIConnection("key", "keySecret");
+        if (conn.hasKeys())
+        {
+            scanner.setFees(new JSONObject(conn.sendPrivateRequest("/api/v2/balance/")));
+        }
+        scanner.addOpportunityListener((cycle, edge, size, openedAt, timestamp) ->
+        {
+            if (openedAt == timestamp)
+            {
+                System.out.println(String.format("[Arbitrage]: %s %+.3f%% on up to %.8f %s", cycle, edge * 100, size, cycle.getStart().toUpperCase(Locale.ROOT)));
+            }
+        });
+
+        List<BitstampBookFeed> feeds = new ArrayList<BitstampBookFeed>();
+        for (CurrencyPair pair : scanner.pairs)
+        {
+            BitstampBookFeed feed = new BitstampBookFeed(pair);
+            feed.addBookListener(scanner.bookListener(pair));
+            feed.start();
+            feeds.add(feed);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            for (BitstampBookFeed feed : feeds)
+            {
+                feed.stop();
+            }
+        }));
+        System.out.println(String.format("Scanning %d cycles between %s.", scanner.cycles.length, pairs));
+    }
+}
@@ -0,0 +1,328 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * Keeps an account's balances of the two currencies of a pair in memory, so reading them does not cost a signed
+ * request. Balances are moved by our own orders as they are placed, filled and cancelled (see {@link OrderListener}):
+ * placing an order reserves what it could spend, a fill moves funds between currencies and a cancel releases what is
+ * left. The account is valued at the latest traded price, fed in from the live trade feed.
+ *
+ * Fees, deposits, withdrawals and orders placed elsewhere are not seen as events, so the balances are reconciled with
+ * the exchange every {@value #RECONCILE_INTERVAL_MS}ms, whenever the order stream is down, and as soon as something
+ * does not add up, such as a fill for an order never seen placed or a balance going negative.
+ */
+public class BalanceBook implements OrderListener, BitstampLiveFeed.TradeListener, RiskEngine.Funds
+{
+    public static final long RECONCILE_INTERVAL_MS = 300000;
+    /** Age after which the latest price is too old to value the account with. */
+    public static final long PRICE_MAX_AGE_MS = 60000;
+    private static final BigDecimal TOLERANCE = new BigDecimal("0.00000001");
+
+    private static final LongAdder reconciliations = Metrics.counter("aether_balance_reconciliations_total");
+    private static final LongAdder discrepancies = Metrics.counter("aether_balance_discrepancies_total");
+
+    private final CurrencyPair pair;
+    private BigDecimal baseBalance = BigDecimal.ZERO;
+    private BigDecimal baseAvailable = BigDecimal.ZERO;
+    private BigDecimal quoteBalance = BigDecimal.ZERO;
+    private BigDecimal quoteAvailable = BigDecimal.ZERO;
+    /** Trading fee as a percentage of trade value. */
+    private BigDecimal fee = BigDecimal.ZERO;
+    // Open orders' type, amount left and limit price, to work out what each fill or cancel releases
+    private final HashMap<Long, double[]> reservations = new HashMap<Long, double[]>();
+    private final PendingOrderEvents early = new PendingOrderEvents();
+
+    private long lastReconcile = Long.MIN_VALUE / 2;
+    private boolean streamConnected = false;
+    private boolean suspect = true;
+    private volatile double price = Double.NaN;
+    private volatile long priceTime = Long.MIN_VALUE / 2;
+
+    public BalanceBook()
+    {
+        this(CurrencyPair.BTCEUR);
+    }
+
+    /**
+     * @param pair Currency pair whose balances to keep
+     */
+    public BalanceBook(CurrencyPair pair)
+    {
+        this.pair = pair;
+    }
+
+    public synchronized void onOrderPlaced(long id, int type, double amount, double price)
+    {
+        if (reservations.containsKey(id) || early.isClosed(id))
+        {
+            // Already reported by the order stream or the response, whichever came first
+            return;
+        }
+        if (early.isSettled(id))
+        {
+            // Closed before it was seen placed, and the balances have been reconciled since
+            early.release(id, this);
+            early.close(id);
+            return;
+        }
+        reservations.put(id, new double[] {type, amount, price});
+        if (type == 0)
+        {
+            quoteAvailable = quoteAvailable.subtract(reserved(amount * price));
+        }
+        else
+        {
+            baseAvailable = baseAvailable.subtract(BigDecimal.valueOf(amount));
+        }
+        check();
+        early.release(id, this);
+    }
+
+    public synchronized void onOrderFilled(long id, double amount, double price)
+    {
+        double[] order = reservations.get(id);
+        if (order == null)
+        {
+            if (early.isClosed(id))
+            {
+                return;
+            }
+            // Streamed before the response that placed it, or placed elsewhere. Held in case it is placed, and
+            // reconciled in case it is not
+            early.addFill(id, amount, price);
+            flag("Fill for unknown order " + id + ".");
+            return;
+        }
+        double filled = Math.min(amount, order[1]);
+        order[1] -= filled;
+        if (order[1] <= 1e-12)
+        {
+            reservations.remove(id);
+            early.close(id);
+        }
+        BigDecimal btc = BigDecimal.valueOf(filled);
+        BigDecimal value = BigDecimal.valueOf(filled * price);
+        BigDecimal feeValue = value.multiply(fee).movePointLeft(2);
+        if (order[0] == 0)
+        {
+            // The reservation was made at the limit price; anything not spent is available again
+            BigDecimal spent = value.add(feeValue);
+            quoteBalance = quoteBalance.subtract(spent);
+            quoteAvailable = quoteAvailable.add(reserved(filled * order[2])).subtract(spent);
+            baseBalance = baseBalance.add(btc);
+            baseAvailable = baseAvailable.add(btc);
+        }
+        else
+        {
+            BigDecimal received = value.subtract(feeValue);
+            baseBalance = baseBalance.subtract(btc);
+            quoteBalance = quoteBalance.add(received);
+            quoteAvailable = quoteAvailable.add(received);
+        }
+        check();
+    }
+
+    public synchronized void onOrderCancelled(long id)
+    {
+        double[] order = reservations.remove(id);
+        if (order == null)
+        {
+            if (!early.isClosed(id))
+            {
+                early.addCancel(id);
+            }
+            return;
+        }
+        early.close(id);
+        if (order[0] == 0)
+        {
+            quoteAvailable = quoteAvailable.add(reserved(order[1] * order[2]));
+        }
+        else
+        {
+            baseAvailable = baseAvailable.add(BigDecimal.valueOf(order[1]));
+        }
+        check();
+    }
+
+    public void onTrade(long timestamp, double price, double amount, int type)
+    {
+        setPrice(price, timestamp);
+    }
+
+    /**
+     * Sets the price the account is valued at.
+     *
+     * @param price Price of the base currency in the quote currency
+     * @param time Time of the price, Unix milliseconds
+     */
+    public void setPrice(double price, long time)
+    {
+        this.price = price;
+        this.priceTime = time;
+    }
+
+    /**
+     * @return The latest price, or NaN if there is none
+     */
+    public double getPrice()
+    {
+        return price;
+    }
+
+    /**
+     * @param now Current time, Unix milliseconds
+     * @return True if there is no price, or it is older than {@value #PRICE_MAX_AGE_MS}ms
+     */
+    public boolean isPriceStale(long now)
+    {
+        return Double.isNaN(price) || now - priceTime > PRICE_MAX_AGE_MS;
+    }
+
+    /**
+     * Marks the order stream feeding this book as connected or not. While it is down, reconciliation is always due.
+     */
+    public synchronized void setStreamConnected(boolean connected)
+    {
+        streamConnected = connected;
+    }
+
+    /**
+     * @param now Current time, Unix milliseconds
+     * @return True if the balances should be reconciled with the exchange
+     */
+    public synchronized boolean isReconcileDue(long now)
+    {
+        return suspect || !streamConnected || now - lastReconcile >= RECONCILE_INTERVAL_MS;
+    }
+
+    /**
+     * Marks the balances as no longer to be trusted, e.g. after an order whose outcome is unknown, so that a
+     * reconciliation is due at once.
+     *
+     * @param reason Why, as logged
+     */
+    public synchronized void markSuspect(String reason)
+    {
+        flag(reason);
+    }
+
+    /**
+     * Replaces the balances with those reported by the exchange, logging any that had drifted.
+     *
+     * @param balance The exchange's balance, with keys such as "eur_available", "eur_balance", "btc_available",
+     * "btc_balance" and "btceur_fee" for the pair
+     * @param now Current time, Unix milliseconds
+     */
+    public synchronized void reconcile(JSONObject balance, long now)
+    {
+        BigDecimal baseBal = balance.getBigDecimal(pair.baseKey("balance"));
+        BigDecimal baseAvail = balance.getBigDecimal(pair.baseKey("available"));
+        BigDecimal quoteBal = balance.getBigDecimal(pair.quoteKey("balance"));
+        BigDecimal quoteAvail = balance.getBigDecimal(pair.quoteKey("available"));
+        if (lastReconcile > Long.MIN_VALUE / 2 && !suspect
+            && (drifted(baseBal, baseBalance) || drifted(baseAvail, baseAvailable) || drifted(quoteBal, quoteBalance) || drifted(quoteAvail, quoteAvailable)))
+        {
+            discrepancies.increment();
+            System.out.println(String.format("[Balance Book]: Balances drifted from the exchange (%s %s/%s, %s %s/%s held, now %s/%s, %s/%s).", pair.getBase().toUpperCase(),
+                baseAvailable.toPlainString(), baseBalance.toPlainString(), pair.getQuote().toUpperCase(), quoteAvailable.toPlainString(), quoteBalance.toPlainString(),
+                baseAvail.toPlainString(), baseBal.toPlainString(), quoteAvail.toPlainString(), quoteBal.toPlainString()));
+        }
+        baseBalance = baseBal;
+        baseAvailable = baseAvail;
+        quoteBalance = quoteBal;
+        quoteAvailable = quoteAvail;
+        fee = balance.optBigDecimal(pair.feeKey(), fee);
+        lastReconcile = now;
+        suspect = false;
+        // Held fills and cancellations are in the exchange's balances now
+        early.settle();
+        reconciliations.increment();
+    }
+
+    public synchronized double getAvailableBase()
+    {
+        return baseAvailable.doubleValue();
+    }
+
+    public synchronized double getAvailableQuote()
+    {
+        return quoteAvailable.doubleValue();
+    }
+
+    public synchronized double getBaseBalance()
+    {
+        return baseBalance.doubleValue();
+    }
+
+    /**
+     * @return The account's value in the quote currency at the latest price, or null if there is no price
+     */
+    public synchronized BigDecimal getValue()
+    {
+        if (Double.isNaN(price))
+        {
+            return null;
+        }
+        return quoteBalance.add(baseBalance.multiply(BigDecimal.valueOf(price)));
+    }
+
+    /**
+     * @return The balances in the form returned by {@link AetherTrader#getBalance()}: keys such as "eur_available",
+     * "eur_balance", "btc_available", "btc_balance" and "btceur_fee" for the pair and, if there is a price, "value" and
+     * "value_base"
+     */
+    public synchronized JSONObject toJSON()
+    {
+        JSONObject result = new JSONObject();
+        result.put(pair.quoteKey("available"), quoteAvailable);
+        result.put(pair.quoteKey("balance"), quoteBalance);
+        result.put(pair.baseKey("available"), baseAvailable);
+        result.put(pair.baseKey("balance"), baseBalance);
+        result.put(pair.feeKey(), fee);
+        if (!Double.isNaN(price))
+        {
+            BigDecimal last = BigDecimal.valueOf(price);
+            result.put("value", quoteBalance.add(baseBalance.multiply(last)));
+            result.put("value_base", baseBalance.add(quoteBalance.divide(last, MathContext.DECIMAL64)));
+        }
+        return result;
+    }
+
+    private void check()
+    {
+        if (baseAvailable.signum() < 0 || quoteAvailable.signum() < 0 || baseBalance.signum() < 0 || quoteBalance.signum() < 0)
+        {
+            flag("Balance went negative.");
+        }
+    }
+
+    private void flag(String reason)
+    {
+        if (!suspect)
+        {
+            discrepancies.increment();
+            System.out.println("[Balance Book]: " + reason + " Reconciling with the exchange.");
+        }
+        suspect = true;
+    }
+
+    private static boolean drifted(BigDecimal actual, BigDecimal held)
+    {
+        return actual.subtract(held).abs().compareTo(TOLERANCE) > 0;
+    }
+
+    /**
+     * @return The quote currency a buy of the given value holds back, rounded up to the quote currency's precision as
+     * the exchange does
+     */
+    private BigDecimal reserved(double value)
+    {
+        return BigDecimal.valueOf(value).setScale(pair.getQuoteDecimals(), RoundingMode.UP);
+    }
+}
@@ -1,30 +1,131 @@
 import java.io.IOException;
+import java.io.Reader;
 import java.net.ConnectException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.commons.codec.binary.Hex;
+import org.json.JSONObject;
+import org.json.JSONTokener;
 
 /**
- * Provides a facility to send both private and public API calls to Bitstamp. There is no persistent connection, each 
- * call a seperate connection, though the {@code HttpClient} instance persists.
+ * Provides a facility to send both private and public API calls to Bitstamp. Requests are built and signed here and
+ * handed to an {@link ExchangeTransport} to be carried, by default over HTTPS with a shared {@code HttpClient}.
+ *
+ * Every attempt first takes a permit from the connection's {@link RateLimiter}. Connections share one limiter by
+ * default, so any number of traders in the process stay within the account's request budget together, while each
+ * connection counts its own requests (see {@link #share()}).
+ *
+ * No public GET waits longer than its endpoint's {@link AdaptiveTimeout}, derived from the latencies the endpoint has
+ * shown, and one that times out is retried. Private POSTs are allowed the full {@code aether.api.timeoutMs} and are
+ * not retried after a timeout, as one given up on may still have been carried out; if it might have changed the
+ * account, {@link UnknownOutcomeListener}s are told so they can reconcile. One that places or cancels orders is not
+ * retried after a bad response either. Public GETs can also be hedged
+ * ({@link #setHedging(boolean)}): if one has not been answered by the endpoint's p95 latency a second copy is sent and
+ * the first answer is used, with hedges held to a share of requests by {@code aether.api.hedgeBudget}.
+ * Connections share a {@link CircuitBreaker} by default, which fails requests at once while the exchange is degraded.
  */
 public class BitstampAPIConnection
 {
+    /**
+     * Decodes a response body from its UTF-8 bytes. The bytes may be in a pooled buffer, so they are only valid for
+     * the duration of the call and must not be kept.
+     */
+    public interface BodyDecoder<T>
+    {
+        T decode(ByteBuffer body);
+    }
+
+    /** Decodes a body as a JSON object, reading it from the bytes rather than from a string copy of them. */
+    public static final BodyDecoder<JSONObject> JSON = body -> new JSONObject(new JSONTokener(new ByteBufferReader(body)));
+
     private String defaultApiKeyPath = "key";
     private String defaultApiKeySecretPath = "secretKey";
     private String apiKey = null;
     private String apiKeySecret = null;
 
     private final int MAX_RETRY = 3;
+    // Private endpoints that change nothing on the account, and so are safe to retry after a response has arrived
+    private static final String[] READ_ONLY_ENDPOINTS = {"/api/v2/balance/", "/api/v2/open_orders/", "/api/v2/order_status/", "/api/v2/user_transactions/", "/api/v2/websockets_token/"};
+    private final String URL_HOST = "www.bitstamp.net";
+
+    /**
+     * Told of a request that may have changed the account, such as an order, when it timed out with no response, so
+     * that whether it was carried out is unknown.
+     */
+    public interface UnknownOutcomeListener
+    {
+        void onUnknownOutcome(String endPoint);
+    }
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> requestLatency = new ConcurrentHashMap<String, LatencyHistogram>();
+    private static final LatencyHistogram signLatency = Metrics.histogram("aether_api_sign_seconds", "op", "request");
+    private static final LatencyHistogram verifyLatency = Metrics.histogram("aether_api_sign_seconds", "op", "verify");
+    private static final LongAdder attempts = Metrics.counter("aether_api_attempts_total");
+
+    private static ExchangeTransport defaultTransport = new HttpClientTransport();
+    private ExchangeTransport transport = defaultTransport;
+
+    // Bitstamp allows 10000 requests per 10 minutes per account; the default stays short of it
+    private static final RateLimiter defaultRateLimiter = new RateLimiter(Integer.getInteger("aether.api.requestBudget", 8000), 600000);
+    private RateLimiter rateLimiter = defaultRateLimiter;
+    private final LongAdder sent = new LongAdder();
+
+    private static final ConcurrentHashMap<String, AdaptiveTimeout> timeouts = new ConcurrentHashMap<String, AdaptiveTimeout>();
+    private static final long TIMEOUT_MS = Long.getLong("aether.api.timeoutMs", 10000);
+    private static final long MIN_TIMEOUT_MS = Long.getLong("aether.api.minTimeoutMs", 50);
+    private static final double TIMEOUT_MULTIPLIER = Double.parseDouble(System.getProperty("aether.api.timeoutMultiplier", "3"));
+    // Each hedgeable request earns this fraction of a hedge, and up to HEDGE_BURST hedges can be saved up
+    private static final double HEDGE_BUDGET = Double.parseDouble(System.getProperty("aether.api.hedgeBudget", "0.05"));
+    private static final double HEDGE_BURST = 10;
+    private static final Object hedgeLock = new Object();
+    private static double hedgeTokens = HEDGE_BURST;
+    private boolean hedging = Boolean.getBoolean("aether.api.hedge");
+
+    // Threads sending private requests for sendPrivateRequestAsync, started when first needed
+    private static final int BATCH_THREADS = Integer.getInteger("aether.api.batchThreads", 16);
+    private static ExecutorService batchPool;
+
+    private static final CircuitBreaker defaultCircuitBreaker = new CircuitBreaker(20, 10, Long.getLong("aether.api.breakerOpenMs", 5000)).export("bitstamp");
+    private CircuitBreaker circuitBreaker = defaultCircuitBreaker;
+    private final CopyOnWriteArrayList<UnknownOutcomeListener> unknownOutcomeListeners = new CopyOnWriteArrayList<UnknownOutcomeListener>();
+
+    /**
+     * Sets the transport used by connections created from now on, e.g. to record or replay a session.
+     * 
+     * @param transport The transport to use
+     */
+    public static void setDefaultTransport(ExchangeTransport transport)
+    {
+        defaultTransport = transport;
+    }
+
+    /**
+     * @return The transport new connections use
+     */
+    public static ExchangeTransport getDefaultTransport()
+    {
+        return defaultTransport;
+    }
 
     /**
      * Creates a new BitstampAPIConnection instance, attempting to load keys from default locations relative to the 
@@ -46,6 +147,105 @@ public class BitstampAPIConnection
         loadKeys(apiKeyPath, apiKeySecretPath);
     }
 
+    /**
+     * Creates a new BitstampAPIConnection instance, attempting to load keys from the provided locations and sending
+     * requests through the given transport.
+     *  
+     * @param apiKeyPath path to load API Key from
+     * @param apiKeySecretPath path to load the API Key Scret from
+     * @param transport transport to send requests through
+     */
+    public BitstampAPIConnection(String apiKeyPath, String apiKeySecretPath, ExchangeTransport transport)
+    {
+        this(apiKeyPath, apiKeySecretPath);
+        this.transport = transport;
+    }
+
+    /**
+     * Creates a new BitstampAPIConnection instance using keys already in memory rather than loaded from files, sending
+     * requests through the given transport. Intended for tests against a mock exchange, so requests are not rate
+     * limited or guarded by a circuit breaker unless {@link #setRateLimiter(RateLimiter)} or
+     * {@link #setCircuitBreaker(CircuitBreaker)} is called.
+     * 
+     * @param transport transport to send requests through
+     * @param apiKey the API Key
+     * @param apiKeySecret the API Key Secret
+     * @return the connection
+     */
+    public static BitstampAPIConnection withKeys(ExchangeTransport transport, String apiKey, String apiKeySecret)
+    {
+        BitstampAPIConnection conn = new BitstampAPIConnection(transport);
+        conn.apiKey = apiKey;
+        conn.apiKeySecret = apiKeySecret;
+        conn.rateLimiter = null;
+        conn.circuitBreaker = null;
+        return conn;
+    }
+
+    /**
+     * Creates a connection with this one's keys, transport, rate limiter, circuit breaker and hedging, but its own count
+     * of requests sent, so that several traders can share an account's request budget while each tracks its own use
+     * of it.
+     * 
+     * @return the new connection
+     */
+    public BitstampAPIConnection share()
+    {
+        BitstampAPIConnection conn = new BitstampAPIConnection(transport);
+        conn.apiKey = apiKey;
+        conn.apiKeySecret = apiKeySecret;
+        conn.rateLimiter = rateLimiter;
+        conn.circuitBreaker = circuitBreaker;
+        conn.hedging = hedging;
+        return conn;
+    }
+
+    /**
+     * Sets the limiter this connection takes a permit from before each attempt. Connections made with
+     * {@link #share()} from now on share it.
+     * 
+     * @param rateLimiter the limiter, or null to send requests without limit
+     */
+    public void setRateLimiter(RateLimiter rateLimiter)
+    {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Sets the breaker consulted before each attempt. Connections made with {@link #share()} from now on share it.
+     * 
+     * @param circuitBreaker the breaker, or null to always send requests
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker)
+    {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Adds a listener told when a request that may have changed the account timed out, so the caller can check the
+     * account's orders and balances against the exchange. Connections made with {@link #share()} have their own.
+     */
+    public void addUnknownOutcomeListener(UnknownOutcomeListener listener)
+    {
+        unknownOutcomeListeners.add(listener);
+    }
+
+    /**
+     * Turns hedging of public requests (ticker, OHLC, order book and the like) on or off. It is off unless
+     * {@code -Daether.api.hedge=true} is set.
+     * 
+     * @param hedging True to send a second copy of a public request that is slower than usual to be answered
+     */
+    public void setHedging(boolean hedging)
+    {
+        this.hedging = hedging;
+    }
+
+    private BitstampAPIConnection(ExchangeTransport transport)
+    {
+        this.transport = transport;
+    }
+
     /**
      * Loads keys into this instance using the provided paths.
      * 
@@ -75,55 +275,19 @@ public class BitstampAPIConnection
      */
     public String sendPublicRequest(String endPoint)
     {
-        String urlHost = "www.bitstamp.net";
-        String urlPath = endPoint;
-
-        HttpResponse<String> response = null;
-        int i = 0;
-        while (true)
-        {
-            try
-            {
-                HttpClient client = HttpClient.newHttpClient();
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://" + urlHost + urlPath))
-                    .GET()
-                    .build();
-
-                response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-                if (response.statusCode() != 200)
-                {
-                    throw new BadResponseException(response.statusCode());
-                }
+        return sendPublic(endPoint, ExchangeResponse::getBody);
+    }
 
-                String resp = response.body();
-                return resp;
-            }
-            catch (BadResponseException e)
-            {
-                if (i++ < MAX_RETRY)
-                {
-                    System.out.println("[API Connection]: Server returned bad response. Retrying...");
-                    continue;
-                }
-                throw new RuntimeException(e);
-            }
-            catch (ConnectException e)
-            {
-                if (i++ < MAX_RETRY)
-                {
-                    System.out.println("[API Connection]: Server failed to connect. Retrying...");
-                    continue;
-                }
-                throw new RuntimeException(e);
-            }
-            catch (Exception e)
-            {
-                throw new RuntimeException(e);
-            }
-        }
-        
+    /**
+     * Send an API call to a public endpoint on Bitstamp's API, decoding the response from its bytes.
+     * 
+     * @param endPoint the endpoint to call
+     * @param decoder decodes the response body
+     * @return the decoded response
+     */
+    public <T> T sendPublicRequest(String endPoint, BodyDecoder<T> decoder)
+    {
+        return sendPublic(endPoint, response -> decoder.decode(response.getBodyBytes()));
     }
 
     /**
@@ -135,69 +299,254 @@ public class BitstampAPIConnection
      */
     public String sendPublicRequest(String endPoint, String[] params)
     {
-        String urlHost = "www.bitstamp.net";
+        return sendPublic(withQuery(endPoint, params), ExchangeResponse::getBody);
+    }
+
+    /**
+     * Send an API call to a public endpoint on Bitstamp's API, decoding the response from its bytes.
+     * 
+     * @param endPoint the endpoint to call
+     * @param params the parameters to send with the request
+     * @param decoder decodes the response body
+     * @return the decoded response
+     */
+    public <T> T sendPublicRequest(String endPoint, String[] params, BodyDecoder<T> decoder)
+    {
+        return sendPublic(withQuery(endPoint, params), response -> decoder.decode(response.getBodyBytes()));
+    }
+
+    private static String withQuery(String endPoint, String[] params)
+    {
         String urlPath = endPoint;
         urlPath += "?";
         for (String param : params)
         {
             urlPath += "&" + param;
         }
-        
-        HttpResponse<String> response = null;
+        return urlPath;
+    }
+
+    /**
+     * Send an API call to a public endpoint on Bitstamp's API.
+     * 
+     * @param endPoint the endpoint to call
+     * @return the API endpoint response
+     */
+    public String sendPrivateRequest(String endPoint)
+    {
+        return sendPrivate(endPoint, "offset=1");
+    }
+
+    /**
+     * Send an API call to a public endpoint on Bitstamp's API.
+     * 
+     * @param endPoint the endpoint to call
+     * @param params the parameters to send with the request
+     * @return the API endpoint response
+     */
+    public String sendPrivateRequest(String endPoint, String[] params)
+    {
+        String payloadString = "offset=1";
+        for (String param : params)
+        {
+            payloadString += "&" + param;
+        }
+        return sendPrivate(endPoint, payloadString);
+    }
+
+    /**
+     * Sends an API call to a private endpoint without waiting for the response, so that several, e.g. a ladder of
+     * orders, can be in flight at once. Each is signed with its own nonce and takes its own rate limiter permit, and
+     * they share the transport's connections. Up to {@code aether.api.batchThreads} (16) are sent at a time across the
+     * process.
+     * 
+     * @param endPoint the endpoint to call
+     * @param params the parameters to send with the request
+     * @return the API endpoint response, or the RuntimeException {@link #sendPrivateRequest(String, String[])} would
+     * have thrown
+     */
+    public CompletableFuture<String> sendPrivateRequestAsync(String endPoint, String[] params)
+    {
+        return CompletableFuture.supplyAsync(() -> sendPrivateRequest(endPoint, params), batchPool());
+    }
+
+    private static synchronized ExecutorService batchPool()
+    {
+        if (batchPool == null)
+        {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(BATCH_THREADS, BATCH_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r ->
+            {
+                Thread thread = new Thread(r, "aether-api-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            batchPool = pool;
+        }
+        return batchPool;
+    }
+
+    /**
+     * @return True if API keys are loaded, so private requests can be made
+     */
+    public boolean hasKeys()
+    {
+        return apiKey != null && apiKeySecret != null;
+    }
+
+    /**
+     * @return the number of requests sent by every connection in the process, counting each retry
+     */
+    public static long getRequestCount()
+    {
+        return attempts.sum();
+    }
+
+    /**
+     * @return the number of requests sent by this connection, counting each retry
+     */
+    public long getSentCount()
+    {
+        return sent.sum();
+    }
+
+    /**
+     * Counts an attempt about to be sent, first waiting for a permit if the connection is rate limited.
+     */
+    private void beforeAttempt()
+    {
+        if (rateLimiter != null)
+        {
+            rateLimiter.acquire();
+        }
+        attempts.increment();
+        sent.increment();
+    }
+
+    /**
+     * Calculates a hex encoded HMAC-SHA256, as used to sign requests to and responses from Bitstamp.
+     * 
+     * @param secret the key to sign with
+     * @param message the message to sign
+     * @return the lower case hex encoded signature
+     */
+    public static String sign(String secret, String message)
+    {
+        try
+        {
+            SecretKeySpec secretKey = new SecretKeySpec(secret.getBytes(), "HmacSHA256");
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(secretKey);
+            return new String(Hex.encodeHex(mac.doFinal(message.getBytes())));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Sends a GET request, retrying on bad responses and failed connections.
+     * 
+     * @param urlPath path of the endpoint including any query string
+     * @param reader reads what the caller wants out of a successful response, before its body is released
+     * @return what the reader returned
+     */
+    private <T> T sendPublic(String urlPath, Function<ExchangeResponse, T> reader)
+    {
+        ExchangeRequest request = new ExchangeRequest("GET", urlPath, new LinkedHashMap<String, String>(), null);
+        String endPoint = request.getEndpoint();
+        LatencyHistogram latency = latencyOf(endPoint);
 
         int i = 0;
         while (true)
         {
+            ApiCallEvent event = new ApiCallEvent();
+            event.begin();
+            ExchangeResponse response = null;
             try
             {
-                HttpClient client = HttpClient.newHttpClient();
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://" + urlHost + urlPath))
-                    .GET()
-                    .build();
-    
-                response = client.send(request, HttpResponse.BodyHandlers.ofString());
-    
-                if (response.statusCode() != 200)
+                admit();
+                beforeAttempt();
+                response = exchange(request, endPoint, hedging, true, latency);
+
+                if (response.getStatus() != 200)
                 {
-                    throw new BadResponseException(response.statusCode());
+                    event.finish("GET", endPoint, i + 1, response.getStatus(), null, response, "bad_response");
+                    throw new BadResponseException(response.getStatus());
                 }
-    
-                String resp = response.body();
-                return resp;
+
+                event.finish("GET", endPoint, i + 1, 200, null, response, "ok");
+                return reader.apply(response);
             }
             catch (BadResponseException e)
             {
                 if (i++ < MAX_RETRY)
                 {
+                    countRetry(endPoint, "bad_response");
                     System.out.println("[API Connection]: Server returned bad response. Retrying...");
                     continue;
                 }
+                countError(endPoint, "bad_response");
                 throw new RuntimeException(e);
             }
             catch (ConnectException e)
             {
+                event.finish("GET", endPoint, i + 1, -1, null, null, "connect");
                 if (i++ < MAX_RETRY)
                 {
+                    countRetry(endPoint, "connect");
                     System.out.println("[API Connection]: Server failed to connect. Retrying...");
                     continue;
                 }
+                countError(endPoint, "connect");
+                throw new RuntimeException(e);
+            }
+            catch (TimeoutException e)
+            {
+                event.finish("GET", endPoint, i + 1, -1, null, null, "timeout");
+                if (i++ < MAX_RETRY)
+                {
+                    countRetry(endPoint, "timeout");
+                    System.out.println("[API Connection]: Server timed out. Retrying...");
+                    continue;
+                }
+                countError(endPoint, "timeout");
+                throw new RuntimeException(e);
+            }
+            catch (CircuitOpenException e)
+            {
+                event.finish("GET", endPoint, i + 1, -1, null, null, "circuit_open");
+                countError(endPoint, "circuit_open");
                 throw new RuntimeException(e);
             }
             catch (Exception e)
             {
+                event.finish("GET", endPoint, i + 1, -1, null, null, "other");
+                countError(endPoint, "other");
                 throw new RuntimeException(e);
             }
+            finally
+            {
+                if (response != null)
+                {
+                    response.release();
+                }
+            }
         }
     }
 
     /**
-     * Send an API call to a public endpoint on Bitstamp's API.
+     * Signs and sends a POST request, verifying the server's signature on the response. Each attempt is signed with a
+     * fresh nonce and timestamp, as Bitstamp rejects reused nonces. A failed connection is retried, as the request
+     * never reached the exchange; a bad response or signature is retried only for {@link #isReadOnly read-only}
+     * endpoints, so an order or cancellation is never sent twice.
      * 
      * @param endPoint the endpoint to call
-     * @return the API endpoint response
+     * @param payloadString the url encoded request body
+     * @return the response body
      */
-    public String sendPrivateRequest(String endPoint)
+    private String sendPrivate(String endPoint, String payloadString)
     {
         // Check API Key and API Key Secret are present
         if (this.apiKey == null || this.apiKeySecret == null)
@@ -208,205 +557,464 @@ public class BitstampAPIConnection
         String apiKey = String.format("%s %s", "BITSTAMP", this.apiKey);
         String apiKeySecret = this.apiKeySecret;
         String httpVerb = "POST";
-        String urlHost = "www.bitstamp.net";
         String urlPath = endPoint;
         String urlQuery = "";
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String nonce = UUID.randomUUID().toString();
         String contentType = "application/x-www-form-urlencoded";
         String version = "v2";
-        String payloadString = "offset=1";
-        String signature = apiKey + httpVerb + urlHost + urlPath + urlQuery + contentType + nonce + timestamp + version + payloadString;
+        LatencyHistogram latency = latencyOf(endPoint);
 
         int i = 0;
         while (true)
         {
+            ApiCallEvent event = new ApiCallEvent();
+            event.begin();
             try
             {
-                SecretKeySpec secretKey = new SecretKeySpec(apiKeySecret.getBytes(), "HmacSHA256");
-                Mac mac = Mac.getInstance("HmacSHA256");
-                mac.init(secretKey);
-                byte[] rawHmac = mac.doFinal(signature.getBytes());
-                signature = new String(Hex.encodeHex(rawHmac)).toUpperCase();
-    
-                HttpClient client = HttpClient.newHttpClient();
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://" + urlHost + urlPath))
-                    .POST(HttpRequest.BodyPublishers.ofString(payloadString))
-                    .setHeader("X-Auth", apiKey)
-                    .setHeader("X-Auth-Signature", signature)
-                    .setHeader("X-Auth-Nonce", nonce)
-                    .setHeader("X-Auth-Timestamp", timestamp)
-                    .setHeader("X-Auth-Version", version)
-                    .setHeader("Content-Type", contentType)
-                    .build();
-    
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-    
-                if (response.statusCode() != 200)
+                // Wait for a permit before signing, so the timestamp is not stale when it is sent
+                admit();
+                beforeAttempt();
+                String timestamp = String.valueOf(System.currentTimeMillis());
+                String nonce = UUID.randomUUID().toString();
+                String message = apiKey + httpVerb + URL_HOST + urlPath + urlQuery + contentType + nonce + timestamp + version + payloadString;
+                long signStart = System.nanoTime();
+                String signature;
+                try
                 {
-                    throw new BadResponseException(response.statusCode());
+                    signature = sign(apiKeySecret, message).toUpperCase();
                 }
-    
-                String serverSignature = response.headers().map().get("x-server-auth-signature").get(0);
-                String responseContentType = response.headers().map().get("Content-Type").get(0);
-                String stringToSign = nonce + timestamp + responseContentType + response.body();
-    
-                mac.init(secretKey);
-                byte[] rawHmacServerCheck = mac.doFinal(stringToSign.getBytes());
-                String newSignature = new String(Hex.encodeHex(rawHmacServerCheck));
-    
-                if (!newSignature.equals(serverSignature))
+                catch (RuntimeException e)
+                {
+                    // Admitted but never sent: still reported, to free a half open breaker's probe
+                    report(false);
+                    throw e;
+                }
+                signLatency.recordSince(signStart);
+
+                Map<String, String> headers = new LinkedHashMap<String, String>();
+                headers.put("X-Auth", apiKey);
+                headers.put("X-Auth-Signature", signature);
+                headers.put("X-Auth-Nonce", nonce);
+                headers.put("X-Auth-Timestamp", timestamp);
+                headers.put("X-Auth-Version", version);
+                headers.put("Content-Type", contentType);
+                // Never hedged, as a second copy of an order could be carried out as well as the first, and given the
+                // full timeout, as one given up on early may be carried out all the same
+                ExchangeResponse response = exchange(new ExchangeRequest(httpVerb, urlPath, headers, payloadString), endPoint, false, false, latency);
+                // Account responses are small and signed as a string, so decode the body and give back its buffer
+                String body = response.getBody();
+                response.release();
+
+                if (response.getStatus() != 200)
+                {
+                    event.finish(httpVerb, urlPath, i + 1, response.getStatus(), payloadString, response, "bad_response");
+                    throw new BadResponseException(response.getStatus());
+                }
+
+                String serverSignature = response.getHeader("x-server-auth-signature");
+                String responseContentType = response.getHeader("Content-Type");
+                String stringToSign = nonce + timestamp + responseContentType + body;
+
+                long verifyStart = System.nanoTime();
+                boolean verified = sign(apiKeySecret, stringToSign).equals(serverSignature);
+                verifyLatency.recordSince(verifyStart);
+                event.finish(httpVerb, urlPath, i + 1, 200, payloadString, response, verified ? "ok" : "signature");
+                if (!verified)
                 {
                     throw new SignatureMismatchException();
                 }
-    
-                return response.body();
+
+                return body;
             }
             catch (SignatureMismatchException e)
             {
-                if (i++ < MAX_RETRY)
+                // A response arrived, so the request reached the exchange: only one that changes nothing may be sent again
+                if (isReadOnly(endPoint) && i++ < MAX_RETRY)
                 {
+                    countRetry(endPoint, "signature");
                     System.out.println("[API Connection]: " + e.getMessage() + " Retrying...");
                     continue;
                 }
+                countError(endPoint, "signature");
                 throw new RuntimeException(e);
             }
             catch (BadResponseException e)
             {
-                if (i++ < MAX_RETRY)
+                if (isReadOnly(endPoint) && i++ < MAX_RETRY)
                 {
+                    countRetry(endPoint, "bad_response");
                     System.out.println("[API Connection]: " + e.getMessage() + " Retrying...");
                     continue;
                 }
+                countError(endPoint, "bad_response");
                 throw new RuntimeException(e);
             }
             catch (ConnectException e)
             {
+                event.finish(httpVerb, urlPath, i + 1, -1, payloadString, null, "connect");
                 if (i++ < MAX_RETRY)
                 {
+                    countRetry(endPoint, "connect");
                     System.out.println("[API Connection]: Server failed to connect. Retrying...");
                     continue;
                 }
+                countError(endPoint, "connect");
+                throw new RuntimeException(e);
+            }
+            catch (TimeoutException e)
+            {
+                // The request may have reached the exchange and been carried out, so it is not safe to send again
+                event.finish(httpVerb, urlPath, i + 1, -1, payloadString, null, "timeout");
+                countError(endPoint, "timeout");
+                if (!isReadOnly(endPoint))
+                {
+                    for (UnknownOutcomeListener l : unknownOutcomeListeners)
+                    {
+                        l.onUnknownOutcome(endPoint);
+                    }
+                }
+                throw new RuntimeException(e);
+            }
+            catch (CircuitOpenException e)
+            {
+                event.finish(httpVerb, urlPath, i + 1, -1, payloadString, null, "circuit_open");
+                countError(endPoint, "circuit_open");
                 throw new RuntimeException(e);
             }
             catch (Exception e)
             {
+                event.finish(httpVerb, urlPath, i + 1, -1, payloadString, null, "other");
+                countError(endPoint, "other");
                 throw new RuntimeException(e);
             }
         }
     }
 
     /**
-     * Send an API call to a public endpoint on Bitstamp's API.
+     * @param endPoint a private endpoint
+     * @return true if the endpoint only reads the account, so a request to it can be sent again whatever became of the
+     * first; orders and cancellations cannot, as the exchange may have carried out the first despite a bad response
+     */
+    static boolean isReadOnly(String endPoint)
+    {
+        for (String prefix : READ_ONLY_ENDPOINTS)
+        {
+            if (endPoint.startsWith(prefix))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fails fast if the circuit breaker is open.
+     */
+    private void admit() throws CircuitOpenException
+    {
+        if (circuitBreaker != null && !circuitBreaker.allow())
+        {
+            throw new CircuitOpenException();
+        }
+    }
+
+    /**
+     * Sends one attempt and waits for its response, for no longer than the endpoint's adaptive timeout, or the fixed
+     * {@code aether.api.timeoutMs} if not adaptive. If hedged and
+     * not answered by the endpoint's p95 latency, a second copy is sent when the hedge budget and rate limiter allow,
+     * and whichever copy is answered first is used; the other is cancelled, and its body released if it arrives
+     * anyway. The outcome is reported to the circuit breaker, as a failure if the attempt ends any other way than with
+     * a response.
      * 
-     * @param endPoint the endpoint to call
-     * @param params the parameters to send with the request
-     * @return the API endpoint response
+     * @param request the request to send
+     * @param endPoint endpoint path, without any query string
+     * @param hedge true if a second copy of the request may be sent
+     * @param adaptive true to time out by the endpoint's latency, false to allow the full {@code aether.api.timeoutMs}
+     * @param latency histogram to record the round trip time in
+     * @return the response, whatever its status code
+     * @throws TimeoutException if no response arrived in time
      */
-    public String sendPrivateRequest(String endPoint, String[] params)
+    private ExchangeResponse exchange(ExchangeRequest request, String endPoint, boolean hedge, boolean adaptive, LatencyHistogram latency) throws Exception
     {
-        // Check API Key and API Key Secret are present
-        if (this.apiKey == null || this.apiKeySecret == null)
+        AdaptiveTimeout timeout = adaptive ? timeoutOf(endPoint) : null;
+        long timeoutNanos = adaptive ? timeout.getTimeoutNanos() : TIMEOUT_MS * 1000000;
+        long hedgeNanos = hedge && adaptive ? timeout.getHedgeNanos() : Long.MAX_VALUE;
+        if (hedge)
         {
-            throw new RuntimeException(new APIKeyMissingException());
+            synchronized (hedgeLock)
+            {
+                hedgeTokens = Math.min(HEDGE_BURST, hedgeTokens + HEDGE_BUDGET);
+            }
         }
 
-        String apiKey = String.format("%s %s", "BITSTAMP", this.apiKey);
-        String apiKeySecret = this.apiKeySecret;
-        String httpVerb = "POST";
-        String urlHost = "www.bitstamp.net";
-        String urlPath = endPoint;
-        String urlQuery = "";
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String nonce = UUID.randomUUID().toString();
-        String contentType = "application/x-www-form-urlencoded";
-        String version = "v2";
+        long start = System.nanoTime();
+        CompletableFuture<ExchangeResponse> primary = null;
+        CompletableFuture<ExchangeResponse> second = null;
+        ExchangeResponse response = null;
+        boolean reported = false;
+        try
+        {
+            primary = transport.sendAsync(request);
+            if (hedgeNanos < timeoutNanos && !settles(primary, hedgeNanos) && takeHedge(endPoint))
+            {
+                second = transport.sendAsync(request);
+                response = (ExchangeResponse)CompletableFuture.anyOf(primary, second).get(timeoutNanos - (System.nanoTime() - start), TimeUnit.NANOSECONDS);
+                boolean primaryWon = primary.isDone() && !primary.isCompletedExceptionally() && primary.join() == response;
+                Metrics.counter("aether_api_hedges_total", "endpoint", endPoint, "result", primaryWon ? "lost" : "won").increment();
+            }
+            else
+            {
+                response = primary.get(timeoutNanos - (System.nanoTime() - start), TimeUnit.NANOSECONDS);
+            }
+            long elapsed = System.nanoTime() - start;
+            latency.record(elapsed);
+            if (timeout != null)
+            {
+                timeout.record(elapsed);
+            }
+            report(response.getStatus() < 500 && response.getStatus() != 429);
+            reported = true;
+            return response;
+        }
+        catch (TimeoutException e)
+        {
+            if (timeout != null)
+            {
+                timeout.record(timeoutNanos);
+            }
+            throw e;
+        }
+        catch (ExecutionException e)
+        {
+            throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+        }
+        finally
+        {
+            // However the attempt ended, the breaker hears of it, or a half open breaker would wait for its probe forever
+            if (!reported)
+            {
+                report(false);
+            }
+            abandon(primary, response);
+            abandon(second, response);
+        }
+    }
 
-        String payloadString = "offset=1";
-        for (String param : params)
+    /**
+     * @return true if the future completed, in any way, within the given time
+     */
+    private static boolean settles(CompletableFuture<?> future, long nanos) throws InterruptedException
+    {
+        try
         {
-            payloadString += "&" + param;
+            future.get(nanos, TimeUnit.NANOSECONDS);
         }
+        catch (TimeoutException e)
+        {
+            return false;
+        }
+        catch (ExecutionException | CancellationException e)
+        {
+            // Failed, which the caller finds out when it asks for the response
+        }
+        return true;
+    }
 
-        String signature = apiKey + httpVerb + urlHost + urlPath + urlQuery + contentType + nonce + timestamp + version + payloadString;
+    /**
+     * Takes a hedge from the budget and a permit from the rate limiter, if both are free now.
+     */
+    private boolean takeHedge(String endPoint)
+    {
+        synchronized (hedgeLock)
+        {
+            if (hedgeTokens < 1)
+            {
+                Metrics.counter("aether_api_hedges_total", "endpoint", endPoint, "result", "denied").increment();
+                return false;
+            }
+            hedgeTokens--;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquire())
+        {
+            synchronized (hedgeLock)
+            {
+                hedgeTokens++;
+            }
+            Metrics.counter("aether_api_hedges_total", "endpoint", endPoint, "result", "denied").increment();
+            return false;
+        }
+        attempts.increment();
+        sent.increment();
+        return true;
+    }
 
-        int i = 0;
-        while (true)
+    /**
+     * Cancels a request whose response is not wanted, releasing the response if it has arrived or arrives anyway.
+     */
+    private static void abandon(CompletableFuture<ExchangeResponse> future, ExchangeResponse keep)
+    {
+        if (future != null)
         {
-            try
+            future.cancel(true);
+            future.thenAccept(response ->
             {
-                SecretKeySpec secretKey = new SecretKeySpec(apiKeySecret.getBytes(), "HmacSHA256");
-                Mac mac = Mac.getInstance("HmacSHA256");
-                mac.init(secretKey);
-                byte[] rawHmac = mac.doFinal(signature.getBytes());
-                signature = new String(Hex.encodeHex(rawHmac)).toUpperCase();
-
-                HttpClient client = HttpClient.newHttpClient();
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://" + urlHost + urlPath))
-                    .POST(HttpRequest.BodyPublishers.ofString(payloadString))
-                    .setHeader("X-Auth", apiKey)
-                    .setHeader("X-Auth-Signature", signature)
-                    .setHeader("X-Auth-Nonce", nonce)
-                    .setHeader("X-Auth-Timestamp", timestamp)
-                    .setHeader("X-Auth-Version", version)
-                    .setHeader("Content-Type", contentType)
-                    .build();
-
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-                if (response.statusCode() != 200)
+                if (response != keep)
                 {
-                    throw new BadResponseException(response.statusCode());
+                    response.release();
                 }
+            });
+        }
+    }
 
-                String serverSignature = response.headers().map().get("x-server-auth-signature").get(0);
-                String responseContentType = response.headers().map().get("Content-Type").get(0);
-                String stringToSign = nonce + timestamp + responseContentType + response.body();
+    private void report(boolean success)
+    {
+        if (circuitBreaker != null)
+        {
+            if (success)
+            {
+                circuitBreaker.onSuccess();
+            }
+            else
+            {
+                circuitBreaker.onFailure();
+            }
+        }
+    }
 
-                mac.init(secretKey);
-                byte[] rawHmacServerCheck = mac.doFinal(stringToSign.getBytes());
-                String newSignature = new String(Hex.encodeHex(rawHmacServerCheck));
+    /**
+     * @param endPoint endpoint path, without any query string
+     * @return the endpoint's adaptive timeout, exported as {@code aether_api_timeout_seconds}
+     */
+    private static AdaptiveTimeout timeoutOf(String endPoint)
+    {
+        AdaptiveTimeout timeout = timeouts.get(endPoint);
+        if (timeout == null)
+        {
+            timeout = timeouts.computeIfAbsent(endPoint, e ->
+            {
+                AdaptiveTimeout t = new AdaptiveTimeout(MIN_TIMEOUT_MS, TIMEOUT_MS, TIMEOUT_MULTIPLIER);
+                Metrics.gauge("aether_api_timeout_seconds", () -> t.getTimeoutNanos() / 1e9, "endpoint", e);
+                return t;
+            });
+        }
+        return timeout;
+    }
 
-                if (!newSignature.equals(serverSignature))
-                {
-                    throw new SignatureMismatchException();
-                }
+    /**
+     * @param endPoint endpoint path, without any query string
+     * @return the histogram of round trip times (each attempt, excluding signing) for the endpoint
+     */
+    private static LatencyHistogram latencyOf(String endPoint)
+    {
+        LatencyHistogram latency = requestLatency.get(endPoint);
+        if (latency == null)
+        {
+            latency = requestLatency.computeIfAbsent(endPoint, e -> Metrics.histogram("aether_api_request_seconds", "endpoint", e));
+        }
+        return latency;
+    }
 
-                return response.body();
+    private static void countRetry(String endPoint, String reason)
+    {
+        Metrics.counter("aether_api_retries_total", "endpoint", endPoint, "reason", reason).increment();
+    }
+
+    private static void countError(String endPoint, String reason)
+    {
+        Metrics.counter("aether_api_errors_total", "endpoint", endPoint, "reason", reason).increment();
+    }
+
+    /**
+     * Reads a buffer's remaining UTF-8 bytes as characters, decoding them one at a time without copying the buffer.
+     * Supports marks, so {@code JSONTokener} does not wrap it in a {@code BufferedReader}.
+     */
+    private static class ByteBufferReader extends Reader
+    {
+        private final ByteBuffer buffer;
+        // Low surrogate of a supplementary character whose high surrogate was just read
+        private int pending = -1;
+        private int markPosition;
+        private int markPending = -1;
+
+        ByteBufferReader(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            if (pending >= 0)
+            {
+                int c = pending;
+                pending = -1;
+                return c;
             }
-            catch (SignatureMismatchException e)
+            if (!buffer.hasRemaining())
             {
-                if (i++ < MAX_RETRY)
-                {
-                    System.out.println("[API Connection]: " + e.getMessage() + " Retrying...");
-                    continue;
-                }
-                throw new RuntimeException(e);
+                return -1;
             }
-            catch (BadResponseException e)
+            int b = buffer.get();
+            if (b >= 0)
             {
-                if (i++ < MAX_RETRY)
-                {
-                    System.out.println("[API Connection]: " + e.getMessage() + " Retrying...");
-                    continue;
-                }
-                throw new RuntimeException(e);
+                return b;
             }
-            catch (ConnectException e)
+            int extra = (b & 0xe0) == 0xc0 ? 1 : (b & 0xf0) == 0xe0 ? 2 : (b & 0xf8) == 0xf0 ? 3 : -1;
+            if (extra < 0 || buffer.remaining() < extra)
             {
-                if (i++ < MAX_RETRY)
-                {
-                    System.out.println("[API Connection]: Server failed to connect. Retrying...");
-                    continue;
-                }
-                throw new RuntimeException(e);
+                return 0xfffd;
             }
-            catch (Exception e)
+            int code = b & (0x3f >> extra);
+            for (int i = 0; i < extra; i++)
             {
-                throw new RuntimeException(e);
+                code = code << 6 | (buffer.get() & 0x3f);
+            }
+            if (code >= 0x10000)
+            {
+                pending = Character.lowSurrogate(code);
+                return Character.highSurrogate(code);
+            }
+            return code;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len)
+        {
+            int n = 0;
+            while (n < len)
+            {
+                int c = read();
+                if (c < 0)
+                {
+                    return n == 0 ? -1 : n;
+                }
+                cbuf[off + n++] = (char)c;
             }
+            return n;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return true;
+        }
+
+        @Override
+        public void mark(int readAheadLimit)
+        {
+            markPosition = buffer.position();
+            markPending = pending;
+        }
+
+        @Override
+        public void reset()
+        {
+            buffer.position(markPosition);
+            pending = markPending;
+        }
+
+        @Override
+        public void close()
+        {
         }
     }
 }
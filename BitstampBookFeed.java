@@ -0,0 +1,69 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Streams the top of a currency pair's order book from Bitstamp's WebSocket API (channel {@code order_book_<pair>}) to
+ * registered {@link BookListener}s. The channel sends the top levels of each side on every change; only the best bid
+ * and ask, with the amount at each, are passed on.
+ */
+public class BitstampBookFeed extends BitstampLiveFeed
+{
+    /**
+     * Receives the top of the book each time it changes.
+     */
+    public interface BookListener
+    {
+        /**
+         * @param timestamp Unix timestamp of the book in milliseconds
+         * @param bid Best bid price
+         * @param bidAmount Amount bid at the best bid
+         * @param ask Best ask price
+         * @param askAmount Amount asked at the best ask
+         */
+        void onBook(long timestamp, double bid, double bidAmount, double ask, double askAmount);
+    }
+
+    private final CopyOnWriteArrayList<BookListener> listeners = new CopyOnWriteArrayList<BookListener>();
+
+    /**
+     * @param pair Currency pair to stream the book of
+     */
+    public BitstampBookFeed(CurrencyPair pair)
+    {
+        super(pair.channel("order_book_"));
+    }
+
+    public void addBookListener(BookListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeBookListener(BookListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    protected void handleEvent(String event, JSONObject msg)
+    {
+        if (!event.equals("data"))
+        {
+            return;
+        }
+        JSONObject book = msg.getJSONObject("data");
+        JSONArray bids = book.getJSONArray("bids");
+        JSONArray asks = book.getJSONArray("asks");
+        if (bids.isEmpty() || asks.isEmpty())
+        {
+            return;
+        }
+        long timestamp = book.has("microtimestamp") ? Long.parseLong(book.getString("microtimestamp")) / 1000 : Long.parseLong(book.getString("timestamp")) * 1000;
+        JSONArray bid = bids.getJSONArray(0);
+        JSONArray ask = asks.getJSONArray(0);
+        for (BookListener listener : listeners)
+        {
+            listener.onBook(timestamp, bid.getDouble(0), bid.getDouble(1), ask.getDouble(0), ask.getDouble(1));
+        }
+    }
+}
@@ -0,0 +1,254 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.json.JSONObject;
+
+/**
+ * Streams live trades of a currency pair from Bitstamp's WebSocket API (channel {@code live_trades_<pair>}, BTC/EUR
+ * unless given) to registered listeners. Reconnects automatically if the server asks it to or the connection drops.
+ *
+ * Only one connection is ever open, and only one reconnect is scheduled at a time, so each trade reaches listeners
+ * once. Callbacks from a connection that is no longer the current one, such as the late close of the connection just
+ * replaced, are ignored.
+ */
+public class BitstampLiveFeed implements WebSocket.Listener
+{
+    /**
+     * Receives trades as they are reported by the exchange.
+     */
+    public interface TradeListener
+    {
+        /**
+         * @param timestamp Unix timestamp of the trade in milliseconds
+         * @param price Price of the trade
+         * @param amount Amount traded
+         * @param type 0 for buy, 1 for sell
+         */
+        void onTrade(long timestamp, double price, double amount, int type);
+    }
+
+    private static final String WS_URL = "wss://ws.bitstamp.net";
+    private static final long RECONNECT_DELAY_MS = 5000;
+
+    private final String channel;
+    private final CopyOnWriteArrayList<TradeListener> listeners = new CopyOnWriteArrayList<TradeListener>();
+    private final StringBuilder partial = new StringBuilder();
+    private HttpClient client = HttpClient.newHttpClient();
+    private volatile WebSocket socket;
+    private volatile boolean running = false;
+    private final AtomicBoolean reconnecting = new AtomicBoolean();
+
+    public BitstampLiveFeed()
+    {
+        this(CurrencyPair.BTCEUR);
+    }
+
+    /**
+     * @param pair Currency pair to stream trades of
+     */
+    public BitstampLiveFeed(CurrencyPair pair)
+    {
+        this(pair.channel("live_trades_"));
+    }
+
+    /**
+     * @param channel Trade channel to subscribe to, e.g. "live_trades_btceur"
+     */
+    public BitstampLiveFeed(String channel)
+    {
+        this.channel = channel;
+    }
+
+    public void addTradeListener(TradeListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeTradeListener(TradeListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return True if the feed is currently connected
+     */
+    public boolean isConnected()
+    {
+        return socket != null && !socket.isOutputClosed();
+    }
+
+    /**
+     * Connects and subscribes, waiting up to 10 seconds for the connection to open.
+     *
+     * @return True if connected
+     */
+    public boolean start()
+    {
+        running = true;
+        try
+        {
+            connect().get(10, TimeUnit.SECONDS);
+            return true;
+        }
+        catch (Exception e)
+        {
+            System.out.println("[Live Feed]: Unable to connect to " + WS_URL + ". " + e.getMessage());
+            scheduleReconnect();
+            return false;
+        }
+    }
+
+    /**
+     * Closes the connection and stops reconnecting.
+     */
+    public void stop()
+    {
+        running = false;
+        if (socket != null)
+        {
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+            socket = null;
+        }
+    }
+
+    /**
+     * Opens a new connection. Subclasses needing to do something first, such as fetch an auth token, can do it here.
+     */
+    protected CompletableFuture<WebSocket> connect()
+    {
+        return client.newWebSocketBuilder().buildAsync(URI.create(WS_URL), this);
+    }
+
+    /**
+     * @return The channel subscribed to
+     */
+    protected String getChannel()
+    {
+        return channel;
+    }
+
+    /**
+     * @return The data of the subscribe request sent on connecting
+     */
+    protected JSONObject subscription()
+    {
+        JSONObject data = new JSONObject();
+        data.put("channel", channel);
+        return data;
+    }
+
+    private void scheduleReconnect()
+    {
+        if (!running || !reconnecting.compareAndSet(false, true))
+        {
+            return;
+        }
+        CompletableFuture.delayedExecutor(RECONNECT_DELAY_MS, TimeUnit.MILLISECONDS).execute(() ->
+        {
+            if (!running || isConnected())
+            {
+                reconnecting.set(false);
+                return;
+            }
+            connect().whenComplete((webSocket, e) ->
+            {
+                reconnecting.set(false);
+                if (e != null)
+                {
+                    scheduleReconnect();
+                }
+            });
+        });
+    }
+
+    public void onOpen(WebSocket webSocket)
+    {
+        socket = webSocket;
+        partial.setLength(0);
+        JSONObject subscribe = new JSONObject();
+        subscribe.put("event", "bts:subscribe");
+        subscribe.put("data", subscription());
+        webSocket.sendText(subscribe.toString(), true);
+        webSocket.request(1);
+    }
+
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence text, boolean last)
+    {
+        if (webSocket != socket)
+        {
+            return null;
+        }
+        partial.append(text);
+        if (last)
+        {
+            String message = partial.toString();
+            partial.setLength(0);
+            handleMessage(webSocket, message);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason)
+    {
+        if (webSocket == socket)
+        {
+            socket = null;
+            scheduleReconnect();
+        }
+        return null;
+    }
+
+    public void onError(WebSocket webSocket, Throwable error)
+    {
+        if (webSocket == socket)
+        {
+            System.out.println("[Live Feed]: Connection error. " + error.getMessage());
+            socket = null;
+            scheduleReconnect();
+        }
+    }
+
+    private void handleMessage(WebSocket webSocket, String message)
+    {
+        JSONObject msg = new JSONObject(message);
+        String event = msg.optString("event");
+        if (event.equals("bts:request_reconnect"))
+        {
+            // The server's reply to the close arrives in onClose, which reconnects
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+        }
+        else
+        {
+            handleEvent(event, msg);
+        }
+    }
+
+    /**
+     * Handles a message from the subscribed channel, passing trades on to listeners.
+     * 
+     * @param event The message's event, e.g. "trade"
+     * @param msg The whole message
+     */
+    protected void handleEvent(String event, JSONObject msg)
+    {
+        if (event.equals("trade"))
+        {
+            JSONObject trade = msg.getJSONObject("data");
+            long timestamp = trade.has("microtimestamp") ? Long.parseLong(trade.getString("microtimestamp")) / 1000 : Long.parseLong(trade.getString("timestamp")) * 1000;
+            double price = trade.getDouble("price");
+            double amount = trade.getDouble("amount");
+            int type = trade.getInt("type");
+            for (TradeListener listener : listeners)
+            {
+                listener.onTrade(timestamp, price, amount, type);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.json.JSONObject;
+
+/**
+ * Streams changes to the account's own orders in a currency pair from Bitstamp's private WebSocket channel
+ * ({@code private-my_orders_<pair>-<user id>}) to registered {@link OrderListener}s. Each connection is authorised
+ * with a fresh token from {@code /api/v2/websockets_token/}, so the API keys must be loaded.
+ *
+ * The channel reports orders as created, changed (partly filled) or deleted. A deleted order with nothing left is
+ * reported as filled, otherwise as cancelled.
+ */
+public class BitstampOrderFeed extends BitstampLiveFeed
+{
+    private final BitstampAPIConnection conn;
+    private final CopyOnWriteArrayList<OrderListener> listeners = new CopyOnWriteArrayList<OrderListener>();
+    // Amount left on each open order, to work out how much each change filled
+    private final ConcurrentHashMap<Long, Double> remaining = new ConcurrentHashMap<Long, Double>();
+    private volatile String token;
+    private volatile long userId;
+
+    /**
+     * @param conn Connection to fetch auth tokens with
+     */
+    public BitstampOrderFeed(BitstampAPIConnection conn)
+    {
+        this(conn, CurrencyPair.BTCEUR);
+    }
+
+    /**
+     * @param conn Connection to fetch auth tokens with
+     * @param pair Currency pair whose orders to stream
+     */
+    public BitstampOrderFeed(BitstampAPIConnection conn, CurrencyPair pair)
+    {
+        super(pair.channel("private-my_orders_"));
+        this.conn = conn;
+    }
+
+    public void addOrderListener(OrderListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeOrderListener(OrderListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    protected CompletableFuture<WebSocket> connect()
+    {
+        try
+        {
+            JSONObject auth = new JSONObject(conn.sendPrivateRequest("/api/v2/websockets_token/"));
+            token = auth.getString("token");
+            userId = auth.getLong("user_id");
+        }
+        catch (RuntimeException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+        return super.connect();
+    }
+
+    protected JSONObject subscription()
+    {
+        JSONObject data = super.subscription();
+        data.put("channel", getChannel() + "-" + userId);
+        data.put("auth", token);
+        return data;
+    }
+
+    protected void handleEvent(String event, JSONObject msg)
+    {
+        if (!event.startsWith("order_"))
+        {
+            return;
+        }
+        JSONObject order = msg.getJSONObject("data");
+        long id = order.getLong("id");
+        double amount = order.getDouble("amount");
+        double price = order.getDouble("price");
+        if (event.equals("order_created"))
+        {
+            remaining.put(id, amount);
+            for (OrderListener listener : listeners)
+            {
+                listener.onOrderPlaced(id, order.getInt("order_type"), amount, price);
+            }
+        }
+        else if (event.equals("order_changed"))
+        {
+            Double before = remaining.put(id, amount);
+            if (before != null && before > amount)
+            {
+                for (OrderListener listener : listeners)
+                {
+                    listener.onOrderFilled(id, before - amount, price);
+                }
+            }
+        }
+        else if (event.equals("order_deleted"))
+        {
+            Double before = remaining.remove(id);
+            for (OrderListener listener : listeners)
+            {
+                if (amount == 0)
+                {
+                    listener.onOrderFilled(id, before != null ? before : Double.POSITIVE_INFINITY, price);
+                }
+                else
+                {
+                    listener.onOrderCancelled(id);
+                }
+            }
+        }
+    }
+}
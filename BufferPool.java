@@ -0,0 +1,104 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of heap {@code ByteBuffer}s for response bodies, so that reading a large page does not allocate a new array
+ * of its size every time. Buffers come in power-of-two sizes from {@value #MIN_SIZE} bytes, each size keeping at most
+ * a fixed number of free buffers; larger requests are served with a fresh buffer that is not kept.
+ *
+ * Hits and misses are counted in {@code aether_buffer_pool_total}.
+ */
+public class BufferPool
+{
+    static final int MIN_SIZE = 4096;
+    private static final int CLASSES = 13; // 4 KB to 16 MB
+
+    private static final BufferPool shared = new BufferPool(Integer.getInteger("aether.http.pooledBuffers", 16));
+    private static final LongAdder hits = Metrics.counter("aether_buffer_pool_total", "result", "hit");
+    private static final LongAdder misses = Metrics.counter("aether_buffer_pool_total", "result", "miss");
+
+    private final int maxFree;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ConcurrentLinkedQueue<ByteBuffer>[] free = new ConcurrentLinkedQueue[CLASSES];
+    private final AtomicInteger[] freeCount = new AtomicInteger[CLASSES];
+
+    /**
+     * @param maxFree Free buffers kept of each size
+     */
+    public BufferPool(int maxFree)
+    {
+        this.maxFree = maxFree;
+        for (int c = 0; c < CLASSES; c++)
+        {
+            free[c] = new ConcurrentLinkedQueue<ByteBuffer>();
+            freeCount[c] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * @return The pool shared by every HTTP transport in the process
+     */
+    public static BufferPool shared()
+    {
+        return shared;
+    }
+
+    /**
+     * Takes a cleared buffer of at least the given capacity.
+     *
+     * @param capacity Minimum capacity in bytes
+     * @return The buffer, to be given back with {@link #release(ByteBuffer)} when no longer used
+     */
+    public ByteBuffer acquire(int capacity)
+    {
+        int c = classOf(capacity);
+        if (c >= CLASSES)
+        {
+            misses.increment();
+            return ByteBuffer.allocate(capacity);
+        }
+        ByteBuffer buffer = free[c].poll();
+        if (buffer == null)
+        {
+            misses.increment();
+            return ByteBuffer.allocate(MIN_SIZE << c);
+        }
+        freeCount[c].decrementAndGet();
+        hits.increment();
+        return buffer.clear();
+    }
+
+    /**
+     * Gives a buffer back to the pool. It must not be used again by the caller.
+     */
+    public void release(ByteBuffer buffer)
+    {
+        int c = classOf(buffer.capacity());
+        if (c >= CLASSES || buffer.capacity() != MIN_SIZE << c)
+        {
+            return;
+        }
+        if (freeCount[c].incrementAndGet() <= maxFree)
+        {
+            free[c].offer(buffer);
+        }
+        else
+        {
+            freeCount[c].decrementAndGet();
+        }
+    }
+
+    /**
+     * @return The index of the smallest size class holding {@code capacity} bytes
+     */
+    private static int classOf(int capacity)
+    {
+        if (capacity <= MIN_SIZE)
+        {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros((capacity - 1) / MIN_SIZE);
+    }
+}
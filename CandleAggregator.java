@@ -0,0 +1,232 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Builds OHLC candles locally from a stream of trades, for several timeframes at once (1m, 5m, 15m, 1h and 1d by
+ * default). Each trade updates the open candle of every timeframe in constant time, and recently closed candles are
+ * kept in fixed-size ring buffers so percentage changes can be calculated without asking the exchange for OHLC data.
+ *
+ * Listeners are told the moment a candle closes, either when the first trade of the next period arrives or when
+ * {@link #advanceTo(long)} is called with a time past the end of the period.
+ */
+public class CandleAggregator implements BitstampLiveFeed.TradeListener
+{
+    /** Timeframes aggregated by default, in seconds. */
+    public static final int[] DEFAULT_STEPS = {60, 300, 900, 3600, 86400};
+
+    /**
+     * Receives candles as they close.
+     */
+    public interface CandleListener
+    {
+        void onCandleClose(int step, long time, double open, double high, double low, double close, double volume);
+    }
+
+    private final int[] steps;
+    private final int historyLength;
+
+    // Open candle of each timeframe
+    private final long[] curTime;
+    private final double[] curOpen;
+    private final double[] curHigh;
+    private final double[] curLow;
+    private final double[] curClose;
+    private final double[] curVolume;
+    private final boolean[] curComplete;
+
+    // Ring buffers of closed candles, [timeframe][slot]
+    private final double[][] open;
+    private final double[][] close;
+    private final int[] closed;
+
+    private final CopyOnWriteArrayList<CandleListener> listeners = new CopyOnWriteArrayList<CandleListener>();
+
+    public CandleAggregator()
+    {
+        this(DEFAULT_STEPS, 1440);
+    }
+
+    /**
+     * Creates a new aggregator.
+     *
+     * @param steps Timeframes to aggregate, in seconds
+     * @param historyLength Number of closed candles to keep for each timeframe
+     */
+    public CandleAggregator(int[] steps, int historyLength)
+    {
+        this.steps = steps.clone();
+        this.historyLength = historyLength;
+        int n = steps.length;
+        curTime = new long[n];
+        curOpen = new double[n];
+        curHigh = new double[n];
+        curLow = new double[n];
+        curClose = new double[n];
+        curVolume = new double[n];
+        curComplete = new boolean[n];
+        open = new double[n][historyLength];
+        close = new double[n][historyLength];
+        closed = new int[n];
+        for (int tf = 0; tf < n; tf++)
+        {
+            curTime[tf] = -1;
+        }
+    }
+
+    public void addListener(CandleListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CandleListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Adds a trade to the open candle of every timeframe, closing any candles whose period has ended.
+     *
+     * @param timestamp Unix timestamp of the trade in milliseconds
+     * @param price Price of the trade
+     * @param amount Amount traded
+     * @param type 0 for buy, 1 for sell (unused)
+     */
+    public synchronized void onTrade(long timestamp, double price, double amount, int type)
+    {
+        long seconds = Math.floorDiv(timestamp, 1000);
+        for (int tf = 0; tf < steps.length; tf++)
+        {
+            long bucket = Math.floorDiv(seconds, steps[tf]) * steps[tf];
+            if (bucket != curTime[tf])
+            {
+                if (bucket < curTime[tf])
+                {
+                    continue; // Late trade for a candle already closed
+                }
+                roll(tf, bucket, price);
+            }
+            if (price > curHigh[tf])
+            {
+                curHigh[tf] = price;
+            }
+            if (price < curLow[tf])
+            {
+                curLow[tf] = price;
+            }
+            curClose[tf] = price;
+            curVolume[tf] += amount;
+        }
+    }
+
+    /**
+     * Closes every candle whose period ended before {@code timestamp}, without waiting for the next trade. Periods
+     * with no trades close as flat candles at the previous close.
+     *
+     * @param timestamp Unix timestamp in milliseconds
+     */
+    public synchronized void advanceTo(long timestamp)
+    {
+        long seconds = Math.floorDiv(timestamp, 1000);
+        for (int tf = 0; tf < steps.length; tf++)
+        {
+            long bucket = Math.floorDiv(seconds, steps[tf]) * steps[tf];
+            if (curTime[tf] != -1 && bucket > curTime[tf])
+            {
+                roll(tf, bucket, curClose[tf]);
+            }
+        }
+    }
+
+    /**
+     * @param step Timeframe in seconds
+     * @return The number of closed candles held for the timeframe, or 0 if it is not aggregated
+     */
+    public synchronized int closedCount(int step)
+    {
+        int tf = indexOf(step);
+        return tf == -1 ? 0 : Math.min(closed[tf], historyLength);
+    }
+
+    /**
+     * @param step Timeframe in seconds
+     * @return The last price seen, or NaN if there have been no trades
+     */
+    public synchronized double getLastPrice(int step)
+    {
+        int tf = indexOf(step);
+        return tf == -1 || curTime[tf] == -1 ? Double.NaN : curClose[tf];
+    }
+
+    /**
+     * Calculates the percentage change from the open of the oldest to the close of the newest of the last
+     * {@code candles} closed candles.
+     *
+     * @param step Timeframe in seconds
+     * @param candles Number of closed candles to span
+     * @return The percentage change, or NaN if not enough candles have closed
+     */
+    public synchronized double percentChange(int step, int candles)
+    {
+        int tf = indexOf(step);
+        if (tf == -1 || candles < 1 || candles > Math.min(closed[tf], historyLength))
+        {
+            return Double.NaN;
+        }
+        int newest = (closed[tf] - 1) % historyLength;
+        int oldest = (closed[tf] - candles) % historyLength;
+        double firstOpen = open[tf][oldest];
+        return ((close[tf][newest] - firstOpen) / firstOpen) * 100;
+    }
+
+    /**
+     * Closes the open candle of a timeframe, filling in flat candles for any empty periods, and opens a new candle.
+     * The very first candle of each timeframe only saw part of its period, so it is dropped rather than published.
+     */
+    private void roll(int tf, long bucket, double price)
+    {
+        if (curTime[tf] != -1)
+        {
+            if (curComplete[tf])
+            {
+                publish(tf, curTime[tf], curOpen[tf], curHigh[tf], curLow[tf], curClose[tf], curVolume[tf]);
+            }
+            curComplete[tf] = true;
+            long gapStart = Math.max(curTime[tf] + steps[tf], bucket - (long)historyLength * steps[tf]);
+            for (long t = gapStart; t < bucket; t += steps[tf])
+            {
+                double last = curClose[tf];
+                publish(tf, t, last, last, last, last, 0);
+            }
+        }
+        curTime[tf] = bucket;
+        curOpen[tf] = price;
+        curHigh[tf] = price;
+        curLow[tf] = price;
+        curClose[tf] = price;
+        curVolume[tf] = 0;
+    }
+
+    private void publish(int tf, long t, double o, double h, double l, double c, double v)
+    {
+        int slot = closed[tf] % historyLength;
+        open[tf][slot] = o;
+        close[tf][slot] = c;
+        // Wrap well before overflow, keeping the slot sequence intact
+        closed[tf] = closed[tf] + 1 == Integer.MAX_VALUE - (Integer.MAX_VALUE % historyLength) ? historyLength : closed[tf] + 1;
+        for (CandleListener listener : listeners)
+        {
+            listener.onCandleClose(steps[tf], t, o, h, l, c, v);
+        }
+    }
+
+    private int indexOf(int step)
+    {
+        for (int tf = 0; tf < steps.length; tf++)
+        {
+            if (steps[tf] == step)
+            {
+                return tf;
+            }
+        }
+        return -1;
+    }
+}
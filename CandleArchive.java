@@ -0,0 +1,472 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * An on-disk, columnar store of BTC/EUR OHLC candles for a single timeframe. Each column (timestamp, open, high, low,
+ * close and volume) is a fixed-width file of 8-byte values which is memory-mapped, so reads come straight out of the
+ * page cache without being copied or parsed.
+ *
+ * Candles are kept sorted by timestamp, allowing range queries by binary search. Missing stretches of history are
+ * tracked in a gap index so that {@link #backfill} and the {@link HistoryDownloader} only ask Bitstamp for what is not
+ * already on disk.
+ *
+ * Layout on disk: {@code <root>/<pair>/<step>/<column>.col}, e.g. {@code candles/btceur/60/close.col}. Every column
+ * file starts with an 8-byte header; the header of the timestamp column holds the number of candles stored.
+ *
+ * Every read and write holds the archive's lock, as an insert can move candles and remap the columns under a reader.
+ * Indexes, including those a {@link Range} is built on, are only stable while no candles are inserted before them.
+ */
+public class CandleArchive implements Closeable
+{
+    /** Maximum number of candles Bitstamp will return for a single OHLC request. */
+    public static final int PAGE_SIZE = 1000;
+
+    private static final String[] COLUMNS = {"timestamp", "open", "high", "low", "close", "volume"};
+    private static final int TIMESTAMP = 0;
+    private static final int OPEN = 1;
+    private static final int HIGH = 2;
+    private static final int LOW = 3;
+    private static final int CLOSE = 4;
+    private static final int VOLUME = 5;
+    private static final int HEADER_BYTES = 8;
+    private static final int VALUE_BYTES = 8;
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final CurrencyPair pair;
+    private final int step;
+    private final Path dir;
+    private final FileChannel[] channels = new FileChannel[COLUMNS.length];
+    private final MappedByteBuffer[] columns = new MappedByteBuffer[COLUMNS.length];
+    private int count;
+    private int capacity;
+
+    /**
+     * Gap index. Maps the timestamp of the first missing candle of each hole between stored candles to the timestamp
+     * of the last missing candle of that hole.
+     */
+    private final TreeMap<Long, Long> gaps = new TreeMap<Long, Long>();
+
+    /**
+     * Opens (creating if needed) the BTC/EUR archive for the given timeframe.
+     *
+     * @param root Directory holding all archives
+     * @param step Timeframe of the candles in seconds
+     * @throws IOException if the column files cannot be opened or mapped
+     */
+    public CandleArchive(Path root, int step) throws IOException
+    {
+        this(root, CurrencyPair.BTCEUR, step);
+    }
+
+    /**
+     * Opens (creating if needed) the archive for the given pair and timeframe.
+     *
+     * @param root Directory holding all archives
+     * @param pair Currency pair of the candles
+     * @param step Timeframe of the candles in seconds
+     * @throws IOException if the column files cannot be opened or mapped
+     */
+    public CandleArchive(Path root, CurrencyPair pair, int step) throws IOException
+    {
+        this.pair = pair;
+        this.step = step;
+        this.dir = root.resolve(pair.getSymbol()).resolve(String.valueOf(step));
+        Files.createDirectories(dir);
+
+        for (int c = 0; c < COLUMNS.length; c++)
+        {
+            channels[c] = FileChannel.open(dir.resolve(COLUMNS[c] + ".col"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        long existing = (channels[TIMESTAMP].size() - HEADER_BYTES) / VALUE_BYTES;
+        map((int)Math.max(INITIAL_CAPACITY, existing));
+        count = (int)columns[TIMESTAMP].getLong(0);
+        rebuildGapIndex();
+    }
+
+    /**
+     * @return The currency pair of this archive
+     */
+    public CurrencyPair getPair()
+    {
+        return pair;
+    }
+
+    /**
+     * @return The timeframe of this archive in seconds
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The number of candles stored
+     */
+    public synchronized int size()
+    {
+        return count;
+    }
+
+    public synchronized long time(int i)
+    {
+        return columns[TIMESTAMP].getLong(offset(i));
+    }
+
+    public synchronized double open(int i)
+    {
+        return columns[OPEN].getDouble(offset(i));
+    }
+
+    public synchronized double high(int i)
+    {
+        return columns[HIGH].getDouble(offset(i));
+    }
+
+    public synchronized double low(int i)
+    {
+        return columns[LOW].getDouble(offset(i));
+    }
+
+    public synchronized double close(int i)
+    {
+        return columns[CLOSE].getDouble(offset(i));
+    }
+
+    public synchronized double volume(int i)
+    {
+        return columns[VOLUME].getDouble(offset(i));
+    }
+
+    /**
+     * Finds the index of the first candle with a timestamp at or after {@code time}.
+     *
+     * @param time Unix timestamp in seconds
+     * @return Index of the candle, or {@link #size()} if every candle is earlier than {@code time}
+     */
+    public synchronized int lowerBound(long time)
+    {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (time(mid) < time)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Gets a view of the candles with timestamps in {@code [from, to)}. No data is copied; the view reads directly from
+     * the mapped columns.
+     *
+     * @param from Unix timestamp (seconds) of the first candle, inclusive
+     * @param to Unix timestamp (seconds) to end at, exclusive
+     * @return The view
+     */
+    public synchronized Range range(long from, long to)
+    {
+        return new Range(lowerBound(from), lowerBound(to));
+    }
+
+    /**
+     * Lists the stretches of history inside {@code [from, to)} that are not in the archive. Only candles which have
+     * closed by now are considered missing.
+     *
+     * @param from Unix timestamp (seconds), inclusive
+     * @param to Unix timestamp (seconds), exclusive
+     * @return Missing ranges as {@code {first, last}} candle timestamps, both inclusive
+     */
+    public synchronized List<long[]> findGaps(long from, long to)
+    {
+        List<long[]> result = new ArrayList<long[]>();
+        long first = align(from + step - 1);
+        long last = Math.min(align(to - 1), align(Instant.now().getEpochSecond()) - step);
+        if (first > last)
+        {
+            return result;
+        }
+        if (count == 0)
+        {
+            result.add(new long[] {first, last});
+            return result;
+        }
+
+        long stored = time(0);
+        if (first < stored)
+        {
+            result.add(new long[] {first, Math.min(last, stored - step)});
+        }
+        Map.Entry<Long, Long> floor = gaps.floorEntry(first);
+        if (floor != null && floor.getValue() >= first)
+        {
+            result.add(new long[] {first, Math.min(last, floor.getValue())});
+        }
+        for (Map.Entry<Long, Long> gap : gaps.subMap(first, false, last, true).entrySet())
+        {
+            result.add(new long[] {gap.getKey(), Math.min(last, gap.getValue())});
+        }
+        long end = time(count - 1);
+        if (last > end)
+        {
+            result.add(new long[] {Math.max(first, end + step), last});
+        }
+        return result;
+    }
+
+    /**
+     * Downloads any candles in {@code [from, to)} missing from the archive with a {@link HistoryDownloader}, which
+     * splits each gap into pages of at most {@link #PAGE_SIZE} candles and fetches them in parallel.
+     *
+     * @param conn Connection to fetch data with
+     * @param from Unix timestamp (seconds), inclusive
+     * @param to Unix timestamp (seconds), exclusive
+     * @param threads Number of pages to fetch at once
+     * @return The number of candles added
+     */
+    public int backfill(BitstampAPIConnection conn, long from, long to, int threads)
+    {
+        return (int)new HistoryDownloader(conn, this, threads, null).download(from, to).getCandles();
+    }
+
+    /**
+     * Merges candles, as returned by Bitstamp's OHLC endpoint, into the archive. Candles already stored and candles
+     * which have not closed yet are ignored.
+     *
+     * @param ohlc Array of JSONObjects with keys "timestamp", "open", "high", "low", "close" and "volume"
+     * @return The number of candles added
+     */
+    public synchronized int insert(JSONArray ohlc)
+    {
+        long openCandle = align(Instant.now().getEpochSecond());
+        TreeMap<Long, JSONObject> fresh = new TreeMap<Long, JSONObject>();
+        for (int i = 0; i < ohlc.length(); i++)
+        {
+            JSONObject candle = ohlc.getJSONObject(i);
+            long ts = candle.getLong("timestamp");
+            if (ts < openCandle && !contains(ts))
+            {
+                fresh.put(ts, candle);
+            }
+        }
+        if (fresh.isEmpty())
+        {
+            return 0;
+        }
+
+        ensureCapacity(count + fresh.size());
+
+        // Merge from the back so existing candles only ever move towards the end of the columns
+        int src = count - 1;
+        int dst = count + fresh.size() - 1;
+        int last = -1;
+        for (JSONObject candle : fresh.descendingMap().values())
+        {
+            long ts = candle.getLong("timestamp");
+            while (src >= 0 && time(src) > ts)
+            {
+                move(src--, dst--);
+            }
+            last = Math.max(last, dst);
+            write(dst--, ts, candle.getDouble("open"), candle.getDouble("high"), candle.getDouble("low"), candle.getDouble("close"), candle.getDouble("volume"));
+        }
+
+        count += fresh.size();
+        columns[TIMESTAMP].putLong(0, count);
+        // Only the stretch from the candle before the first added one to the one after the last can have changed
+        updateGapIndex(Math.max(0, dst), Math.min(count - 1, last + 1));
+        return fresh.size();
+    }
+
+    /**
+     * Flushes all columns to disk.
+     */
+    public synchronized void force()
+    {
+        for (MappedByteBuffer column : columns)
+        {
+            column.force();
+        }
+    }
+
+    public synchronized void close() throws IOException
+    {
+        force();
+        for (FileChannel channel : channels)
+        {
+            channel.close();
+        }
+    }
+
+    private boolean contains(long ts)
+    {
+        int i = lowerBound(ts);
+        return i < count && time(i) == ts;
+    }
+
+    private long align(long ts)
+    {
+        return Math.floorDiv(ts, step) * step;
+    }
+
+    private static int offset(int i)
+    {
+        return HEADER_BYTES + i * VALUE_BYTES;
+    }
+
+    private void write(int i, long ts, double open, double high, double low, double close, double volume)
+    {
+        int at = offset(i);
+        columns[TIMESTAMP].putLong(at, ts);
+        columns[OPEN].putDouble(at, open);
+        columns[HIGH].putDouble(at, high);
+        columns[LOW].putDouble(at, low);
+        columns[CLOSE].putDouble(at, close);
+        columns[VOLUME].putDouble(at, volume);
+    }
+
+    private void move(int from, int to)
+    {
+        for (MappedByteBuffer column : columns)
+        {
+            column.putLong(offset(to), column.getLong(offset(from)));
+        }
+    }
+
+    private void ensureCapacity(int needed)
+    {
+        if (needed <= capacity)
+        {
+            return;
+        }
+        int newCapacity = capacity;
+        while (newCapacity < needed)
+        {
+            newCapacity *= 2;
+        }
+        try
+        {
+            map(newCapacity);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void map(int newCapacity) throws IOException
+    {
+        for (int c = 0; c < COLUMNS.length; c++)
+        {
+            columns[c] = channels[c].map(FileChannel.MapMode.READ_WRITE, 0, offset(newCapacity));
+        }
+        capacity = newCapacity;
+    }
+
+    private void rebuildGapIndex()
+    {
+        gaps.clear();
+        updateGapIndex(0, count - 1);
+    }
+
+    /**
+     * Re-indexes the gaps between the candles at indices {@code from} to {@code to}, inclusive.
+     */
+    private void updateGapIndex(int from, int to)
+    {
+        if (to <= from)
+        {
+            return;
+        }
+        gaps.subMap(time(from), true, time(to), true).clear();
+        for (int i = from + 1; i <= to; i++)
+        {
+            long prev = time(i - 1);
+            long cur = time(i);
+            if (cur - prev > step)
+            {
+                gaps.put(prev + step, cur - step);
+            }
+        }
+    }
+
+    /**
+     * A contiguous run of candles within the archive, read in place from the mapped columns.
+     */
+    public class Range
+    {
+        private final int start;
+        private final int end;
+
+        private Range(int start, int end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return The number of candles in this range
+         */
+        public int size()
+        {
+            return end - start;
+        }
+
+        /**
+         * @return True if the range holds one candle for every step between its first and last candle
+         */
+        public boolean isContinuous()
+        {
+            return size() > 0 && time(size() - 1) - time(0) == (long)(size() - 1) * step;
+        }
+
+        public long time(int i)
+        {
+            return CandleArchive.this.time(start + i);
+        }
+
+        public double open(int i)
+        {
+            return CandleArchive.this.open(start + i);
+        }
+
+        public double high(int i)
+        {
+            return CandleArchive.this.high(start + i);
+        }
+
+        public double low(int i)
+        {
+            return CandleArchive.this.low(start + i);
+        }
+
+        public double close(int i)
+        {
+            return CandleArchive.this.close(start + i);
+        }
+
+        public double volume(int i)
+        {
+            return CandleArchive.this.volume(start + i);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * Batch versions of the indicators the auto trader computes one window at a time: percent change, returns, rolling
+ * minimum and maximum, and {@link AetherTrader.MarketState} classification, each over a whole column of candle data
+ * in one call. Backtests and sweeps that need an indicator for every minute of history should use these rather than
+ * measuring each window separately.
+ *
+ * When the JDK's incubating Vector API is present (run with {@code --add-modules jdk.incubator.vector}) the kernels
+ * run in {@link VectorCandleKernels}; otherwise, or with {@code -Daether.simd=false}, they run as the scalar loops
+ * here. Both give bit-for-bit identical results. Entries with too little history before them are NaN, or
+ * {@code UNKNOWN} once classified.
+ */
+public final class CandleKernels
+{
+    /** True if the kernels run on the Vector API. */
+    public static final boolean SIMD = Boolean.parseBoolean(System.getProperty("aether.simd", "true")) && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /** Market states by ordinal, for decoding {@link #classify(double[], byte[])}. */
+    public static final AetherTrader.MarketState[] STATES = AetherTrader.MarketState.values();
+
+    private static final byte VOLATILE_UP = (byte)AetherTrader.MarketState.VOLATILE_UP.ordinal();
+    private static final byte UUP = (byte)AetherTrader.MarketState.UUP.ordinal();
+    private static final byte UP = (byte)AetherTrader.MarketState.UP.ordinal();
+    private static final byte FLAT = (byte)AetherTrader.MarketState.FLAT.ordinal();
+    private static final byte DW = (byte)AetherTrader.MarketState.DW.ordinal();
+    private static final byte DDW = (byte)AetherTrader.MarketState.DDW.ordinal();
+    private static final byte VOLATILE_DW = (byte)AetherTrader.MarketState.VOLATILE_DW.ordinal();
+    private static final byte UNKNOWN = (byte)AetherTrader.MarketState.UNKNOWN.ordinal();
+
+    private CandleKernels()
+    {
+    }
+
+    /**
+     * Percent change over each window of candles, as {@code calculatePercentChange} measures it: from the open of the
+     * window's first candle to the close of its last.
+     *
+     * @param open Open of each candle
+     * @param close Close of each candle
+     * @param window Candles in each window, e.g. 60
+     * @param out Receives the change over the window ending at each candle, in percent
+     */
+    public static void percentChange(double[] open, double[] close, int window, double[] out)
+    {
+        if (SIMD)
+        {
+            VectorCandleKernels.percentChange(open, close, window, out);
+        }
+        else
+        {
+            scalarPercentChange(open, close, window, out);
+        }
+    }
+
+    /**
+     * Percent change between closes a fixed number of candles apart, for price paths with no separate opens.
+     *
+     * @param close Close of each candle
+     * @param lag Candles between the two closes, e.g. 60
+     * @param out Receives the change to each close from the close {@code lag} before it, in percent
+     */
+    public static void percentChange(double[] close, int lag, double[] out)
+    {
+        if (SIMD)
+        {
+            VectorCandleKernels.percentChange(close, lag, out);
+        }
+        else
+        {
+            scalarPercentChange(close, lag, out);
+        }
+    }
+
+    /**
+     * @param close Close of each candle
+     * @param out Receives each candle's return on the close before it, as a fraction
+     */
+    public static void returns(double[] close, double[] out)
+    {
+        if (SIMD)
+        {
+            VectorCandleKernels.returns(close, out);
+        }
+        else
+        {
+            scalarReturns(close, out);
+        }
+    }
+
+    /**
+     * @param values E.g. the low of each candle
+     * @param window Candles in each window
+     * @param out Receives the lowest value in the window ending at each candle
+     */
+    public static void rollingMin(double[] values, int window, double[] out)
+    {
+        rollingExtreme(values, window, out, true, SIMD);
+    }
+
+    /**
+     * @param values E.g. the high of each candle
+     * @param window Candles in each window
+     * @param out Receives the highest value in the window ending at each candle
+     */
+    public static void rollingMax(double[] values, int window, double[] out)
+    {
+        rollingExtreme(values, window, out, false, SIMD);
+    }
+
+    /**
+     * Classifies percent changes as {@code getMarketState} does, except that NaN is {@code UNKNOWN}.
+     *
+     * @param percent Percent changes
+     * @param out Receives the ordinal of each change's {@link AetherTrader.MarketState}; see {@link #STATES}
+     */
+    public static void classify(double[] percent, byte[] out)
+    {
+        // Always scalar: narrowing a vector of doubles to bytes is not intrinsified on JDK 17 and allocates per lane
+        scalarClassify(percent, out);
+    }
+
+    static void scalarPercentChange(double[] open, double[] close, int window, double[] out)
+    {
+        int n = Math.min(close.length, out.length);
+        int head = Math.min(window - 1, n);
+        fillNaN(out, head);
+        for (int i = head; i < n; i++)
+        {
+            double first = open[i - window + 1];
+            out[i] = ((close[i] - first) / first) * 100;
+        }
+    }
+
+    static void scalarPercentChange(double[] close, int lag, double[] out)
+    {
+        int n = Math.min(close.length, out.length);
+        int head = Math.min(lag, n);
+        fillNaN(out, head);
+        for (int i = head; i < n; i++)
+        {
+            double first = close[i - lag];
+            out[i] = ((close[i] - first) / first) * 100;
+        }
+    }
+
+    static void scalarReturns(double[] close, double[] out)
+    {
+        int n = Math.min(close.length, out.length);
+        int head = Math.min(1, n);
+        fillNaN(out, head);
+        for (int i = head; i < n; i++)
+        {
+            out[i] = (close[i] - close[i - 1]) / close[i - 1];
+        }
+    }
+
+    static void scalarClassify(double[] percent, byte[] out)
+    {
+        int n = Math.min(percent.length, out.length);
+        for (int i = 0; i < n; i++)
+        {
+            out[i] = classify(percent[i]);
+        }
+    }
+
+    /**
+     * The thresholds of {@code getMarketState}, with NaN as {@code UNKNOWN}.
+     */
+    private static byte classify(double p)
+    {
+        if (p != p)
+        {
+            return UNKNOWN;
+        }
+        if (p >= 0.2)
+        {
+            return p >= 5 ? VOLATILE_UP : p >= 1.5 ? UUP : UP;
+        }
+        if (p <= -0.2)
+        {
+            return p <= -5 ? VOLATILE_DW : p <= -1.5 ? DDW : DW;
+        }
+        return FLAT;
+    }
+
+    /**
+     * The van Herk/Gil-Werman rolling extreme. The values are split into blocks of one window, and each block is
+     * scanned forwards into {@code out} and backwards into a scratch array of one window. A window straddling two
+     * blocks then takes the extreme of the earlier block's backward scan at its start and the later block's forward
+     * scan at its end, a combine that is worth vectorising; the scans themselves are inherently sequential.
+     *
+     * @param vector True to combine with {@link VectorCandleKernels}
+     */
+    static void rollingExtreme(double[] values, int window, double[] out, boolean min, boolean vector)
+    {
+        int n = Math.min(values.length, out.length);
+        double[] suffix = new double[Math.min(window, n)];
+        for (int start = 0; start < n; start += window)
+        {
+            int end = Math.min(start + window, n);
+            double run = values[start];
+            out[start] = run;
+            for (int i = start + 1; i < end; i++)
+            {
+                run = min ? Math.min(run, values[i]) : Math.max(run, values[i]);
+                out[i] = run;
+            }
+
+            // The window ending at i starts at offset i - start + 1 of the previous block, until it is this block
+            if (start > 0)
+            {
+                int count = Math.min(end, start + window - 1) - start;
+                if (vector)
+                {
+                    VectorCandleKernels.combine(suffix, out, start, count, min);
+                }
+                else
+                {
+                    for (int k = 0; k < count; k++)
+                    {
+                        out[start + k] = min ? Math.min(suffix[k + 1], out[start + k]) : Math.max(suffix[k + 1], out[start + k]);
+                    }
+                }
+            }
+
+            run = values[end - 1];
+            suffix[end - 1 - start] = run;
+            for (int i = end - 2; i >= start; i--)
+            {
+                run = min ? Math.min(run, values[i]) : Math.max(run, values[i]);
+                suffix[i - start] = run;
+            }
+        }
+        fillNaN(out, Math.min(window - 1, n));
+    }
+
+    static void fillNaN(double[] out, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            out[i] = Double.NaN;
+        }
+    }
+}
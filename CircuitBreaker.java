@@ -0,0 +1,141 @@
+/**
+ * Stops requests being sent to an exchange that is clearly degraded, so that callers fail at once instead of each
+ * waiting out a timeout. The breaker watches the outcome of recent requests; when at least half of the last
+ * {@code window} (and no fewer than {@code minCalls}) failed, it opens and rejects every request for a cool-down
+ * period. After that it lets a single probe request through: if the probe succeeds the breaker closes again, and if it
+ * fails the breaker stays open for another period.
+ *
+ * A failure is a timeout, a connection failure or a server error; a response of any other status means the exchange
+ * is answering. The state is exported as {@code aether_api_circuit_state} (0 closed, 1 open, 2 half open) and
+ * rejected requests are counted in {@code aether_api_circuit_rejections_total}.
+ */
+public class CircuitBreaker
+{
+    public enum State
+    {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final boolean[] outcomes;
+    private final int minCalls;
+    private final long openNanos;
+    private int next;
+    private int calls;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+
+    /**
+     * @param window Number of recent requests whose outcome is kept
+     * @param minCalls Requests that must have been seen before the breaker can open
+     * @param openMs How long the breaker stays open before letting a probe through, in milliseconds
+     */
+    public CircuitBreaker(int window, int minCalls, long openMs)
+    {
+        this.outcomes = new boolean[window];
+        this.minCalls = minCalls;
+        this.openNanos = openMs * 1000000;
+    }
+
+    /**
+     * Exports the breaker's state, labelled with its name.
+     *
+     * @param name Name of what the breaker guards, e.g. "bitstamp"
+     * @return This breaker
+     */
+    public CircuitBreaker export(String name)
+    {
+        Metrics.gauge("aether_api_circuit_state", () -> getState().ordinal(), "breaker", name);
+        return this;
+    }
+
+    /**
+     * Asks to send a request. A caller given permission must report the request's outcome with {@link #onSuccess()}
+     * or {@link #onFailure()}.
+     *
+     * @return True if the request may be sent, false if it should fail at once
+     */
+    public synchronized boolean allow()
+    {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos)
+        {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.CLOSED || (state == State.HALF_OPEN && !probing))
+        {
+            probing = state == State.HALF_OPEN;
+            return true;
+        }
+        Metrics.counter("aether_api_circuit_rejections_total").increment();
+        return false;
+    }
+
+    public synchronized void onSuccess()
+    {
+        if (state == State.HALF_OPEN)
+        {
+            state = State.CLOSED;
+            reset();
+        }
+        else if (state == State.CLOSED)
+        {
+            add(false);
+        }
+    }
+
+    public synchronized void onFailure()
+    {
+        if (state == State.HALF_OPEN)
+        {
+            open();
+        }
+        else if (state == State.CLOSED)
+        {
+            add(true);
+            if (calls >= minCalls && failures * 2 >= calls)
+            {
+                open();
+            }
+        }
+    }
+
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    private void add(boolean failed)
+    {
+        if (calls == outcomes.length)
+        {
+            failures -= outcomes[next] ? 1 : 0;
+        }
+        else
+        {
+            calls++;
+        }
+        outcomes[next] = failed;
+        failures += failed ? 1 : 0;
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open()
+    {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        probing = false;
+        reset();
+        System.out.println("[API Connection]: Exchange degraded, failing requests fast for " + openNanos / 1000000 + "ms");
+    }
+
+    private void reset()
+    {
+        next = 0;
+        calls = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,9 @@
+public class CircuitOpenException extends Exception
+{
+    private static final long serialVersionUID = 3094865721370529468L;
+
+    public CircuitOpenException()
+    {
+        super("Exchange degraded, request not sent.");
+    }
+}
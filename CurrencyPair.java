@@ -0,0 +1,162 @@
+import java.util.Locale;
+
+/**
+ * A currency pair traded on Bitstamp, e.g. BTC/EUR, from which the pair's endpoints, WebSocket channels and balance
+ * keys are built. Pairs are compared by value, so they can be used as map keys.
+ */
+public final class CurrencyPair
+{
+    public static final CurrencyPair BTCEUR = new CurrencyPair("btc", "eur");
+
+    // Quote currencies Bitstamp lists pairs in, longest first so "usdt" is not taken for "usd"
+    private static final String[] QUOTES = {"usdt", "usdc", "eur", "usd", "gbp", "btc", "eth", "pax"};
+
+    private final String base;
+    private final String quote;
+    private final String symbol;
+    private final int quoteDecimals;
+
+    private CurrencyPair(String base, String quote)
+    {
+        this.base = base;
+        this.quote = quote;
+        this.symbol = base + quote;
+        // Crypto quotes are kept to the satoshi, fiat and stablecoins to the cent
+        this.quoteDecimals = quote.equals("btc") || quote.equals("eth") ? 8 : 2;
+    }
+
+    /**
+     * @param base Base currency, e.g. "btc"
+     * @param quote Quote currency, e.g. "eur"
+     * @return The pair
+     */
+    public static CurrencyPair of(String base, String quote)
+    {
+        return new CurrencyPair(base.toLowerCase(Locale.ROOT), quote.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Parses a pair written as Bitstamp's symbol ("btceur") or with a separator ("BTC/EUR", "btc-eur", "btc_eur").
+     *
+     * @param text The pair
+     * @return The pair
+     * @throws IllegalArgumentException if the pair cannot be split into base and quote currencies
+     */
+    public static CurrencyPair parse(String text)
+    {
+        String s = text.trim().toLowerCase(Locale.ROOT);
+        for (char separator : new char[] {'/', '-', '_'})
+        {
+            int i = s.indexOf(separator);
+            if (i > 0 && i < s.length() - 1)
+            {
+                return of(s.substring(0, i), s.substring(i + 1));
+            }
+        }
+        for (String quote : QUOTES)
+        {
+            if (s.length() > quote.length() && s.endsWith(quote))
+            {
+                return of(s.substring(0, s.length() - quote.length()), quote);
+            }
+        }
+        throw new IllegalArgumentException("Unrecognised currency pair: " + text);
+    }
+
+    public String getBase()
+    {
+        return base;
+    }
+
+    public String getQuote()
+    {
+        return quote;
+    }
+
+    /**
+     * @return Decimal places amounts of the quote currency are kept to: 2 for fiat and stablecoins, 8 for BTC and ETH
+     */
+    public int getQuoteDecimals()
+    {
+        return quoteDecimals;
+    }
+
+    /**
+     * @param value Amount of the quote currency
+     * @return The amount to the quote currency's precision with its code, e.g. "29000.00 EUR"
+     */
+    public String formatQuote(double value)
+    {
+        return String.format(Locale.ROOT, "%." + quoteDecimals + "f %s", value, quote.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @return The pair as Bitstamp writes it in endpoints and channels, e.g. "btceur"
+     */
+    public String getSymbol()
+    {
+        return symbol;
+    }
+
+    /**
+     * @param endpoint Endpoint the pair is appended to, e.g. "/api/v2/ticker/"
+     * @return The endpoint for this pair, e.g. "/api/v2/ticker/btceur"
+     */
+    public String endpoint(String endpoint)
+    {
+        return endpoint + symbol;
+    }
+
+    /**
+     * @param channel Channel name the pair is appended to, e.g. "live_trades_"
+     * @return The channel for this pair, e.g. "live_trades_btceur"
+     */
+    public String channel(String channel)
+    {
+        return channel + symbol;
+    }
+
+    /**
+     * @param field Balance field, e.g. "available"
+     * @return The base currency's key for the field in balances, e.g. "btc_available"
+     */
+    public String baseKey(String field)
+    {
+        return base + "_" + field;
+    }
+
+    /**
+     * @param field Balance field, e.g. "balance"
+     * @return The quote currency's key for the field in balances, e.g. "eur_balance"
+     */
+    public String quoteKey(String field)
+    {
+        return quote + "_" + field;
+    }
+
+    /**
+     * @return The pair's trading fee key in balances, e.g. "btceur_fee"
+     */
+    public String feeKey()
+    {
+        return symbol + "_fee";
+    }
+
+    public boolean equals(Object o)
+    {
+        return o instanceof CurrencyPair && ((CurrencyPair)o).symbol.equals(symbol) && ((CurrencyPair)o).base.equals(base);
+    }
+
+    public int hashCode()
+    {
+        return symbol.hashCode();
+    }
+
+    /**
+     * @return The pair as "BTC/EUR"
+     */
+    public String toString()
+    {
+        return base.toUpperCase(Locale.ROOT) + "/" + quote.toUpperCase(Locale.ROOT);
+    }
+}
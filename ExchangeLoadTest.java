@@ -0,0 +1,141 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load tests the real client code ({@link BitstampAPIConnection}, including signing and signature checks) against a
+ * {@link MockBitstampServer}, either in-process or over HTTP on the loopback interface. Each worker thread alternates
+ * public ticker requests and private balance requests as fast as it can.
+ *
+ * A fraction of requests can be made to stall ({@code slowRate}, {@code slowMs}) to compare the tail latency of public
+ * requests with and without hedging; stalls only end in a timeout or a hedge over HTTP. The connection has its own
+ * {@link CircuitBreaker}, so a high error rate shows requests being failed fast.
+ *
+ * Usage: {@code java ExchangeLoadTest [threads] [seconds] [inproc|http] [latencyMs] [errorRate] [slowRate] [slowMs] [hedge]}
+ */
+public class ExchangeLoadTest
+{
+    public static void main(String[] args) throws Exception
+    {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        boolean http = args.length > 2 && args[2].equals("http");
+        long latencyMs = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        double slowRate = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+        long slowMs = args.length > 6 ? Long.parseLong(args[6]) : 1000;
+        boolean hedge = args.length > 7 && args[7].equals("hedge");
+
+        MockBitstampServer mock = new MockBitstampServer("loadkey", "loadsecret", 42);
+        mock.setLatency(latencyMs, latencyMs / 2);
+        mock.setErrorRate(errorRate);
+        mock.setSlowResponses(slowRate, slowMs);
+        ExchangeTransport transport = mock;
+        if (http)
+        {
+            transport = new HttpClientTransport(mock.start(0));
+        }
+        BitstampAPIConnection conn = BitstampAPIConnection.withKeys(transport, "loadkey", "loadsecret");
+        conn.setCircuitBreaker(new CircuitBreaker(20, 10, 1000));
+        conn.setHedging(hedge);
+
+        AtomicLong failures = new AtomicLong();
+        long end = System.nanoTime() + seconds * 1000000000L;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<long[][]>> results = new ArrayList<Future<long[][]>>();
+        for (int t = 0; t < threads; t++)
+        {
+            results.add(pool.submit(() ->
+            {
+                // Public and private request latencies
+                long[][] latencies = {new long[1 << 16], new long[1 << 16]};
+                int[] n = new int[2];
+                for (int i = 0; System.nanoTime() < end; i++)
+                {
+                    long t0 = System.nanoTime();
+                    try
+                    {
+                        if (i % 2 == 0)
+                        {
+                            conn.sendPublicRequest("/api/v2/ticker/btceur");
+                        }
+                        else
+                        {
+                            conn.sendPrivateRequest("/api/v2/balance/");
+                        }
+                    }
+                    catch (RuntimeException e)
+                    {
+                        failures.incrementAndGet();
+                    }
+                    int kind = i % 2;
+                    if (n[kind] == latencies[kind].length)
+                    {
+                        latencies[kind] = Arrays.copyOf(latencies[kind], n[kind] * 2);
+                    }
+                    latencies[kind][n[kind]++] = System.nanoTime() - t0;
+                }
+                return new long[][] {Arrays.copyOf(latencies[0], n[0]), Arrays.copyOf(latencies[1], n[1])};
+            }));
+        }
+
+        long[] all = new long[0];
+        long[] publicOnly = new long[0];
+        for (Future<long[][]> result : results)
+        {
+            long[][] latencies = result.get();
+            publicOnly = concat(publicOnly, latencies[0]);
+            all = concat(all, concat(latencies[0], latencies[1]));
+        }
+        pool.shutdown();
+        mock.stop();
+
+        Arrays.sort(all);
+        Arrays.sort(publicOnly);
+        System.out.println(String.format("%d requests (%d failed after retries) in %ds over %s with %d threads: %.0f req/s",
+            all.length, failures.get(), seconds, http ? "loopback HTTP" : "in-process", threads, all.length / (double)seconds));
+        System.out.println("Latency:        " + percentiles(all));
+        System.out.println("Public latency: " + percentiles(publicOnly));
+        System.out.println(String.format("Timeouts %.0f, hedges won %.0f, lost %.0f, denied %.0f, failed fast %.0f",
+            metric("aether_api_retries_total", "reason=\"timeout\"") + metric("aether_api_errors_total", "reason=\"timeout\""),
+            metric("aether_api_hedges_total", "result=\"won\""), metric("aether_api_hedges_total", "result=\"lost\""),
+            metric("aether_api_hedges_total", "result=\"denied\""), metric("aether_api_circuit_rejections_total", "")));
+    }
+
+    private static String percentiles(long[] sorted)
+    {
+        if (sorted.length == 0)
+        {
+            return "no requests";
+        }
+        return String.format("p50 %.1fus, p99 %.1fus, p99.9 %.1fus, max %.1fus", sorted[sorted.length / 2] / 1e3,
+            sorted[(int)(sorted.length * 0.99)] / 1e3, sorted[(int)(sorted.length * 0.999)] / 1e3, sorted[sorted.length - 1] / 1e3);
+    }
+
+    private static long[] concat(long[] a, long[] b)
+    {
+        long[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    /**
+     * @return The sum of an exported counter over every series whose labels contain the given text
+     */
+    private static double metric(String name, String label)
+    {
+        double sum = 0;
+        for (String line : Metrics.toPrometheus().split("\n"))
+        {
+            if (line.startsWith(name + "{") && line.contains(label) || line.startsWith(name + " "))
+            {
+                sum += Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single request to the exchange, independent of how it is transported.
+ */
+public class ExchangeRequest
+{
+    private final String method;
+    private final String path;
+    private final Map<String, String> headers;
+    private final String body;
+
+    /**
+     * @param method HTTP verb, "GET" or "POST"
+     * @param path Path of the endpoint, including any query string
+     * @param headers Request headers
+     * @param body Request body, or null for none
+     */
+    public ExchangeRequest(String method, String path, Map<String, String> headers, String body)
+    {
+        this.method = method;
+        this.path = path;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<String, String>(headers));
+        this.body = body;
+    }
+
+    public String getMethod()
+    {
+        return method;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * @return The path without any query string
+     */
+    public String getEndpoint()
+    {
+        int query = path.indexOf('?');
+        return query == -1 ? path : path.substring(0, query);
+    }
+
+    public Map<String, String> getHeaders()
+    {
+        return headers;
+    }
+
+    public String getHeader(String name)
+    {
+        return headers.get(name);
+    }
+
+    public String getBody()
+    {
+        return body;
+    }
+}
@@ -0,0 +1,134 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A response from the exchange. Header names are case-insensitive.
+ *
+ * The body is held either as a string or, when read off the network, as UTF-8 bytes in a buffer that may belong to a
+ * {@link BufferPool}. Bytes can be decoded straight from {@link #getBodyBytes()}; {@link #getBody()} only builds a
+ * string when first asked for one. A pooled body is given back with {@link #release()}, after which its bytes must
+ * not be read.
+ */
+public class ExchangeResponse
+{
+    private final int status;
+    private final Map<String, String> headers;
+    private String body;
+    private ByteBuffer bytes;
+    private final long wireLength;
+    private BufferPool pool;
+    private boolean released;
+
+    /**
+     * @param status HTTP status code
+     * @param headers Response headers, first value of each only
+     * @param body Response body
+     */
+    public ExchangeResponse(int status, Map<String, String> headers, String body)
+    {
+        this(status, headers, body, null, -1, null);
+    }
+
+    /**
+     * @param status HTTP status code
+     * @param headers Response headers, first value of each only
+     * @param bytes Response body in UTF-8, between the buffer's position and limit
+     * @param wireLength Bytes of body received, before any decompression
+     * @param pool Pool to give the buffer back to on {@link #release()}, or null if it is not pooled
+     */
+    public ExchangeResponse(int status, Map<String, String> headers, ByteBuffer bytes, long wireLength, BufferPool pool)
+    {
+        this(status, headers, null, bytes, wireLength, pool);
+    }
+
+    private ExchangeResponse(int status, Map<String, String> headers, String body, ByteBuffer bytes, long wireLength, BufferPool pool)
+    {
+        TreeMap<String, String> h = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        h.putAll(headers);
+        this.status = status;
+        this.headers = Collections.unmodifiableMap(h);
+        this.body = body;
+        this.bytes = bytes;
+        this.wireLength = wireLength;
+        this.pool = pool;
+    }
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+    public Map<String, String> getHeaders()
+    {
+        return headers;
+    }
+
+    /**
+     * @param name Header name, any case
+     * @return The header's value, or null if not present
+     */
+    public String getHeader(String name)
+    {
+        return headers.get(name);
+    }
+
+    public synchronized String getBody()
+    {
+        if (body == null && bytes != null)
+        {
+            body = new String(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), StandardCharsets.UTF_8);
+        }
+        else if (body == null && released)
+        {
+            throw new IllegalStateException("Response body already released");
+        }
+        return body;
+    }
+
+    /**
+     * @return A read-only view of the body's UTF-8 bytes, valid until {@link #release()}
+     */
+    public synchronized ByteBuffer getBodyBytes()
+    {
+        if (bytes == null)
+        {
+            bytes = ByteBuffer.wrap(getBody() == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return Length of the body in bytes, once decompressed
+     */
+    public synchronized long getBodyLength()
+    {
+        return getBodyBytes().remaining();
+    }
+
+    /**
+     * @return Bytes of body received over the network before decompression, or -1 if the response did not come over
+     * the network
+     */
+    public long getWireLength()
+    {
+        return wireLength;
+    }
+
+    /**
+     * Gives a pooled body's buffer back to its pool. A body already decoded with {@link #getBody()} stays readable.
+     * Does nothing if the body is not pooled or was already released.
+     */
+    public synchronized void release()
+    {
+        if (pool != null)
+        {
+            pool.release(bytes);
+            pool = null;
+            bytes = null;
+            released = true;
+        }
+    }
+}
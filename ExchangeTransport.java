@@ -0,0 +1,48 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries requests to the exchange and brings back its responses. {@link BitstampAPIConnection} builds and signs
+ * requests; a transport only moves them, so the real HTTP client can be swapped for a recording, a replay or a mock.
+ */
+public interface ExchangeTransport
+{
+    /**
+     * Sends a request and waits for the response.
+     * 
+     * @param request The request to send
+     * @return The exchange's response, whatever its status code
+     * @throws IOException if the request could not be sent or no response was received
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    ExchangeResponse send(ExchangeRequest request) throws IOException, InterruptedException;
+
+    /**
+     * Sends a request without waiting for the response, so the caller can give up on it or race it against a second
+     * copy. Cancelling the future abandons the request where the transport supports it.
+     *
+     * The default sends the request synchronously on the calling thread and returns a future that is already
+     * complete, so transports that do not override it are never timed out or hedged.
+     *
+     * @param request The request to send
+     * @return The exchange's response, or an {@code IOException} if none was received
+     */
+    default CompletableFuture<ExchangeResponse> sendAsync(ExchangeRequest request)
+    {
+        CompletableFuture<ExchangeResponse> result = new CompletableFuture<ExchangeResponse>();
+        try
+        {
+            result.complete(send(request));
+        }
+        catch (IOException e)
+        {
+            result.completeExceptionally(e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Downloads OHLC history into a {@link CandleArchive}. The stretches of a time range missing from the archive are
+ * split into pages of at most {@link CandleArchive#PAGE_SIZE} candles, which are fetched concurrently and written to
+ * the archive in time order as they arrive, so only the pages in flight are ever held in memory.
+ *
+ * Because only what is missing is fetched, a download that is interrupted, or whose pages failed, resumes where it
+ * left off when run again over the same range. Overlapping candles are stored once. Each page is checked for holes,
+ * and whatever is still missing from the range at the end is reported as gaps.
+ *
+ * Every page takes a permit from the downloader's own {@link RateLimiter}, if it has one, as well as from the
+ * connection's, so a long download can be held to a share of the account's request budget.
+ */
+public class HistoryDownloader
+{
+    /**
+     * Receives a download's progress.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * @param pagesDone Pages fetched or failed so far
+         * @param pages Pages in the download
+         * @param candles Candles added to the archive so far
+         * @param candlesPerSecond Candles added per second since the download started
+         */
+        void onProgress(int pagesDone, int pages, long candles, double candlesPerSecond);
+    }
+
+    private final BitstampAPIConnection conn;
+    private final CandleArchive archive;
+    private final int threads;
+    private final RateLimiter budget;
+    private final LongAdder candlesAdded;
+    private final LongAdder pagesFetched;
+    private final LongAdder pagesFailed;
+    private ProgressListener listener;
+    private long progressIntervalMs = 1000;
+
+    /**
+     * @param conn Connection to fetch pages with
+     * @param archive Archive to download into, which sets the pair and timeframe
+     * @param threads Number of pages to fetch at once
+     * @param budget Limiter each page also takes a permit from, or null to draw on the connection's alone
+     */
+    public HistoryDownloader(BitstampAPIConnection conn, CandleArchive archive, int threads, RateLimiter budget)
+    {
+        this.conn = conn;
+        this.archive = archive;
+        this.threads = Math.max(1, threads);
+        this.budget = budget;
+
+        String pair = archive.getPair().getSymbol();
+        candlesAdded = Metrics.counter("aether_history_candles_total", "pair", pair);
+        pagesFetched = Metrics.counter("aether_history_pages_total", "pair", pair, "result", "ok");
+        pagesFailed = Metrics.counter("aether_history_pages_total", "pair", pair, "result", "failed");
+    }
+
+    /**
+     * Sets a listener to be told of the download's progress, at most once per interval and once at the end.
+     *
+     * @param listener The listener, or null for none
+     * @param intervalMs Minimum time between reports, in milliseconds
+     */
+    public void setProgressListener(ProgressListener listener, long intervalMs)
+    {
+        this.listener = listener;
+        this.progressIntervalMs = intervalMs;
+    }
+
+    /**
+     * Downloads any candles in {@code [from, to)} missing from the archive. If the calling thread is interrupted,
+     * pages not yet written are abandoned and the result covers what was.
+     *
+     * @param from Unix timestamp (seconds), inclusive
+     * @param to Unix timestamp (seconds), exclusive
+     * @return What was downloaded
+     */
+    public Result download(long from, long to)
+    {
+        long start = System.nanoTime();
+        List<long[]> pages = pages(archive.findGaps(from, to));
+        int window = threads * 2;
+        long added = 0;
+        int done = 0;
+        int failed = 0;
+        int holes = 0;
+        long lastReport = start;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, pages.size())));
+        ArrayDeque<Future<JSONArray>> inFlight = new ArrayDeque<Future<JSONArray>>();
+        try
+        {
+            int next = 0;
+            while (done < pages.size())
+            {
+                // Keep a bounded window of pages in flight, and write them in the order they were asked for
+                while (next < pages.size() && inFlight.size() < window)
+                {
+                    long[] request = pages.get(next++);
+                    inFlight.add(pool.submit(() -> fetch(request[0], (int)request[1])));
+                }
+                long[] page = pages.get(done);
+                try
+                {
+                    JSONArray ohlc = inFlight.remove().get();
+                    holes += countHoles(ohlc, page[0], (int)page[1]);
+                    int inserted = archive.insert(ohlc);
+                    added += inserted;
+                    candlesAdded.add(inserted);
+                    pagesFetched.increment();
+                }
+                catch (ExecutionException e)
+                {
+                    failed++;
+                    pagesFailed.increment();
+                    System.out.println(String.format("[History]: Page at %s failed: %s", Instant.ofEpochSecond(page[0]), e.getCause()));
+                }
+                done++;
+
+                long now = System.nanoTime();
+                if (listener != null && (done == pages.size() || now - lastReport >= progressIntervalMs * 1000000))
+                {
+                    listener.onProgress(done, pages.size(), added, perSecond(added, now - start));
+                    lastReport = now;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            for (Future<JSONArray> future : inFlight)
+            {
+                future.cancel(true);
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+            archive.force();
+        }
+        return new Result(pages.size(), done - failed, failed, added, holes, archive.findGaps(from, to), System.nanoTime() - start);
+    }
+
+    /**
+     * Splits gaps into pages of at most {@link CandleArchive#PAGE_SIZE} candles, oldest first.
+     *
+     * @return Pages as {@code {start, limit}}
+     */
+    private List<long[]> pages(List<long[]> gaps)
+    {
+        int step = archive.getStep();
+        List<long[]> pages = new ArrayList<long[]>();
+        for (long[] gap : gaps)
+        {
+            for (long start = gap[0]; start <= gap[1]; start += (long)CandleArchive.PAGE_SIZE * step)
+            {
+                pages.add(new long[] {start, Math.min(CandleArchive.PAGE_SIZE, (gap[1] - start) / step + 1)});
+            }
+        }
+        pages.sort((a, b) -> Long.compare(a[0], b[0]));
+        return pages;
+    }
+
+    private JSONArray fetch(long start, int limit)
+    {
+        if (budget != null)
+        {
+            budget.acquire();
+        }
+        String[] params = new String[]
+        {
+            "step=" + archive.getStep(),
+            "limit=" + limit,
+            "start=" + start
+        };
+        JSONObject response = conn.sendPublicRequest(archive.getPair().endpoint("/api/v2/ohlc/") + "/", params, BitstampAPIConnection.JSON);
+        if (response.has("code"))
+        {
+            throw new IllegalStateException(response.opt("errors") + "");
+        }
+        return response.getJSONObject("data").getJSONArray("ohlc");
+    }
+
+    /**
+     * @return The number of candles missing between the first and last candle of a page which came back in order
+     * and in range, or of the whole page if it came back empty
+     */
+    private int countHoles(JSONArray ohlc, long start, int limit)
+    {
+        if (ohlc.length() == 0)
+        {
+            return limit;
+        }
+        int step = archive.getStep();
+        long first = ohlc.getJSONObject(0).getLong("timestamp");
+        long last = ohlc.getJSONObject(ohlc.length() - 1).getLong("timestamp");
+        long expected = (last - first) / step + 1;
+        return first < start || last < first ? 0 : (int)Math.max(0, expected - ohlc.length());
+    }
+
+    private static double perSecond(long candles, long nanos)
+    {
+        return nanos > 0 ? candles * 1e9 / nanos : 0;
+    }
+
+    /**
+     * What one download fetched and stored.
+     */
+    public static class Result
+    {
+        private final int pages;
+        private final int fetched;
+        private final int failed;
+        private final long candles;
+        private final int holes;
+        private final List<long[]> gaps;
+        private final long nanos;
+
+        Result(int pages, int fetched, int failed, long candles, int holes, List<long[]> gaps, long nanos)
+        {
+            this.pages = pages;
+            this.fetched = fetched;
+            this.failed = failed;
+            this.candles = candles;
+            this.holes = holes;
+            this.gaps = gaps;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return Pages the missing history was split into
+         */
+        public int getPages()
+        {
+            return pages;
+        }
+
+        /**
+         * @return Pages fetched and written to the archive
+         */
+        public int getFetched()
+        {
+            return fetched;
+        }
+
+        /**
+         * @return Pages whose request failed, to be fetched again by the next download over the range
+         */
+        public int getFailed()
+        {
+            return failed;
+        }
+
+        /**
+         * @return Candles added to the archive
+         */
+        public long getCandles()
+        {
+            return candles;
+        }
+
+        /**
+         * @return Candles missing from inside the pages the exchange returned
+         */
+        public int getHoles()
+        {
+            return holes;
+        }
+
+        /**
+         * @return Stretches of the range still missing from the archive, as {@code {first, last}} candle timestamps
+         */
+        public List<long[]> getGaps()
+        {
+            return gaps;
+        }
+
+        public double getSeconds()
+        {
+            return nanos / 1e9;
+        }
+
+        public double getCandlesPerSecond()
+        {
+            return perSecond(candles, nanos);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d candles in %d/%d pages (%d failed) in %.1fs, %.0f candles/s, %d holes, %d gaps left", candles, fetched, pages, failed, getSeconds(), getCandlesPerSecond(), holes, gaps.size());
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        CurrencyPair pair = args.length > 0 ? CurrencyPair.parse(args[0]) : CurrencyPair.BTCEUR;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 365;
+        int step = Integer.getInteger("aether.history.step", 60);
+        int threads = Integer.getInteger("aether.history.threads", 4);
+        RateLimiter budget = new RateLimiter(Integer.getInteger("aether.history.requestBudget", 2000), 600000);
+
+        long to = Instant.now().getEpochSecond();
+        long from = to - days * 86400L;
+        try (CandleArchive archive = new CandleArchive(Paths.get(System.getProperty("aether.history.archive", "candles")), pair, step))
+        {
+            HistoryDownloader downloader = new HistoryDownloader(new BitstampAPIConnection(), archive, threads, budget);
+            downloader.setProgressListener((done, pages, candles, rate) -> System.out.println(String.format("[History]: %d/%d pages, %d candles, %.0f candles/s", done, pages, candles, rate)), 5000);
+            System.out.println(String.format("[History]: %s, %d days of %ds candles on %d threads", pair.getSymbol(), days, step, threads));
+            System.out.println("[History]: " + downloader.download(from, to));
+        }
+    }
+}
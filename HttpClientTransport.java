@@ -0,0 +1,354 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Sends requests to Bitstamp over HTTPS using a single, shared JDK {@code HttpClient}.
+ *
+ * Requests ask for gzip or deflate compressed responses (unless {@code -Daether.http.compression=false}), and bodies
+ * are decompressed as they arrive, straight into a buffer from the shared {@link BufferPool}, so a response is never
+ * held as a string unless a caller asks for one. Bytes received and bytes decoded are counted in
+ * {@code aether_api_body_bytes_total}.
+ */
+public class HttpClientTransport implements ExchangeTransport
+{
+    private static final boolean COMPRESSION = Boolean.parseBoolean(System.getProperty("aether.http.compression", "true"));
+    // A backstop only: BitstampAPIConnection gives up on a request well before this, by its adaptive timeout
+    private static final Duration TIMEOUT = Duration.ofMillis(Long.getLong("aether.api.timeoutMs", 10000) * 2);
+    private static final LongAdder wireBytes = Metrics.counter("aether_api_body_bytes_total", "stage", "wire");
+    private static final LongAdder decodedBytes = Metrics.counter("aether_api_body_bytes_total", "stage", "decoded");
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private final BufferPool pool = BufferPool.shared();
+
+    public HttpClientTransport()
+    {
+        this("https://www.bitstamp.net");
+    }
+
+    /**
+     * @param baseUrl Scheme, host and optional port requests are sent to, e.g. "https://www.bitstamp.net"
+     */
+    public HttpClientTransport(String baseUrl)
+    {
+        this.baseUrl = baseUrl;
+        // Plain HTTP is only used for local servers, which do not speak HTTP/2; skip the h2c upgrade attempt
+        this.client = baseUrl.startsWith("http://") ? HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build() : HttpClient.newHttpClient();
+    }
+
+    public ExchangeResponse send(ExchangeRequest request) throws IOException, InterruptedException
+    {
+        return client.send(toHttpRequest(request), info -> new PooledBodySubscriber(info, pool)).body();
+    }
+
+    @Override
+    public CompletableFuture<ExchangeResponse> sendAsync(ExchangeRequest request)
+    {
+        CompletableFuture<HttpResponse<ExchangeResponse>> sent = client.sendAsync(toHttpRequest(request), info -> new PooledBodySubscriber(info, pool));
+        CompletableFuture<ExchangeResponse> result = sent.thenApply(HttpResponse::body);
+        // Cancelling a dependent future does not reach the one it depends on, so pass the cancellation back
+        result.whenComplete((response, e) ->
+        {
+            if (result.isCancelled())
+            {
+                sent.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private HttpRequest toHttpRequest(ExchangeRequest request)
+    {
+        HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create(baseUrl + request.getPath())).timeout(TIMEOUT);
+        if (request.getMethod().equals("POST"))
+        {
+            builder.POST(HttpRequest.BodyPublishers.ofString(request.getBody() == null ? "" : request.getBody()));
+        }
+        else
+        {
+            builder.GET();
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+        {
+            builder.setHeader(header.getKey(), header.getValue());
+        }
+        if (COMPRESSION)
+        {
+            builder.setHeader("Accept-Encoding", "gzip, deflate");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Collects a response body into a pooled buffer, inflating it on the way in if it is compressed. The buffer grows
+     * by swapping it for the next size up from the pool.
+     */
+    static class PooledBodySubscriber implements HttpResponse.BodySubscriber<ExchangeResponse>
+    {
+        private static final int GZIP_MAGIC = 0x8b1f;
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+
+        private final HttpResponse.ResponseInfo info;
+        private final BufferPool pool;
+        private final CompletableFuture<ExchangeResponse> result = new CompletableFuture<ExchangeResponse>();
+        private final boolean gzip;
+        private final Inflater inflater;
+        private final CRC32 crc;
+        private ByteBuffer out;
+        private Flow.Subscription subscription;
+        private long wire;
+        // The gzip header and trailer, gathered until complete since they may be split across chunks
+        private ByteBuffer frame;
+        private boolean inBody;
+
+        PooledBodySubscriber(HttpResponse.ResponseInfo info, BufferPool pool)
+        {
+            this.info = info;
+            this.pool = pool;
+            String encoding = info.headers().firstValue("Content-Encoding").orElse("identity").trim().toLowerCase();
+            gzip = encoding.equals("gzip") || encoding.equals("x-gzip");
+            inflater = gzip ? new Inflater(true) : encoding.equals("deflate") ? new Inflater() : null;
+            crc = gzip ? new CRC32() : null;
+            frame = gzip ? ByteBuffer.allocate(256) : null;
+            inBody = !gzip;
+
+            long length = info.headers().firstValueAsLong("Content-Length").orElse(-1);
+            // A compressed body usually inflates to several times its length
+            int expected = length < 0 ? BufferPool.MIN_SIZE : (int)Math.min(Integer.MAX_VALUE / 8, inflater == null ? length : length * 8);
+            out = pool.acquire(Math.max(1, expected));
+        }
+
+        public CompletionStage<ExchangeResponse> getBody()
+        {
+            return result;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        public void onNext(List<ByteBuffer> items)
+        {
+            try
+            {
+                for (ByteBuffer item : items)
+                {
+                    wire += item.remaining();
+                    if (inflater == null)
+                    {
+                        ensureRemaining(item.remaining());
+                        out.put(item);
+                    }
+                    else
+                    {
+                        inflate(item);
+                    }
+                }
+            }
+            catch (IOException | DataFormatException | RuntimeException e)
+            {
+                subscription.cancel();
+                onError(e);
+            }
+        }
+
+        public void onError(Throwable throwable)
+        {
+            if (inflater != null)
+            {
+                inflater.end();
+            }
+            if (out != null)
+            {
+                pool.release(out);
+                out = null;
+            }
+            result.completeExceptionally(throwable instanceof IOException ? throwable : new IOException(throwable));
+        }
+
+        public void onComplete()
+        {
+            if (out == null)
+            {
+                return;
+            }
+            if (inflater != null)
+            {
+                boolean finished = inflater.finished();
+                inflater.end();
+                if (wire > 0 && (!finished || (gzip && !checkTrailer())))
+                {
+                    onError(new IOException("Truncated or corrupt " + (gzip ? "gzip" : "deflate") + " body"));
+                    return;
+                }
+            }
+            out.flip();
+            wireBytes.add(wire);
+            decodedBytes.add(out.remaining());
+            Map<String, String> headers = new LinkedHashMap<String, String>();
+            HttpHeaders h = info.headers();
+            for (Map.Entry<String, List<String>> header : h.map().entrySet())
+            {
+                // The body is handed on decompressed, so its encoding and length no longer apply
+                boolean stale = inflater != null && (header.getKey().equalsIgnoreCase("Content-Encoding") || header.getKey().equalsIgnoreCase("Content-Length"));
+                if (!stale && !header.getValue().isEmpty())
+                {
+                    headers.put(header.getKey(), header.getValue().get(0));
+                }
+            }
+            result.complete(new ExchangeResponse(info.statusCode(), headers, out, wire, pool));
+            out = null;
+        }
+
+        private void inflate(ByteBuffer item) throws IOException, DataFormatException
+        {
+            if (!inBody)
+            {
+                int headerLength = gatherHeader(item);
+                if (headerLength < 0)
+                {
+                    return;
+                }
+                // Whatever followed the header in the gathered bytes is the start of the deflate stream
+                frame.flip().position(headerLength);
+                ByteBuffer rest = ByteBuffer.allocate(frame.remaining()).put(frame).flip();
+                frame.clear();
+                inBody = true;
+                inflate(rest);
+                return;
+            }
+            if (inflater.finished())
+            {
+                if (gzip)
+                {
+                    gather(item);
+                }
+                return;
+            }
+            inflater.setInput(item);
+            while (!inflater.finished() && !inflater.needsInput())
+            {
+                ensureRemaining(1);
+                int start = out.position();
+                int n = inflater.inflate(out);
+                if (crc != null && n > 0)
+                {
+                    crc.update(out.array(), out.arrayOffset() + start, n);
+                }
+                if (n == 0 && inflater.needsDictionary())
+                {
+                    throw new DataFormatException("Preset dictionaries are not supported");
+                }
+            }
+            if (inflater.finished() && gzip)
+            {
+                gather(item);
+            }
+        }
+
+        /**
+         * Adds the bytes of a chunk to those gathered of the gzip header and checks if the header is complete.
+         *
+         * @return The length of the header, or -1 if more bytes are needed
+         */
+        private int gatherHeader(ByteBuffer item) throws IOException
+        {
+            gather(item);
+            ByteBuffer h = frame.duplicate().flip();
+            if (h.remaining() < 10)
+            {
+                return -1;
+            }
+            if ((h.get(0) & 0xff | (h.get(1) & 0xff) << 8) != GZIP_MAGIC || h.get(2) != 8)
+            {
+                throw new IOException("Not a gzip body");
+            }
+            int flags = h.get(3);
+            int at = 10;
+            if ((flags & FEXTRA) != 0)
+            {
+                if (h.remaining() < at + 2)
+                {
+                    return -1;
+                }
+                at += 2 + (h.get(at) & 0xff | (h.get(at + 1) & 0xff) << 8);
+            }
+            for (int flag : new int[] {FNAME, FCOMMENT})
+            {
+                if ((flags & flag) != 0)
+                {
+                    while (at < h.remaining() && h.get(at) != 0)
+                    {
+                        at++;
+                    }
+                    if (at++ >= h.remaining())
+                    {
+                        return -1;
+                    }
+                }
+            }
+            if ((flags & FHCRC) != 0)
+            {
+                at += 2;
+            }
+            return at <= h.remaining() ? at : -1;
+        }
+
+        private void gather(ByteBuffer item)
+        {
+            if (frame.remaining() < item.remaining())
+            {
+                frame = ByteBuffer.allocate(frame.position() + item.remaining() + 256).put(frame.flip());
+            }
+            frame.put(item);
+        }
+
+        /**
+         * @return True if the gzip trailer after the deflate stream matches the CRC-32 and length of what it inflated to
+         */
+        private boolean checkTrailer()
+        {
+            ByteBuffer t = frame.flip();
+            if (t.remaining() < 8)
+            {
+                return false;
+            }
+            long expectedCrc = (t.get(0) & 0xffL) | (t.get(1) & 0xffL) << 8 | (t.get(2) & 0xffL) << 16 | (t.get(3) & 0xffL) << 24;
+            long expectedSize = (t.get(4) & 0xffL) | (t.get(5) & 0xffL) << 8 | (t.get(6) & 0xffL) << 16 | (t.get(7) & 0xffL) << 24;
+            return expectedCrc == crc.getValue() && expectedSize == (out.position() & 0xffffffffL);
+        }
+
+        private void ensureRemaining(int needed)
+        {
+            if (out.remaining() >= needed)
+            {
+                return;
+            }
+            ByteBuffer bigger = pool.acquire(Math.max(out.capacity() * 2, out.position() + needed));
+            bigger.put(out.flip());
+            pool.release(out);
+            out = bigger;
+        }
+    }
+}
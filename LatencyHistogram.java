@@ -0,0 +1,158 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram in the style of HdrHistogram. Values are counted in log-linear buckets: 32 linear
+ * sub-buckets per power of two, which keeps every recorded value within ~3% of its bucket while covering 1ns to ~18
+ * minutes in under 9KB. Recording is a couple of atomic adds, so it is cheap enough to sit on every request and tick.
+ *
+ * Percentiles are read from a racy but consistent-enough snapshot of the counts; a value recorded concurrently with a
+ * read may or may not be included.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 39;
+    private static final long HIGHEST_TRACKABLE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds. Negative values are recorded as 0 and values over ~18 minutes are
+     * clamped.
+     */
+    public void record(long nanos)
+    {
+        long v = nanos < 0 ? 0 : Math.min(nanos, HIGHEST_TRACKABLE);
+        counts.incrementAndGet(bucketOf(v));
+        count.increment();
+        sum.add(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v))
+        {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}.
+     *
+     * @param startNanos A value previously returned by {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos)
+    {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return The number of values recorded
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * @return The sum of all values recorded, in nanoseconds
+     */
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    /**
+     * @return The largest value recorded, in nanoseconds
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * @return The mean of the values recorded, in nanoseconds, or 0 if none have been
+     */
+    public double getMean()
+    {
+        long n = count.sum();
+        return n == 0 ? 0 : (double)sum.sum() / n;
+    }
+
+    /**
+     * Gets the value at a percentile, as the upper bound of the bucket it falls in (never more than the maximum).
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return The value in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil((Math.min(percentile, 100) / 100) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += snapshot[i];
+            if (seen >= rank)
+            {
+                return Math.min(highestInBucket(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Values below {@code SUB_COUNT} get a bucket each. Above that, the top {@code SUB_BITS + 1} bits of the value
+     * pick the bucket, shifted along by one block of {@code SUB_COUNT} for every bit dropped.
+     */
+    static int bucketOf(long v)
+    {
+        if (v < SUB_COUNT)
+        {
+            return (int)v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int)(v >>> shift) - SUB_COUNT;
+    }
+
+    static long highestInBucket(int bucket)
+    {
+        if (bucket < SUB_COUNT)
+        {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long sub = (bucket % SUB_COUNT) + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
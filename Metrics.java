@@ -0,0 +1,305 @@
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of latency histograms, counters and gauges, exported in Prometheus text format (see
+ * {@link MetricsServer}) and over JMX as {@code aethertrader:type=Metrics}.
+ *
+ * Metrics are identified by a name and optional label pairs, e.g.
+ * {@code Metrics.histogram("aether_api_request_seconds", "endpoint", "/api/v2/ticker/btceur")}. Looking a metric up
+ * builds its key, so hot paths should look it up once and keep hold of it; recording to it afterwards is lock-free.
+ */
+public class Metrics
+{
+    /**
+     * Management interface exposing the registry over JMX. Latencies are given in milliseconds, keyed by metric.
+     */
+    public interface MetricsMXBean
+    {
+        Map<String, Long> getCounters();
+        Map<String, Double> getGauges();
+        Map<String, Long> getLatencyCounts();
+        Map<String, Double> getLatencyMeanMillis();
+        Map<String, Double> getLatencyP50Millis();
+        Map<String, Double> getLatencyP99Millis();
+        Map<String, Double> getLatencyMaxMillis();
+        String getPrometheusText();
+        void reset();
+    }
+
+    public static final String OBJECT_NAME = "aethertrader:type=Metrics";
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private static final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+    private static final ConcurrentHashMap<String, DoubleSupplier> gauges = new ConcurrentHashMap<String, DoubleSupplier>();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    // Keeps each family's series together, which plain key order would not if one name is a prefix of another
+    private static final Comparator<String> BY_FAMILY = Comparator.comparing(Metrics::nameOf).thenComparing(Comparator.naturalOrder());
+
+    private Metrics()
+    {
+    }
+
+    /**
+     * Gets or creates a latency histogram.
+     *
+     * @param name Metric name, e.g. "aether_tick_seconds"
+     * @param labels Label names and values, alternating
+     * @return The histogram
+     */
+    public static LatencyHistogram histogram(String name, String... labels)
+    {
+        return histograms.computeIfAbsent(key(name, labels), k -> new LatencyHistogram());
+    }
+
+    /**
+     * Gets or creates a counter.
+     *
+     * @param name Metric name, e.g. "aether_api_retries_total"
+     * @param labels Label names and values, alternating
+     * @return The counter
+     */
+    public static LongAdder counter(String name, String... labels)
+    {
+        return counters.computeIfAbsent(key(name, labels), k -> new LongAdder());
+    }
+
+    /**
+     * Registers a gauge, read each time metrics are exported. Registering a gauge under a key already in use replaces
+     * the old one.
+     *
+     * @param name Metric name, e.g. "aether_pnl_realized_eur"
+     * @param value Supplies the gauge's current value; must be cheap and thread safe
+     * @param labels Label names and values, alternating
+     */
+    public static void gauge(String name, DoubleSupplier value, String... labels)
+    {
+        gauges.put(key(name, labels), value);
+    }
+
+    /**
+     * Clears every metric, keeping the metrics themselves registered.
+     */
+    public static void reset()
+    {
+        for (LatencyHistogram h : histograms.values())
+        {
+            h.reset();
+        }
+        for (LongAdder c : counters.values())
+        {
+            c.reset();
+        }
+    }
+
+    /**
+     * Registers the registry with the platform MBean server, if it is not already.
+     */
+    public static void registerMBean()
+    {
+        try
+        {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+            {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), name);
+            }
+        }
+        catch (JMException e)
+        {
+            System.out.println("[Metrics]: Unable to register MBean. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes every metric in Prometheus text exposition format. Histograms are exported as summaries in seconds, with
+     * the 50th, 90th, 99th and 99.9th percentiles, plus a {@code _max} gauge.
+     *
+     * @return The exposition text
+     */
+    public static String toPrometheus()
+    {
+        StringBuilder out = new StringBuilder();
+        String family = null;
+        TreeMap<String, LongAdder> sortedCounters = new TreeMap<String, LongAdder>(BY_FAMILY);
+        sortedCounters.putAll(counters);
+        for (Map.Entry<String, LongAdder> e : sortedCounters.entrySet())
+        {
+            String name = nameOf(e.getKey());
+            if (!name.equals(family))
+            {
+                out.append("# TYPE ").append(name).append(" counter\n");
+                family = name;
+            }
+            out.append(e.getKey()).append(' ').append(e.getValue().sum()).append('\n');
+        }
+
+        TreeMap<String, DoubleSupplier> sortedGauges = new TreeMap<String, DoubleSupplier>(BY_FAMILY);
+        sortedGauges.putAll(gauges);
+        family = null;
+        for (Map.Entry<String, DoubleSupplier> e : sortedGauges.entrySet())
+        {
+            String name = nameOf(e.getKey());
+            if (!name.equals(family))
+            {
+                out.append("# TYPE ").append(name).append(" gauge\n");
+                family = name;
+            }
+            out.append(e.getKey()).append(' ').append(e.getValue().getAsDouble()).append('\n');
+        }
+
+        TreeMap<String, LatencyHistogram> sorted = new TreeMap<String, LatencyHistogram>(BY_FAMILY);
+        sorted.putAll(histograms);
+        family = null;
+        for (Map.Entry<String, LatencyHistogram> e : sorted.entrySet())
+        {
+            String name = nameOf(e.getKey());
+            String labels = labelsOf(e.getKey());
+            LatencyHistogram h = e.getValue();
+            if (!name.equals(family))
+            {
+                out.append("# TYPE ").append(name).append(" summary\n");
+                family = name;
+            }
+            for (double q : QUANTILES)
+            {
+                out.append(name).append('{').append(labels).append(labels.isEmpty() ? "" : ",");
+                out.append("quantile=\"").append(q).append("\"} ").append(seconds(h.getValueAtPercentile(q * 100))).append('\n');
+            }
+            out.append(name).append("_sum").append(labels.isEmpty() ? "" : "{" + labels + "}").append(' ').append(seconds(h.getSum())).append('\n');
+            out.append(name).append("_count").append(labels.isEmpty() ? "" : "{" + labels + "}").append(' ').append(h.getCount()).append('\n');
+        }
+        family = null;
+        for (Map.Entry<String, LatencyHistogram> e : sorted.entrySet())
+        {
+            String name = nameOf(e.getKey()) + "_max";
+            if (!name.equals(family))
+            {
+                out.append("# TYPE ").append(name).append(" gauge\n");
+                family = name;
+            }
+            String labels = labelsOf(e.getKey());
+            out.append(name).append(labels.isEmpty() ? "" : "{" + labels + "}").append(' ').append(seconds(e.getValue().getMax())).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Builds a metric key in Prometheus series form, e.g. {@code name{endpoint="/api/v2/ticker/btceur"}}.
+     */
+    private static String key(String name, String... labels)
+    {
+        if (labels.length == 0)
+        {
+            return name;
+        }
+        if (labels.length % 2 != 0)
+        {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder key = new StringBuilder(name).append('{');
+        for (int i = 0; i < labels.length; i += 2)
+        {
+            if (i > 0)
+            {
+                key.append(',');
+            }
+            key.append(labels[i]).append("=\"");
+            key.append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return key.append('}').toString();
+    }
+
+    private static String nameOf(String key)
+    {
+        int brace = key.indexOf('{');
+        return brace == -1 ? key : key.substring(0, brace);
+    }
+
+    private static String labelsOf(String key)
+    {
+        int brace = key.indexOf('{');
+        return brace == -1 ? "" : key.substring(brace + 1, key.length() - 1);
+    }
+
+    private static String seconds(long nanos)
+    {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static double millis(long nanos)
+    {
+        return nanos / 1e6;
+    }
+
+    private static class MBean implements MetricsMXBean
+    {
+        public Map<String, Long> getCounters()
+        {
+            Map<String, Long> values = new TreeMap<String, Long>();
+            counters.forEach((k, v) -> values.put(k, v.sum()));
+            return values;
+        }
+
+        public Map<String, Double> getGauges()
+        {
+            Map<String, Double> values = new TreeMap<String, Double>();
+            gauges.forEach((k, v) -> values.put(k, v.getAsDouble()));
+            return values;
+        }
+
+        public Map<String, Long> getLatencyCounts()
+        {
+            Map<String, Long> values = new TreeMap<String, Long>();
+            histograms.forEach((k, h) -> values.put(k, h.getCount()));
+            return values;
+        }
+
+        public Map<String, Double> getLatencyMeanMillis()
+        {
+            Map<String, Double> values = new TreeMap<String, Double>();
+            histograms.forEach((k, h) -> values.put(k, h.getMean() / 1e6));
+            return values;
+        }
+
+        public Map<String, Double> getLatencyP50Millis()
+        {
+            Map<String, Double> values = new TreeMap<String, Double>();
+            histograms.forEach((k, h) -> values.put(k, millis(h.getValueAtPercentile(50))));
+            return values;
+        }
+
+        public Map<String, Double> getLatencyP99Millis()
+        {
+            Map<String, Double> values = new TreeMap<String, Double>();
+            histograms.forEach((k, h) -> values.put(k, millis(h.getValueAtPercentile(99))));
+            return values;
+        }
+
+        public Map<String, Double> getLatencyMaxMillis()
+        {
+            Map<String, Double> values = new TreeMap<String, Double>();
+            histograms.forEach((k, h) -> values.put(k, millis(h.getMax())));
+            return values;
+        }
+
+        public String getPrometheusText()
+        {
+            return toPrometheus();
+        }
+
+        public void reset()
+        {
+            Metrics.reset();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves {@link Metrics} in Prometheus text format at {@code /metrics} on the loopback interface, for scraping or a
+ * quick look with curl.
+ */
+public class MetricsServer
+{
+    private HttpServer server;
+
+    /**
+     * Starts serving metrics.
+     *
+     * @param port Port to listen on, or 0 for any free port
+     * @return The URL metrics are served at
+     * @throws IOException if the server cannot be started
+     */
+    public String start(int port) throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handleExchange);
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/metrics";
+    }
+
+    /**
+     * Stops the server, if started.
+     */
+    public void stop()
+    {
+        if (server != null)
+        {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private void handleExchange(HttpExchange exchange) throws IOException
+    {
+        try (exchange)
+        {
+            if (!exchange.getRequestMethod().equals("GET"))
+            {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,658 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand-in for Bitstamp's API with a simulated BTC/EUR market and a single account, for load testing the client
+ * without touching the real exchange. It can be used in-process as an {@link ExchangeTransport}, or served over HTTP on
+ * the loopback interface with {@link #start(int)} and reached through an {@link HttpClientTransport}.
+ *
+ * Supports the ticker, OHLC, order book, balance, open orders, limit and instant buy/sell and cancel order endpoints.
+ * The price follows a random walk, moving a little with every request, and open limit orders fill when it crosses
+ * them. Latency and a rate of failed (HTTP 500) responses can be injected. Private requests have their signatures
+ * checked and responses are signed just as Bitstamp signs them. Over HTTP, responses are gzipped for clients that
+ * accept it.
+ */
+public class MockBitstampServer implements ExchangeTransport
+{
+    private static final String CONTENT_TYPE = "application/json";
+    private static final BigDecimal FEE = new BigDecimal("0.5");
+
+    private final String apiKey;
+    private final String apiKeySecret;
+    private final Random random;
+    private String signedHost = "www.bitstamp.net";
+    private long latencyMs = 0;
+    private long jitterMs = 0;
+    private double errorRate = 0;
+    private double slowRate = 0;
+    private long slowMs = 0;
+    private double volatility = 0.0002;
+    private int bookDepth = 100;
+    private boolean compression = true;
+
+    // Simulated market and account, guarded by this
+    private double price = 30000;
+    private double high = price;
+    private double low = price;
+    private double open = price;
+    private double volume = 0;
+    private BigDecimal btcBalance = new BigDecimal("1");
+    private BigDecimal btcAvailable = btcBalance;
+    private BigDecimal eurBalance = new BigDecimal("30000");
+    private BigDecimal eurAvailable = eurBalance;
+    private final Map<Long, JSONObject> orders = new LinkedHashMap<Long, JSONObject>();
+    private long nextOrderId = 1;
+
+    private HttpServer server;
+    private ExecutorService serverPool;
+
+    /**
+     * Creates a mock exchange with a random seed.
+     *
+     * @param apiKey API key accepted by the mock
+     * @param apiKeySecret API key secret used to check requests and sign responses
+     */
+    public MockBitstampServer(String apiKey, String apiKeySecret)
+    {
+        this(apiKey, apiKeySecret, new Random().nextLong());
+    }
+
+    /**
+     * Creates a mock exchange whose market follows the same path for the same seed and sequence of requests.
+     *
+     * @param apiKey API key accepted by the mock
+     * @param apiKeySecret API key secret used to check requests and sign responses
+     * @param seed Seed for the simulated market
+     */
+    public MockBitstampServer(String apiKey, String apiKeySecret, long seed)
+    {
+        this.apiKey = apiKey;
+        this.apiKeySecret = apiKeySecret;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Sets the delay added to every response.
+     *
+     * @param latencyMs Fixed delay in milliseconds
+     * @param jitterMs Maximum additional random delay in milliseconds
+     */
+    public void setLatency(long latencyMs, long jitterMs)
+    {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+    }
+
+    /**
+     * @param errorRate Fraction of requests, between 0 and 1, answered with HTTP 500
+     */
+    public void setErrorRate(double errorRate)
+    {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Makes a fraction of requests stall, as a congested or overloaded exchange does, to exercise timeouts and hedging.
+     *
+     * @param slowRate Fraction of requests, between 0 and 1, delayed further
+     * @param slowMs Extra delay of a stalled request in milliseconds
+     */
+    public void setSlowResponses(double slowRate, long slowMs)
+    {
+        this.slowRate = slowRate;
+        this.slowMs = slowMs;
+    }
+
+    /**
+     * @param compression True to gzip responses over HTTP for clients that accept it, as Bitstamp does
+     */
+    public void setCompression(boolean compression)
+    {
+        this.compression = compression;
+    }
+
+    /**
+     * @param volatility Standard deviation of the relative price move applied on each request
+     */
+    public void setVolatility(double volatility)
+    {
+        this.volatility = volatility;
+    }
+
+    /**
+     * @param bookDepth Number of levels on each side of the order book
+     */
+    public void setBookDepth(int bookDepth)
+    {
+        this.bookDepth = bookDepth;
+    }
+
+    /**
+     * @param signedHost Host clients include in their request signatures, "www.bitstamp.net" by default
+     */
+    public void setSignedHost(String signedHost)
+    {
+        this.signedHost = signedHost;
+    }
+
+    /**
+     * Sets the account's starting balances, clearing any open orders.
+     *
+     * @param btc BTC balance
+     * @param eur EUR balance
+     */
+    public synchronized void setBalances(BigDecimal btc, BigDecimal eur)
+    {
+        btcBalance = btc;
+        btcAvailable = btc;
+        eurBalance = eur;
+        eurAvailable = eur;
+        orders.clear();
+    }
+
+    /**
+     * Serves the mock over HTTP on the loopback interface.
+     *
+     * @param port Port to listen on, or 0 for any free port
+     * @return The base URL of the server, for use with {@link HttpClientTransport}
+     * @throws IOException if the server cannot be started
+     */
+    public String start(int port) throws IOException
+    {
+        // Without TCP_NODELAY, delayed ACKs add ~40ms to every response on loopback
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        serverPool = Executors.newCachedThreadPool();
+        server.setExecutor(serverPool);
+        server.createContext("/", this::handleExchange);
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the HTTP server, if started.
+     */
+    public void stop()
+    {
+        if (server != null)
+        {
+            server.stop(0);
+            serverPool.shutdownNow();
+            server = null;
+        }
+    }
+
+    public ExchangeResponse send(ExchangeRequest request) throws IOException, InterruptedException
+    {
+        long delay = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+        if (slowRate > 0 && ThreadLocalRandom.current().nextDouble() < slowRate)
+        {
+            delay += slowMs;
+        }
+        if (delay > 0)
+        {
+            Thread.sleep(delay);
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate)
+        {
+            return new ExchangeResponse(500, Map.of("Content-Type", "text/plain"), "Internal Server Error");
+        }
+
+        String endpoint = request.getEndpoint();
+        if (request.getMethod().equals("GET"))
+        {
+            Map<String, String> query = parseForm(request.getPath().indexOf('?') == -1 ? "" : request.getPath().substring(request.getPath().indexOf('?') + 1));
+            String body;
+            // Every pair sees the same simulated market; only BTC/EUR can be traded
+            if (endpoint.startsWith("/api/v2/ticker/"))
+            {
+                body = ticker();
+            }
+            else if (endpoint.startsWith("/api/v2/ohlc/"))
+            {
+                body = ohlc(query);
+            }
+            else if (endpoint.startsWith("/api/v2/order_book/"))
+            {
+                body = orderBook();
+            }
+            else
+            {
+                return new ExchangeResponse(404, Map.of("Content-Type", CONTENT_TYPE), "{\"status\": \"error\", \"reason\": \"Not found\"}");
+            }
+            return new ExchangeResponse(200, Map.of("Content-Type", CONTENT_TYPE), body);
+        }
+
+        if (!isSignatureValid(request))
+        {
+            return new ExchangeResponse(403, Map.of("Content-Type", CONTENT_TYPE), "{\"status\": \"error\", \"reason\": \"Invalid signature\", \"code\": \"API0005\"}");
+        }
+
+        Map<String, String> form = parseForm(request.getBody() == null ? "" : request.getBody());
+        String body;
+        switch (endpoint)
+        {
+            case "/api/v2/balance/":
+                body = balance();
+                break;
+            case "/api/v2/open_orders/all/":
+                body = openOrders();
+                break;
+            case "/api/v2/buy/btceur/":
+                body = placeLimitOrder(0, new BigDecimal(form.get("amount")), new BigDecimal(form.get("price")));
+                break;
+            case "/api/v2/sell/btceur/":
+                body = placeLimitOrder(1, new BigDecimal(form.get("amount")), new BigDecimal(form.get("price")));
+                break;
+            case "/api/v2/buy/instant/btceur/":
+                body = placeInstantOrder(0, new BigDecimal(form.get("amount")));
+                break;
+            case "/api/v2/sell/instant/btceur/":
+                body = placeInstantOrder(1, new BigDecimal(form.get("amount")));
+                break;
+            case "/api/v2/cancel_order/":
+                body = cancelOrder(Long.parseLong(form.get("id")));
+                break;
+            case "/api/v2/cancel_all_orders/":
+            case "/api/v2/cancel_all_orders/btceur/":
+                body = cancelAllOrders();
+                break;
+            default:
+                return new ExchangeResponse(404, Map.of("Content-Type", CONTENT_TYPE), "{\"status\": \"error\", \"reason\": \"Not found\"}");
+        }
+
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", CONTENT_TYPE);
+        String stringToSign = request.getHeader("X-Auth-Nonce") + request.getHeader("X-Auth-Timestamp") + CONTENT_TYPE + body;
+        headers.put("X-Server-Auth-Signature", BitstampAPIConnection.sign(apiKeySecret, stringToSign));
+        return new ExchangeResponse(200, headers, body);
+    }
+
+    //#region Market simulation
+
+    /**
+     * Moves the price one step along its random walk and fills any limit orders it crosses.
+     */
+    private void tick()
+    {
+        price = Math.max(0.01, price * (1 + random.nextGaussian() * volatility));
+        high = Math.max(high, price);
+        low = Math.min(low, price);
+        volume += Math.abs(random.nextGaussian());
+
+        Iterator<JSONObject> it = orders.values().iterator();
+        while (it.hasNext())
+        {
+            JSONObject order = it.next();
+            BigDecimal amount = order.getBigDecimal("amount");
+            BigDecimal orderPrice = order.getBigDecimal("price");
+            if (order.getInt("type") == 0 && price <= orderPrice.doubleValue())
+            {
+                btcBalance = btcBalance.add(amount);
+                btcAvailable = btcAvailable.add(amount);
+                eurBalance = eurBalance.subtract(amount.multiply(orderPrice));
+                it.remove();
+            }
+            else if (order.getInt("type") == 1 && price >= orderPrice.doubleValue())
+            {
+                btcBalance = btcBalance.subtract(amount);
+                eurBalance = eurBalance.add(amount.multiply(orderPrice));
+                eurAvailable = eurAvailable.add(amount.multiply(orderPrice));
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized String ticker()
+    {
+        tick();
+        JSONObject data = new JSONObject();
+        data.put("last", fmt(price));
+        data.put("high", fmt(high));
+        data.put("low", fmt(low));
+        data.put("vwap", fmt((high + low) / 2));
+        data.put("volume", String.format(Locale.ROOT, "%.8f", volume));
+        data.put("bid", fmt(price - 1));
+        data.put("ask", fmt(price + 1));
+        data.put("timestamp", String.valueOf(Instant.now().getEpochSecond()));
+        data.put("open", fmt(open));
+        return data.toString();
+    }
+
+    private synchronized String ohlc(Map<String, String> query)
+    {
+        tick();
+        int step = Integer.parseInt(query.getOrDefault("step", "60"));
+        int limit = Math.min(1000, Integer.parseInt(query.getOrDefault("limit", "100")));
+        long now = Instant.now().getEpochSecond();
+        long start = query.containsKey("start") ? Long.parseLong(query.get("start")) : now - (long)step * limit;
+        long first = Math.floorDiv(start + step - 1, step) * step;
+
+        // Each candle is derived from its timestamp alone, so overlapping requests agree with each other
+        JSONArray candles = new JSONArray();
+        for (long t = first; t <= now && candles.length() < limit; t += step)
+        {
+            Random r = new Random(t * 31 + step);
+            double o = price * (1 + r.nextGaussian() * 0.01);
+            double c = o * (1 + r.nextGaussian() * volatility * Math.sqrt(step));
+            JSONObject candle = new JSONObject();
+            candle.put("timestamp", String.valueOf(t));
+            candle.put("open", fmt(o));
+            candle.put("high", fmt(Math.max(o, c) * (1 + Math.abs(r.nextGaussian()) * volatility)));
+            candle.put("low", fmt(Math.min(o, c) * (1 - Math.abs(r.nextGaussian()) * volatility)));
+            candle.put("close", fmt(c));
+            candle.put("volume", String.format(Locale.ROOT, "%.8f", Math.abs(r.nextGaussian()) * 10));
+            candles.put(candle);
+        }
+        JSONObject data = new JSONObject();
+        data.put("pair", "BTC/EUR");
+        data.put("ohlc", candles);
+        JSONObject result = new JSONObject();
+        result.put("data", data);
+        return result.toString();
+    }
+
+    private synchronized String orderBook()
+    {
+        tick();
+        JSONArray bids = new JSONArray();
+        JSONArray asks = new JSONArray();
+        for (int i = 0; i < bookDepth; i++)
+        {
+            bids.put(new JSONArray().put(fmt(price - 1 - i)).put(String.format(Locale.ROOT, "%.8f", 0.1 + random.nextDouble())));
+            asks.put(new JSONArray().put(fmt(price + 1 + i)).put(String.format(Locale.ROOT, "%.8f", 0.1 + random.nextDouble())));
+        }
+        JSONObject book = new JSONObject();
+        book.put("timestamp", String.valueOf(Instant.now().getEpochSecond()));
+        book.put("microtimestamp", String.valueOf(System.currentTimeMillis() * 1000));
+        book.put("bids", bids);
+        book.put("asks", asks);
+        return book.toString();
+    }
+
+    //#endregion
+
+    //#region Account
+
+    private synchronized String balance()
+    {
+        JSONObject data = new JSONObject();
+        data.put("btc_available", btcAvailable.toPlainString());
+        data.put("btc_balance", btcBalance.toPlainString());
+        data.put("btc_reserved", btcBalance.subtract(btcAvailable).toPlainString());
+        data.put("eur_available", eurAvailable.toPlainString());
+        data.put("eur_balance", eurBalance.toPlainString());
+        data.put("eur_reserved", eurBalance.subtract(eurAvailable).toPlainString());
+        data.put("btceur_fee", FEE.toPlainString());
+        return data.toString();
+    }
+
+    private synchronized String openOrders()
+    {
+        JSONArray result = new JSONArray();
+        for (JSONObject order : orders.values())
+        {
+            result.put(order);
+        }
+        return result.toString();
+    }
+
+    private synchronized String placeLimitOrder(int type, BigDecimal amount, BigDecimal limit)
+    {
+        tick();
+        if (type == 0)
+        {
+            BigDecimal cost = amount.multiply(limit);
+            if (cost.compareTo(eurAvailable) > 0)
+            {
+                return error("You need " + cost.toPlainString() + " EUR to open that order. You have only " + eurAvailable.toPlainString() + " EUR available.");
+            }
+            eurAvailable = eurAvailable.subtract(cost);
+        }
+        else
+        {
+            if (amount.compareTo(btcAvailable) > 0)
+            {
+                return error("You have only " + btcAvailable.toPlainString() + " BTC available.");
+            }
+            btcAvailable = btcAvailable.subtract(amount);
+        }
+        JSONObject order = newOrder(type, amount, limit);
+        orders.put(order.getLong("id"), order);
+        return order.toString();
+    }
+
+    private synchronized String placeInstantOrder(int type, BigDecimal amount)
+    {
+        tick();
+        BigDecimal last = BigDecimal.valueOf(price);
+        if (type == 0) // amount is EUR to spend
+        {
+            if (amount.compareTo(eurAvailable) > 0)
+            {
+                return error("You have only " + eurAvailable.toPlainString() + " EUR available.");
+            }
+            BigDecimal btc = amount.divide(last, 8, RoundingMode.HALF_DOWN);
+            eurAvailable = eurAvailable.subtract(amount);
+            eurBalance = eurBalance.subtract(amount);
+            btcAvailable = btcAvailable.add(btc);
+            btcBalance = btcBalance.add(btc);
+            return newOrder(type, btc, last).toString();
+        }
+        else // amount is BTC to sell
+        {
+            if (amount.compareTo(btcAvailable) > 0)
+            {
+                return error("You have only " + btcAvailable.toPlainString() + " BTC available.");
+            }
+            BigDecimal eur = amount.multiply(last);
+            btcAvailable = btcAvailable.subtract(amount);
+            btcBalance = btcBalance.subtract(amount);
+            eurAvailable = eurAvailable.add(eur);
+            eurBalance = eurBalance.add(eur);
+            return newOrder(type, amount, last).toString();
+        }
+    }
+
+    private synchronized String cancelOrder(long id)
+    {
+        JSONObject order = orders.remove(id);
+        if (order == null)
+        {
+            return "{\"error\": \"Order not found\"}";
+        }
+        BigDecimal amount = order.getBigDecimal("amount");
+        if (order.getInt("type") == 0)
+        {
+            eurAvailable = eurAvailable.add(amount.multiply(order.getBigDecimal("price")));
+        }
+        else
+        {
+            btcAvailable = btcAvailable.add(amount);
+        }
+        JSONObject result = new JSONObject();
+        result.put("id", id);
+        result.put("amount", order.getString("amount"));
+        result.put("price", order.getString("price"));
+        result.put("type", order.getInt("type"));
+        return result.toString();
+    }
+
+    private synchronized String cancelAllOrders()
+    {
+        JSONArray canceled = new JSONArray();
+        for (Long id : new ArrayList<Long>(orders.keySet()))
+        {
+            JSONObject order = new JSONObject(cancelOrder(id));
+            order.put("currency_pair", "BTC/EUR");
+            canceled.put(order);
+        }
+        JSONObject result = new JSONObject();
+        result.put("canceled", canceled);
+        result.put("success", true);
+        return result.toString();
+    }
+
+    private JSONObject newOrder(int type, BigDecimal amount, BigDecimal orderPrice)
+    {
+        JSONObject order = new JSONObject();
+        order.put("id", nextOrderId++);
+        order.put("datetime", Instant.now().toString());
+        order.put("type", type);
+        order.put("price", orderPrice.setScale(2, RoundingMode.HALF_UP).toPlainString());
+        order.put("amount", amount.toPlainString());
+        order.put("currency_pair", "BTC/EUR");
+        return order;
+    }
+
+    private static String error(String reason)
+    {
+        JSONObject err = new JSONObject();
+        err.put("status", "error");
+        err.put("reason", reason);
+        return err.toString();
+    }
+
+    //#endregion
+
+    private boolean isSignatureValid(ExchangeRequest request)
+    {
+        String auth = request.getHeader("X-Auth");
+        if (auth == null || !auth.equals("BITSTAMP " + apiKey))
+        {
+            return false;
+        }
+        String message = auth + request.getMethod() + signedHost + request.getPath() + "" + request.getHeader("Content-Type")
+            + request.getHeader("X-Auth-Nonce") + request.getHeader("X-Auth-Timestamp") + request.getHeader("X-Auth-Version")
+            + (request.getBody() == null ? "" : request.getBody());
+        return BitstampAPIConnection.sign(apiKeySecret, message).toUpperCase().equals(request.getHeader("X-Auth-Signature"));
+    }
+
+    private void handleExchange(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            String path = exchange.getRequestURI().getRawPath();
+            if (exchange.getRequestURI().getRawQuery() != null)
+            {
+                path += "?" + exchange.getRequestURI().getRawQuery();
+            }
+            Map<String, String> headers = new LinkedHashMap<String, String>();
+            for (String name : new String[] {"X-Auth", "X-Auth-Signature", "X-Auth-Nonce", "X-Auth-Timestamp", "X-Auth-Version", "Content-Type"})
+            {
+                String value = exchange.getRequestHeaders().getFirst(name);
+                if (value != null)
+                {
+                    headers.put(name, value);
+                }
+            }
+            String body;
+            try (InputStream in = exchange.getRequestBody())
+            {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+
+            ExchangeResponse response = send(new ExchangeRequest(exchange.getRequestMethod(), path, headers, body));
+
+            byte[] bytes = response.getBody().getBytes(StandardCharsets.UTF_8);
+            for (Map.Entry<String, String> header : response.getHeaders().entrySet())
+            {
+                exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+            }
+            String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (compression && accepted != null && accepted.contains("gzip"))
+            {
+                bytes = gzip(bytes);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(response.getStatus(), bytes.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(bytes);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed))
+        {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static Map<String, String> parseForm(String form)
+    {
+        Map<String, String> result = new HashMap<String, String>();
+        for (String pair : form.split("&"))
+        {
+            int eq = pair.indexOf('=');
+            if (eq > 0)
+            {
+                result.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        return result;
+    }
+
+    private static String fmt(double value)
+    {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /**
+     * Runs the mock exchange on the loopback interface until killed.
+     *
+     * Usage: {@code java MockBitstampServer [port] [latencyMs] [errorRate]}
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8088;
+        MockBitstampServer mock = new MockBitstampServer("mockkey", "mocksecret");
+        if (args.length > 1)
+        {
+            mock.setLatency(Long.parseLong(args[1]), 0);
+        }
+        if (args.length > 2)
+        {
+            mock.setErrorRate(Double.parseDouble(args[2]));
+        }
+        System.out.println("Mock Bitstamp listening on " + mock.start(port) + " (key \"mockkey\", secret \"mocksecret\")");
+    }
+}
@@ -0,0 +1,556 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONObject;
+
+/**
+ * Tests how robust a strategy is by running it over thousands of synthetic BTC/EUR minute price paths instead of the
+ * single path history gives. Each path is traded from scratch with its own {@link TestWallet}, ticking every minute as
+ * the auto trader does: the market state is measured over the last hour (for the whole path at once, with
+ * {@link CandleKernels}), pushed onto a market history and scored with the trader's own trend prediction. The result
+ * is the distribution of return, drawdown and trade count across paths.
+ *
+ * Paths are generated into one primitive array per worker thread, each worker drawing from its own split of a seeded
+ * {@link SplittableRandom}, so a run is repeatable for the same seed and thread count.
+ *
+ * Usage: {@code java MonteCarloEngine [gbm|jump|bootstrap] [paths]}
+ */
+public class MonteCarloEngine
+{
+    /**
+     * Generates price paths.
+     */
+    public interface PathModel
+    {
+        /**
+         * Fills a path of minute closing prices.
+         *
+         * @param rng Random source, used only by the calling thread
+         * @param path The path to fill; every element is overwritten
+         */
+        void generate(SplittableRandom rng, double[] path);
+    }
+
+    /**
+     * Distribution of a figure across paths.
+     */
+    public static class Distribution
+    {
+        private final double[] sorted;
+
+        Distribution(double[] values)
+        {
+            sorted = values.clone();
+            Arrays.sort(sorted);
+        }
+
+        public double getMean()
+        {
+            double sum = 0;
+            for (double v : sorted)
+            {
+                sum += v;
+            }
+            return sum / sorted.length;
+        }
+
+        /**
+         * @param percentile Percentile, e.g. 95
+         * @return The value at the percentile, by nearest rank
+         */
+        public double getPercentile(double percentile)
+        {
+            int rank = (int)Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+        }
+
+        public double getMin()
+        {
+            return sorted[0];
+        }
+
+        public double getMax()
+        {
+            return sorted[sorted.length - 1];
+        }
+
+        public String toString()
+        {
+            return String.format("mean %.2f, p5 %.2f, p50 %.2f, p95 %.2f, min %.2f, max %.2f", getMean(), getPercentile(5), getPercentile(50), getPercentile(95), getMin(), getMax());
+        }
+    }
+
+    /**
+     * Results of a run.
+     */
+    public static class Result
+    {
+        private final Distribution returns;
+        private final Distribution drawdowns;
+        private final Distribution trades;
+        private final int paths;
+        private final long nanos;
+
+        Result(double[] returns, double[] drawdowns, double[] trades, long nanos)
+        {
+            this.returns = new Distribution(returns);
+            this.drawdowns = new Distribution(drawdowns);
+            this.trades = new Distribution(trades);
+            this.paths = returns.length;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return Return on the wallet's starting value over each path, in percent
+         */
+        public Distribution getReturns()
+        {
+            return returns;
+        }
+
+        /**
+         * @return Largest fall in the wallet's value from a previous peak over each path, in percent of the peak
+         */
+        public Distribution getDrawdowns()
+        {
+            return drawdowns;
+        }
+
+        /**
+         * @return Orders filled over each path
+         */
+        public Distribution getTrades()
+        {
+            return trades;
+        }
+
+        public int getPaths()
+        {
+            return paths;
+        }
+
+        public double getPathsPerSecond()
+        {
+            return paths / (nanos / 1e9);
+        }
+
+        public String toString()
+        {
+            return String.format("%d paths in %.2fs (%.0f paths/s)%n  Return %%:   %s%n  Drawdown %%: %s%n  Trades:     %s", paths, nanos / 1e9, getPathsPerSecond(), returns, drawdowns, trades);
+        }
+    }
+
+    /**
+     * A path's wallet as seen by its strategy. Orders are placed without risk checks, as the limits are meant for
+     * live trading and count orders against the wall clock.
+     */
+    private static class PathAccount implements Strategy.Context, OrderListener
+    {
+        private final TestWallet wallet;
+        private final OrderManager orders = new OrderManager();
+        private int fills = 0;
+        // Balances only change on fills, so are read from the wallet then rather than every tick
+        private double base;
+        private double quote;
+
+        PathAccount(TestWallet wallet)
+        {
+            this.wallet = wallet;
+            base = wallet.getBaseBalance();
+            quote = wallet.getQuoteBalance();
+            // Wallet events are delivered synchronously, so none can be missed
+            orders.setStreamConnected(true);
+            wallet.addOrderListener(this);
+        }
+
+        public CurrencyPair getPair()
+        {
+            return CurrencyPair.BTCEUR;
+        }
+
+        public JSONObject getBalance()
+        {
+            return wallet.getBalance();
+        }
+
+        public JSONObject submit(OrderIntent intent)
+        {
+            if (intent.getType() == 0)
+            {
+                return intent.isInstant() ? wallet.placeBuyInstantOrder(intent.getAmount()) : wallet.placeBuyLimitOrder(intent.getAmount(), intent.getPrice());
+            }
+            return intent.isInstant() ? wallet.placeSellInstantOrder(intent.getAmount()) : wallet.placeSellLimitOrder(intent.getAmount(), intent.getPrice());
+        }
+
+        public JSONObject cancel(long id)
+        {
+            return wallet.cancelOrder(id);
+        }
+
+        public boolean isOpen(long id)
+        {
+            return orders.isOpen(id);
+        }
+
+        public void onOrderPlaced(long id, int type, double amount, double price)
+        {
+            orders.onOrderPlaced(id, type, amount, price);
+        }
+
+        public void onOrderFilled(long id, double amount, double price)
+        {
+            orders.onOrderFilled(id, amount, price);
+            fills++;
+            base = wallet.getBaseBalance();
+            quote = wallet.getQuoteBalance();
+        }
+
+        public void onOrderCancelled(long id)
+        {
+            orders.onOrderCancelled(id);
+        }
+    }
+
+    private static final double MINUTES_PER_YEAR = 525600;
+    // Minutes each market state is measured over, as the auto trader does, and length of the market history
+    private static final int WINDOW = 60;
+    private static final int HISTORY = 20;
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    private final PathModel model;
+    private final String strategy;
+    private int minutes = 1440;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = System.nanoTime();
+
+    /**
+     * @param model Generates the paths
+     * @param strategy The strategy to run on each path, as given to {@code aether.strategies}, e.g. "trend:0.03"
+     */
+    public MonteCarloEngine(PathModel model, String strategy)
+    {
+        this.model = model;
+        this.strategy = strategy;
+        AetherTrader.strategyFor(strategy);
+    }
+
+    /**
+     * Geometric Brownian motion.
+     *
+     * @param start Price at the start of each path
+     * @param drift Annual drift, e.g. 0 for none
+     * @param volatility Annual volatility, e.g. 0.6 for 60%
+     * @return The model
+     */
+    public static PathModel gbm(double start, double drift, double volatility)
+    {
+        return jumpDiffusion(start, drift, volatility, 0, 0, 0);
+    }
+
+    /**
+     * Merton jump-diffusion: geometric Brownian motion with jumps of normally distributed log size, at most one a
+     * minute. The drift is compensated so that jumps do not change the expected price.
+     *
+     * @param start Price at the start of each path
+     * @param drift Annual drift, e.g. 0 for none
+     * @param volatility Annual volatility of the diffusion, e.g. 0.6 for 60%
+     * @param jumpsPerYear Expected number of jumps a year
+     * @param jumpMean Mean log size of a jump
+     * @param jumpVolatility Standard deviation of the log size of a jump
+     * @return The model
+     */
+    public static PathModel jumpDiffusion(double start, double drift, double volatility, double jumpsPerYear, double jumpMean, double jumpVolatility)
+    {
+        double dt = 1 / MINUTES_PER_YEAR;
+        double jumpChance = jumpsPerYear * dt;
+        double compensator = jumpsPerYear * (Math.exp(jumpMean + jumpVolatility * jumpVolatility / 2) - 1);
+        double mu = (drift - volatility * volatility / 2 - compensator) * dt;
+        double sigma = volatility * Math.sqrt(dt);
+        double logStart = Math.log(start);
+        return (rng, path) ->
+        {
+            double logPrice = logStart;
+            path[0] = start;
+            for (int i = 1; i < path.length; i++)
+            {
+                logPrice += mu + sigma * rng.nextGaussian();
+                if (jumpChance > 0 && rng.nextDouble() < jumpChance)
+                {
+                    logPrice += jumpMean + jumpVolatility * rng.nextGaussian();
+                }
+                path[i] = Math.exp(logPrice);
+            }
+        };
+    }
+
+    /**
+     * Block bootstrap from recorded prices: each path strings together randomly chosen runs of consecutive minute
+     * returns, keeping the short-term patterns of real markets that the parametric models lack.
+     *
+     * @param closes Recorded minute closing prices, oldest first, one a minute with no gaps
+     * @param block Length of each run of returns, in minutes
+     * @return The model, starting each path at the last recorded price
+     */
+    public static PathModel bootstrap(double[] closes, int block)
+    {
+        if (closes.length <= block)
+        {
+            throw new IllegalArgumentException("Need more than " + block + " prices to bootstrap from, have " + closes.length);
+        }
+        double[] returns = new double[closes.length - 1];
+        for (int i = 1; i < closes.length; i++)
+        {
+            returns[i - 1] = Math.log(closes[i] / closes[i - 1]);
+        }
+        int[] starts = new int[returns.length - block + 1];
+        for (int i = 0; i < starts.length; i++)
+        {
+            starts[i] = i;
+        }
+        return bootstrap(returns, starts, closes[closes.length - 1], block);
+    }
+
+    /**
+     * Block bootstrap from an archive of minute candles. Returns are only taken between candles one step apart, and no
+     * run of returns spans a gap in the archive, so the move across a gap is never resampled as a one-minute return.
+     *
+     * @param archive Archive of one-minute candles
+     * @param block Length of each run of returns, in minutes
+     * @return The model, starting each path at the last archived close
+     * @throws IllegalArgumentException if the archive has no run of more than {@code block} consecutive candles
+     */
+    public static PathModel bootstrap(CandleArchive archive, int block)
+    {
+        int size = archive.size();
+        double[] returns = new double[Math.max(0, size - 1)];
+        // Indexes of the returns that begin a run of block returns with no gap in it
+        int[] starts = new int[returns.length];
+        int count = 0;
+        int runs = 0;
+        int segment = 0;
+        for (int i = 1; i < size; i++)
+        {
+            if (archive.time(i) - archive.time(i - 1) != archive.getStep())
+            {
+                segment = count;
+                continue;
+            }
+            returns[count++] = Math.log(archive.close(i) / archive.close(i - 1));
+            if (count - segment >= block)
+            {
+                starts[runs++] = count - block;
+            }
+        }
+        if (runs == 0)
+        {
+            throw new IllegalArgumentException("Need more than " + block + " consecutive candles to bootstrap from");
+        }
+        return bootstrap(returns, Arrays.copyOf(starts, runs), archive.close(size - 1), block);
+    }
+
+    /**
+     * @param returns Log returns to draw runs from
+     * @param starts Indexes in {@code returns} that a run of {@code block} returns may start at
+     * @param start First price of every path
+     */
+    private static PathModel bootstrap(double[] returns, int[] starts, double start, int block)
+    {
+        double logStart = Math.log(start);
+        return (rng, path) ->
+        {
+            double logPrice = logStart;
+            path[0] = start;
+            int i = 1;
+            while (i < path.length)
+            {
+                int from = starts[rng.nextInt(starts.length)];
+                for (int j = 0; j < block && i < path.length; j++, i++)
+                {
+                    logPrice += returns[from + j];
+                    path[i] = Math.exp(logPrice);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param minutes Minutes traded on each path, after the hour and market history measured before the first tick
+     */
+    public void setMinutes(int minutes)
+    {
+        this.minutes = minutes;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * @return Length of each generated path, including the minutes measured before the first tick
+     */
+    int getPathLength()
+    {
+        return WINDOW + HISTORY + minutes;
+    }
+
+    /**
+     * Generates and trades the given number of paths, spread over the engine's threads.
+     *
+     * @param paths Number of paths
+     * @return The distributions of the paths' results
+     */
+    public Result run(int paths)
+    {
+        double[] returns = new double[paths];
+        double[] drawdowns = new double[paths];
+        double[] trades = new double[paths];
+        SplittableRandom root = new SplittableRandom(seed);
+        int workers = Math.max(1, Math.min(threads, paths));
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try
+        {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int w = 0; w < workers; w++)
+            {
+                int first = w;
+                SplittableRandom rng = root.split();
+                results.add(pool.submit(() ->
+                {
+                    double[] path = new double[getPathLength()];
+                    double[] result = new double[3];
+                    for (int i = first; i < paths; i += workers)
+                    {
+                        model.generate(rng, path);
+                        simulate(path, result);
+                        returns[i] = result[0];
+                        drawdowns[i] = result[1];
+                        trades[i] = result[2];
+                    }
+                }));
+            }
+            for (Future<?> result : results)
+            {
+                result.get();
+            }
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        return new Result(returns, drawdowns, trades, System.nanoTime() - start);
+    }
+
+    /**
+     * Trades one path with a new wallet, starting fully in BTC.
+     *
+     * @param path Minute closing prices, {@link #getPathLength()} long
+     * @param result Receives the return and drawdown in percent, and the number of fills
+     */
+    void simulate(double[] path, double[] result)
+    {
+        int first = WINDOW + HISTORY;
+        TestWallet wallet = new TestWallet(BigDecimal.ONE, BigDecimal.ZERO, false);
+        wallet.setOutput(QUIET);
+        wallet.processPrice(path[first - 1]);
+        PathAccount account = new PathAccount(wallet);
+
+        // The hour's change and market state at every minute, measured over the whole path at once
+        double[] percent = new double[path.length];
+        byte[] states = new byte[path.length];
+        CandleKernels.percentChange(path, WINDOW, percent);
+        CandleKernels.classify(percent, states);
+
+        CircularList<AetherTrader.MarketState> history = new CircularList<AetherTrader.MarketState>(HISTORY);
+        for (int t = WINDOW; t < first; t++)
+        {
+            history.push(CandleKernels.STATES[states[t]]);
+        }
+        Strategy s = AetherTrader.strategyFor(strategy);
+        s.start(account);
+
+        double initial = path[first - 1];
+        double peak = initial;
+        double drawdown = 0;
+        double value = initial;
+        for (int t = first; t < path.length; t++)
+        {
+            double price = path[t];
+            wallet.processPrice(price);
+            AetherTrader.MarketState state = CandleKernels.STATES[states[t]];
+            history.push(state);
+            double trendValue = AetherTrader.trendValue(history);
+            Strategy.Signals signals = new Strategy.Signals((float)percent[t], state, AetherTrader.trendOf(trendValue, history), trendValue);
+            s.onTicker(new Strategy.Ticker(t * 60000L, price, Double.NaN, Double.NaN), signals, account);
+
+            value = account.base * price + account.quote;
+            peak = Math.max(peak, value);
+            drawdown = Math.max(drawdown, (peak - value) / peak);
+        }
+        result[0] = (value / initial - 1) * 100;
+        result[1] = drawdown * 100;
+        result[2] = account.fills;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String kind = args.length > 0 ? args[0] : "gbm";
+        int paths = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        double start = Double.parseDouble(System.getProperty("aether.mc.start", "30000"));
+        double drift = Double.parseDouble(System.getProperty("aether.mc.drift", "0"));
+        double volatility = Double.parseDouble(System.getProperty("aether.mc.volatility", "0.6"));
+
+        PathModel model;
+        switch (kind)
+        {
+            case "gbm":
+                model = gbm(start, drift, volatility);
+                break;
+            case "jump":
+                model = jumpDiffusion(start, drift, volatility,
+                    Double.parseDouble(System.getProperty("aether.mc.jumpsPerYear", "50")),
+                    Double.parseDouble(System.getProperty("aether.mc.jumpMean", "0")),
+                    Double.parseDouble(System.getProperty("aether.mc.jumpVolatility", "0.02")));
+                break;
+            case "bootstrap":
+                try (CandleArchive archive = new CandleArchive(Paths.get(System.getProperty("aether.mc.archive", "candles")), 60))
+                {
+                    model = bootstrap(archive, Integer.getInteger("aether.mc.block", 60));
+                }
+                break;
+            default:
+                System.out.println("Usage: java MonteCarloEngine [gbm|jump|bootstrap] [paths]");
+                return;
+        }
+
+        MonteCarloEngine engine = new MonteCarloEngine(model, System.getProperty("aether.mc.strategy", "trend"));
+        engine.setMinutes(Integer.getInteger("aether.mc.minutes", 1440));
+        if (System.getProperty("aether.mc.seed") != null)
+        {
+            engine.setSeed(Long.getLong("aether.mc.seed"));
+        }
+        System.out.println(String.format("[MonteCarlo]: %s, %d paths of %d minutes on %d threads", kind, paths, engine.minutes, engine.threads));
+        System.out.println("[MonteCarlo]: " + engine.run(paths));
+    }
+}
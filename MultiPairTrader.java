@@ -0,0 +1,118 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs an auto trader for each of several currency pairs at once in one process. Each trader has its own live feed,
+ * candles, test wallet, P&L, risk limits, scheduler and metrics, so pairs never wait on one another; they share only
+ * the account's connection settings and its request budget, through connections made with
+ * {@link BitstampAPIConnection#share()}. The adaptive cadence's per-minute budget is split evenly between the traders.
+ *
+ * Each trader reports through its own line buffered stream, so lines from different pairs never interleave.
+ *
+ * Usage: {@code java MultiPairTrader [pair ...]}, or {@code -Daether.pairs=btceur,etheur,...}. The per-minute budget
+ * for all traders together is set with {@code -Daether.cadence.budget}, and defaults to 30 requests per trader.
+ */
+public class MultiPairTrader
+{
+    private static final int DEFAULT_REQUEST_BUDGET = 30;
+
+    /**
+     * Buffers a trader's output until each line is complete, then writes the line to standard output in one go.
+     */
+    private static class LineOutput extends OutputStream
+    {
+        private byte[] buffer = new byte[256];
+        private int length = 0;
+
+        public synchronized void write(int b)
+        {
+            if (length == buffer.length)
+            {
+                buffer = Arrays.copyOf(buffer, length * 2);
+            }
+            buffer[length++] = (byte)b;
+            if (b == '\n')
+            {
+                String line = new String(buffer, 0, length, StandardCharsets.UTF_8);
+                length = 0;
+                System.out.print(line);
+                System.out.flush();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        List<CurrencyPair> pairs = new ArrayList<CurrencyPair>();
+        String[] names = args.length > 0 ? args : System.getProperty("aether.pairs", "btceur").split(",");
+        for (String name : names)
+        {
+            if (!name.isBlank())
+            {
+                CurrencyPair pair = CurrencyPair.parse(name);
+                if (!pairs.contains(pair))
+                {
+                    pairs.add(pair);
+                }
+            }
+        }
+        if (pairs.isEmpty())
+        {
+            System.out.println("Usage: java MultiPairTrader <pair> [pair ...]");
+            return;
+        }
+
+        AetherTrader.configureTransport();
+        AetherTrader.configureMetrics();
+        BitstampAPIConnection conn = new BitstampAPIConnection("key", "keySecret");
+        int budget = Math.max(1, Integer.getInteger("aether.cadence.budget", DEFAULT_REQUEST_BUDGET * pairs.size()) / pairs.size());
+
+        List<AetherTrader> traders = new ArrayList<AetherTrader>();
+        for (CurrencyPair pair : pairs)
+        {
+            AetherTrader trader = new AetherTrader(pair, conn.share());
+            trader.setOutput(new PrintStream(new LineOutput(), false, StandardCharsets.UTF_8));
+            trader.setRequestBudget(budget);
+            traders.add(trader);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            for (AetherTrader trader : traders)
+            {
+                trader.stopAuto();
+            }
+        }));
+
+        // Starting a trader fetches its market history, so start them all at once
+        ExecutorService starter = Executors.newFixedThreadPool(Math.min(traders.size(), 8));
+        List<Future<?>> started = new ArrayList<Future<?>>();
+        for (AetherTrader trader : traders)
+        {
+            started.add(starter.submit(trader::startAuto));
+        }
+        int running = 0;
+        for (int i = 0; i < traders.size(); i++)
+        {
+            try
+            {
+                started.get(i).get();
+                running++;
+                System.out.println("Trading " + pairs.get(i) + ".");
+            }
+            catch (Exception e)
+            {
+                traders.get(i).stopAuto();
+                System.out.println("Unable to start trading " + pairs.get(i) + ". " + e.getMessage());
+            }
+        }
+        starter.shutdown();
+        System.out.println(String.format("Running %d of %d traders, %d requests per minute each.", running, traders.size(), budget));
+    }
+}
@@ -0,0 +1,117 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An order a {@link Strategy} wants placed. The host checks it against the strategy's risk limits before placing it
+ * through the strategy's wallet.
+ */
+public final class OrderIntent
+{
+    private final int type;
+    private final boolean instant;
+    private final BigDecimal amount;
+    private final double price;
+
+    private OrderIntent(int type, boolean instant, BigDecimal amount, double price)
+    {
+        this.type = type;
+        this.instant = instant;
+        this.amount = amount;
+        this.price = price;
+    }
+
+    /**
+     * @param amount Base currency to buy
+     * @param price Limit price
+     */
+    public static OrderIntent limitBuy(BigDecimal amount, double price)
+    {
+        return new OrderIntent(0, false, amount, price);
+    }
+
+    /**
+     * @param amount Base currency to sell
+     * @param price Limit price
+     */
+    public static OrderIntent limitSell(BigDecimal amount, double price)
+    {
+        return new OrderIntent(1, false, amount, price);
+    }
+
+    /**
+     * @param amount Quote currency to spend, as instant buys are placed
+     */
+    public static OrderIntent instantBuy(BigDecimal amount)
+    {
+        return new OrderIntent(0, true, amount, 0);
+    }
+
+    /**
+     * @param amount Base currency to sell
+     */
+    public static OrderIntent instantSell(BigDecimal amount)
+    {
+        return new OrderIntent(1, true, amount, 0);
+    }
+
+    /**
+     * A ladder of limit orders of the same size at evenly spaced prices, as a grid strategy places them, to be sent
+     * together with {@link Wallet#placeOrders(List)}.
+     *
+     * @param type 0 for buy, 1 for sell
+     * @param amount Base currency to trade at each price
+     * @param first Limit price of the first order
+     * @param step Added to the price for each order after the first; negative to step down, as buys usually do
+     * @param orders Number of orders
+     * @return The orders, starting at the first price
+     */
+    public static List<OrderIntent> ladder(int type, BigDecimal amount, double first, double step, int orders)
+    {
+        List<OrderIntent> ladder = new ArrayList<OrderIntent>(orders);
+        for (int i = 0; i < orders; i++)
+        {
+            // Rounded to the cent, so the steps do not drift with floating point error
+            double price = Math.round((first + i * step) * 100) / 100.0;
+            ladder.add(new OrderIntent(type, false, amount, price));
+        }
+        return ladder;
+    }
+
+    /**
+     * @return 0 for buy, 1 for sell
+     */
+    public int getType()
+    {
+        return type;
+    }
+
+    public boolean isInstant()
+    {
+        return instant;
+    }
+
+    /**
+     * @return Quote currency to spend for an instant buy, else base currency to trade
+     */
+    public BigDecimal getAmount()
+    {
+        return amount;
+    }
+
+    /**
+     * @return Limit price, or 0 for an instant order
+     */
+    public double getPrice()
+    {
+        return price;
+    }
+
+    public String toString()
+    {
+        String side = type == 0 ? "buy" : "sell";
+        return instant ? String.format(Locale.ROOT, "instant %s of %s", side, amount.toPlainString())
+            : String.format(Locale.ROOT, "limit %s of %s at %.2f", side, amount.toPlainString(), price);
+    }
+}
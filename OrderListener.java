@@ -0,0 +1,26 @@
+/**
+ * Receives changes to orders as they happen, from a {@link TestWallet} or the exchange's private order stream.
+ */
+public interface OrderListener
+{
+    /**
+     * @param id ID of the order
+     * @param type 0 for buy, 1 for sell
+     * @param amount Amount of BTC ordered
+     * @param price Limit price, or the price filled at for instant orders
+     */
+    void onOrderPlaced(long id, int type, double amount, double price);
+
+    /**
+     * @param id ID of the order
+     * @param amount Amount of BTC filled by this fill, which may be part of the order, or
+     * {@link Double#POSITIVE_INFINITY} if the rest of the order filled but how much was left is not known
+     * @param price Price filled at
+     */
+    void onOrderFilled(long id, double amount, double price);
+
+    /**
+     * @param id ID of the order
+     */
+    void onOrderCancelled(long id);
+}
@@ -0,0 +1,277 @@
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Tracks the lifecycle of orders in memory, indexed by ID, so that checking on an order does not mean asking the
+ * exchange for every open order and searching through them. Kept up to date by order events (see
+ * {@link OrderListener}), with an occasional reconciliation against the full list of open orders as a safety net for
+ * missed events. A fill or cancellation of an order not yet tracked, as the order stream can report before the response
+ * to the request that placed it arrives, is held until the order is placed. Reconciliation is due every
+ * {@value #RECONCILE_INTERVAL_MS}ms, or every time it is checked while the event stream is down.
+ */
+public class OrderManager implements OrderListener
+{
+    /**
+     * Lifecycle state of an order.
+     */
+    public enum State
+    {
+        /** Placed and not yet completely filled. */
+        OPEN,
+        /** Completely filled. */
+        FILLED,
+        /** Cancelled, possibly after being partly filled. */
+        CANCELLED
+    }
+
+    /**
+     * An order being tracked.
+     */
+    public static class Order
+    {
+        final long id;
+        final int type;
+        final double amount;
+        final double price;
+        double remaining;
+        State state = State.OPEN;
+
+        Order(long id, int type, double amount, double price)
+        {
+            this.id = id;
+            this.type = type;
+            this.amount = amount;
+            this.price = price;
+            this.remaining = amount;
+        }
+
+        public long getId()
+        {
+            return id;
+        }
+
+        /**
+         * @return 0 for buy, 1 for sell
+         */
+        public int getType()
+        {
+            return type;
+        }
+
+        public double getAmount()
+        {
+            return amount;
+        }
+
+        public double getRemaining()
+        {
+            return remaining;
+        }
+
+        public double getPrice()
+        {
+            return price;
+        }
+
+        public State getState()
+        {
+            return state;
+        }
+
+        /**
+         * @return The order in the form returned by the exchange for open orders, with "status" set to "success"
+         */
+        public JSONObject toJSON()
+        {
+            JSONObject o = new JSONObject();
+            o.put("id", id);
+            o.put("type", type);
+            o.put("amount", remaining);
+            o.put("price", price);
+            o.put("state", state.name());
+            o.put("status", "success");
+            return o;
+        }
+    }
+
+    public static final long RECONCILE_INTERVAL_MS = 600000;
+    /** Closed orders kept for lookups before the oldest are forgotten. */
+    private static final int CLOSED_HISTORY = 1000;
+    private static final double EPSILON = 1e-12;
+
+    private static final LongAdder reconciliations = Metrics.counter("aether_order_reconciliations_total");
+    private static final LongAdder corrections = Metrics.counter("aether_order_reconcile_corrections_total");
+
+    private final HashMap<Long, Order> orders = new HashMap<Long, Order>();
+    private final ArrayDeque<Long> closed = new ArrayDeque<Long>();
+    private final PendingOrderEvents early = new PendingOrderEvents();
+    private int open = 0;
+    private long lastReconcile = Long.MIN_VALUE / 2;
+    private boolean streamConnected = false;
+
+    public synchronized void onOrderPlaced(long id, int type, double amount, double price)
+    {
+        if (!orders.containsKey(id))
+        {
+            orders.put(id, new Order(id, type, amount, price));
+            open++;
+            early.release(id, this);
+        }
+    }
+
+    public synchronized void onOrderFilled(long id, double amount, double price)
+    {
+        Order order = orders.get(id);
+        if (order == null)
+        {
+            // Streamed before the response that placed it
+            early.addFill(id, amount, price);
+        }
+        else if (order.state == State.OPEN)
+        {
+            order.remaining -= amount;
+            if (order.remaining <= EPSILON)
+            {
+                order.remaining = 0;
+                close(order, State.FILLED);
+            }
+        }
+    }
+
+    public synchronized void onOrderCancelled(long id)
+    {
+        Order order = orders.get(id);
+        if (order == null)
+        {
+            early.addCancel(id);
+        }
+        else if (order.state == State.OPEN)
+        {
+            close(order, State.CANCELLED);
+        }
+    }
+
+    /**
+     * @param id ID of the order
+     * @return True if the order is tracked and open
+     */
+    public synchronized boolean isOpen(long id)
+    {
+        Order order = orders.get(id);
+        return order != null && order.state == State.OPEN;
+    }
+
+    /**
+     * @param id ID of the order
+     * @return The order, or null if it is not tracked
+     */
+    public synchronized Order get(long id)
+    {
+        return orders.get(id);
+    }
+
+    /**
+     * @return The number of open orders
+     */
+    public synchronized int getOpenCount()
+    {
+        return open;
+    }
+
+    /**
+     * Marks the event stream feeding this manager as connected or not. While it is down, reconciliation is always due,
+     * and once it reconnects one more is due to catch up on anything missed in between.
+     */
+    public synchronized void setStreamConnected(boolean connected)
+    {
+        if (connected && !streamConnected)
+        {
+            lastReconcile = Long.MIN_VALUE / 2;
+        }
+        streamConnected = connected;
+    }
+
+    /**
+     * Makes a reconciliation due at once, e.g. after an order whose outcome is unknown.
+     */
+    public synchronized void requireReconcile()
+    {
+        lastReconcile = Long.MIN_VALUE / 2;
+    }
+
+    /**
+     * @param now Current time, Unix milliseconds
+     * @return True if the orders should be reconciled against the exchange (or wallet)
+     */
+    public synchronized boolean isReconcileDue(long now)
+    {
+        return !streamConnected || now - lastReconcile >= RECONCILE_INTERVAL_MS;
+    }
+
+    /**
+     * Brings the tracked orders into line with a full list of open orders. Orders open here but missing from the list
+     * closed without an event reaching us; as an order that is cancelled is normally cancelled from here, they are
+     * taken to have filled. Orders in the list but not tracked were placed elsewhere and are tracked from now on.
+     *
+     * @param openOrders Open orders, as returned by the exchange, with keys "id", "type", "amount" and "price"
+     * @param now Current time, Unix milliseconds
+     * @return The number of corrections made
+     */
+    public synchronized int reconcile(JSONArray openOrders, long now)
+    {
+        int fixed = 0;
+        HashSet<Long> listed = new HashSet<Long>();
+        for (int i = 0; i < openOrders.length(); i++)
+        {
+            JSONObject o = openOrders.getJSONObject(i);
+            long id = o.getLong("id");
+            listed.add(id);
+            Order order = orders.get(id);
+            if (order == null || order.state != State.OPEN)
+            {
+                if (order != null)
+                {
+                    closed.remove(id);
+                }
+                Order found = new Order(id, o.getInt("type"), o.getDouble("amount"), o.getDouble("price"));
+                orders.put(id, found);
+                open++;
+                fixed++;
+            }
+            else
+            {
+                order.remaining = o.getDouble("amount");
+            }
+        }
+        for (Order order : orders.values().toArray(new Order[0]))
+        {
+            if (order.state == State.OPEN && !listed.contains(order.id))
+            {
+                System.out.println("[Order Manager]: Order " + order.id + " closed without an event. Treating as filled.");
+                order.remaining = 0;
+                close(order, State.FILLED);
+                fixed++;
+            }
+        }
+        lastReconcile = now;
+        reconciliations.increment();
+        corrections.add(fixed);
+        return fixed;
+    }
+
+    private void close(Order order, State state)
+    {
+        order.state = state;
+        open--;
+        closed.addLast(order.id);
+        while (closed.size() > CLOSED_HISTORY)
+        {
+            orders.remove(closed.removeFirst());
+        }
+    }
+}
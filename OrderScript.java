@@ -0,0 +1,469 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Places and cancels orders from a script instead of the console prompts, so that many orders can be sent at once
+ * and order entry can be automated. Each line of a script is one order, as comma-separated values or as a JSON
+ * object:
+ *
+ * <pre>
+ * buy,0.01,29000                       {"action":"buy","amount":"0.01","price":29000}
+ * sell,0.01,31000                      {"action":"sell","amount":"0.01","price":31000}
+ * instant_buy,50                       {"action":"instant_buy","amount":"50"}
+ * instant_sell,0.01                    {"action":"instant_sell","amount":"0.01"}
+ * cancel,1234567                       {"action":"cancel","id":1234567}
+ * </pre>
+ *
+ * An instant buy's amount is the quote currency to spend, as for {@link OrderIntent#instantBuy}. Blank lines, lines
+ * starting with {@code #} and a CSV header starting with {@code action} are skipped.
+ *
+ * The whole script is checked before anything is sent, and if any line is invalid nothing is. It is then run in
+ * chunks of consecutive orders or cancellations, each sent at once through {@link Wallet#placeOrders} or
+ * {@link Wallet#cancelOrders}, so the orders are risk checked and rate limited as any batch is. Orders are paced to
+ * the wallet's order rate limit ({@code aether.risk.maxOrdersPerMinute}, 6 by default): each chunk waits until the
+ * limit has room for it, so a long script takes a minute for every that many orders. The outcome of each
+ * line, with its round trip in "latencyMs", is written to a results file of JSON lines as its chunk completes. The
+ * script is read a line at a time on both passes, so scripts of any length run in constant memory.
+ */
+public class OrderScript
+{
+    static final int MAX_ERRORS_SHOWN = 20;
+
+    private final Wallet wallet;
+    private final int chunk;
+    private PrintStream out = System.out;
+
+    /**
+     * One order of a script.
+     */
+    static final class Line
+    {
+        final long number;
+        final String action;
+        final OrderIntent intent;
+        final long id;
+
+        Line(long number, String action, OrderIntent intent, long id)
+        {
+            this.number = number;
+            this.action = action;
+            this.intent = intent;
+            this.id = id;
+        }
+
+        boolean isCancel()
+        {
+            return intent == null;
+        }
+    }
+
+    /**
+     * @param wallet The wallet to place orders through, e.g. {@link AetherTrader#getAccountWallet()}
+     * @param chunk Most orders to send at once
+     */
+    public OrderScript(Wallet wallet, int chunk)
+    {
+        this.wallet = wallet;
+        this.chunk = Math.max(1, chunk);
+    }
+
+    public void setOutput(PrintStream out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Parses one line of a script.
+     *
+     * @param number Line number, from 1
+     * @param text The line
+     * @return The order, or null if the line is blank, a comment or a header
+     * @throws IllegalArgumentException if the line is not a valid order
+     */
+    static Line parse(long number, String text)
+    {
+        String line = text.strip();
+        if (line.isEmpty() || line.startsWith("#") || (number == 1 && line.toLowerCase(Locale.ROOT).startsWith("action")))
+        {
+            return null;
+        }
+
+        String action;
+        String amount = null;
+        String price = null;
+        String id = null;
+        if (line.startsWith("{"))
+        {
+            try
+            {
+                JSONObject json = new JSONObject(line);
+                action = json.optString("action");
+                amount = json.has("amount") ? json.get("amount").toString() : null;
+                price = json.has("price") ? json.get("price").toString() : null;
+                id = json.has("id") ? json.get("id").toString() : null;
+            }
+            catch (JSONException e)
+            {
+                throw new IllegalArgumentException("Invalid JSON. " + e.getMessage());
+            }
+        }
+        else
+        {
+            String[] fields = line.split(",", -1);
+            action = fields[0].strip();
+            int expected = action.equalsIgnoreCase("buy") || action.equalsIgnoreCase("sell") ? 3 : 2;
+            if (fields.length != expected)
+            {
+                throw new IllegalArgumentException("Expected " + expected + " fields for " + action + ", found " + fields.length + ".");
+            }
+            if (action.equalsIgnoreCase("cancel"))
+            {
+                id = fields[1].strip();
+            }
+            else
+            {
+                amount = fields[1].strip();
+                price = expected == 3 ? fields[2].strip() : null;
+            }
+        }
+
+        action = action.toLowerCase(Locale.ROOT);
+        switch (action)
+        {
+            case "buy":
+                return new Line(number, action, OrderIntent.limitBuy(parseAmount(amount), parsePrice(price)), -1);
+            case "sell":
+                return new Line(number, action, OrderIntent.limitSell(parseAmount(amount), parsePrice(price)), -1);
+            case "instant_buy":
+                return new Line(number, action, OrderIntent.instantBuy(parseAmount(amount)), -1);
+            case "instant_sell":
+                return new Line(number, action, OrderIntent.instantSell(parseAmount(amount)), -1);
+            case "cancel":
+                return new Line(number, action, null, parseId(id));
+            default:
+                throw new IllegalArgumentException("Unknown action \"" + action + "\".");
+        }
+    }
+
+    private static BigDecimal parseAmount(String amount)
+    {
+        try
+        {
+            BigDecimal value = new BigDecimal(amount);
+            if (value.signum() > 0)
+            {
+                return value;
+            }
+        }
+        catch (NumberFormatException | NullPointerException e)
+        {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Amount must be a positive number, was " + amount + ".");
+    }
+
+    private static double parsePrice(String price)
+    {
+        try
+        {
+            double value = Double.parseDouble(price);
+            if (value > 0 && Double.isFinite(value))
+            {
+                return value;
+            }
+        }
+        catch (NumberFormatException | NullPointerException e)
+        {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Price must be a positive number, was " + price + ".");
+    }
+
+    private static long parseId(String id)
+    {
+        try
+        {
+            long value = Long.parseLong(id);
+            if (value > 0)
+            {
+                return value;
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Order ID must be a positive whole number, was " + id + ".");
+    }
+
+    /**
+     * Checks every line of a script without sending anything.
+     *
+     * @param script The script
+     * @return JSONObject with keys "status", "orders", "cancels" and "invalid", and the first
+     * {@value #MAX_ERRORS_SHOWN} problems in "errors" if any line is invalid
+     * @throws IOException if the script cannot be read
+     */
+    public static JSONObject validate(Path script) throws IOException
+    {
+        long orders = 0;
+        long cancels = 0;
+        long invalid = 0;
+        JSONArray errors = new JSONArray();
+        try (BufferedReader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8))
+        {
+            String text;
+            long number = 0;
+            while ((text = reader.readLine()) != null)
+            {
+                number++;
+                try
+                {
+                    Line line = parse(number, text);
+                    if (line != null)
+                    {
+                        if (line.isCancel())
+                        {
+                            cancels++;
+                        }
+                        else
+                        {
+                            orders++;
+                        }
+                    }
+                }
+                catch (IllegalArgumentException e)
+                {
+                    invalid++;
+                    if (errors.length() < MAX_ERRORS_SHOWN)
+                    {
+                        errors.put("Line " + number + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+        JSONObject result = new JSONObject();
+        result.put("status", invalid == 0 ? "success" : "failure");
+        result.put("orders", orders);
+        result.put("cancels", cancels);
+        result.put("invalid", invalid);
+        if (invalid > 0)
+        {
+            result.put("error", invalid + " invalid line" + (invalid == 1 ? "" : "s") + ", nothing sent.");
+            result.put("errors", errors);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a script that has passed {@link #validate}.
+     *
+     * @param script The script
+     * @param results Where to write the outcome of each line, as JSON lines
+     * @return JSONObject with keys "status", "succeeded", "failed", "seconds", the time spent waiting for the order
+     * rate limit, "rateWaitMs", and the median and p99 order round trip, "p50Ms" and "p99Ms"
+     * @throws IOException if the script cannot be read or the results written
+     */
+    public JSONObject run(Path script, Path results) throws IOException
+    {
+        LatencyHistogram latency = new LatencyHistogram();
+        long[] counts = new long[3];
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8);
+            BufferedWriter writer = Files.newBufferedWriter(results, StandardCharsets.UTF_8))
+        {
+            // A chunk of orders never holds more than the order rate limit lets through at once
+            int orderChunk = Math.min(chunk, wallet.getMaxOrdersPerMinute());
+            List<Line> pending = new ArrayList<Line>(chunk);
+            String text;
+            long number = 0;
+            while ((text = reader.readLine()) != null)
+            {
+                Line line = parse(++number, text);
+                if (line == null)
+                {
+                    continue;
+                }
+                // Orders and cancellations are sent in script order, so a cancel can follow the order it cancels
+                if (!pending.isEmpty() && (pending.size() == (pending.get(0).isCancel() ? chunk : orderChunk) || pending.get(0).isCancel() != line.isCancel()))
+                {
+                    send(pending, writer, latency, counts);
+                }
+                pending.add(line);
+            }
+            send(pending, writer, latency, counts);
+        }
+        JSONObject summary = new JSONObject();
+        summary.put("status", counts[1] == 0 ? "success" : "failure");
+        summary.put("succeeded", counts[0]);
+        summary.put("failed", counts[1]);
+        summary.put("seconds", (System.nanoTime() - start) / 1e9);
+        summary.put("rateWaitMs", counts[2]);
+        if (latency.getCount() > 0)
+        {
+            summary.put("p50Ms", latency.getValueAtPercentile(50) / 1e6);
+            summary.put("p99Ms", latency.getValueAtPercentile(99) / 1e6);
+        }
+        return summary;
+    }
+
+    /**
+     * Waits until the wallet's order rate limit has room for a chunk of orders, so that a long script is paced to the
+     * limit instead of having every order over it rejected.
+     *
+     * @return Milliseconds waited
+     */
+    private long awaitOrderRate(int orders) throws IOException
+    {
+        long wait = wallet.getOrderRateWaitMs(orders);
+        if (wait <= 0)
+        {
+            return 0;
+        }
+        out.println(String.format("[Script]: Waiting %.1fs for the order rate limit", wait / 1000.0));
+        try
+        {
+            Thread.sleep(wait);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the order rate limit.");
+        }
+        return wait;
+    }
+
+    /**
+     * Sends a chunk of lines, all orders or all cancellations, and writes their outcomes.
+     *
+     * @param counts Lines that succeeded and failed so far, and milliseconds spent waiting for the order rate limit,
+     * added to
+     */
+    private void send(List<Line> pending, BufferedWriter writer, LatencyHistogram latency, long[] counts) throws IOException
+    {
+        if (pending.isEmpty())
+        {
+            return;
+        }
+        JSONArray results;
+        if (pending.get(0).isCancel())
+        {
+            List<Long> ids = new ArrayList<Long>(pending.size());
+            for (Line line : pending)
+            {
+                ids.add(line.id);
+            }
+            results = wallet.cancelOrders(ids).getJSONArray("results");
+        }
+        else
+        {
+            List<OrderIntent> intents = new ArrayList<OrderIntent>(pending.size());
+            for (Line line : pending)
+            {
+                intents.add(line.intent);
+            }
+            counts[2] += awaitOrderRate(intents.size());
+            results = wallet.placeOrders(intents).getJSONArray("results");
+        }
+
+        for (int i = 0; i < pending.size(); i++)
+        {
+            JSONObject result = results.getJSONObject(i);
+            result.put("line", pending.get(i).number);
+            result.put("action", pending.get(i).action);
+            if (result.has("latencyMs"))
+            {
+                latency.record((long)(result.getDouble("latencyMs") * 1e6));
+            }
+            counts[result.optString("status").equals("success") ? 0 : 1]++;
+            writer.write(result.toString());
+            writer.newLine();
+        }
+        writer.flush();
+        out.println(String.format("[Script]: %d done, %d failed", counts[0] + counts[1], counts[1]));
+        pending.clear();
+    }
+
+    /**
+     * Usage: {@code java OrderScript <script|-> [results] [--check]}. A script of {@code -} is read from standard
+     * input. Results go to {@code <script>.results.jsonl} unless named, or {@code script.results.jsonl} for standard
+     * input. With {@code --check} the script is only validated. Orders are placed on the BTC/EUR account unless
+     * {@code -Daether.script.pair} names another pair, in chunks of {@code -Daether.script.chunk} (50). Exits with
+     * status 1 if the script is invalid or any line failed.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        List<String> positional = new ArrayList<String>();
+        boolean checkOnly = false;
+        for (String arg : args)
+        {
+            if (arg.equals("--check"))
+            {
+                checkOnly = true;
+            }
+            else
+            {
+                positional.add(arg);
+            }
+        }
+        if (positional.isEmpty())
+        {
+            System.out.println("Usage: java OrderScript <script|-> [results] [--check]");
+            return;
+        }
+
+        String name = positional.get(0);
+        Path results = Paths.get(positional.size() > 1 ? positional.get(1) : (name.equals("-") ? "script" : name) + ".results.jsonl");
+        Path script = name.equals("-") ? Files.createTempFile("aether-script", ".txt") : Paths.get(name);
+        boolean succeeded = false;
+        try
+        {
+            if (name.equals("-"))
+            {
+                // Spooled to disk, as standard input can only be read once
+                Files.copy(System.in, script, StandardCopyOption.REPLACE_EXISTING);
+            }
+            JSONObject checked = validate(script);
+            System.out.println("[Script]: " + checked);
+            succeeded = checked.getString("status").equals("success");
+            if (succeeded && !checkOnly)
+            {
+                AetherTrader.configureTransport();
+                AetherTrader.configureMetrics();
+                CurrencyPair pair = CurrencyPair.parse(System.getProperty("aether.script.pair", "btceur"));
+                AetherTrader trader = new AetherTrader(pair, new BitstampAPIConnection("key", "keySecret"));
+                OrderScript orders = new OrderScript(trader.getAccountWallet(), Integer.getInteger("aether.script.chunk", 50));
+                JSONObject summary = orders.run(script, results);
+                System.out.println("[Script]: " + summary);
+                System.out.println("[Script]: Results written to " + results + ".");
+                succeeded = summary.getString("status").equals("success");
+                trader.stopAuto();
+            }
+        }
+        finally
+        {
+            if (name.equals("-"))
+            {
+                Files.deleteIfExists(script);
+            }
+        }
+        // A non-zero exit status lets a calling job see that some lines failed
+        System.exit(succeeded ? 0 : 1);
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds fills and cancellations of orders not yet known to be placed, so they can be applied once the order is. The
+ * order feed can report an order filled or deleted before the response to the request that placed it has arrived, and
+ * applying the events first would lose them.
+ *
+ * Every order is reported twice, by the order feed and by the response that placed it, so the IDs of recently closed
+ * orders are remembered too: whichever report comes second finds its order closed and is ignored.
+ *
+ * Events of orders that are never placed, such as those placed before the process started, are dropped oldest first
+ * once {@value #MAX_ORDERS} orders' events are held, and closed IDs once {@value #MAX_ORDERS} are remembered. Not
+ * thread safe; each user holds its own lock.
+ */
+class PendingOrderEvents
+{
+    private static final int MAX_ORDERS = 1000;
+
+    private static class Pending
+    {
+        // Fills as {amount, price}; a cancellation as null
+        final List<double[]> events = new ArrayList<double[]>(2);
+        boolean settled = false;
+    }
+
+    private final LinkedHashMap<Long, Pending> pending = new LinkedHashMap<Long, Pending>()
+    {
+        protected boolean removeEldestEntry(Map.Entry<Long, Pending> eldest)
+        {
+            return size() > MAX_ORDERS;
+        }
+    };
+
+    private final LinkedHashMap<Long, Boolean> closed = new LinkedHashMap<Long, Boolean>()
+    {
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest)
+        {
+            return size() > MAX_ORDERS;
+        }
+    };
+
+    /**
+     * Remembers that an order has been filled or cancelled, so later reports of it are known to be repeats.
+     *
+     * @param id ID of the order
+     */
+    void close(long id)
+    {
+        closed.put(id, Boolean.TRUE);
+    }
+
+    /**
+     * @param id ID of the order
+     * @return True if the order was closed recently
+     */
+    boolean isClosed(long id)
+    {
+        return closed.containsKey(id);
+    }
+
+    void addFill(long id, double amount, double price)
+    {
+        pending.computeIfAbsent(id, k -> new Pending()).events.add(new double[] {amount, price});
+    }
+
+    void addCancel(long id)
+    {
+        pending.computeIfAbsent(id, k -> new Pending()).events.add(null);
+    }
+
+    /**
+     * Marks every event held so far as already accounted for, e.g. by balances just taken from the exchange. Their
+     * orders are closed, so when one is seen placed it should be ignored rather than have its events applied.
+     */
+    void settle()
+    {
+        for (Pending p : pending.values())
+        {
+            p.settled = true;
+        }
+    }
+
+    /**
+     * @param id ID of the order
+     * @return True if the order's events were settled by {@link #settle()}
+     */
+    boolean isSettled(long id)
+    {
+        Pending p = pending.get(id);
+        return p != null && p.settled;
+    }
+
+    /**
+     * Removes the events held for an order and, unless they were settled, passes them to a listener in the order they
+     * arrived.
+     *
+     * @param id ID of the order, now placed
+     * @param listener Listener to apply them to
+     */
+    void release(long id, OrderListener listener)
+    {
+        Pending p = pending.remove(id);
+        if (p == null || p.settled)
+        {
+            return;
+        }
+        for (double[] event : p.events)
+        {
+            if (event == null)
+            {
+                listener.onOrderCancelled(id);
+            }
+            else
+            {
+                listener.onOrderFilled(id, event[0], event[1]);
+            }
+        }
+    }
+}
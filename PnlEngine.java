@@ -0,0 +1,418 @@
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Keeps profit and loss for a position in a currency pair up to date as fills and prices arrive, so reading it never
+ * means re-deriving anything from balances or the exchange.
+ *
+ * Each fill either adds to the position, as a new lot, or closes part of it, realizing the difference between the fill
+ * price and the cost of what it closed. Cost is either first in, first out, from lots held in a ring of primitive
+ * arrays, or the running average cost. Either way the cost of the open position is kept as a running sum, so
+ * unrealized P&L, exposure and drawdown are a few arithmetic operations on each fill or price. A fill costs O(1),
+ * amortized over the lots it closes, and allocates nothing unless the lot ring has to grow.
+ *
+ * Positions may be long or short. Positions and amounts traded are in the pair's base currency (BTC for BTC/EUR), and
+ * prices, P&L and fees in its quote currency (EUR).
+ */
+public class PnlEngine implements OrderListener, BitstampLiveFeed.TradeListener
+{
+    /**
+     * How the cost of the part of a position closed by a fill is worked out.
+     */
+    public enum CostBasis
+    {
+        /** The oldest lots are closed first. */
+        FIFO,
+        /** Every lot costs the average price paid for the open position. */
+        AVERAGE
+    }
+
+    /**
+     * The state of an engine at one point in time.
+     */
+    public static class Snapshot
+    {
+        /** Position in the base currency, negative if short. */
+        public final double position;
+        /** Average cost of the open position per unit of the base currency, or NaN if flat. */
+        public final double averageCost;
+        /** Price the position is marked at, or NaN if none has been seen. */
+        public final double mark;
+        public final double realized;
+        public final double unrealized;
+        public final double fees;
+        /** Realized plus unrealized, less fees. */
+        public final double net;
+        /** Value of the open position at the mark, regardless of direction. */
+        public final double exposure;
+        /** Largest fall in net P&L from a previous high. */
+        public final double maxDrawdown;
+        public final long fills;
+        /** Base currency traded. */
+        public final double volume;
+
+        Snapshot(double position, double averageCost, double mark, double realized, double unrealized, double fees,
+            double exposure, double maxDrawdown, long fills, double volume)
+        {
+            this.position = position;
+            this.averageCost = averageCost;
+            this.mark = mark;
+            this.realized = realized;
+            this.unrealized = unrealized;
+            this.fees = fees;
+            this.net = realized + unrealized - fees;
+            this.exposure = exposure;
+            this.maxDrawdown = maxDrawdown;
+            this.fills = fills;
+            this.volume = volume;
+        }
+
+        public String toString()
+        {
+            return format("%+.2f", "%.2f");
+        }
+
+        /**
+         * @param pair Pair the engine keeps a position in
+         * @return The snapshot with amounts to the precision of the pair's quote currency and labelled with it, e.g.
+         * "P&amp;L: +12.50 EUR (realized ...)"
+         */
+        public String toString(CurrencyPair pair)
+        {
+            String unit = "." + pair.getQuoteDecimals() + "f " + pair.getQuote().toUpperCase(Locale.ROOT);
+            return format("%+" + unit, "%" + unit);
+        }
+
+        private String format(String signed, String unsigned)
+        {
+            return String.format(Locale.ROOT, "P&L: " + signed + " (realized " + signed + ", unrealized " + signed + ", fees " + unsigned + ", max drawdown " + unsigned + ")", net, realized, unrealized, fees, maxDrawdown);
+        }
+    }
+
+    private static final double EPSILON = 1e-12;
+
+    private final CostBasis basis;
+    /** Fee charged on each fill, as a fraction of its value. */
+    private double feeRate;
+
+    // FIFO lots, oldest at head, each signed like the position
+    private double[] lotQty = new double[16];
+    private double[] lotPrice = new double[16];
+    private int head = 0;
+    private int lots = 0;
+
+    private double position = 0;
+    private double openCost = 0;
+    private double realized = 0;
+    private double fees = 0;
+    private double mark = Double.NaN;
+    private double peak = 0;
+    private double maxDrawdown = 0;
+    private long fills = 0;
+    private double volume = 0;
+
+    // Type and amount left of orders reported through OrderListener, which does not repeat them on fills
+    private final HashMap<Long, double[]> orders = new HashMap<Long, double[]>();
+    private final PendingOrderEvents early = new PendingOrderEvents();
+
+    /**
+     * @param basis How closed positions are costed
+     * @param feeRate Fee charged on each fill, as a percentage of its value
+     */
+    public PnlEngine(CostBasis basis, double feeRate)
+    {
+        this.basis = basis;
+        this.feeRate = feeRate / 100;
+    }
+
+    /**
+     * @param feeRate Fee charged on each fill from now on, as a percentage of its value
+     */
+    public synchronized void setFeeRate(double feeRate)
+    {
+        this.feeRate = feeRate / 100;
+    }
+
+    /**
+     * Opens a position held before the engine started, as if bought at the given price, without counting it as a
+     * fill.
+     *
+     * @param amount Base currency held, negative if short
+     * @param price Cost per unit
+     */
+    public synchronized void seed(double amount, double price)
+    {
+        if (Math.abs(amount) > EPSILON)
+        {
+            open(amount, price);
+            updateEquity();
+        }
+    }
+
+    /**
+     * Accounts for a fill, charging the engine's fee rate.
+     *
+     * @param type 0 for buy, 1 for sell
+     * @param amount Base currency filled
+     * @param price Price filled at
+     */
+    public void onFill(int type, double amount, double price)
+    {
+        onFill(type, amount, price, amount * price * feeRate);
+    }
+
+    /**
+     * Accounts for a fill.
+     *
+     * @param type 0 for buy, 1 for sell
+     * @param amount Base currency filled
+     * @param price Price filled at
+     * @param fee Fee charged, in the quote currency
+     */
+    public synchronized void onFill(int type, double amount, double price, double fee)
+    {
+        double signed = type == 0 ? amount : -amount;
+        fills++;
+        volume += amount;
+        fees += fee;
+        if (position * signed < 0)
+        {
+            signed = close(signed, price);
+        }
+        if (Math.abs(signed) > EPSILON)
+        {
+            open(signed, price);
+        }
+        updateEquity();
+    }
+
+    /**
+     * Marks the position to a new price.
+     *
+     * @param price Latest price of the base currency
+     */
+    public synchronized void mark(double price)
+    {
+        mark = price;
+        updateEquity();
+    }
+
+    public void onTrade(long timestamp, double price, double amount, int type)
+    {
+        mark(price);
+    }
+
+    public synchronized void onOrderPlaced(long id, int type, double amount, double price)
+    {
+        // Already reported by the order stream or the response, whichever came first, if known or closed
+        if (!early.isClosed(id) && orders.putIfAbsent(id, new double[] {type, amount}) == null)
+        {
+            early.release(id, this);
+        }
+    }
+
+    public synchronized void onOrderFilled(long id, double amount, double price)
+    {
+        double[] order = orders.get(id);
+        if (order == null)
+        {
+            if (!early.isClosed(id))
+            {
+                // Streamed before the response that placed it
+                early.addFill(id, amount, price);
+            }
+            return;
+        }
+        double filled = Math.min(amount, order[1]);
+        order[1] -= filled;
+        if (order[1] <= EPSILON)
+        {
+            orders.remove(id);
+            early.close(id);
+        }
+        onFill((int)order[0], filled, price);
+    }
+
+    public synchronized void onOrderCancelled(long id)
+    {
+        if (orders.remove(id) != null)
+        {
+            early.close(id);
+        }
+        else if (!early.isClosed(id))
+        {
+            early.addCancel(id);
+        }
+    }
+
+    /**
+     * Closes as much of the position as a fill against it allows, realizing the P&L on what is closed.
+     *
+     * @param signed Signed amount filled, opposite in sign to the position
+     * @return What is left of the fill once the position is closed, to open in the other direction
+     */
+    private double close(double signed, double price)
+    {
+        if (basis == CostBasis.AVERAGE)
+        {
+            double average = openCost / position;
+            double closed = Math.abs(signed) < Math.abs(position) ? -signed : position;
+            realized += closed * (price - average);
+            position -= closed;
+            openCost = Math.abs(position) <= EPSILON ? 0 : position * average;
+            position = Math.abs(position) <= EPSILON ? 0 : position;
+            return signed + closed;
+        }
+        while (lots > 0 && Math.abs(signed) > EPSILON)
+        {
+            double lot = lotQty[head];
+            double closed = Math.abs(signed) < Math.abs(lot) ? -signed : lot;
+            realized += closed * (price - lotPrice[head]);
+            openCost -= closed * lotPrice[head];
+            position -= closed;
+            signed += closed;
+            lot -= closed;
+            if (Math.abs(lot) <= EPSILON)
+            {
+                head = (head + 1) & (lotQty.length - 1);
+                lots--;
+            }
+            else
+            {
+                lotQty[head] = lot;
+            }
+        }
+        if (lots == 0)
+        {
+            // Clear rounding left over from closing every lot
+            position = 0;
+            openCost = 0;
+        }
+        return signed;
+    }
+
+    private void open(double signed, double price)
+    {
+        position += signed;
+        openCost += signed * price;
+        if (basis == CostBasis.FIFO)
+        {
+            if (lots == lotQty.length)
+            {
+                grow();
+            }
+            int tail = (head + lots) & (lotQty.length - 1);
+            lotQty[tail] = signed;
+            lotPrice[tail] = price;
+            lots++;
+        }
+    }
+
+    private void grow()
+    {
+        double[] qty = new double[lotQty.length * 2];
+        double[] price = new double[lotPrice.length * 2];
+        for (int i = 0; i < lots; i++)
+        {
+            qty[i] = lotQty[(head + i) & (lotQty.length - 1)];
+            price[i] = lotPrice[(head + i) & (lotPrice.length - 1)];
+        }
+        lotQty = qty;
+        lotPrice = price;
+        head = 0;
+    }
+
+    private double unrealized()
+    {
+        return Double.isNaN(mark) ? 0 : position * mark - openCost;
+    }
+
+    private void updateEquity()
+    {
+        double net = realized + unrealized() - fees;
+        if (net > peak)
+        {
+            peak = net;
+        }
+        else if (peak - net > maxDrawdown)
+        {
+            maxDrawdown = peak - net;
+        }
+    }
+
+    /**
+     * @return The engine's current state
+     */
+    public synchronized Snapshot snapshot()
+    {
+        return new Snapshot(position, position == 0 ? Double.NaN : openCost / position, mark, realized, unrealized(),
+            fees, Double.isNaN(mark) ? 0 : Math.abs(position) * mark, maxDrawdown, fills, volume);
+    }
+
+    public synchronized double getPosition()
+    {
+        return position;
+    }
+
+    public synchronized double getRealized()
+    {
+        return realized;
+    }
+
+    public synchronized double getUnrealized()
+    {
+        return unrealized();
+    }
+
+    public synchronized double getFees()
+    {
+        return fees;
+    }
+
+    public synchronized double getNet()
+    {
+        return realized + unrealized() - fees;
+    }
+
+    public synchronized double getExposure()
+    {
+        return Double.isNaN(mark) ? 0 : Math.abs(position) * mark;
+    }
+
+    public synchronized double getMaxDrawdown()
+    {
+        return maxDrawdown;
+    }
+
+    /**
+     * Exports the figures of a BTC/EUR engine as gauges, labelled with the name of the book it keeps.
+     *
+     * @param book Name of the book, e.g. "test_wallet"
+     */
+    public void registerMetrics(String book)
+    {
+        registerMetrics(CurrencyPair.BTCEUR, book);
+    }
+
+    /**
+     * Exports the engine's figures as gauges named after the currency each is in, e.g.
+     * {@code aether_pnl_position_eth} and {@code aether_pnl_net_eur} for ETH/EUR, labelled with the pair and the name
+     * of the book it keeps.
+     *
+     * @param pair Pair the engine keeps a position in
+     * @param book Name of the book, e.g. "test_wallet"
+     */
+    public void registerMetrics(CurrencyPair pair, String book)
+    {
+        String p = pair.getSymbol();
+        String base = pair.getBase();
+        String quote = pair.getQuote();
+        Metrics.gauge("aether_pnl_position_" + base, this::getPosition, "pair", p, "book", book);
+        Metrics.gauge("aether_pnl_realized_" + quote, this::getRealized, "pair", p, "book", book);
+        Metrics.gauge("aether_pnl_unrealized_" + quote, this::getUnrealized, "pair", p, "book", book);
+        Metrics.gauge("aether_pnl_fees_" + quote, this::getFees, "pair", p, "book", book);
+        Metrics.gauge("aether_pnl_net_" + quote, this::getNet, "pair", p, "book", book);
+        Metrics.gauge("aether_pnl_exposure_" + quote, this::getExposure, "pair", p, "book", book);
+        Metrics.gauge("aether_pnl_max_drawdown_" + quote, this::getMaxDrawdown, "pair", p, "book", book);
+    }
+}
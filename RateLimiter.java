@@ -0,0 +1,93 @@
+/**
+ * A token bucket shared by every connection that should draw on one request budget, such as Bitstamp's per-account
+ * request limit. The bucket holds up to a period's worth of permits and refills continuously, so bursts are allowed
+ * up to the budget while the long-run rate is held to it.
+ *
+ * A caller that finds the bucket empty reserves the next permit and waits for it outside the lock, so waiting callers
+ * are served in the order they arrived and never hold one another up for longer than their own turn. Each wait is
+ * recorded in {@code aether_api_rate_wait_seconds}.
+ */
+public class RateLimiter
+{
+    private static final LatencyHistogram waits = Metrics.histogram("aether_api_rate_wait_seconds");
+
+    private final double capacity;
+    private final double permitsPerNano;
+    private double permits;
+    private long lastRefill;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param permits Requests allowed in each period
+     * @param periodMs Length of the period, in milliseconds
+     */
+    public RateLimiter(int permits, long periodMs)
+    {
+        this.capacity = permits;
+        this.permitsPerNano = permits / (periodMs * 1e6);
+        this.permits = permits;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a permit, waiting until one is free. If interrupted while waiting the permit is still taken, and the
+     * interrupt is left set for the caller to act on.
+     */
+    public void acquire()
+    {
+        long waitNanos = reserve(System.nanoTime());
+        if (waitNanos <= 0)
+        {
+            return;
+        }
+        long start = System.nanoTime();
+        try
+        {
+            Thread.sleep(waitNanos / 1000000, (int)(waitNanos % 1000000));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        waits.recordSince(start);
+    }
+
+    /**
+     * Takes a permit only if one is free now, for requests that are worth sending but not worth waiting for.
+     *
+     * @return True if a permit was taken
+     */
+    public synchronized boolean tryAcquire()
+    {
+        long now = System.nanoTime();
+        permits = Math.min(capacity, permits + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        if (permits < 1)
+        {
+            return false;
+        }
+        permits--;
+        return true;
+    }
+
+    /**
+     * @return The time in nanoseconds until a permit taken now is free, or 0 if one is free at once
+     */
+    private synchronized long reserve(long now)
+    {
+        permits = Math.min(capacity, permits + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        permits--;
+        return permits >= 0 ? 0 : (long)Math.ceil(-permits / permitsPerNano);
+    }
+
+    /**
+     * @return Permits free now, negative if callers are waiting
+     */
+    public synchronized double getAvailable()
+    {
+        long now = System.nanoTime();
+        return Math.min(capacity, permits + (now - lastRefill) * permitsPerNano);
+    }
+}
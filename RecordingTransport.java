@@ -0,0 +1,120 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Passes requests through to another transport, writing every request and response to a session log along with when
+ * it was sent and how long the response took. The log can be served back with {@link ReplayTransport}.
+ *
+ * The log is a gzipped stream of records. Request headers are not written, so logs never contain API keys or
+ * signatures. Requests sent with {@link #sendAsync} stay asynchronous, so timeouts and hedging work as they would
+ * unrecorded; each is written when its response arrives, so the log is in order of response rather than of sending.
+ */
+public class RecordingTransport implements ExchangeTransport, Closeable
+{
+    static final int MAGIC = 0x4154524C; // "ATRL"
+    static final int VERSION = 1;
+
+    private final ExchangeTransport delegate;
+    private final DataOutputStream out;
+    private final long startNanos;
+
+    /**
+     * @param delegate Transport to send requests through
+     * @param log File to write the session log to (overwritten)
+     * @throws IOException if the log cannot be created
+     */
+    public RecordingTransport(ExchangeTransport delegate, Path log) throws IOException
+    {
+        this.delegate = delegate;
+        this.out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(log)), true));
+        this.startNanos = System.nanoTime();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+    }
+
+    public ExchangeResponse send(ExchangeRequest request) throws IOException, InterruptedException
+    {
+        long sent = System.nanoTime();
+        ExchangeResponse response = delegate.send(request);
+        long duration = System.nanoTime() - sent;
+        write(sent - startNanos, duration, request, response);
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<ExchangeResponse> sendAsync(ExchangeRequest request)
+    {
+        long sent = System.nanoTime();
+        CompletableFuture<ExchangeResponse> pending = delegate.sendAsync(request);
+        CompletableFuture<ExchangeResponse> result = pending.thenApply(response ->
+        {
+            try
+            {
+                write(sent - startNanos, System.nanoTime() - sent, request, response);
+            }
+            catch (IOException e)
+            {
+                throw new CompletionException(e);
+            }
+            return response;
+        });
+        // Cancelling a dependent future does not reach the one it depends on, so pass the cancellation back
+        result.whenComplete((response, e) ->
+        {
+            if (result.isCancelled())
+            {
+                pending.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private synchronized void write(long offset, long duration, ExchangeRequest request, ExchangeResponse response) throws IOException
+    {
+        out.writeLong(offset);
+        out.writeLong(duration);
+        out.writeUTF(request.getMethod());
+        out.writeUTF(request.getPath());
+        writeString(request.getBody());
+        out.writeShort(response.getStatus());
+        out.writeShort(response.getHeaders().size());
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet())
+        {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        writeString(response.getBody());
+        // Sync flush so a session cut short still leaves a readable log
+        out.flush();
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string; unlike writeUTF this is not limited to 64KB. Null is written as -1.
+     */
+    private void writeString(String s) throws IOException
+    {
+        if (s == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public synchronized void close() throws IOException
+    {
+        out.close();
+    }
+}
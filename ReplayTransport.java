@@ -0,0 +1,195 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Serves responses from a session log written by {@link RecordingTransport}, without touching the network.
+ *
+ * Requests are matched to recorded responses by verb and endpoint (the path without its query string, as queries
+ * often hold the current time), in the order they were recorded, so a replayed session sees exactly the data the
+ * recorded one did. Responses can be served at the pace they were recorded or as fast as possible.
+ *
+ * Private responses were signed by the server using the original request's nonce. If given the API key secret, the
+ * replay re-signs each private response for the nonce of the request it is answering, so signature checks pass.
+ */
+public class ReplayTransport implements ExchangeTransport
+{
+    /**
+     * How quickly recorded responses are served.
+     */
+    public enum Pace
+    {
+        /** Each response is held back until the time it was originally received, relative to the start of replay. */
+        RECORDED,
+        /** Responses are returned immediately. */
+        FAST
+    }
+
+    private final Pace pace;
+    private final String apiKeySecret;
+    private final Map<String, List<Record>> records = new HashMap<String, List<Record>>();
+    private final Map<String, Integer> positions = new HashMap<String, Integer>();
+    private boolean loop = false;
+    private long startNanos = -1;
+    private int total = 0;
+
+    /**
+     * @param log Session log to serve from
+     * @param pace How quickly to serve responses
+     * @param apiKeySecret API key secret to re-sign private responses with, or null to serve them as recorded
+     * @throws IOException if the log cannot be read
+     */
+    public ReplayTransport(Path log, Pace pace, String apiKeySecret) throws IOException
+    {
+        this.pace = pace;
+        this.apiKeySecret = apiKeySecret;
+        load(log);
+    }
+
+    /**
+     * @param loop If true, an endpoint whose recorded responses have all been served starts again from its first
+     */
+    public void setLoop(boolean loop)
+    {
+        this.loop = loop;
+    }
+
+    /**
+     * @return The number of responses in the log
+     */
+    public int size()
+    {
+        return total;
+    }
+
+    public ExchangeResponse send(ExchangeRequest request) throws IOException, InterruptedException
+    {
+        Record record = next(request);
+
+        if (pace == Pace.RECORDED)
+        {
+            long wait = startNanos + record.offset + record.duration - System.nanoTime();
+            if (wait > 0)
+            {
+                Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+            }
+        }
+
+        ExchangeResponse response = record.response;
+        String nonce = request.getHeader("X-Auth-Nonce");
+        if (apiKeySecret != null && nonce != null)
+        {
+            String stringToSign = nonce + request.getHeader("X-Auth-Timestamp") + response.getHeader("Content-Type") + response.getBody();
+            Map<String, String> headers = new LinkedHashMap<String, String>(response.getHeaders());
+            headers.put("X-Server-Auth-Signature", BitstampAPIConnection.sign(apiKeySecret, stringToSign));
+            response = new ExchangeResponse(response.getStatus(), headers, response.getBody());
+        }
+        return response;
+    }
+
+    private synchronized Record next(ExchangeRequest request) throws IOException
+    {
+        if (startNanos == -1)
+        {
+            startNanos = System.nanoTime();
+        }
+        String key = request.getMethod() + " " + request.getEndpoint();
+        List<Record> queue = records.get(key);
+        if (queue == null)
+        {
+            throw new IOException("No recorded responses for " + key);
+        }
+        int pos = positions.getOrDefault(key, 0);
+        if (pos == queue.size())
+        {
+            if (!loop)
+            {
+                throw new IOException("Recorded responses for " + key + " exhausted");
+            }
+            pos = 0;
+        }
+        positions.put(key, pos + 1);
+        return queue.get(pos);
+    }
+
+    private void load(Path log) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(log)))))
+        {
+            if (in.readInt() != RecordingTransport.MAGIC || in.readInt() != RecordingTransport.VERSION)
+            {
+                throw new IOException(log + " is not a session log");
+            }
+            while (true)
+            {
+                try
+                {
+                    readRecord(in);
+                }
+                catch (EOFException e)
+                {
+                    // End of log, or a record cut short when the recording session ended abruptly
+                    break;
+                }
+            }
+        }
+    }
+
+    private void readRecord(DataInputStream in) throws IOException
+    {
+        long offset = in.readLong();
+        long duration = in.readLong();
+        String method = in.readUTF();
+        String path = in.readUTF();
+        readString(in);
+        int status = in.readShort();
+        int headerCount = in.readShort();
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (int h = 0; h < headerCount; h++)
+        {
+            headers.put(in.readUTF(), in.readUTF());
+        }
+        String body = readString(in);
+
+        ExchangeRequest request = new ExchangeRequest(method, path, new HashMap<String, String>(), null);
+        String key = method + " " + request.getEndpoint();
+        records.computeIfAbsent(key, k -> new ArrayList<Record>()).add(new Record(offset, duration, new ExchangeResponse(status, headers, body)));
+        total++;
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length == -1)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Record
+    {
+        final long offset;
+        final long duration;
+        final ExchangeResponse response;
+
+        Record(long offset, long duration, ExchangeResponse response)
+        {
+            this.offset = offset;
+            this.duration = duration;
+            this.response = response;
+        }
+    }
+}
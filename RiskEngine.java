@@ -0,0 +1,395 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Pre-trade risk checks, made before every order is sent. An order is rejected if it is for nothing, larger than the
+ * order size or value limits, beyond the order rate limit, priced too far from the mark, more than the funds
+ * available, would take the position over its limit, or adds to the position after the day's loss limit has been hit.
+ *
+ * Checks only read limits and in-memory state (the mark, the funds available and the trailing order times), so they
+ * take well under a microsecond and allocate nothing. Each rejection is counted in
+ * {@code aether_risk_rejections_total}, labelled with its reason.
+ *
+ * Limits default to the {@code aether.risk.*} system properties, e.g. {@code -Daether.risk.maxOrderBase=0.1}. Sizes and
+ * positions are in the pair's base currency and values and losses in its quote currency, so each may be overridden for
+ * one pair by adding its symbol, e.g. {@code -Daether.risk.etheur.maxOrderBase=5}.
+ */
+public class RiskEngine implements BitstampLiveFeed.TradeListener
+{
+    /**
+     * Outcome of a check.
+     */
+    public enum Reason
+    {
+        ACCEPTED("Accepted."),
+        INVALID_AMOUNT("Order amount must be positive."),
+        ORDER_SIZE("Order is larger than the maximum order size."),
+        ORDER_VALUE("Order is worth more than the maximum order value."),
+        ORDER_RATE("Too many orders in the last minute."),
+        NO_MARK("No recent market price to check the order against."),
+        PRICE_DEVIATION("Order price is too far from the market price."),
+        INSUFFICIENT_FUNDS("Not enough funds available."),
+        POSITION_LIMIT("Order would take the position over its limit."),
+        DAILY_LOSS("Daily loss limit reached; only orders reducing the position are allowed.");
+
+        private final String message;
+
+        Reason(String message)
+        {
+            this.message = message;
+        }
+
+        /**
+         * @return A description of the reason, suitable for the "error" of a failed order
+         */
+        public String getMessage()
+        {
+            return message;
+        }
+    }
+
+    /**
+     * Funds an account holds, as known in memory.
+     */
+    public interface Funds
+    {
+        double getAvailableBase();
+        double getAvailableQuote();
+        double getBaseBalance();
+    }
+
+    /** Age after which the mark is too old to check prices against. */
+    public static final long MARK_MAX_AGE_MS = 120000;
+    private static final long DAY_MS = 86400000;
+
+    private static final LongAdder[] rejections = new LongAdder[Reason.values().length];
+    static
+    {
+        for (Reason r : Reason.values())
+        {
+            rejections[r.ordinal()] = Metrics.counter("aether_risk_rejections_total", "reason", r.name().toLowerCase());
+        }
+    }
+    private static final LongAdder checks = Metrics.counter("aether_risk_checks_total");
+
+    private final Funds funds;
+    private final DoubleSupplier equity;
+
+    private double maxOrderBase;
+    private double maxOrderQuote;
+    private double maxDeviation;
+    private double maxPositionBase;
+    private double maxDailyLoss;
+    // Window the order rate limit counts orders over, a minute unless shortened for tests
+    private long orderRateWindowMs;
+    // Times of accepted orders over the trailing window, as a ring sized to the rate limit
+    private long[] orderTimes;
+    private int nextOrder = 0;
+
+    private volatile double mark = Double.NaN;
+    private volatile long markTime = Long.MIN_VALUE / 2;
+    // UTC day of the newest mark, and the equity when it was first marked
+    private volatile long day = Long.MIN_VALUE;
+    private double dayStartEquity = Double.NaN;
+
+    /**
+     * @param funds Funds of the account orders are checked against
+     * @param equity Supplies the account's current net P&L or value in EUR, for the daily loss limit; may be null to
+     * not apply one
+     */
+    public RiskEngine(Funds funds, DoubleSupplier equity)
+    {
+        this(CurrencyPair.BTCEUR, funds, equity);
+    }
+
+    /**
+     * @param pair Pair orders are for, whose limits to apply
+     * @param funds Funds of the account orders are checked against
+     * @param equity Supplies the account's current net P&L or value in the quote currency, for the daily loss limit;
+     * may be null to not apply one
+     */
+    public RiskEngine(CurrencyPair pair, Funds funds, DoubleSupplier equity)
+    {
+        this.funds = funds;
+        this.equity = equity;
+        maxOrderBase = limit(pair, "maxOrderBase", 0.5);
+        maxOrderQuote = limit(pair, "maxOrderQuote", 20000);
+        maxDeviation = limit(pair, "maxDeviationPercent", 5) / 100;
+        maxPositionBase = limit(pair, "maxPositionBase", 1);
+        maxDailyLoss = limit(pair, "maxDailyLoss", 500);
+        setMaxOrdersPerMinute((int)limit(pair, "maxOrdersPerMinute", 6));
+        orderRateWindowMs = (long)limit(pair, "orderRateWindowMs", 60000);
+    }
+
+    /**
+     * @return The limit's property for the pair, else its property for every pair, else the default
+     */
+    private static double limit(CurrencyPair pair, String name, double def)
+    {
+        String value = System.getProperty("aether.risk." + pair.getSymbol() + "." + name,
+            System.getProperty("aether.risk." + name));
+        return value == null ? def : Double.parseDouble(value);
+    }
+
+    /**
+     * Checks a limit order.
+     *
+     * @param type 0 for buy, 1 for sell
+     * @param amount Base currency to trade
+     * @param price Limit price in the quote currency
+     * @return {@link Reason#ACCEPTED} if the order may be sent, else why not
+     */
+    public Reason checkLimit(int type, double amount, double price)
+    {
+        return check(type, amount, price, System.currentTimeMillis(), 0, 0);
+    }
+
+    /**
+     * Checks an instant (market) order, which is priced at the mark.
+     *
+     * @param type 0 for buy, 1 for sell
+     * @param amount Quote currency to spend for a buy, base currency to sell for a sell, as instant orders are placed
+     * @return {@link Reason#ACCEPTED} if the order may be sent, else why not
+     */
+    public Reason checkInstant(int type, double amount)
+    {
+        long now = System.currentTimeMillis();
+        double price = mark;
+        if (Double.isNaN(price) || now - markTime > MARK_MAX_AGE_MS)
+        {
+            checks.increment();
+            return reject(Reason.NO_MARK);
+        }
+        return check(type, type == 0 ? amount / price : amount, price, now, 0, 0);
+    }
+
+    /**
+     * Checks a batch of orders to be sent together, such as a ladder. Each is checked as it would be alone, except
+     * that the funds and position taken by the orders accepted before it are counted against it.
+     *
+     * @param intents The orders
+     * @return The outcome for each order, in the order given
+     */
+    public synchronized Reason[] checkAll(List<OrderIntent> intents)
+    {
+        long now = System.currentTimeMillis();
+        Reason[] reasons = new Reason[intents.size()];
+        double usedBase = 0;
+        double usedQuote = 0;
+        double bought = 0;
+        for (int i = 0; i < reasons.length; i++)
+        {
+            OrderIntent intent = intents.get(i);
+            int type = intent.getType();
+            double amount = intent.getAmount().doubleValue();
+            double price = intent.isInstant() ? mark : intent.getPrice();
+            if (intent.isInstant() && (Double.isNaN(price) || now - markTime > MARK_MAX_AGE_MS))
+            {
+                checks.increment();
+                reasons[i] = reject(Reason.NO_MARK);
+                continue;
+            }
+            double base = intent.isInstant() && type == 0 ? amount / price : amount;
+            reasons[i] = check(type, base, price, now, type == 0 ? usedQuote : usedBase, bought);
+            if (reasons[i] == Reason.ACCEPTED)
+            {
+                usedQuote += type == 0 ? base * price : 0;
+                usedBase += type == 1 ? base : 0;
+                bought += type == 0 ? base : 0;
+            }
+        }
+        return reasons;
+    }
+
+    /**
+     * @param used Funds on the order's side already taken by other orders in the same batch
+     * @param bought Base currency the batch's other orders already buy, counted towards the position limit
+     */
+    private synchronized Reason check(int type, double amount, double price, long now, double used, double bought)
+    {
+        checks.increment();
+        if (!(amount > 0) || !(price > 0))
+        {
+            return reject(Reason.INVALID_AMOUNT);
+        }
+        if (amount > maxOrderBase)
+        {
+            return reject(Reason.ORDER_SIZE);
+        }
+        double value = amount * price;
+        if (value > maxOrderQuote)
+        {
+            return reject(Reason.ORDER_VALUE);
+        }
+        if (orderTimes.length == 0 || now - orderTimes[nextOrder] < orderRateWindowMs)
+        {
+            return reject(Reason.ORDER_RATE);
+        }
+        double m = mark;
+        if (Double.isNaN(m) || now - markTime > MARK_MAX_AGE_MS)
+        {
+            return reject(Reason.NO_MARK);
+        }
+        if (Math.abs(price - m) > m * maxDeviation)
+        {
+            return reject(Reason.PRICE_DEVIATION);
+        }
+        if (type == 0 ? value + used > funds.getAvailableQuote() : amount + used > funds.getAvailableBase())
+        {
+            return reject(Reason.INSUFFICIENT_FUNDS);
+        }
+        if (type == 0 && funds.getBaseBalance() + bought + amount > maxPositionBase)
+        {
+            return reject(Reason.POSITION_LIMIT);
+        }
+        // Spot positions are never short, so only buys add to them
+        if (type == 0 && isDailyLossHit(now))
+        {
+            return reject(Reason.DAILY_LOSS);
+        }
+        orderTimes[nextOrder] = now;
+        nextOrder = (nextOrder + 1) % orderTimes.length;
+        return Reason.ACCEPTED;
+    }
+
+    private boolean isDailyLossHit(long now)
+    {
+        if (equity == null)
+        {
+            return false;
+        }
+        double current = equity.getAsDouble();
+        if (now / DAY_MS > day || Double.isNaN(dayStartEquity))
+        {
+            // Not marked yet today, or there was no equity to take when it was
+            day = Math.max(day, now / DAY_MS);
+            dayStartEquity = current;
+        }
+        return dayStartEquity - current > maxDailyLoss;
+    }
+
+    /**
+     * Takes the equity the day's loss is measured from, at the first mark of each UTC day, so a loss made before the
+     * day's first order still counts.
+     */
+    private synchronized void startDay(long time)
+    {
+        if (time / DAY_MS > day)
+        {
+            day = time / DAY_MS;
+            dayStartEquity = equity == null ? Double.NaN : equity.getAsDouble();
+        }
+    }
+
+    private static Reason reject(Reason reason)
+    {
+        rejections[reason.ordinal()].increment();
+        return reason;
+    }
+
+    /**
+     * Sets the market price orders are checked against. The first mark of each UTC day also starts the day for the
+     * daily loss limit; the equity supplier should be marked first, so it values the account at the same price.
+     *
+     * @param price Price of the base currency in the quote currency
+     * @param time Time of the price, Unix milliseconds
+     */
+    public void mark(double price, long time)
+    {
+        this.mark = price;
+        this.markTime = time;
+        if (time / DAY_MS > day)
+        {
+            startDay(time);
+        }
+    }
+
+    public void onTrade(long timestamp, double price, double amount, int type)
+    {
+        mark(price, timestamp);
+    }
+
+    /**
+     * @param now Current time, Unix milliseconds
+     * @return True if there is no mark, or it is too old to check orders against
+     */
+    public boolean isMarkStale(long now)
+    {
+        return Double.isNaN(mark) || now - markTime > MARK_MAX_AGE_MS;
+    }
+
+    public synchronized void setMaxOrderBase(double maxOrderBase)
+    {
+        this.maxOrderBase = maxOrderBase;
+    }
+
+    public synchronized void setMaxOrderQuote(double maxOrderQuote)
+    {
+        this.maxOrderQuote = maxOrderQuote;
+    }
+
+    /**
+     * @param maxOrdersPerMinute Orders allowed in any one minute
+     */
+    public synchronized void setMaxOrdersPerMinute(int maxOrdersPerMinute)
+    {
+        orderTimes = new long[maxOrdersPerMinute];
+        Arrays.fill(orderTimes, Long.MIN_VALUE / 2);
+        nextOrder = 0;
+    }
+
+    /**
+     * @return Orders allowed in any one minute
+     */
+    public synchronized int getMaxOrdersPerMinute()
+    {
+        return orderTimes.length;
+    }
+
+    /**
+     * Sets the window the order rate limit counts orders over, a minute by default
+     * ({@code aether.risk.orderRateWindowMs}). Shortening it lets tests exercise the limit without waiting a minute.
+     *
+     * @param orderRateWindowMs Window in milliseconds
+     */
+    public synchronized void setOrderRateWindowMs(long orderRateWindowMs)
+    {
+        this.orderRateWindowMs = orderRateWindowMs;
+    }
+
+    /**
+     * @param orders Orders about to be placed, no more than {@link #getMaxOrdersPerMinute()}
+     * @param now Current time, Unix milliseconds
+     * @return Milliseconds until that many orders fit within the order rate limit, or 0 if they do now
+     */
+    public synchronized long getOrderRateWaitMs(int orders, long now)
+    {
+        if (orders <= 0 || orderTimes.length == 0)
+        {
+            return 0;
+        }
+        // The ring holds order times oldest first from nextOrder, so the orders-th oldest must leave the window
+        long freed = orderTimes[(nextOrder + Math.min(orders, orderTimes.length) - 1) % orderTimes.length] + orderRateWindowMs;
+        return Math.max(0, freed - now);
+    }
+
+    /**
+     * @param maxDeviationPercent Furthest an order may be priced from the mark, in percent
+     */
+    public synchronized void setMaxDeviationPercent(double maxDeviationPercent)
+    {
+        this.maxDeviation = maxDeviationPercent / 100;
+    }
+
+    public synchronized void setMaxPositionBase(double maxPositionBase)
+    {
+        this.maxPositionBase = maxPositionBase;
+    }
+
+    public synchronized void setMaxDailyLoss(double maxDailyLoss)
+    {
+        this.maxDailyLoss = maxDailyLoss;
+    }
+}
@@ -0,0 +1,53 @@
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Replays a recorded session log through the auto trader as fast as possible, with no network, and reports the
+ * latency and throughput of each tick ({@code doNextAutoTrade}, including the trend strategy).
+ *
+ * Usage: {@code java SessionReplay <session log> [ticks]}
+ */
+public class SessionReplay
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: java SessionReplay <session log> [ticks]");
+            return;
+        }
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        String secret = Files.exists(Paths.get("keySecret")) ? Files.readString(Paths.get("keySecret")) : null;
+        ReplayTransport replay = new ReplayTransport(Paths.get(args[0]), ReplayTransport.Pace.FAST, secret);
+        replay.setLoop(true);
+        BitstampAPIConnection.setDefaultTransport(replay);
+
+        // Replayed as fast as possible, so not held to the exchange's request budget
+        BitstampAPIConnection conn = new BitstampAPIConnection("key", "keySecret");
+        conn.setRateLimiter(null);
+        AetherTrader trader = new AetherTrader(CurrencyPair.BTCEUR, conn);
+        trader.setCandleArchiveEnabled(false);
+        TestWallet wallet = new TestWallet(new BigDecimal("0.00338066"), new BigDecimal(0), false);
+        wallet.processPrice(trader.getBTCPrice());
+        trader.prepareAuto(wallet);
+
+        long[] latencies = new long[ticks];
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++)
+        {
+            long t0 = System.nanoTime();
+            trader.doNextAutoTrade();
+            wallet.processPrice(trader.getBTCPrice());
+            latencies[i] = System.nanoTime() - t0;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        System.out.println();
+        System.out.println(String.format("Replayed %d ticks from %d recorded responses in %.2fs (%.1f ticks/s)", ticks, replay.size(), elapsed / 1e9, ticks / (elapsed / 1e9)));
+        System.out.println(String.format("Tick latency: p50 %.1fus, p99 %.1fus, max %.1fus", latencies[ticks / 2] / 1e3, latencies[(int)(ticks * 0.99)] / 1e3, latencies[ticks - 1] / 1e3));
+    }
+}
@@ -0,0 +1,205 @@
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A trading strategy run by an {@link AetherTrader}. The trader owns the market data: it measures the market once per
+ * tick and hands every strategy the same ticker and {@link Signals}, and passes on candles as they close. Strategies
+ * act only through their {@link Context}, which gives each its own wallet, orders, P&L and risk limits, so any number
+ * can run side by side against one feed.
+ *
+ * Each strategy's calls are made one at a time, though not always on the same thread: ticks arrive on the trader's
+ * scheduler and candles on the live feed's thread.
+ */
+public interface Strategy
+{
+    /**
+     * A candle that has just closed.
+     */
+    final class Candle
+    {
+        /** Length of the candle in seconds. */
+        public final int step;
+        /** Start of the candle, Unix seconds. */
+        public final long time;
+        public final double open;
+        public final double high;
+        public final double low;
+        public final double close;
+        public final double volume;
+
+        public Candle(int step, long time, double open, double high, double low, double close, double volume)
+        {
+            this.step = step;
+            this.time = time;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.volume = volume;
+        }
+    }
+
+    /**
+     * The pair's ticker as fetched at the start of a tick.
+     */
+    final class Ticker
+    {
+        /** Time of the ticker, Unix milliseconds. */
+        public final long time;
+        public final double last;
+        /** Best bid, or NaN if not given. */
+        public final double bid;
+        /** Best ask, or NaN if not given. */
+        public final double ask;
+
+        public Ticker(long time, double last, double bid, double ask)
+        {
+            this.time = time;
+            this.last = last;
+            this.bid = bid;
+            this.ask = ask;
+        }
+
+        /**
+         * @param data Ticker as returned by {@code /api/v2/ticker/<pair>}
+         * @return The ticker
+         */
+        public static Ticker of(JSONObject data)
+        {
+            long time = data.has("timestamp") ? data.getLong("timestamp") * 1000 : System.currentTimeMillis();
+            return new Ticker(time, data.getDouble("last"), data.optDouble("bid", Double.NaN), data.optDouble("ask", Double.NaN));
+        }
+    }
+
+    /**
+     * Indicators the trader computes once per tick and shares between strategies.
+     */
+    final class Signals
+    {
+        /** Change in price over the measurement window, in percent. */
+        public final float percentChange;
+        public final AetherTrader.MarketState marketState;
+        /** Trend predicted from the market history. */
+        public final AetherTrader.Trend trend;
+        /** Score the trend was predicted from; positive for up, negative for down. */
+        public final double trendValue;
+
+        public Signals(float percentChange, AetherTrader.MarketState marketState, AetherTrader.Trend trend, double trendValue)
+        {
+            this.percentChange = percentChange;
+            this.marketState = marketState;
+            this.trend = trend;
+            this.trendValue = trendValue;
+        }
+    }
+
+    /**
+     * A strategy's view of its own account.
+     */
+    interface Context
+    {
+        CurrencyPair getPair();
+
+        /**
+         * @return The strategy's wallet balances, with the pair's balance keys (e.g. "btc_available") and "value"
+         */
+        JSONObject getBalance();
+
+        /**
+         * Places an order, if it passes the strategy's risk limits.
+         *
+         * @param intent The order
+         * @return The placed order, or a JSONObject with "status" set to "failure" and an "error" if it was rejected
+         * or failed
+         */
+        JSONObject submit(OrderIntent intent);
+
+        /**
+         * @param id The order to cancel
+         * @return The cancelled order, or a JSONObject with "status" set to "failure" if it could not be cancelled
+         */
+        JSONObject cancel(long id);
+
+        /**
+         * Places several orders at once, such as a ladder, if they pass the strategy's risk limits together.
+         *
+         * @param intents The orders
+         * @return JSONObject with keys "status" and "results", the outcome of each order in the order given
+         */
+        default JSONObject submitAll(List<OrderIntent> intents)
+        {
+            JSONArray results = new JSONArray();
+            for (OrderIntent intent : intents)
+            {
+                results.put(submit(intent));
+            }
+            return Wallet.batchResult(results);
+        }
+
+        /**
+         * @param ids The orders to cancel
+         * @return JSONObject with keys "status" and "results", the outcome of each cancellation in the order given
+         */
+        default JSONObject cancelAll(List<Long> ids)
+        {
+            JSONArray results = new JSONArray();
+            for (long id : ids)
+            {
+                results.put(cancel(id));
+            }
+            return Wallet.batchResult(results);
+        }
+
+        /**
+         * @param id An order placed by the strategy
+         * @return True if the order is still open
+         */
+        boolean isOpen(long id);
+    }
+
+    /**
+     * Called once before the first tick, e.g. to work out the strategy's state from its balances.
+     *
+     * @param context The strategy's account
+     */
+    default void start(Context context)
+    {
+    }
+
+    /**
+     * Called when a candle of any timeframe closes in the live feed.
+     *
+     * @param candle The candle
+     * @param context The strategy's account
+     */
+    default void onCandle(Candle candle, Context context)
+    {
+    }
+
+    /**
+     * Called on each tick of the trader.
+     *
+     * @param ticker The pair's ticker
+     * @param signals The tick's indicators
+     * @param context The strategy's account
+     */
+    void onTicker(Ticker ticker, Signals signals, Context context);
+
+    /**
+     * @return A short name for the strategy's state, for logs and flight recordings, e.g. "HOLD_IN"
+     */
+    default String getState()
+    {
+        return "";
+    }
+
+    /**
+     * @return What the strategy saw and did on its last tick, for the trader's log
+     */
+    default String getStatus()
+    {
+        return "";
+    }
+}
@@ -0,0 +1,233 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Runs one {@link Strategy} for an {@link AetherTrader}, keeping the strategy's own account: the wallet it trades
+ * through, the orders it has placed, its P&L and, for a simulated wallet, its pre-trade risk checks. Orders on the
+ * exchange account are already checked by the trader as they are placed, so an exchange wallet gets no second set.
+ */
+public class StrategyRunner implements Strategy.Context, BitstampLiveFeed.TradeListener
+{
+    private final String name;
+    private final CurrencyPair pair;
+    private final Strategy strategy;
+    private final Wallet wallet;
+    private final OrderManager orders = new OrderManager();
+    private final PnlEngine pnl;
+    private final RiskEngine risk;
+    private final LatencyHistogram latency;
+    private final LongAdder intents;
+    private final LongAdder rejected;
+
+    /**
+     * @param name Name of the strategy instance, unique within its trader, e.g. "trend"
+     * @param pair The pair traded
+     * @param strategy The strategy
+     * @param wallet The wallet the strategy trades through
+     */
+    public StrategyRunner(String name, CurrencyPair pair, Strategy strategy, Wallet wallet)
+    {
+        this.name = name;
+        this.pair = pair;
+        this.strategy = strategy;
+        this.wallet = wallet;
+
+        wallet.addOrderListener(orders);
+        orders.setStreamConnected(wallet.isStreamingOrders());
+        JSONObject open = wallet.getOpenOrders();
+        if (open.getString("status").equals("success"))
+        {
+            orders.reconcile(open.getJSONArray("orders"), System.currentTimeMillis());
+        }
+
+        // The base currency already held is costed at the price it is valued at now, and fills charged the account's
+        // fee (none in a test wallet, which does not charge one)
+        JSONObject balance = wallet.getBalance();
+        pnl = new PnlEngine(PnlEngine.CostBasis.FIFO, balance.optDouble(pair.feeKey(), 0));
+        double held = balance.getDouble(pair.baseKey("balance"));
+        if (held > 0 && balance.has("value"))
+        {
+            double price = (balance.getDouble("value") - balance.getDouble(pair.quoteKey("balance"))) / held;
+            pnl.seed(held, price);
+            pnl.mark(price);
+        }
+        wallet.addOrderListener(pnl);
+        risk = wallet instanceof RiskEngine.Funds ? new RiskEngine(pair, (RiskEngine.Funds)wallet, pnl::getNet) : null;
+
+        latency = Metrics.histogram("aether_strategy_seconds", "pair", pair.getSymbol(), "strategy", name);
+        intents = Metrics.counter("aether_strategy_intents_total", "pair", pair.getSymbol(), "strategy", name);
+        rejected = Metrics.counter("aether_strategy_rejections_total", "pair", pair.getSymbol(), "strategy", name);
+    }
+
+    /**
+     * Lets the strategy set itself up from its account.
+     */
+    synchronized void start()
+    {
+        strategy.start(this);
+    }
+
+    /**
+     * Passes a tick to the strategy.
+     *
+     * @param ticker The pair's ticker
+     * @param signals The tick's indicators
+     * @return True if the strategy changed state
+     */
+    synchronized boolean onTicker(Strategy.Ticker ticker, Strategy.Signals signals)
+    {
+        long start = System.nanoTime();
+        pnl.mark(ticker.last);
+        if (risk != null)
+        {
+            risk.mark(ticker.last, System.currentTimeMillis());
+        }
+        String from = strategy.getState();
+        strategy.onTicker(ticker, signals, this);
+        latency.recordSince(start);
+        return !from.equals(strategy.getState());
+    }
+
+    /**
+     * Passes a closed candle to the strategy.
+     */
+    synchronized void onCandle(Strategy.Candle candle)
+    {
+        strategy.onCandle(candle, this);
+    }
+
+    public void onTrade(long timestamp, double price, double amount, int type)
+    {
+        pnl.onTrade(timestamp, price, amount, type);
+        if (risk != null)
+        {
+            risk.onTrade(timestamp, price, amount, type);
+        }
+        if (wallet instanceof BitstampLiveFeed.TradeListener)
+        {
+            ((BitstampLiveFeed.TradeListener)wallet).onTrade(timestamp, price, amount, type);
+        }
+    }
+
+    public CurrencyPair getPair()
+    {
+        return pair;
+    }
+
+    public JSONObject getBalance()
+    {
+        return wallet.getBalance();
+    }
+
+    public JSONObject submit(OrderIntent intent)
+    {
+        intents.increment();
+        if (risk != null)
+        {
+            double amount = intent.getAmount().doubleValue();
+            RiskEngine.Reason reason = intent.isInstant() ? risk.checkInstant(intent.getType(), amount) : risk.checkLimit(intent.getType(), amount, intent.getPrice());
+            if (reason != RiskEngine.Reason.ACCEPTED)
+            {
+                rejected.increment();
+                return AetherTrader.rejection(reason);
+            }
+        }
+        return wallet.placeOrder(intent);
+    }
+
+    public JSONObject submitAll(List<OrderIntent> intents)
+    {
+        this.intents.add(intents.size());
+        RiskEngine.Reason[] reasons = risk == null ? null : risk.checkAll(intents);
+        List<OrderIntent> accepted = new ArrayList<OrderIntent>();
+        for (int i = 0; i < intents.size(); i++)
+        {
+            if (reasons == null || reasons[i] == RiskEngine.Reason.ACCEPTED)
+            {
+                accepted.add(intents.get(i));
+            }
+            else
+            {
+                rejected.increment();
+            }
+        }
+        JSONArray placed = accepted.isEmpty() ? new JSONArray() : wallet.placeOrders(accepted).getJSONArray("results");
+
+        // Put the rejections back among the placed orders, so the results are in the order the intents were given
+        JSONArray results = new JSONArray();
+        for (int i = 0, next = 0; i < intents.size(); i++)
+        {
+            results.put(reasons == null || reasons[i] == RiskEngine.Reason.ACCEPTED ? placed.get(next++) : AetherTrader.rejection(reasons[i]));
+        }
+        return Wallet.batchResult(results);
+    }
+
+    public JSONObject cancel(long id)
+    {
+        return wallet.cancelOrder(id);
+    }
+
+    public JSONObject cancelAll(List<Long> ids)
+    {
+        return wallet.cancelOrders(ids);
+    }
+
+    /**
+     * Checks an order against the strategy's orders, first reconciling them with the wallet's open orders if they
+     * are due it.
+     */
+    public synchronized boolean isOpen(long id)
+    {
+        long now = System.currentTimeMillis();
+        orders.setStreamConnected(wallet.isStreamingOrders());
+        if (orders.isReconcileDue(now))
+        {
+            JSONObject orderData = wallet.getOpenOrders();
+            if (orderData.getString("status").equals("success"))
+            {
+                orders.reconcile(orderData.getJSONArray("orders"), now);
+            }
+        }
+        return orders.isOpen(id);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Strategy getStrategy()
+    {
+        return strategy;
+    }
+
+    public Wallet getWallet()
+    {
+        return wallet;
+    }
+
+    public PnlEngine getPnl()
+    {
+        return pnl;
+    }
+
+    /**
+     * @return The strategy's risk checks, or null if its wallet is the exchange account
+     */
+    public RiskEngine getRisk()
+    {
+        return risk;
+    }
+
+    /**
+     * @return The strategy's status from its last tick, its wallet and its P&L, for the trader's log
+     */
+    public synchronized String report()
+    {
+        return strategy.getStatus() + " | " + wallet + " | " + pnl.snapshot().toString(pair);
+    }
+}
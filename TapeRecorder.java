@@ -0,0 +1,114 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records a pair's raw tape to {@link TickStore}s: every trade from the live feed as it arrives, and the ticker each
+ * time the auto trader fetches it. A recorded tape can be replayed into a {@link TestWallet} with
+ * {@link TestWallet#replay(TickStore, long, long)} to backtest fills against what the market actually did.
+ *
+ * Layout on disk: {@code <root>/<pair>/trades.tape} (price and amount) and {@code <root>/<pair>/ticker.tape} (last, bid
+ * and ask), e.g. {@code tape/btceur/trades.tape}. A recording appends to what is already there, so a tape spans
+ * restarts. Points must be stored in time order, so a trade reported after a later one, or a ticker whose timestamp
+ * has not moved on, is stored at the time of the newest point instead. Points are written a block at a time, so up to
+ * a block of each tape is lost if the process dies without {@link #close()}.
+ */
+public class TapeRecorder implements BitstampLiveFeed.TradeListener, Closeable
+{
+    private final TickStore trades;
+    private final TickStore ticker;
+    private final LongAdder recorded;
+    private volatile boolean failed = false;
+
+    /**
+     * Opens (creating if needed) the pair's tapes.
+     *
+     * @param root Directory holding the tapes of every pair
+     * @param pair Pair being recorded
+     * @throws IOException if the tapes cannot be opened
+     */
+    public TapeRecorder(Path root, CurrencyPair pair) throws IOException
+    {
+        Path dir = root.resolve(pair.getSymbol());
+        Files.createDirectories(dir);
+        trades = new TickStore(dir.resolve("trades.tape"), TickStore.TRADE_FIELDS);
+        try
+        {
+            ticker = new TickStore(dir.resolve("ticker.tape"), TickStore.TICKER_FIELDS);
+        }
+        catch (IOException e)
+        {
+            trades.close();
+            throw e;
+        }
+        recorded = Metrics.counter("aether_tape_points_total", "pair", pair.getSymbol());
+    }
+
+    /**
+     * @return The trade tape, with fields {@code TRADE_PRICE} and {@code TRADE_AMOUNT}
+     */
+    public TickStore getTrades()
+    {
+        return trades;
+    }
+
+    /**
+     * @return The ticker tape, with fields {@code TICKER_LAST}, {@code TICKER_BID} and {@code TICKER_ASK}
+     */
+    public TickStore getTicker()
+    {
+        return ticker;
+    }
+
+    public void onTrade(long timestamp, double price, double amount, int type)
+    {
+        append(trades, timestamp, price, amount);
+    }
+
+    /**
+     * Records a ticker snapshot.
+     *
+     * @param snapshot Ticker as fetched by the auto trader
+     */
+    public void onTicker(Strategy.Ticker snapshot)
+    {
+        append(ticker, snapshot.time, snapshot.last, snapshot.bid, snapshot.ask);
+    }
+
+    private void append(TickStore store, long timestamp, double... values)
+    {
+        if (failed)
+        {
+            return;
+        }
+        try
+        {
+            store.append(Math.max(timestamp, store.getLastTime()), values);
+            recorded.increment();
+        }
+        catch (RuntimeException e)
+        {
+            // A full disk, or a tape closed under a late trade; the feed itself carries on
+            failed = true;
+            System.out.println("[Tape]: Recording stopped. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes what is left of each tape's block in progress to disk and closes the tapes.
+     */
+    public void close() throws IOException
+    {
+        failed = true;
+        try
+        {
+            trades.close();
+        }
+        finally
+        {
+            ticker.close();
+        }
+    }
+}
@@ -1,51 +1,98 @@
+import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 // TODO simulate trading fee!!!!
-public class TestWallet extends TimerTask
+public class TestWallet implements Wallet, BitstampLiveFeed.TradeListener, RiskEngine.Funds
 {
-    BigDecimal btc_available;
-    BigDecimal btc_balance;
-    BigDecimal eur_available;
-    BigDecimal eur_balance;
+    BigDecimal base_available;
+    BigDecimal base_balance;
+    BigDecimal quote_available;
+    BigDecimal quote_balance;
 
     ArrayList<JSONObject> orders = new ArrayList<JSONObject>();
     long nextOrderId = 0;
 
     private SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yy hh:mm");
-    private BitstampAPIConnection conn = new BitstampAPIConnection("key", "keySecret");
-    private Timer orderProcessTimer;
+    private final CurrencyPair pair;
+    private final BitstampAPIConnection conn;
+    private TickScheduler orderProcessScheduler;
 
     private int ordersPlaced = 0;
     private int ordersExecuted = 0;
     private int ordersCancelled = 0; 
 
+    /** Whether prices come from the exchange (true) or are fed in through {@link #processPrice(double)}. */
+    private boolean live;
+    private double lastPrice = -1;
+    // Latest traded price and when it was seen, used to value the wallet without asking the exchange
+    private volatile double markPrice = -1;
+    private volatile long markTime = Long.MIN_VALUE / 2;
+    private static final long MARK_MAX_AGE_MS = 60000;
+    private final CopyOnWriteArrayList<OrderListener> orderListeners = new CopyOnWriteArrayList<OrderListener>();
+    // Where fills are reported
+    private PrintStream out = System.out;
+
     public TestWallet(BigDecimal btc, BigDecimal eur)
     {
-        btc_available = btc;
-        btc_balance = btc;
-        eur_available = eur;
-        eur_balance = eur;
-        orderProcessTimer = new Timer("Wallet Order Processor");
-        orderProcessTimer.scheduleAtFixedRate(this, 0, 60000);
+        this(btc, eur, true);
+    }
+
+    /**
+     * Creates a new BTC/EUR test wallet.
+     * 
+     * @param btc Starting BTC balance
+     * @param eur Starting EUR balance
+     * @param live If true, the wallet polls the exchange ticker every minute to fill orders. If false, nothing is
+     * fetched and prices must be supplied with {@link #processPrice(double)} or {@link #replay(TickStore, long, long)}.
+     */
+    public TestWallet(BigDecimal btc, BigDecimal eur, boolean live)
+    {
+        this(CurrencyPair.BTCEUR, live ? new BitstampAPIConnection("key", "keySecret") : null, btc, eur, live);
+    }
+
+    /**
+     * Creates a new test wallet.
+     * 
+     * @param pair Currency pair the wallet trades
+     * @param conn Connection to fetch the pair's ticker with, if live
+     * @param base Starting balance of the base currency
+     * @param quote Starting balance of the quote currency
+     * @param live If true, the wallet polls the exchange ticker every minute to fill orders. If false, nothing is
+     * fetched and prices must be supplied with {@link #processPrice(double)} or {@link #replay(TickStore, long, long)}.
+     */
+    public TestWallet(CurrencyPair pair, BitstampAPIConnection conn, BigDecimal base, BigDecimal quote, boolean live)
+    {
+        this.pair = pair;
+        this.conn = conn;
+        base_available = base;
+        base_balance = base;
+        quote_available = quote;
+        quote_balance = quote;
+        this.live = live;
+        if (live)
+        {
+            orderProcessScheduler = new TickScheduler("Wallet Order Processor " + pair.getSymbol());
+            orderProcessScheduler.scheduleAligned(this::run, 60000, 0);
+        }
     }
 
     /**
-     * Get data on BTC/EUR trading at this instant.
+     * Get data on the wallet's pair trading at this instant.
      * @return JSONObject with keys "last", "high", "low", "vwap", "volume", "bid", "ask", "timestamp" and "open".
      */
     public JSONObject getBTCData() 
     {
         // TODO Obviously this needs to be better 
-        JSONObject data = new JSONObject(conn.sendPublicRequest("/api/v2/ticker/btceur"));
+        JSONObject data = conn.sendPublicRequest(pair.endpoint("/api/v2/ticker/"), BitstampAPIConnection.JSON);
         if (data.has("error"))
         {
             throw new RuntimeException("Bugger");
@@ -54,40 +101,158 @@ public class TestWallet extends TimerTask
         return data;
     }
 
+    /**
+     * Gets the price used to value the wallet: the latest trade from the live feed if one has been seen in the last
+     * minute, otherwise the same price as {@link #getPrice()}.
+     * 
+     * @return The price of BTC in EUR
+     */
+    private BigDecimal getMarkPrice()
+    {
+        double mark = markPrice;
+        if (mark != -1 && System.currentTimeMillis() - markTime <= MARK_MAX_AGE_MS)
+        {
+            return BigDecimal.valueOf(mark);
+        }
+        return getPrice();
+    }
+
+    /**
+     * Takes a trade from the live feed as the latest price to value the wallet at. Orders are still only filled by
+     * {@link #processPrice(double)}.
+     */
+    public void onTrade(long timestamp, double price, double amount, int type)
+    {
+        markPrice = price;
+        markTime = timestamp;
+    }
+
+    /**
+     * Gets the price used to fill instant orders: the exchange's last price when live, otherwise the last price fed
+     * in.
+     * 
+     * @return The price of BTC in EUR
+     */
+    private BigDecimal getPrice()
+    {
+        if (live)
+        {
+            return getBTCData().getBigDecimal("last");
+        }
+        if (lastPrice == -1)
+        {
+            throw new IllegalStateException("No price has been fed to this wallet yet.");
+        }
+        return BigDecimal.valueOf(lastPrice);
+    }
+
+    /**
+     * Registers a listener to be told of orders as they are placed, filled and cancelled.
+     * 
+     * @param listener The listener
+     */
+    public void addOrderListener(OrderListener listener)
+    {
+        orderListeners.add(listener);
+    }
+
+    /**
+     * Sets where fills are reported, e.g. a null stream to keep simulations quiet.
+     * 
+     * @param out The stream to report to
+     */
+    public void setOutput(PrintStream out)
+    {
+        this.out = out;
+    }
+
+    public void removeOrderListener(OrderListener listener)
+    {
+        orderListeners.remove(listener);
+    }
+
+    /**
+     * @return True, as the wallet tells its listeners of every change to its orders as it happens
+     */
+    public boolean isStreamingOrders()
+    {
+        return true;
+    }
+
+    private void orderPlaced(long id, int type, String orderType, BigDecimal amt, double price)
+    {
+        WalletOrderEvent.emit("placed", id, type, orderType, amt, price);
+        for (OrderListener listener : orderListeners)
+        {
+            listener.onOrderPlaced(id, type, amt.doubleValue(), price);
+        }
+    }
+
+    private void orderFilled(long id, int type, String orderType, BigDecimal amt, double price)
+    {
+        WalletOrderEvent.emit("filled", id, type, orderType, amt, price);
+        for (OrderListener listener : orderListeners)
+        {
+            listener.onOrderFilled(id, amt.doubleValue(), price);
+        }
+    }
+
+    public double getAvailableBase()
+    {
+        return base_available.doubleValue();
+    }
+
+    public double getAvailableQuote()
+    {
+        return quote_available.doubleValue();
+    }
+
+    public double getBaseBalance()
+    {
+        return base_balance.doubleValue();
+    }
+
+    public double getQuoteBalance()
+    {
+        return quote_balance.doubleValue();
+    }
+
     public JSONObject getBalance()
     {
         JSONObject balance = new JSONObject();
-        JSONObject btcData = getBTCData();
-        balance.put("btc_available", btc_available);
-        balance.put("btc_balance", btc_balance);
-        balance.put("eur_available", eur_available);
-        balance.put("eur_balance", eur_balance);
-        BigDecimal value = balance.getBigDecimal("eur_balance").add(balance.getBigDecimal("btc_balance").multiply(btcData.getBigDecimal("last")));
-        BigDecimal valueBTC = balance.getBigDecimal("btc_balance").add(balance.getBigDecimal("eur_balance").divide(btcData.getBigDecimal("last"), RoundingMode.HALF_DOWN));
+        BigDecimal last = getMarkPrice();
+        balance.put(pair.baseKey("available"), base_available);
+        balance.put(pair.baseKey("balance"), base_balance);
+        balance.put(pair.quoteKey("available"), quote_available);
+        balance.put(pair.quoteKey("balance"), quote_balance);
+        BigDecimal value = quote_balance.add(base_balance.multiply(last));
+        BigDecimal valueBase = base_balance.add(quote_balance.divide(last, RoundingMode.HALF_DOWN));
         balance.put("value", value);
-        balance.put("value_btc", valueBTC);
+        balance.put("value_base", valueBase);
         return balance;
     }
 
     public JSONObject placeSellInstantOrder(BigDecimal amt)
     {
-        if (!(amt.compareTo(btc_available) == 1))
+        if (!(amt.compareTo(base_available) == 1))
         {
             JSONObject order = new JSONObject();
-            JSONObject btcData = getBTCData();
+            BigDecimal last = getPrice();
             order.put("id", nextOrderId++);
             order.put("amount", amt);
-            order.put("price", btcData.getBigDecimal("last"));
+            order.put("price", last);
             order.put("type", 1);
             order.put("status", "success");
 
-            btc_available = btc_available.subtract(amt);
-            btc_balance = btc_balance.subtract(amt);
-            eur_available = eur_available.add(amt.multiply(btcData.getBigDecimal("last")));
-            eur_balance = eur_balance.add(amt.multiply(btcData.getBigDecimal("last")));
+            base_available = base_available.subtract(amt);
+            base_balance = base_balance.subtract(amt);
+            quote_available = quote_available.add(amt.multiply(last));
+            quote_balance = quote_balance.add(amt.multiply(last));
 
             ordersPlaced++;
             ordersExecuted++;
+            orderPlaced(order.getLong("id"), 1, "instant", amt, last.doubleValue());
+            orderFilled(order.getLong("id"), 1, "instant", amt, last.doubleValue());
 
             return order;
         }
@@ -95,30 +260,33 @@ public class TestWallet extends TimerTask
         {
             JSONObject failure = new JSONObject();
             failure.put("status", "failure");
-            failure.put("reason", "Not enough BTC available.");
+            failure.put("reason", "Not enough " + pair.getBase().toUpperCase() + " available.");
             return failure;
         }
     }
 
     public JSONObject placeBuyInstantOrder(BigDecimal amt)
     {
-        if (!(eur_available.compareTo(amt) == -1))
+        if (!(quote_available.compareTo(amt) == -1))
         {
             JSONObject order = new JSONObject();
-            JSONObject btcData = getBTCData();
+            BigDecimal last = getPrice();
             order.put("id", nextOrderId++);
             order.put("amount", amt);
-            order.put("price", btcData.getBigDecimal("last"));
+            order.put("price", last);
             order.put("type", 1);
             order.put("status", "success");
 
-            btc_available = btc_available.add(amt.divide(btcData.getBigDecimal("last"), RoundingMode.HALF_DOWN));
-            btc_balance = btc_balance.add(amt.divide(btcData.getBigDecimal("last"), RoundingMode.HALF_DOWN));
-            eur_available = eur_available.subtract(amt);
-            eur_balance = eur_balance.subtract(amt);
+            BigDecimal bought = amt.divide(last, RoundingMode.HALF_DOWN);
+            base_available = base_available.add(bought);
+            base_balance = base_balance.add(bought);
+            quote_available = quote_available.subtract(amt);
+            quote_balance = quote_balance.subtract(amt);
 
             ordersPlaced++;
             ordersExecuted++;
+            orderPlaced(order.getLong("id"), 0, "instant", bought, last.doubleValue());
+            orderFilled(order.getLong("id"), 0, "instant", bought, last.doubleValue());
 
             return order;
         }
@@ -126,14 +294,14 @@ public class TestWallet extends TimerTask
         {
             JSONObject failure = new JSONObject();
             failure.put("status", "failure");
-            failure.put("error", "Not enough EUR available.");
+            failure.put("error", "Not enough " + pair.getQuote().toUpperCase() + " available.");
             return failure;
         }
     }
 
     public JSONObject placeSellLimitOrder(BigDecimal amt, double price)
     {
-        if (!(amt.compareTo(btc_available) == 1))
+        if (!(amt.compareTo(base_available) == 1))
         {
             JSONObject order = new JSONObject();
             order.put("id", nextOrderId++);
@@ -143,38 +311,40 @@ public class TestWallet extends TimerTask
             order.put("status", "success");
             orders.add(order);
             ordersPlaced++;
-            btc_available = btc_available.subtract(amt);
+            base_available = base_available.subtract(amt);
+            orderPlaced(order.getLong("id"), 1, "limit", amt, price);
             return order;
         }
         else
         {
             JSONObject failure = new JSONObject();
             failure.put("status", "failure");
-            failure.put("reason", "Not enough BTC available.");
+            failure.put("reason", "Not enough " + pair.getBase().toUpperCase() + " available.");
             return failure;
         }
     }
 
     public JSONObject placeBuyLimitOrder(BigDecimal amt, double price)
     {
-        if (!(amt.compareTo(btc_available) == 1))
+        if (!(amt.multiply(BigDecimal.valueOf(price)).compareTo(quote_available) == 1))
         {
             JSONObject order = new JSONObject();
             order.put("id", nextOrderId++);
             order.put("amount", amt);
             order.put("price", price);
             order.put("type", 0);
-            order.put("stauts", "success");
+            order.put("status", "success");
             orders.add(order);
             ordersPlaced++;
-            eur_available = eur_available.subtract(order.getBigDecimal("amount").multiply(order.getBigDecimal("price")));
+            quote_available = quote_available.subtract(order.getBigDecimal("amount").multiply(order.getBigDecimal("price")));
+            orderPlaced(order.getLong("id"), 0, "limit", amt, price);
             return order;
         }
         else
         {
             JSONObject failure = new JSONObject();
             failure.put("status", "failure");
-            failure.put("reason", "Not enough BTC available.");
+            failure.put("reason", "Not enough " + pair.getQuote().toUpperCase() + " available.");
             return failure;
         }
     }
@@ -188,11 +358,11 @@ public class TestWallet extends TimerTask
             {
                 if (order.getInt("type") == 0)
                 {
-                    eur_available = eur_available.add(order.getBigDecimal("amount").multiply(order.getBigDecimal("price")));
+                    quote_available = quote_available.add(order.getBigDecimal("amount").multiply(order.getBigDecimal("price")));
                 }
                 else if (order.getInt("type") == 1)
                 {
-                    btc_available = btc_available.add(order.getBigDecimal("amount"));
+                    base_available = base_available.add(order.getBigDecimal("amount"));
                     
                 }
                 index = orders.indexOf(order);
@@ -202,10 +372,16 @@ public class TestWallet extends TimerTask
         if (index != -1)
         {
             
-            JSONObject success = new JSONObject(orders.get(index));
+            JSONObject cancelled = orders.get(index);
+            JSONObject success = new JSONObject(cancelled);
             success.put("status", "success");
             orders.remove(index);
             ordersCancelled++;
+            WalletOrderEvent.emit("cancelled", id, cancelled.getInt("type"), "limit", cancelled.getBigDecimal("amount"), cancelled.getDouble("price"));
+            for (OrderListener listener : orderListeners)
+            {
+                listener.onOrderCancelled(id);
+            }
             return success;
         }
         else
@@ -229,47 +405,74 @@ public class TestWallet extends TimerTask
     public void run()
     {
         JSONObject data = getBTCData();
-        ArrayList<Integer> indexes = new ArrayList<Integer>();
-        for (JSONObject order : orders)
+        processPrice(data.getDouble("last"));
+    }
+
+    /**
+     * Fills any open limit orders the given price crosses.
+     * 
+     * @param last The latest traded price of BTC in EUR
+     */
+    public void processPrice(double last)
+    {
+        lastPrice = last;
+        Iterator<JSONObject> it = orders.iterator();
+        while (it.hasNext())
         {
+            JSONObject order = it.next();
+            boolean executed = false;
             if (order.getInt("type") == 0) // buy
             {
-                if (data.getDouble("last") <= order.getDouble("price"))
+                if (last <= order.getDouble("price"))
                 {
-                    btc_balance = btc_balance.add(order.getBigDecimal("amount"));
-                    eur_balance = eur_balance.subtract(order.getBigDecimal("amount").multiply(new BigDecimal(order.getDouble("price"))));
-                    indexes.add(orders.indexOf(order));
+                    base_balance = base_balance.add(order.getBigDecimal("amount"));
+                    quote_balance = quote_balance.subtract(order.getBigDecimal("amount").multiply(new BigDecimal(order.getDouble("price"))));
+                    executed = true;
                 }
             }
             else if (order.getInt("type") == 1) // sell
             {
-                if (data.getDouble("last") >= order.getDouble("price"))
+                if (last >= order.getDouble("price"))
                 {
-                    btc_balance = btc_balance.subtract(order.getBigDecimal("amount"));
-                    eur_balance = eur_balance.add(order.getBigDecimal("amount").multiply(new BigDecimal(order.getDouble("price"))));
-                    indexes.add(orders.indexOf(order));
+                    base_balance = base_balance.subtract(order.getBigDecimal("amount"));
+                    quote_balance = quote_balance.add(order.getBigDecimal("amount").multiply(new BigDecimal(order.getDouble("price"))));
+                    executed = true;
                 } 
             }
+            if (executed)
+            {
+                out.println(String.format("[%s]: Order %d executed at %s", dateFormat.format(new Date()), order.getLong("id"), pair.formatQuote(order.getDouble("price"))));
+                it.remove();
+                ordersExecuted++;
+                orderFilled(order.getLong("id"), order.getInt("type"), "limit", order.getBigDecimal("amount"), order.getDouble("price"));
+            }
         }
-        for (int i : indexes)
-        {
-            System.out.println(String.format("[%s]: Order %d executed at €%.2f", dateFormat.format(new Date()), orders.get(i).getLong("id"), orders.get(i).getDouble("price")));
-            orders.remove(i);
-            ordersExecuted++;
-        }
+    }
+
+    /**
+     * Runs recorded tape through the wallet, filling orders as each price is reached.
+     * 
+     * @param tape Trade or ticker tape; field 0 of each point is taken as the price
+     * @param from Unix timestamp (ms) to start from, inclusive
+     * @param to Unix timestamp (ms) to stop at, exclusive
+     * @return The number of prices replayed
+     */
+    public long replay(TickStore tape, long from, long to)
+    {
+        return tape.scan(from, to, (timestamp, values) -> processPrice(values[0]));
     }
 
     public void close()
     {
-        if (orderProcessTimer != null)
+        if (orderProcessScheduler != null)
         {
-            orderProcessTimer.cancel();
-            orderProcessTimer.purge();
+            orderProcessScheduler.stop();
         }
     }
 
     public String toString()
     {
-        return String.format("{P:%2s, E:%2s, C:%2s, Value: %.8fBTC (€%.2f))}", ordersPlaced, ordersExecuted, ordersCancelled, getBalance().getBigDecimal("value_btc"), getBalance().getBigDecimal("value"));
+        JSONObject balance = getBalance();
+        return String.format("{P:%2s, E:%2s, C:%2s, Value: %.8f%s (%s))}", ordersPlaced, ordersExecuted, ordersCancelled, balance.getBigDecimal("value_base"), pair.getBase().toUpperCase(), pair.formatQuote(balance.getDouble("value")));
     }
 }
@@ -0,0 +1,46 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event spanning one auto trader tick: measuring the market, predicting the trend and acting on
+ * it. Disabled unless turned on by a recording, e.g. with {@code aethertrader.jfc}.
+ */
+@Name("aethertrader.Tick")
+@Label("Auto Trader Tick")
+@Category({"AetherTrader", "Trading"})
+@Description("One tick of the auto trader")
+@Enabled(false)
+@StackTrace(false)
+public class TickEvent extends jdk.jfr.Event
+{
+    @Label("Pair")
+    @Description("Currency pair traded, e.g. btceur")
+    String pair;
+
+    @Label("Percent Change")
+    @Description("Change in price over the measurement window, in percent")
+    float percentChange;
+
+    @Label("Market State")
+    String marketState;
+
+    @Label("Trend")
+    String trend;
+
+    @Label("Trend Value")
+    double trendValue;
+
+    @Label("From State")
+    String fromState;
+
+    @Label("To State")
+    String toState;
+
+    @Label("Price")
+    @Description("Last price seen by the tick, or NaN if it did not get that far")
+    double price;
+}
@@ -0,0 +1,197 @@
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a periodic task on its own thread, in place of {@code Timer.scheduleAtFixedRate}.
+ *
+ * <ul>
+ * <li>Ticks are due at absolute wall clock times (e.g. on each minute boundary), so they do not drift.</li>
+ * <li>A tick that overruns one or more due times is followed by a single catch-up tick, run straight away, rather
+ * than a burst of back-to-back ticks on stale data. Ticks after that are back on the grid.</li>
+ * <li>An exception thrown by the task is logged and counted, and the next tick runs as normal.</li>
+ * </ul>
+ *
+ * Schedule lag, run time, overruns, skipped ticks and failures are exported through {@link Metrics}, labelled with
+ * the scheduler's name.
+ */
+public class TickScheduler
+{
+    /**
+     * Decides when the next tick is due, for schedules that are not a fixed period.
+     */
+    public interface Cadence
+    {
+        /**
+         * @param now Current time, Unix milliseconds
+         * @return Time the next tick is due, Unix milliseconds
+         */
+        long nextTick(long now);
+    }
+
+    private final String name;
+    private final ScheduledThreadPoolExecutor executor;
+    private volatile boolean stopped = false;
+
+    private final LatencyHistogram lag;
+    private final LatencyHistogram runTime;
+    private final LongAdder overruns;
+    private final LongAdder skipped;
+    private final LongAdder failures;
+
+    /**
+     * @param name Name of the scheduler's thread, also used to label its metrics
+     */
+    public TickScheduler(String name)
+    {
+        this.name = name;
+        executor = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, name));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        lag = Metrics.histogram("aether_scheduler_lag_seconds", "scheduler", name);
+        runTime = Metrics.histogram("aether_scheduler_run_seconds", "scheduler", name);
+        overruns = Metrics.counter("aether_scheduler_overruns_total", "scheduler", name);
+        skipped = Metrics.counter("aether_scheduler_skipped_ticks_total", "scheduler", name);
+        failures = Metrics.counter("aether_scheduler_failures_total", "scheduler", name);
+    }
+
+    /**
+     * Runs a task straight away and then every {@code periodMs}, on wall clock multiples of the period plus
+     * {@code offsetMs}. A period of 60000 and offset of 0 ticks at the start of every minute.
+     *
+     * @param task The task to run
+     * @param periodMs Period in milliseconds
+     * @param offsetMs Offset from the period boundaries in milliseconds
+     */
+    public void scheduleAligned(Runnable task, long periodMs, long offsetMs)
+    {
+        if (periodMs <= 0)
+        {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        submit(() -> runAligned(task, System.currentTimeMillis(), periodMs, offsetMs), 0);
+    }
+
+    /**
+     * Runs a task straight away and then whenever the cadence says, asking it after each tick when the next is due.
+     *
+     * @param task The task to run
+     * @param cadence Decides when each tick is due
+     */
+    public void schedule(Runnable task, Cadence cadence)
+    {
+        submit(() -> runCadenced(task, System.currentTimeMillis(), cadence), 0);
+    }
+
+    /**
+     * Stops scheduling ticks. A tick already running is allowed to finish.
+     */
+    public void stop()
+    {
+        stopped = true;
+        executor.shutdown();
+    }
+
+    /**
+     * @return The number of ticks that ran past the next due time
+     */
+    public long getOverruns()
+    {
+        return overruns.sum();
+    }
+
+    /**
+     * @return The number of due ticks not run because they were coalesced into a catch-up tick
+     */
+    public long getSkippedTicks()
+    {
+        return skipped.sum();
+    }
+
+    /**
+     * @return The number of ticks that threw an exception
+     */
+    public long getFailures()
+    {
+        return failures.sum();
+    }
+
+    private void runAligned(Runnable task, long due, long periodMs, long offsetMs)
+    {
+        long end = runTask(task, due);
+
+        // Next grid point after this tick was due, and the last one that has already passed
+        long next = Math.floorDiv(due - offsetMs, periodMs) * periodMs + offsetMs + periodMs;
+        long lastPassed = Math.floorDiv(end - offsetMs, periodMs) * periodMs + offsetMs;
+        if (lastPassed >= next)
+        {
+            overruns.increment();
+            skipped.add((lastPassed - next) / periodMs);
+            next = lastPassed;
+        }
+        long nextDue = next;
+        submit(() -> runAligned(task, nextDue, periodMs, offsetMs), nextDue - System.currentTimeMillis());
+    }
+
+    private void runCadenced(Runnable task, long due, Cadence cadence)
+    {
+        long nextDue = nextDue(cadence, runTask(task, due));
+        submit(() -> runCadenced(task, nextDue, cadence), nextDue - System.currentTimeMillis());
+    }
+
+    private long nextDue(Cadence cadence, long now)
+    {
+        try
+        {
+            return cadence.nextTick(now);
+        }
+        catch (RuntimeException e)
+        {
+            failures.increment();
+            System.out.println("[Scheduler]: " + name + " cadence failed, retrying in a minute. " + e);
+            return now + 60000;
+        }
+    }
+
+    /**
+     * Runs the task, recording how late it started and how long it took, and isolating any failure.
+     *
+     * @return Time the task finished, Unix milliseconds
+     */
+    private long runTask(Runnable task, long due)
+    {
+        lag.record(Math.max(0, System.currentTimeMillis() - due) * 1000000);
+        long start = System.nanoTime();
+        try
+        {
+            task.run();
+        }
+        catch (VirtualMachineError e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            failures.increment();
+            System.out.println("[Scheduler]: " + name + " tick failed. " + e);
+        }
+        runTime.recordSince(start);
+        return System.currentTimeMillis();
+    }
+
+    private void submit(Runnable tick, long delayMs)
+    {
+        if (stopped)
+        {
+            return;
+        }
+        try
+        {
+            executor.schedule(tick, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Stopped while scheduling
+        }
+    }
+}
@@ -0,0 +1,546 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An append-only, compressed time-series store for trade and ticker tape. Points are a millisecond timestamp and a fixed
+ * number of double fields (e.g. price and amount for trades), compressed as in Facebook's Gorilla paper: timestamps as
+ * delta-of-deltas, fields as the XOR of each value with the previous one. Regular tape typically costs 1-3 bytes per
+ * field rather than the ~20 characters of its JSON representation.
+ *
+ * Points are grouped into blocks of at most {@code BLOCK_POINTS}. Each block is written to the file as a small header
+ * (first and last timestamp, point count, byte length) followed by its bit stream, so a scan over a time range only
+ * decompresses the blocks that overlap it.
+ */
+public class TickStore implements Closeable
+{
+    /** Fields stored for each trade. */
+    public static final int TRADE_PRICE = 0;
+    public static final int TRADE_AMOUNT = 1;
+    public static final int TRADE_FIELDS = 2;
+
+    /** Fields stored for each ticker snapshot. */
+    public static final int TICKER_LAST = 0;
+    public static final int TICKER_BID = 1;
+    public static final int TICKER_ASK = 2;
+    public static final int TICKER_FIELDS = 3;
+
+    private static final int BLOCK_POINTS = 1024;
+    private static final int BLOCK_HEADER_BYTES = 24;
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final int fields;
+    private final FileChannel channel;
+
+    // Index of blocks already on disk
+    private long[] blockFirst = new long[64];
+    private long[] blockLast = new long[64];
+    private long[] blockOffset = new long[64];
+    private int[] blockLength = new int[64];
+    private int[] blockCount = new int[64];
+    private int blocks = 0;
+
+    // Block currently being written
+    private final BitWriter writer = new BitWriter();
+    private final long[] prevBits;
+    private final int[] prevLead;
+    private final int[] prevTrail;
+    private long firstTime;
+    private long prevTime;
+    private long prevDelta;
+    private int pending = 0;
+
+    // Scratch state for decoding, reused between scans
+    private final long[] decodeBits;
+    private final int[] decodeLead;
+    private final int[] decodeTrail;
+
+    /**
+     * Receives points from a scan. The {@code values} array is reused between calls and must not be kept.
+     */
+    public interface PointVisitor
+    {
+        void visit(long timestamp, double[] values);
+    }
+
+    /**
+     * Opens (creating if needed) a store.
+     *
+     * @param file File holding the store
+     * @param fields Number of fields in each point, e.g. {@code TRADE_FIELDS}
+     * @throws IOException if the file cannot be opened or read
+     */
+    public TickStore(Path file, int fields) throws IOException
+    {
+        this.fields = fields;
+        this.prevBits = new long[fields];
+        this.prevLead = new int[fields];
+        this.prevTrail = new int[fields];
+        this.decodeBits = new long[fields];
+        this.decodeLead = new int[fields];
+        this.decodeTrail = new int[fields];
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadIndex();
+    }
+
+    /**
+     * @return The number of fields in each point
+     */
+    public int getFields()
+    {
+        return fields;
+    }
+
+    /**
+     * @return Timestamp of the newest point stored, or -1 if the store is empty
+     */
+    public synchronized long getLastTime()
+    {
+        if (pending > 0)
+        {
+            return prevTime;
+        }
+        return blocks > 0 ? blockLast[blocks - 1] : -1;
+    }
+
+    /**
+     * Appends a point. Points must be appended in timestamp order.
+     *
+     * @param timestamp Unix timestamp in milliseconds
+     * @param values One value for each field
+     */
+    public synchronized void append(long timestamp, double... values)
+    {
+        if (values.length != fields)
+        {
+            throw new IllegalArgumentException("Expected " + fields + " values, got " + values.length);
+        }
+        if (timestamp < getLastTime())
+        {
+            throw new IllegalArgumentException("Points must be appended in timestamp order.");
+        }
+
+        if (pending == 0)
+        {
+            firstTime = timestamp;
+            prevDelta = 0;
+            writer.write(timestamp, 64);
+            for (int f = 0; f < fields; f++)
+            {
+                long bits = Double.doubleToRawLongBits(values[f]);
+                writer.write(bits, 64);
+                prevBits[f] = bits;
+                prevLead[f] = -1;
+            }
+        }
+        else
+        {
+            long delta = timestamp - prevTime;
+            writeDeltaOfDelta(delta - prevDelta);
+            prevDelta = delta;
+            for (int f = 0; f < fields; f++)
+            {
+                writeValue(f, Double.doubleToRawLongBits(values[f]));
+            }
+        }
+        prevTime = timestamp;
+
+        if (++pending == BLOCK_POINTS)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the block in progress to disk, even if it is not full.
+     */
+    public synchronized void flush()
+    {
+        if (pending == 0)
+        {
+            return;
+        }
+        try
+        {
+            long offset = channel.size();
+            int length = writer.byteLength();
+            ByteBuffer buf = ByteBuffer.allocate(BLOCK_HEADER_BYTES + length);
+            buf.putLong(firstTime).putLong(prevTime).putInt(pending).putInt(length);
+            buf.put(writer.bytes(), 0, length);
+            buf.flip();
+            while (buf.hasRemaining())
+            {
+                channel.write(buf, offset + buf.position());
+            }
+            addBlock(firstTime, prevTime, pending, offset + BLOCK_HEADER_BYTES, length);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        writer.reset();
+        pending = 0;
+    }
+
+    /**
+     * Decompresses every point with a timestamp in {@code [from, to)}, in order.
+     *
+     * @param from Unix timestamp (ms), inclusive
+     * @param to Unix timestamp (ms), exclusive
+     * @param visitor Receives each point
+     * @return The number of points visited
+     */
+    public synchronized long scan(long from, long to, PointVisitor visitor)
+    {
+        double[] values = new double[fields];
+        long visited = 0;
+        byte[] data = new byte[0];
+
+        int b = firstBlockEndingAfter(from);
+        for (; b < blocks && blockFirst[b] < to; b++)
+        {
+            if (data.length < blockLength[b] + 8)
+            {
+                data = new byte[blockLength[b] + 8];
+            }
+            ByteBuffer buf = ByteBuffer.wrap(data, 0, blockLength[b]);
+            try
+            {
+                while (buf.hasRemaining())
+                {
+                    if (channel.read(buf, blockOffset[b] + buf.position()) < 0)
+                    {
+                        throw new IOException("Tick store truncated.");
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            visited += decode(data, blockCount[b], from, to, values, visitor);
+        }
+
+        if (pending > 0 && prevTime >= from && firstTime < to)
+        {
+            visited += decode(writer.bytes(), pending, from, to, values, visitor);
+        }
+        return visited;
+    }
+
+    /**
+     * @return Bytes used on disk by flushed blocks, including headers
+     */
+    public synchronized long sizeOnDisk()
+    {
+        try
+        {
+            return channel.size();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized void close() throws IOException
+    {
+        flush();
+        channel.close();
+    }
+
+    //#region Encoding
+
+    private void writeDeltaOfDelta(long dod)
+    {
+        if (dod == 0)
+        {
+            writer.write(0, 1);
+        }
+        else if (dod >= -64 && dod <= 63)
+        {
+            writer.write(0b10, 2);
+            writer.write(dod, 7);
+        }
+        else if (dod >= -256 && dod <= 255)
+        {
+            writer.write(0b110, 3);
+            writer.write(dod, 9);
+        }
+        else if (dod >= -2048 && dod <= 2047)
+        {
+            writer.write(0b1110, 4);
+            writer.write(dod, 12);
+        }
+        else
+        {
+            writer.write(0b1111, 4);
+            writer.write(dod, 64);
+        }
+    }
+
+    private void writeValue(int f, long bits)
+    {
+        long xor = bits ^ prevBits[f];
+        prevBits[f] = bits;
+        if (xor == 0)
+        {
+            writer.write(0, 1);
+            return;
+        }
+
+        int lead = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trail = Long.numberOfTrailingZeros(xor);
+        if (prevLead[f] != -1 && lead >= prevLead[f] && trail >= prevTrail[f])
+        {
+            // Meaningful bits fit inside the previous window, reuse it
+            writer.write(0b10, 2);
+            writer.write(xor >>> prevTrail[f], 64 - prevLead[f] - prevTrail[f]);
+        }
+        else
+        {
+            int meaningful = 64 - lead - trail;
+            writer.write(0b11, 2);
+            writer.write(lead, 5);
+            writer.write(meaningful - 1, 6);
+            writer.write(xor >>> trail, meaningful);
+            prevLead[f] = lead;
+            prevTrail[f] = trail;
+        }
+    }
+
+    private long decode(byte[] data, int count, long from, long to, double[] values, PointVisitor visitor)
+    {
+        long[] bits = decodeBits;
+        int[] lead = decodeLead;
+        int[] trail = decodeTrail;
+        long visited = 0;
+
+        long time = read(data, 0, 64);
+        long pos = 64;
+        for (int f = 0; f < fields; f++)
+        {
+            bits[f] = read(data, pos, 64);
+            pos += 64;
+            values[f] = Double.longBitsToDouble(bits[f]);
+        }
+        long delta = 0;
+
+        // Each control prefix and its value are taken from one 64-bit word, which holds at least 57 bits from pos
+        for (int p = 0; ; )
+        {
+            if (time >= to)
+            {
+                break;
+            }
+            if (time >= from)
+            {
+                visitor.visit(time, values);
+                visited++;
+            }
+            if (++p == count)
+            {
+                break;
+            }
+
+            long word = peek(data, pos);
+            switch (Long.numberOfLeadingZeros(~word))
+            {
+                case 0:
+                    pos += 1;
+                    break;
+                case 1:
+                    delta += (word << 2) >> 57;
+                    pos += 9;
+                    break;
+                case 2:
+                    delta += (word << 3) >> 55;
+                    pos += 12;
+                    break;
+                case 3:
+                    delta += (word << 4) >> 52;
+                    pos += 16;
+                    break;
+                default:
+                    delta += read(data, pos + 4, 64);
+                    pos += 68;
+            }
+            time += delta;
+
+            for (int f = 0; f < fields; f++)
+            {
+                word = peek(data, pos);
+                if (word >= 0)
+                {
+                    // Unchanged
+                    pos += 1;
+                    continue;
+                }
+                long xor;
+                if ((word << 1) >= 0)
+                {
+                    // Previous window
+                    int meaningful = 64 - lead[f] - trail[f];
+                    xor = meaningful <= 55 ? (word << 2) >>> (64 - meaningful) : read(data, pos + 2, meaningful);
+                    pos += 2 + meaningful;
+                }
+                else
+                {
+                    lead[f] = (int)((word << 2) >>> 59);
+                    int meaningful = (int)((word << 7) >>> 58) + 1;
+                    trail[f] = 64 - lead[f] - meaningful;
+                    xor = meaningful <= 44 ? (word << 13) >>> (64 - meaningful) : read(data, pos + 13, meaningful);
+                    pos += 13 + meaningful;
+                }
+                bits[f] ^= xor << trail[f];
+                values[f] = Double.longBitsToDouble(bits[f]);
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * @return The 64 bits of {@code data} from bit {@code pos} on, MSB-first; at least the top 57 are valid. The array
+     * must have at least 8 bytes of slack past the data being read.
+     */
+    private static long peek(byte[] data, long pos)
+    {
+        return (long)LONG_VIEW.get(data, (int)(pos >>> 3)) << (pos & 7);
+    }
+
+    private static long read(byte[] data, long pos, int bits)
+    {
+        if (bits > 57)
+        {
+            return (read(data, pos, bits - 32) << 32) | read(data, pos + bits - 32, 32);
+        }
+        return peek(data, pos) >>> (64 - bits);
+    }
+
+    //#endregion
+
+    //#region Block index
+
+    private void loadIndex() throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+        long size = channel.size();
+        long offset = 0;
+        while (offset + BLOCK_HEADER_BYTES <= size)
+        {
+            header.clear();
+            channel.read(header, offset);
+            header.flip();
+            long first = header.getLong();
+            long last = header.getLong();
+            int count = header.getInt();
+            int length = header.getInt();
+            if (offset + BLOCK_HEADER_BYTES + length > size)
+            {
+                break;
+            }
+            addBlock(first, last, count, offset + BLOCK_HEADER_BYTES, length);
+            offset += BLOCK_HEADER_BYTES + length;
+        }
+        if (offset < size)
+        {
+            // Drop a block left half-written by a crash
+            channel.truncate(offset);
+        }
+    }
+
+    private void addBlock(long first, long last, int count, long offset, int length)
+    {
+        if (blocks == blockFirst.length)
+        {
+            blockFirst = Arrays.copyOf(blockFirst, blocks * 2);
+            blockLast = Arrays.copyOf(blockLast, blocks * 2);
+            blockOffset = Arrays.copyOf(blockOffset, blocks * 2);
+            blockLength = Arrays.copyOf(blockLength, blocks * 2);
+            blockCount = Arrays.copyOf(blockCount, blocks * 2);
+        }
+        blockFirst[blocks] = first;
+        blockLast[blocks] = last;
+        blockOffset[blocks] = offset;
+        blockLength[blocks] = length;
+        blockCount[blocks] = count;
+        blocks++;
+    }
+
+    private int firstBlockEndingAfter(long time)
+    {
+        int lo = 0;
+        int hi = blocks;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (blockLast[mid] < time)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    //#endregion
+
+    /**
+     * Writes values MSB-first into a growable byte array.
+     */
+    private static class BitWriter
+    {
+        private byte[] buf = new byte[4096];
+        private long bitLength = 0;
+
+        void write(long value, int bits)
+        {
+            // Keep 8 bytes of slack so the block can be read in place by decode
+            ensureCapacity((int)((bitLength + bits + 7) >>> 3) + 8);
+            while (bits > 0)
+            {
+                int index = (int)(bitLength >>> 3);
+                int free = 8 - (int)(bitLength & 7);
+                int take = Math.min(free, bits);
+                int chunk = (int)((value >>> (bits - take)) & ((1 << take) - 1));
+                buf[index] |= (byte)(chunk << (free - take));
+                bits -= take;
+                bitLength += take;
+            }
+        }
+
+        byte[] bytes()
+        {
+            return buf;
+        }
+
+        int byteLength()
+        {
+            return (int)((bitLength + 7) >>> 3);
+        }
+
+        void reset()
+        {
+            Arrays.fill(buf, 0, byteLength(), (byte)0);
+            bitLength = 0;
+        }
+
+        private void ensureCapacity(int bytes)
+        {
+            if (bytes > buf.length)
+            {
+                buf = Arrays.copyOf(buf, Math.max(bytes, buf.length * 2));
+            }
+        }
+    }
+}
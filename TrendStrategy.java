@@ -0,0 +1,285 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import org.json.JSONObject;
+
+/**
+ * The auto trader's original strategy. It follows the predicted trend, placing a limit order a profit margin away from
+ * the price when the trend turns and closing the position early if the market moves the wrong way.
+ */
+public class TrendStrategy implements Strategy
+{
+    /**
+     * Represents possible status of BTC holding.
+     * Expected progression: HOLD_IN -> LONG -> HOLD_OUT -> SHORT -> [repeat].
+     */
+    enum TradingState
+    {
+        /** Value in market. Waiting for sell indications. */
+        HOLD_IN,
+        /** Value in market. Waiting to sell high (limit sell placed). */
+        LONG,
+        /** Value out of market. Waiting for buy indications. */
+        HOLD_OUT,
+        /** Value out of market. Waiting to buy low (limit buy placed). */
+        SHORT,
+        /** Value of account is split between the base and quote currencies (ratio more even than 95%/5%). */
+        UNKNOWN
+    }
+
+    private final double profitMargin;
+    private TradingState tradingState = TradingState.HOLD_IN;
+    private double priceAtLastTransaction = -1;
+    private long lastOrderID;
+    // What the last tick saw and did, formatted only when asked for
+    private double lastEntry = Double.NaN;
+    private double lastPrice;
+    private AetherTrader.Trend lastTrend;
+    private double lastTrendValue;
+    private TradingState lastFrom;
+    private String lastNote;
+    private CurrencyPair pair = CurrencyPair.BTCEUR;
+
+    public TrendStrategy()
+    {
+        this(0.015);
+    }
+
+    /**
+     * @param profitMargin How far from the price to place limit orders, and how far the price may move against an
+     * open position before it is closed, as a fraction, e.g. 0.015
+     */
+    public TrendStrategy(double profitMargin)
+    {
+        this.profitMargin = profitMargin;
+    }
+
+    public void start(Context ctx)
+    {
+        tradingState = getTradingState(ctx);
+    }
+
+    public String getState()
+    {
+        return tradingState.name();
+    }
+
+    public String getStatus()
+    {
+        if (Double.isNaN(lastEntry))
+        {
+            return "";
+        }
+        double percentOnPosition = ((lastPrice / lastEntry) - 1) * 100;
+        String status = String.format(" | Ent: %s, Cur: %s (%+.2f%%) | Trend: %4s (%+5.1f) | %-8s -> %s", pair.formatQuote(lastEntry), pair.formatQuote(lastPrice), percentOnPosition, lastTrend.name(), lastTrendValue, lastFrom, tradingState);
+        return lastNote == null ? status : status + " " + lastNote;
+    }
+
+    /**
+     * Examines current trading and market state to decide next action, and executes it if applicable.
+     */
+    public void onTicker(Ticker ticker, Signals signals, Context ctx)
+    {
+        pair = ctx.getPair();
+        double last = ticker.last;
+        if (priceAtLastTransaction == -1) // If programme just started, take last price as last transaction
+        {
+            priceAtLastTransaction = last;
+        }
+
+        lastEntry = priceAtLastTransaction;
+        lastPrice = last;
+        lastTrend = signals.trend;
+        lastTrendValue = signals.trendValue;
+        lastFrom = tradingState;
+        TradingState nextState = tradingState;
+        String note = null;
+        switch (tradingState)
+        {
+            case HOLD_IN:
+                if (signals.trend == AetherTrader.Trend.UP)
+                {
+                    // Trend is up, place limit sell assuming sustained rise
+                    priceAtLastTransaction = last;
+                    JSONObject bal = ctx.getBalance();
+                    JSONObject o = ctx.submit(OrderIntent.limitSell(bal.getBigDecimal(pair.baseKey("available")), priceAtLastTransaction * (1 + profitMargin)));
+                    if (o.getString("status").equals("success"))
+                    {
+                        lastOrderID = o.getLong("id");
+                        note = String.format("(Limit sell placed at %s)", pair.formatQuote(o.getDouble("price")));
+                        nextState = TradingState.LONG;
+                    }
+                    else
+                    {
+                        note = String.format("(Order rejected: %s)", orderError(o));
+                    }
+                }
+                else if (signals.trend == AetherTrader.Trend.DOWN)
+                {
+                    // Panic-sell out, trend is down
+                    JSONObject bal = ctx.getBalance();
+                    JSONObject o = ctx.submit(OrderIntent.instantSell(bal.getBigDecimal(pair.baseKey("available"))));
+                    if (o.getString("status").equals("success"))
+                    {
+                        lastOrderID = o.getLong("id");
+                        note = String.format("(Instant sell placed at %s)", pair.formatQuote(o.getDouble("price")));
+                        nextState = TradingState.HOLD_OUT;
+                    }
+                    else
+                    {
+                        note = String.format("(Order rejected: %s)", orderError(o));
+                    }
+                }
+                break;
+            case LONG:
+                if (ctx.isOpen(lastOrderID)) // Long position still open
+                {
+                    // Panic-close LONG position, predicted trend is down and last price lower than one profit margin BELOW our position
+                    if (signals.trend == AetherTrader.Trend.DOWN && last < priceAtLastTransaction * (1 - profitMargin))
+                    {
+                        if (ctx.cancel(lastOrderID).getString("status").equals("success"))
+                        {
+                            note = "(Order cancelled, LONG position closed)";
+                            nextState = TradingState.HOLD_IN;
+                        }
+                        else
+                        {
+                            note = "(Failed to cancel order)\nWARNING: Unable to cancel limit sell order. Market falling while in a LONG position.";
+                        }
+                    }
+                }
+                else // Long position closed (executed)
+                {
+                    note = "(Limit sell executed)";
+                    nextState = TradingState.HOLD_OUT;
+                }
+                break;
+            case HOLD_OUT:
+                if (signals.trend == AetherTrader.Trend.DOWN)
+                {
+                    // Trend is down, place limit buy assuming sustained drop
+                    priceAtLastTransaction = last;
+
+                    // Buy as much of the base currency as the quote currency available pays for at the limit price
+                    double limitPrice = priceAtLastTransaction * (1 - profitMargin);
+                    JSONObject bal = ctx.getBalance();
+                    BigDecimal amount = bal.getBigDecimal(pair.quoteKey("available")).divide(BigDecimal.valueOf(limitPrice), 8, RoundingMode.DOWN);
+                    JSONObject o = ctx.submit(OrderIntent.limitBuy(amount, limitPrice));
+                    if (o.getString("status").equals("success"))
+                    {
+                        lastOrderID = o.getLong("id");
+                        note = String.format("(Limit buy placed at %s)", pair.formatQuote(o.getDouble("price")));
+                        nextState = TradingState.SHORT;
+                    }
+                    else
+                    {
+                        note = String.format("(Order rejected: %s)", orderError(o));
+                    }
+                }
+                else if (signals.trend == AetherTrader.Trend.UP)
+                {
+                    // Panic-buy in, trend is up
+                    JSONObject bal = ctx.getBalance();
+                    JSONObject o = ctx.submit(OrderIntent.instantBuy(bal.getBigDecimal(pair.quoteKey("available"))));
+                    if (o.getString("status").equals("success"))
+                    {
+                        lastOrderID = o.getLong("id");
+                        note = String.format("(Instant buy placed at %s)", pair.formatQuote(o.getDouble("price")));
+                        nextState = TradingState.HOLD_IN;
+                    }
+                    else
+                    {
+                        note = String.format("(Order rejected: %s)", orderError(o));
+                    }
+                }
+                break;
+            case SHORT:
+                if (ctx.isOpen(lastOrderID)) // Short position still open
+                {
+                    // Panic-close SHORT position, predicted trend is UP and last price higher than one profit margin ABOVE our position
+                    if (signals.trend == AetherTrader.Trend.UP && last > priceAtLastTransaction * (1 + profitMargin))
+                    {
+                        if (ctx.cancel(lastOrderID).getString("status").equals("success"))
+                        {
+                            note = "(Order cancelled, SHORT position closed)";
+                            nextState = TradingState.HOLD_OUT;
+                        }
+                        else
+                        {
+                            note = "(Failed to cancel order)\nWARNING: Unable to cancel limit buy order. Market rising while in a SHORT position.";
+                        }
+                    }
+                }
+                else // Short position closed (executed)
+                {
+                    note = "(Limit buy executed)";
+                    nextState = TradingState.HOLD_IN;
+                }
+                break;
+            default:
+                note = "(Unsure what has happened to reach here)";
+                break;
+        }
+
+        lastNote = note;
+        tradingState = nextState;
+    }
+
+    /**
+     * @return The error of a failed order, which the test wallet gives as "reason"
+     */
+    private static String orderError(JSONObject order)
+    {
+        return order.has("error") ? order.get("error").toString() : order.optString("reason", "unknown error");
+    }
+
+    /**
+     * Gets the current trading state using the balances of the base and quote currencies
+     * @return The {@code TradingState} of the account
+     * @see TradingState
+     */
+    private static TradingState getTradingState(Context ctx)
+    {
+        CurrencyPair pair = ctx.getPair();
+        JSONObject balance = ctx.getBalance();
+        BigDecimal eurAvail = balance.getBigDecimal(pair.quoteKey("available"));
+        BigDecimal eurBal = balance.getBigDecimal(pair.quoteKey("balance"));
+        BigDecimal btcAvail = balance.getBigDecimal(pair.baseKey("available"));
+        BigDecimal btcBal = balance.getBigDecimal(pair.baseKey("balance"));
+        BigDecimal value = balance.getBigDecimal("value");
+        BigDecimal btcBalValue = value.subtract(eurBal);
+
+        double percentInBTC = btcBalValue.divide(value, RoundingMode.HALF_DOWN).doubleValue();
+        double percentInEUR = eurBal.divide(value, RoundingMode.HALF_DOWN).doubleValue();
+
+        //If more than value is split in a ratio more even than 95%/5%
+        if (Math.abs(percentInBTC - percentInEUR) <= 0.9)
+        {
+            return TradingState.UNKNOWN;
+        }
+
+        //Assuming "correct" case (all funds fully IN or OUT)
+        if (btcBal.compareTo(eurBal) == 1)  // More BTC held than EUR: HOLD_IN or LONG
+        {
+            if (btcBal.compareTo(btcAvail) == 1)    // More BTC in balance than available (open sell order present): LONG
+            {
+                return TradingState.LONG;
+            }
+            else                                    // More (equal) BTC avaiable as in balance (no open orders): HOLD_IN
+            {
+                return TradingState.HOLD_IN;
+            }
+        }
+        else                                // More EUR held than BTC
+        {
+            if (eurBal.compareTo(eurAvail) == 1)    // More EUR in balance than available (open buy order present): SHORT
+            {
+                return TradingState.SHORT;
+            }
+            else
+            {
+                return TradingState.HOLD_OUT;       // More (equal) EUR available as in balacne (no open orders): HOLD_OUT
+            }
+        }
+    }
+}
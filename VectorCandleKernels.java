@@ -0,0 +1,91 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link CandleKernels} on the Vector API, at the platform's preferred vector width. Only loaded when the
+ * {@code jdk.incubator.vector} module is present. Classification has no vector kernel, as narrowing doubles to bytes
+ * is not intrinsified on JDK 17. Each kernel makes the same arithmetic operations in the same order as its scalar
+ * loop, so the results are identical; the tails too short for a full vector run the scalar loop.
+ */
+final class VectorCandleKernels
+{
+    private static final VectorSpecies<Double> D = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorCandleKernels()
+    {
+    }
+
+    static void percentChange(double[] open, double[] close, int window, double[] out)
+    {
+        int n = Math.min(close.length, out.length);
+        int head = Math.min(window - 1, n);
+        CandleKernels.fillNaN(out, head);
+        int i = head;
+        for (int bound = head + D.loopBound(n - head); i < bound; i += D.length())
+        {
+            DoubleVector first = DoubleVector.fromArray(D, open, i - window + 1);
+            DoubleVector last = DoubleVector.fromArray(D, close, i);
+            last.sub(first).div(first).mul(100).intoArray(out, i);
+        }
+        for (; i < n; i++)
+        {
+            double first = open[i - window + 1];
+            out[i] = ((close[i] - first) / first) * 100;
+        }
+    }
+
+    static void percentChange(double[] close, int lag, double[] out)
+    {
+        int n = Math.min(close.length, out.length);
+        int head = Math.min(lag, n);
+        CandleKernels.fillNaN(out, head);
+        int i = head;
+        for (int bound = head + D.loopBound(n - head); i < bound; i += D.length())
+        {
+            DoubleVector first = DoubleVector.fromArray(D, close, i - lag);
+            DoubleVector last = DoubleVector.fromArray(D, close, i);
+            last.sub(first).div(first).mul(100).intoArray(out, i);
+        }
+        for (; i < n; i++)
+        {
+            double first = close[i - lag];
+            out[i] = ((close[i] - first) / first) * 100;
+        }
+    }
+
+    static void returns(double[] close, double[] out)
+    {
+        int n = Math.min(close.length, out.length);
+        int head = Math.min(1, n);
+        CandleKernels.fillNaN(out, head);
+        int i = head;
+        for (int bound = head + D.loopBound(n - head); i < bound; i += D.length())
+        {
+            DoubleVector previous = DoubleVector.fromArray(D, close, i - 1);
+            DoubleVector.fromArray(D, close, i).sub(previous).div(previous).intoArray(out, i);
+        }
+        for (; i < n; i++)
+        {
+            out[i] = (close[i] - close[i - 1]) / close[i - 1];
+        }
+    }
+
+    /**
+     * The combine step of {@link CandleKernels#rollingExtreme}: the extreme of {@code suffix[k + 1]} and
+     * {@code out[start + k]} for each {@code k} below {@code count}, into {@code out}.
+     */
+    static void combine(double[] suffix, double[] out, int start, int count, boolean min)
+    {
+        int k = 0;
+        for (int bound = D.loopBound(count); k < bound; k += D.length())
+        {
+            DoubleVector s = DoubleVector.fromArray(D, suffix, k + 1);
+            DoubleVector p = DoubleVector.fromArray(D, out, start + k);
+            (min ? s.min(p) : s.max(p)).intoArray(out, start + k);
+        }
+        for (; k < count; k++)
+        {
+            out[start + k] = min ? Math.min(suffix[k + 1], out[start + k]) : Math.max(suffix[k + 1], out[start + k]);
+        }
+    }
+}
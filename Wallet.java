@@ -0,0 +1,162 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * An account a {@link Strategy} trades through: a simulated {@link TestWallet} or the exchange account itself. Orders
+ * and balances are given as JSONObjects in the forms the exchange uses, and failures are returned with "status" set
+ * to "failure" rather than thrown.
+ */
+public interface Wallet
+{
+    /**
+     * @return The wallet's balances, with the pair's balance keys (e.g. "btc_available") and "value"
+     */
+    JSONObject getBalance();
+
+    /**
+     * @return JSONObject with keys "status" and "orders", a JSONArray of the open orders
+     */
+    JSONObject getOpenOrders();
+
+    /**
+     * @param amt Quote currency to spend
+     */
+    JSONObject placeBuyInstantOrder(BigDecimal amt);
+
+    /**
+     * @param amt Base currency to sell
+     */
+    JSONObject placeSellInstantOrder(BigDecimal amt);
+
+    JSONObject placeBuyLimitOrder(BigDecimal amt, double price);
+
+    JSONObject placeSellLimitOrder(BigDecimal amt, double price);
+
+    JSONObject cancelOrder(long id);
+
+    /**
+     * Places an order of any kind.
+     *
+     * @param intent The order
+     * @return The placed order, or a JSONObject with "status" set to "failure"
+     */
+    default JSONObject placeOrder(OrderIntent intent)
+    {
+        if (intent.getType() == 0)
+        {
+            return intent.isInstant() ? placeBuyInstantOrder(intent.getAmount()) : placeBuyLimitOrder(intent.getAmount(), intent.getPrice());
+        }
+        return intent.isInstant() ? placeSellInstantOrder(intent.getAmount()) : placeSellLimitOrder(intent.getAmount(), intent.getPrice());
+    }
+
+    /**
+     * Places several orders, e.g. a {@link OrderIntent#ladder ladder}. The exchange wallet sends them all at once
+     * rather than one after another; any one of them failing does not stop the others being placed. Orders beyond the
+     * wallet's order rate limit are rejected, not held back, so a caller with more orders than
+     * {@link #getOrderRateWaitMs(int)} allows now should wait or send fewer.
+     *
+     * @param intents The orders
+     * @return JSONObject with keys "status" and "results", the outcome of each order in the order given
+     */
+    default JSONObject placeOrders(List<OrderIntent> intents)
+    {
+        JSONArray results = new JSONArray();
+        for (OrderIntent intent : intents)
+        {
+            results.put(placeOrder(intent));
+        }
+        return batchResult(results);
+    }
+
+    /**
+     * Cancels several orders, all at once on the exchange wallet.
+     *
+     * @param ids The orders to cancel
+     * @return JSONObject with keys "status" and "results", the outcome of each cancellation in the order given
+     */
+    default JSONObject cancelOrders(List<Long> ids)
+    {
+        JSONArray results = new JSONArray();
+        for (long id : ids)
+        {
+            results.put(cancelOrder(id));
+        }
+        return batchResult(results);
+    }
+
+    /**
+     * Cancels every open order for the wallet's pair.
+     *
+     * @return JSONObject with keys "status" and "results", the cancelled orders
+     */
+    default JSONObject cancelAllOrders()
+    {
+        JSONObject open = getOpenOrders();
+        if (!open.getString("status").equals("success"))
+        {
+            return open;
+        }
+        List<Long> ids = new ArrayList<Long>();
+        JSONArray orders = open.getJSONArray("orders");
+        for (int i = 0; i < orders.length(); i++)
+        {
+            ids.add(orders.getJSONObject(i).getLong("id"));
+        }
+        return cancelOrders(ids);
+    }
+
+    /**
+     * @return Most orders the wallet accepts in any one minute, or {@code Integer.MAX_VALUE} if it has no rate limit
+     */
+    default int getMaxOrdersPerMinute()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param orders Orders about to be placed, no more than {@link #getMaxOrdersPerMinute()}
+     * @return Milliseconds until that many orders fit within the wallet's order rate limit, or 0 if they do now
+     */
+    default long getOrderRateWaitMs(int orders)
+    {
+        return 0;
+    }
+
+    /**
+     * Sums up the outcomes of a batch of orders or cancellations.
+     *
+     * @param results Outcome of each, with "status" set to "success" or "failure"
+     * @return JSONObject with keys "status" and "results", and an "error" if any failed
+     */
+    static JSONObject batchResult(JSONArray results)
+    {
+        int failed = 0;
+        for (int i = 0; i < results.length(); i++)
+        {
+            if (!results.getJSONObject(i).optString("status").equals("success"))
+            {
+                failed++;
+            }
+        }
+        JSONObject result = new JSONObject();
+        result.put("status", failed == 0 ? "success" : "failure");
+        if (failed > 0)
+        {
+            result.put("error", failed + " of " + results.length() + " failed.");
+        }
+        result.put("results", results);
+        return result;
+    }
+
+    void addOrderListener(OrderListener listener);
+
+    /**
+     * @return True if every change to the wallet's orders is currently delivered to its order listeners, so its open
+     * orders need not be fetched to stay in sync
+     */
+    boolean isStreamingOrders();
+}
@@ -0,0 +1,66 @@
+import java.math.BigDecimal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for a change to an order in a {@link TestWallet}: placed, filled or cancelled. Disabled
+ * unless turned on by a recording, e.g. with {@code aethertrader.jfc}.
+ */
+@Name("aethertrader.WalletOrder")
+@Label("Wallet Order")
+@Category({"AetherTrader", "Trading"})
+@Description("An order placed, filled or cancelled in the test wallet")
+@Enabled(false)
+@StackTrace(false)
+public class WalletOrderEvent extends jdk.jfr.Event
+{
+    @Label("Action")
+    @Description("placed, filled or cancelled")
+    String action;
+
+    @Label("Order ID")
+    long orderId;
+
+    @Label("Side")
+    String side;
+
+    @Label("Order Type")
+    @Description("limit or instant")
+    String orderType;
+
+    @Label("Amount")
+    double amount;
+
+    @Label("Price")
+    double price;
+
+    /**
+     * Commits an event, if enabled. Nothing is allocated or converted otherwise.
+     *
+     * @param action placed, filled or cancelled
+     * @param orderId ID of the order
+     * @param type 0 for buy, 1 for sell
+     * @param orderType limit or instant
+     * @param amount Amount of the order
+     * @param price Price of the order
+     */
+    static void emit(String action, long orderId, int type, String orderType, BigDecimal amount, double price)
+    {
+        WalletOrderEvent event = new WalletOrderEvent();
+        if (event.shouldCommit())
+        {
+            event.action = action;
+            event.orderId = orderId;
+            event.side = type == 0 ? "buy" : "sell";
+            event.orderType = orderType;
+            event.amount = amount.doubleValue();
+            event.price = price;
+            event.commit();
+        }
+    }
+}
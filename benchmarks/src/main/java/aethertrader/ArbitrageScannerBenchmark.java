@@ -0,0 +1,73 @@
+package aethertrader;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code ArbitrageScanner} replaying a recorded-style stream of book updates for BTC/EUR, BTC/USD and EUR/USD, one
+ * update per invocation. The stream is generated up front: the prices follow random walks a millisecond apart, with
+ * BTC/USD drifting from the cross rate by enough that about a tenth of updates find an opportunity after fees.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArbitrageScannerBenchmark
+{
+    private static final int UPDATES = 1 << 16;
+
+    private ArbitrageScanner scanner;
+    private final int[] pair = new int[UPDATES];
+    private final double[] bid = new double[UPDATES];
+    private final double[] ask = new double[UPDATES];
+    private final double[] amount = new double[UPDATES];
+    private long next = 0;
+    private long seen = 0;
+
+    @Setup
+    public void setUp()
+    {
+        scanner = new ArbitrageScanner(List.of(CurrencyPair.parse("btceur"), CurrencyPair.parse("btcusd"), CurrencyPair.parse("eurusd")));
+        scanner.setFee(CurrencyPair.parse("eurusd"), 0.1);
+        scanner.addOpportunityListener((cycle, edge, size, openedAt, timestamp) -> seen++);
+
+        Random random = new Random(42);
+        double btcEur = 30000;
+        double eurUsd = 1.1;
+        double drift = 0;
+        for (int i = 0; i < UPDATES; i++)
+        {
+            btcEur *= 1 + random.nextGaussian() * 0.0002;
+            eurUsd *= 1 + random.nextGaussian() * 0.00005;
+            drift = drift * 0.99 + random.nextGaussian() * 0.001;
+            pair[i] = random.nextInt(3);
+            double mid = pair[i] == 0 ? btcEur : pair[i] == 1 ? btcEur * eurUsd * (1 + drift) : eurUsd;
+            bid[i] = mid * 0.99995;
+            ask[i] = mid * 1.00005;
+            amount[i] = pair[i] == 2 ? 10000 + random.nextInt(50000) : 0.05 + random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public long replay()
+    {
+        long n = next++;
+        int i = (int)(n & (UPDATES - 1));
+        scanner.onBook(pair[i], n, bid[i], amount[i], ask[i], amount[i] * 0.8);
+        return seen;
+    }
+}
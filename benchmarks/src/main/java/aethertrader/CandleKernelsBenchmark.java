@@ -0,0 +1,134 @@
+package aethertrader;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@code CandleKernels} over a few million minute candles: window by window as the auto trader measures a single
+ * window ({@code perWindow}), with the scalar kernels and with the Vector API kernels. The market state benchmarks
+ * include the percent change they classify.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class CandleKernelsBenchmark
+{
+    @Param({"4194304"})
+    public int candles;
+
+    @Param({"60"})
+    public int window;
+
+    private double[] open;
+    private double[] close;
+    private double[] percent;
+    private byte[] states;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(5);
+        open = new double[candles];
+        close = new double[candles];
+        percent = new double[candles];
+        states = new byte[candles];
+        double price = 30000;
+        for (int i = 0; i < candles; i++)
+        {
+            open[i] = price;
+            price *= 1 + random.nextGaussian() * (random.nextInt(50) == 0 ? 0.01 : 0.001);
+            close[i] = price;
+        }
+    }
+
+    @Benchmark
+    public byte[] marketStatePerWindow()
+    {
+        for (int i = window - 1; i < candles; i++)
+        {
+            double first = open[i - window + 1];
+            states[i] = (byte)AetherTrader.getMarketState((float)(((close[i] - first) / first) * 100)).ordinal();
+        }
+        return states;
+    }
+
+    @Benchmark
+    public byte[] marketStateKernels()
+    {
+        CandleKernels.percentChange(open, close, window, percent);
+        CandleKernels.classify(percent, states);
+        return states;
+    }
+
+    @Benchmark
+    public double[] percentChangeScalar()
+    {
+        CandleKernels.scalarPercentChange(open, close, window, percent);
+        return percent;
+    }
+
+    @Benchmark
+    public double[] percentChangeVector()
+    {
+        VectorCandleKernels.percentChange(open, close, window, percent);
+        return percent;
+    }
+
+    @Benchmark
+    public double[] returnsScalar()
+    {
+        CandleKernels.scalarReturns(close, percent);
+        return percent;
+    }
+
+    @Benchmark
+    public double[] returnsVector()
+    {
+        VectorCandleKernels.returns(close, percent);
+        return percent;
+    }
+
+    @Benchmark
+    public double[] rollingMinPerWindow()
+    {
+        for (int i = window - 1; i < candles; i++)
+        {
+            double min = close[i];
+            for (int j = i - window + 1; j < i; j++)
+            {
+                min = Math.min(min, close[j]);
+            }
+            percent[i] = min;
+        }
+        return percent;
+    }
+
+    @Benchmark
+    public double[] rollingMinScalar()
+    {
+        CandleKernels.rollingExtreme(close, window, percent, true, false);
+        return percent;
+    }
+
+    @Benchmark
+    public double[] rollingMinVector()
+    {
+        CandleKernels.rollingExtreme(close, window, percent, true, true);
+        return percent;
+    }
+}
@@ -0,0 +1,50 @@
+package aethertrader;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code CircularList.push} on a full list, the steady state of the market history.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CircularListBenchmark
+{
+    @Param({"20", "1000"})
+    public int maxSize;
+
+    private CircularList<Integer> list;
+    private int next = 0;
+
+    @Setup
+    public void setUp()
+    {
+        list = new CircularList<Integer>(maxSize);
+        for (int i = 0; i < maxSize; i++)
+        {
+            list.push(i);
+        }
+    }
+
+    @Benchmark
+    public CircularList<Integer> push()
+    {
+        list.push(next++ & 127);
+        return list;
+    }
+}
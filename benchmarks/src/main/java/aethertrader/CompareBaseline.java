@@ -0,0 +1,100 @@
+package aethertrader;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Compares a JMH JSON result file against the checked-in baseline, printing the change in score and in allocation
+ * per operation (gc.alloc.rate.norm, when run with {@code -prof gc}) for every benchmark found in both. Exits with
+ * status 1 if any benchmark got slower or allocates more by more than the threshold, or was run but has no baseline to
+ * compare against, so a new benchmark cannot go unchecked until the baseline is re-recorded.
+ *
+ * Usage: {@code java -cp target/benchmarks.jar aethertrader.CompareBaseline <baseline.json> <current.json> [threshold %]}
+ */
+public class CompareBaseline
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Usage: CompareBaseline <baseline.json> <current.json> [threshold %]");
+            return;
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, double[]> baseline = load(args[0]);
+        Map<String, double[]> current = load(args[1]);
+
+        boolean regressed = false;
+        int missing = 0;
+        System.out.println(String.format("%-70s %12s %12s %8s %10s %10s %8s", "Benchmark", "Baseline", "Current", "Change", "B/op base", "B/op now", "Change"));
+        for (Map.Entry<String, double[]> entry : current.entrySet())
+        {
+            double[] before = baseline.get(entry.getKey());
+            if (before == null)
+            {
+                missing++;
+                System.out.println(String.format("%-70s %12s %12.3f%s", entry.getKey(), "-", entry.getValue()[0], "  <-- NOT IN BASELINE"));
+                continue;
+            }
+            double[] after = entry.getValue();
+            double scoreChange = percent(before[0], after[0]);
+            double allocChange = percent(before[1], after[1]);
+            boolean flag = scoreChange > threshold || allocChange > threshold;
+            regressed |= flag;
+            System.out.println(String.format("%-70s %12.3f %12.3f %+7.1f%% %10.1f %10.1f %+7.1f%%%s", entry.getKey(), before[0], after[0], scoreChange, before[1], after[1], allocChange, flag ? "  <-- REGRESSION" : ""));
+        }
+        if (missing > 0)
+        {
+            System.out.println(missing + " benchmark" + (missing == 1 ? " has" : "s have") + " no baseline. Re-record the baseline with the command in the README.");
+        }
+        System.exit(regressed || missing > 0 ? 1 : 0);
+    }
+
+    private static double percent(double before, double after)
+    {
+        if (Double.isNaN(before) || Double.isNaN(after) || before == 0)
+        {
+            return 0;
+        }
+        return ((after - before) / before) * 100;
+    }
+
+    /**
+     * @return Map of benchmark name (with params) to {score, bytes allocated per op}. Scores are times per op, so
+     * higher is worse.
+     */
+    private static Map<String, double[]> load(String file) throws Exception
+    {
+        Map<String, double[]> result = new LinkedHashMap<String, double[]>();
+        JSONArray runs = new JSONArray(Files.readString(Paths.get(file)));
+        for (int i = 0; i < runs.length(); i++)
+        {
+            JSONObject run = runs.getJSONObject(i);
+            String name = run.getString("benchmark");
+            if (run.has("params"))
+            {
+                name += run.getJSONObject("params").toString();
+            }
+            double score = run.getJSONObject("primaryMetric").getDouble("score");
+            double alloc = Double.NaN;
+            JSONObject secondary = run.optJSONObject("secondaryMetrics");
+            if (secondary != null)
+            {
+                for (String key : secondary.keySet())
+                {
+                    if (key.endsWith("gc.alloc.rate.norm"))
+                    {
+                        alloc = secondary.getJSONObject(key).getDouble("score");
+                    }
+                }
+            }
+            result.put(name, new double[] {score, alloc});
+        }
+        return result;
+    }
+}
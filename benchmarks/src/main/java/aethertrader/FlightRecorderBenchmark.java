@@ -0,0 +1,42 @@
+package aethertrader;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the flight recorder events when no recording has enabled them, as they are in normal running. Should be
+ * a few nanoseconds at most, with nothing allocated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlightRecorderBenchmark
+{
+    private final ExchangeResponse response = new ExchangeResponse(200, java.util.Map.of(), "{\"last\": \"29959.31\"}");
+
+    @Benchmark
+    public void apiCallDisabled()
+    {
+        ApiCallEvent event = new ApiCallEvent();
+        event.begin();
+        event.finish("GET", "/api/v2/ticker/btceur", 1, 200, null, response, "ok");
+    }
+
+    @Benchmark
+    public void walletOrderDisabled()
+    {
+        WalletOrderEvent.emit("filled", 1, 0, "limit", java.math.BigDecimal.ONE, 29959.31);
+    }
+}
@@ -0,0 +1,72 @@
+package aethertrader;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding ticker and OHLC payloads with org.json, as {@code getBTCData} and {@code calculatePercentChange} do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonDecodeBenchmark
+{
+    @Param({"60", "1000"})
+    public int candles;
+
+    private String ticker;
+    private String ohlc;
+
+    @Setup
+    public void setUp()
+    {
+        ticker = "{\"high\": \"30512.00\", \"last\": \"30120.55\", \"timestamp\": \"1600000000\", \"bid\": \"30119.12\", "
+            + "\"vwap\": \"30201.47\", \"volume\": \"1234.56789012\", \"low\": \"29876.00\", \"ask\": \"30121.98\", \"open\": \"30002.00\"}";
+
+        Random random = new Random(7);
+        double price = 30000;
+        StringBuilder sb = new StringBuilder("{\"data\": {\"pair\": \"BTC/EUR\", \"ohlc\": [");
+        for (int i = 0; i < candles; i++)
+        {
+            double open = price;
+            price *= 1 + random.nextGaussian() * 0.001;
+            sb.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT,
+                "{\"high\": \"%.2f\", \"timestamp\": \"%d\", \"volume\": \"%.8f\", \"low\": \"%.2f\", \"close\": \"%.2f\", \"open\": \"%.2f\"}",
+                Math.max(open, price) + 5, 1600000000 + i * 60, random.nextDouble() * 10, Math.min(open, price) - 5, price, open));
+        }
+        ohlc = sb.append("]}}").toString();
+    }
+
+    @Benchmark
+    public double ticker()
+    {
+        return new JSONObject(ticker).getDouble("last");
+    }
+
+    @Benchmark
+    public float ohlcPercentChange()
+    {
+        JSONArray vals = new JSONObject(ohlc).getJSONObject("data").getJSONArray("ohlc");
+        float firstOpen = vals.getJSONObject(0).getFloat("open");
+        float lastClose = vals.getJSONObject(vals.length() - 1).getFloat("close");
+        return ((lastClose - firstOpen) / firstOpen) * 100;
+    }
+}
@@ -0,0 +1,70 @@
+package aethertrader;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@code AetherTrader.predictMarket} over market histories of realistic length, and {@code getMarketState} over a
+ * spread of percentage changes drawn from a BTC-like distribution (mostly small moves, occasional large ones).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MarketModelBenchmark
+{
+    @Param({"20", "200"})
+    public int historyLength;
+
+    private AetherTrader trader;
+    private float[] changes;
+
+    @Setup
+    public void setUp()
+    {
+        trader = new AetherTrader();
+        Random random = new Random(11);
+        changes = new float[1024];
+        for (int i = 0; i < changes.length; i++)
+        {
+            changes[i] = (float)(random.nextGaussian() * (random.nextInt(20) == 0 ? 4 : 0.8));
+        }
+
+        CircularList<AetherTrader.MarketState> history = new CircularList<AetherTrader.MarketState>(historyLength);
+        for (int i = 0; i < historyLength; i++)
+        {
+            history.push(AetherTrader.getMarketState(changes[i % changes.length]));
+        }
+        trader.setMarketHistory(history);
+    }
+
+    @Benchmark
+    public AetherTrader.Trend predictMarket()
+    {
+        return trader.predictMarket();
+    }
+
+    @Benchmark
+    public void getMarketState(Blackhole bh)
+    {
+        for (float change : changes)
+        {
+            bh.consume(AetherTrader.getMarketState(change));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package aethertrader;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code MonteCarloEngine} on one thread: generating a day of minute prices with each model, and trading a generated
+ * day with the trend strategy and a test wallet. Paths per second on all cores is roughly the number of cores divided
+ * by the sum of a generate and a simulate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MonteCarloBenchmark
+{
+    private MonteCarloEngine engine;
+    private MonteCarloEngine.PathModel gbm;
+    private MonteCarloEngine.PathModel jump;
+    private MonteCarloEngine.PathModel bootstrap;
+    private final SplittableRandom rng = new SplittableRandom(7);
+    private double[] path;
+    private double[] tradedPath;
+    private final double[] result = new double[3];
+
+    @Setup
+    public void setUp()
+    {
+        gbm = MonteCarloEngine.gbm(30000, 0, 0.6);
+        jump = MonteCarloEngine.jumpDiffusion(30000, 0, 0.6, 50, 0, 0.02);
+        double[] recorded = new double[20000];
+        gbm.generate(new SplittableRandom(3), recorded);
+        bootstrap = MonteCarloEngine.bootstrap(recorded, 60);
+
+        engine = new MonteCarloEngine(gbm, "trend");
+        path = new double[engine.getPathLength()];
+        tradedPath = new double[engine.getPathLength()];
+        gbm.generate(new SplittableRandom(5), tradedPath);
+    }
+
+    @Benchmark
+    public double generateGbm()
+    {
+        gbm.generate(rng, path);
+        return path[path.length - 1];
+    }
+
+    @Benchmark
+    public double generateJumpDiffusion()
+    {
+        jump.generate(rng, path);
+        return path[path.length - 1];
+    }
+
+    @Benchmark
+    public double generateBootstrap()
+    {
+        bootstrap.generate(rng, path);
+        return path[path.length - 1];
+    }
+
+    @Benchmark
+    public double simulate()
+    {
+        engine.simulate(tradedPath, result);
+        return result[0];
+    }
+}
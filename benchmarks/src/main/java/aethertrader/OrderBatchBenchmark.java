@@ -0,0 +1,111 @@
+package aethertrader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Placing a ladder of 20 signed limit orders on the mock exchange over loopback HTTP, with a fixed delay per request
+ * standing in for the round trip to Bitstamp, then cancelling them: one request after another ({@code sequential}, as
+ * before), or all in flight at once through {@link BitstampAPIConnection#sendPrivateRequestAsync}
+ * ({@code pipelined}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Thread)
+public class OrderBatchBenchmark
+{
+    private static final int ORDERS = 20;
+
+    @Param({"5", "20"})
+    public long latencyMs;
+
+    private MockBitstampServer mock;
+    private BitstampAPIConnection conn;
+    private String[][] ladder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        mock = new MockBitstampServer("benchkey", "benchsecret", 42);
+        mock.setLatency(latencyMs, 0);
+        conn = BitstampAPIConnection.withKeys(new HttpClientTransport(mock.start(0)), "benchkey", "benchsecret");
+        // Far below the market, so none of the orders fill before they are cancelled
+        ladder = new String[ORDERS][];
+        for (int i = 0; i < ORDERS; i++)
+        {
+            ladder[i] = new String[] {"amount=0.001", "price=" + (1000 - i * 10)};
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        mock.stop();
+    }
+
+    @Benchmark
+    public int sequential()
+    {
+        List<Long> ids = new ArrayList<Long>();
+        for (String[] params : ladder)
+        {
+            ids.add(new JSONObject(conn.sendPrivateRequest("/api/v2/buy/btceur/", params)).getLong("id"));
+        }
+        for (long id : ids)
+        {
+            conn.sendPrivateRequest("/api/v2/cancel_order/", new String[] {"id=" + id});
+        }
+        return ids.size();
+    }
+
+    @Benchmark
+    public int pipelined()
+    {
+        List<CompletableFuture<String>> placed = new ArrayList<CompletableFuture<String>>();
+        for (String[] params : ladder)
+        {
+            placed.add(conn.sendPrivateRequestAsync("/api/v2/buy/btceur/", params));
+        }
+        List<CompletableFuture<String>> cancelled = new ArrayList<CompletableFuture<String>>();
+        for (CompletableFuture<String> order : placed)
+        {
+            cancelled.add(conn.sendPrivateRequestAsync("/api/v2/cancel_order/", new String[] {"id=" + new JSONObject(order.join()).getLong("id")}));
+        }
+        CompletableFuture.allOf(cancelled.toArray(new CompletableFuture<?>[0])).join();
+        return cancelled.size();
+    }
+
+    @Benchmark
+    public int pipelinedCancelAll()
+    {
+        List<CompletableFuture<String>> placed = new ArrayList<CompletableFuture<String>>();
+        for (String[] params : ladder)
+        {
+            placed.add(conn.sendPrivateRequestAsync("/api/v2/buy/btceur/", params));
+        }
+        CompletableFuture.allOf(placed.toArray(new CompletableFuture<?>[0])).join();
+        JSONArray cancelled = new JSONObject(conn.sendPrivateRequest("/api/v2/cancel_all_orders/btceur/")).getJSONArray("canceled");
+        return cancelled.length();
+    }
+}
@@ -0,0 +1,63 @@
+package aethertrader;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code PnlEngine} under a backtest's fill rate. {@code fill} alternates runs of buys and sells, so fills both open
+ * lots and close them, crossing through flat; {@code mark} re-marks the position; {@code snapshot} reads it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PnlEngineBenchmark
+{
+    @Param({"FIFO", "AVERAGE"})
+    public PnlEngine.CostBasis basis;
+
+    private PnlEngine engine;
+    private int next = 0;
+
+    @Setup
+    public void setUp()
+    {
+        engine = new PnlEngine(basis, 0.5);
+        engine.mark(30000);
+    }
+
+    @Benchmark
+    public PnlEngine fill()
+    {
+        int i = next++;
+        // Eight buys then eight sells of different sizes, at prices wandering around 30000
+        engine.onFill((i >> 3) & 1, 0.01 + (i & 7) * 0.001, 30000 + (i & 63));
+        return engine;
+    }
+
+    @Benchmark
+    public PnlEngine mark()
+    {
+        engine.mark(30000 + (next++ & 63));
+        return engine;
+    }
+
+    @Benchmark
+    public PnlEngine.Snapshot snapshot()
+    {
+        return engine.snapshot();
+    }
+}
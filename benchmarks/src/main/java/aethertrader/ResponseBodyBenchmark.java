@@ -0,0 +1,160 @@
+package aethertrader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Fetching and decoding a 1000-candle OHLC page and a 1000-level order book over loopback HTTP, plain or gzipped, either
+ * as a string parsed by org.json ({@code asString}, as before) or decoded from the pooled body bytes
+ * ({@code asBytes}). The server sends the same prebuilt payload every time, so the allocation measured is almost all
+ * the client's. The bytes received per request are printed at the end of each trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Thread)
+public class ResponseBodyBenchmark
+{
+    @Param({"ohlc", "book"})
+    public String payload;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private HttpServer server;
+    private BitstampAPIConnection conn;
+    private String endpoint;
+    private long wireBefore;
+    private long requestsBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        byte[] plain = (payload.equals("ohlc") ? ohlc(1000) : book(1000)).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = gzip(plain);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange ->
+        {
+            String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean send = gzip && accepted != null && accepted.contains("gzip");
+            byte[] body = send ? compressed : plain;
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if (send)
+            {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        conn = BitstampAPIConnection.withKeys(new HttpClientTransport("http://127.0.0.1:" + server.getAddress().getPort()), "key", "secret");
+        endpoint = payload.equals("ohlc") ? "/api/v2/ohlc/btceur/" : "/api/v2/order_book/btceur/";
+        wireBefore = wireBytes();
+        requestsBefore = conn.getSentCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        long requests = conn.getSentCount() - requestsBefore;
+        System.out.println(String.format("%n%s, gzip %s: %d bytes on the wire per request", payload, gzip, requests == 0 ? 0 : (wireBytes() - wireBefore) / requests));
+        server.stop(0);
+    }
+
+    @Benchmark
+    public int asString()
+    {
+        return new JSONObject(conn.sendPublicRequest(endpoint)).length();
+    }
+
+    @Benchmark
+    public int asBytes()
+    {
+        return conn.sendPublicRequest(endpoint, BitstampAPIConnection.JSON).length();
+    }
+
+    private static long wireBytes()
+    {
+        for (String line : Metrics.toPrometheus().split("\n"))
+        {
+            if (line.startsWith("aether_api_body_bytes_total{stage=\"wire\"}"))
+            {
+                return (long)Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        return 0;
+    }
+
+    private static String ohlc(int candles)
+    {
+        Random random = new Random(7);
+        double price = 30000;
+        StringBuilder sb = new StringBuilder("{\"data\": {\"pair\": \"BTC/EUR\", \"ohlc\": [");
+        for (int i = 0; i < candles; i++)
+        {
+            double open = price;
+            price *= 1 + random.nextGaussian() * 0.001;
+            sb.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT,
+                "{\"high\": \"%.2f\", \"timestamp\": \"%d\", \"volume\": \"%.8f\", \"low\": \"%.2f\", \"close\": \"%.2f\", \"open\": \"%.2f\"}",
+                Math.max(open, price) + 5, 1600000000 + i * 60, random.nextDouble() * 10, Math.min(open, price) - 5, price, open));
+        }
+        return sb.append("]}}").toString();
+    }
+
+    private static String book(int levels)
+    {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder("{\"timestamp\": \"1600000000\", \"microtimestamp\": \"1600000000000000\", \"bids\": [");
+        for (int i = 0; i < levels; i++)
+        {
+            sb.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT, "[\"%.2f\", \"%.8f\"]", 29999 - i * 0.5, random.nextDouble() * 2));
+        }
+        sb.append("], \"asks\": [");
+        for (int i = 0; i < levels; i++)
+        {
+            sb.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT, "[\"%.2f\", \"%.8f\"]", 30001 + i * 0.5, random.nextDouble() * 2));
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed))
+        {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+}
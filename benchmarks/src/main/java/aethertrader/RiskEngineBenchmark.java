@@ -0,0 +1,63 @@
+package aethertrader;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pre-trade checks in {@code RiskEngine} against a test wallet. {@code limitBuyAllChecks} passes every check but the
+ * last (the daily loss limit), so it costs as much as an accepted order without filling the rate limit;
+ * {@code limitSellNoFunds} stops at the funds check and {@code instantTooLarge} at the order size check.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RiskEngineBenchmark
+{
+    private RiskEngine risk;
+    private double equity = 0;
+
+    @Setup
+    public void setUp()
+    {
+        TestWallet wallet = new TestWallet(new BigDecimal("0.1"), new BigDecimal("10000"), false);
+        wallet.processPrice(30000);
+        risk = new RiskEngine(wallet, () -> equity);
+        // Marked a day ahead so the mark does not go stale during the run
+        risk.mark(30000, System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        // Start the day at 0, then fall past the loss limit
+        risk.checkLimit(0, 0.01, 30000);
+        equity = -1000;
+    }
+
+    @Benchmark
+    public RiskEngine.Reason limitBuyAllChecks()
+    {
+        return risk.checkLimit(0, 0.01, 29500);
+    }
+
+    @Benchmark
+    public RiskEngine.Reason limitSellNoFunds()
+    {
+        return risk.checkLimit(1, 0.2, 30500);
+    }
+
+    @Benchmark
+    public RiskEngine.Reason instantTooLarge()
+    {
+        return risk.checkInstant(1, 5);
+    }
+}
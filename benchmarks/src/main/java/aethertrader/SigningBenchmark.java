@@ -0,0 +1,60 @@
+package aethertrader;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of signing private requests: the HMAC alone, and a full {@code sendPrivateRequest} (build, sign, send, check
+ * the response signature) against a stub transport that answers instantly. The stub has to sign its response too, so
+ * the round trip includes two HMACs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SigningBenchmark
+{
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    private static final String BALANCE = "{\"btc_available\": \"0.00338066\", \"btc_balance\": \"0.00338066\", \"eur_available\": \"0.00\", \"eur_balance\": \"0.00\", \"btceur_fee\": \"0.500\"}";
+
+    private String message;
+    private BitstampAPIConnection conn;
+
+    @Setup
+    public void setUp()
+    {
+        message = "BITSTAMP keyPOSTwww.bitstamp.net/api/v2/balance/application/x-www-form-urlencoded"
+            + "6c0ae9d2-0c4f-4a4d-9d3b-2d1c8e1a9f3b1600000000000v2offset=1";
+        ExchangeTransport stub = request ->
+        {
+            String stringToSign = request.getHeader("X-Auth-Nonce") + request.getHeader("X-Auth-Timestamp") + "application/json" + BALANCE;
+            return new ExchangeResponse(200, Map.of("Content-Type", "application/json", "X-Server-Auth-Signature", BitstampAPIConnection.sign(SECRET, stringToSign)), BALANCE);
+        };
+        conn = BitstampAPIConnection.withKeys(stub, "key", SECRET);
+    }
+
+    @Benchmark
+    public String hmac()
+    {
+        return BitstampAPIConnection.sign(SECRET, message);
+    }
+
+    @Benchmark
+    public String privateRequestRoundTrip()
+    {
+        return conn.sendPrivateRequest("/api/v2/balance/");
+    }
+}
@@ -0,0 +1,85 @@
+package aethertrader;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Order matching in {@code TestWallet.run}, through {@code processPrice} (the body of {@code run} after the ticker
+ * fetch). {@code matchNoFills} walks every resting order without filling any, the usual case each minute;
+ * {@code matchAllFill} fills every order at once. Console output from fills is discarded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TestWalletBenchmark
+{
+    @Param({"100", "10000"})
+    public int orders;
+
+    private TestWallet resting;
+    private TestWallet filling;
+
+    @Setup(Level.Trial)
+    public void setUpResting()
+    {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        resting = newWallet();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpFilling()
+    {
+        filling = newWallet();
+    }
+
+    private TestWallet newWallet()
+    {
+        TestWallet wallet = new TestWallet(new BigDecimal(orders), new BigDecimal(orders * 40000L), false);
+        wallet.processPrice(30000);
+        for (int i = 0; i < orders; i++)
+        {
+            if (i % 2 == 0)
+            {
+                wallet.placeSellLimitOrder(BigDecimal.ONE, 35000 + i);
+            }
+            else
+            {
+                wallet.placeBuyLimitOrder(BigDecimal.ONE, 25000 - i);
+            }
+        }
+        return wallet;
+    }
+
+    @Benchmark
+    public TestWallet matchNoFills()
+    {
+        resting.processPrice(30000);
+        return resting;
+    }
+
+    @Benchmark
+    public TestWallet matchAllFill()
+    {
+        filling.processPrice(35000 + orders);
+        filling.processPrice(25000 - orders);
+        return filling;
+    }
+}
@@ -0,0 +1,91 @@
+package aethertrader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scans a {@code TickStore} of four million trades, priced to the cent and sized to the satoshi a few hundred
+ * milliseconds apart, as the live feed records them. Scores are per point decompressed, so a million points per
+ * second is 1000ns. {@code scanAll} decodes the whole tape; {@code scanHour} an hour from its middle, which skips the
+ * blocks outside it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TickStoreBenchmark
+{
+    private static final int POINTS = 4194304;
+
+    private Path file;
+    private TickStore store;
+    private long first;
+    private long last;
+    private long hourPoints;
+    private double sum;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        file = Files.createTempFile("ticks", ".tape");
+        store = new TickStore(file, TickStore.TRADE_FIELDS);
+        Random random = new Random(3);
+        long time = 1700000000000L;
+        double price = 30000;
+        first = time;
+        for (int i = 0; i < POINTS; i++)
+        {
+            time += 1 + random.nextInt(500);
+            price = Math.max(1, price + (random.nextInt(41) - 20) * 0.01);
+            double amount = (1 + random.nextInt(10000000)) / 1e8;
+            store.append(time, Math.round(price * 100) / 100.0, amount);
+        }
+        last = time;
+        store.flush();
+        long middle = (first + last) / 2;
+        hourPoints = store.scan(middle, middle + 3600000, (timestamp, values) -> { });
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        store.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double scanAll()
+    {
+        sum = 0;
+        store.scan(first, last + 1, (timestamp, values) -> sum += values[TickStore.TRADE_PRICE]);
+        return sum;
+    }
+
+    @Benchmark
+    public double scanHour()
+    {
+        long middle = (first + last) / 2;
+        sum = 0;
+        store.scan(middle, middle + 3600000, (timestamp, values) -> sum += values[TickStore.TRADE_PRICE]);
+        return sum / hourPoints;
+    }
+}
@@ -0,0 +1,86 @@
+package aethertrader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the daemon's control API only answers requests carrying the token it writes at startup.
+ */
+public class AetherDaemonTest
+{
+    @TempDir
+    static Path dir;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private AetherTrader trader;
+    private AetherDaemon daemon;
+    private Path tokenFile;
+    private String url;
+
+    @BeforeEach
+    public void setUp() throws Exception
+    {
+        tokenFile = dir.resolve("daemon.token");
+        System.setProperty("aether.daemon.tokenFile", tokenFile.toString());
+        MockBitstampServer mock = new MockBitstampServer("testkey", "testsecret", 7);
+        trader = new AetherTrader(CurrencyPair.BTCEUR, BitstampAPIConnection.withKeys(mock, "testkey", "testsecret"));
+        daemon = new AetherDaemon(trader);
+        url = daemon.start(0);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        daemon.stop();
+        trader.stopAuto();
+        System.clearProperty("aether.daemon.tokenFile");
+    }
+
+    private HttpResponse<String> post(String path, String... headers) throws Exception
+    {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url + path)).POST(HttpRequest.BodyPublishers.ofString("{}"));
+        if (headers.length > 0)
+        {
+            request.headers(headers);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void refusesRequestsWithoutTheToken() throws Exception
+    {
+        assertEquals(401, post("/auto/stop").statusCode());
+        assertEquals(401, post("/auto/stop", "Authorization", "Bearer wrong").statusCode());
+        HttpResponse<String> status = client.send(HttpRequest.newBuilder(URI.create(url + "/status")).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(401, status.statusCode());
+    }
+
+    @Test
+    public void refusesCrossOriginRequests() throws Exception
+    {
+        String token = Files.readString(tokenFile);
+        assertEquals(403, post("/auto/stop", "Authorization", "Bearer " + token, "Origin", "http://example.com").statusCode());
+    }
+
+    @Test
+    public void acceptsTheTokenFromItsFile() throws Exception
+    {
+        String token = Files.readString(tokenFile);
+        assertEquals(daemon.getToken(), token);
+        HttpResponse<String> response = post("/auto/stop", "Authorization", "Bearer " + token, "Content-Type", "application/json");
+        assertEquals(200, response.statusCode(), response.body());
+        assertEquals(true, new JSONObject(response.body()).getBoolean("paused"));
+    }
+}
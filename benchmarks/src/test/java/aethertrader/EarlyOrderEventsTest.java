@@ -0,0 +1,94 @@
+package aethertrader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Fills and cancellations streamed before the response that placed the order, as the order feed can deliver them.
+ */
+public class EarlyOrderEventsTest
+{
+    @Test
+    public void orderManagerAppliesEarlyEventsWhenPlaced()
+    {
+        OrderManager orders = new OrderManager();
+        orders.onOrderFilled(1, 0.4, 30000);
+        orders.onOrderCancelled(2);
+        assertEquals(null, orders.get(1));
+
+        orders.onOrderPlaced(1, 0, 1, 30000);
+        orders.onOrderPlaced(2, 1, 1, 31000);
+        assertEquals(OrderManager.State.OPEN, orders.get(1).getState());
+        assertEquals(0.6, orders.get(1).getRemaining(), 1e-12);
+        assertEquals(OrderManager.State.CANCELLED, orders.get(2).getState());
+        assertEquals(1, orders.getOpenCount());
+    }
+
+    @Test
+    public void balanceBookAppliesEarlyFillsWhenPlaced()
+    {
+        BalanceBook book = reconciled();
+        book.onOrderFilled(3, Double.POSITIVE_INFINITY, 29000);
+        book.onOrderPlaced(3, 0, 0.1, 29000);
+        assertEquals(1.1, book.getBaseBalance(), 1e-12);
+        assertEquals(27100, book.getAvailableQuote(), 1e-9);
+    }
+
+    @Test
+    public void balanceBookIgnoresOrdersClosedBeforeAReconcile()
+    {
+        BalanceBook book = reconciled();
+        book.onOrderFilled(4, Double.POSITIVE_INFINITY, 31000);
+        // The exchange's balances already show the sale
+        book.reconcile(balance("0.5", "45500"), System.currentTimeMillis());
+        book.onOrderPlaced(4, 1, 0.5, 31000);
+        assertEquals(0.5, book.getBaseBalance(), 1e-12);
+        assertEquals(0.5, book.getAvailableBase(), 1e-12);
+        assertEquals(45500, book.getAvailableQuote(), 1e-9);
+    }
+
+    @Test
+    public void balanceBookIgnoresTheResponseToAnOrderTheStreamClosed()
+    {
+        BalanceBook book = reconciled();
+        book.setStreamConnected(true);
+        // order_created, order_changed and order_deleted, all before the response
+        book.onOrderPlaced(5, 0, 0.1, 29000);
+        book.onOrderFilled(5, 0.1, 29000);
+        book.onOrderFilled(5, 0, 29000);
+        // The response to the instant order, as trackPlacedOrder reports it
+        book.onOrderPlaced(5, 0, 0.1, 29000);
+        book.onOrderFilled(5, 0.1, 29000);
+        assertEquals(1.1, book.getBaseBalance(), 1e-12);
+        assertEquals(27100, book.getAvailableQuote(), 1e-9);
+        // Nothing looked wrong, so no reconcile is due
+        assertEquals(false, book.isReconcileDue(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void pnlCountsAFillReportedTwiceOnce()
+    {
+        PnlEngine pnl = new PnlEngine(PnlEngine.CostBasis.FIFO, 0.5);
+        pnl.onOrderPlaced(6, 0, 0.1, 29000);
+        pnl.onOrderFilled(6, 0.1, 29000);
+        pnl.onOrderFilled(6, 0, 29000);
+        pnl.onOrderPlaced(6, 0, 0.1, 29000);
+        pnl.onOrderFilled(6, 0.1, 29000);
+        assertEquals(0.1, pnl.getPosition(), 1e-12);
+        assertEquals(14.5, pnl.getFees(), 1e-9);
+    }
+
+    private static BalanceBook reconciled()
+    {
+        BalanceBook book = new BalanceBook(CurrencyPair.BTCEUR);
+        book.reconcile(balance("1", "30000"), System.currentTimeMillis());
+        return book;
+    }
+
+    private static JSONObject balance(String btc, String eur)
+    {
+        return new JSONObject().put("btc_balance", btc).put("btc_available", btc).put("eur_balance", eur).put("eur_available", eur).put("btceur_fee", "0");
+    }
+}
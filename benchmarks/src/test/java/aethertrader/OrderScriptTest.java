@@ -0,0 +1,106 @@
+package aethertrader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs order scripts against the mock exchange with the default risk limits, so that more orders than the order rate
+ * limit allows must be paced rather than rejected. The limit counts orders over a two second window rather than a
+ * minute, so the pacing takes seconds.
+ */
+public class OrderScriptTest
+{
+    private static final long WINDOW_MS = 2000;
+
+    @TempDir
+    Path dir;
+
+    private MockBitstampServer mock;
+    private AetherTrader trader;
+
+    @BeforeEach
+    public void setUp()
+    {
+        System.setProperty("aether.risk.orderRateWindowMs", Long.toString(WINDOW_MS));
+        mock = new MockBitstampServer("testkey", "testsecret", 7);
+        mock.setVolatility(0);
+        trader = new AetherTrader(CurrencyPair.BTCEUR, BitstampAPIConnection.withKeys(mock, "testkey", "testsecret"));
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        trader.stopAuto();
+        System.clearProperty("aether.risk.orderRateWindowMs");
+    }
+
+    @Test
+    public void pacesOrdersBeyondTheRateLimit() throws Exception
+    {
+        int limit = trader.getAccountWallet().getMaxOrdersPerMinute();
+        assertEquals(6, limit, "default aether.risk.maxOrdersPerMinute");
+
+        // Sells, far enough above the market not to fill, and within the 5% price deviation limit
+        List<String> lines = new ArrayList<String>();
+        lines.add("action,amount,price");
+        for (int i = 0; i < limit + 2; i++)
+        {
+            lines.add("sell,0.001," + (30500 + i));
+        }
+        lines.add("{\"action\":\"cancel\",\"id\":1}");
+        Path script = Files.write(dir.resolve("orders.csv"), lines);
+        Path results = dir.resolve("orders.results.jsonl");
+
+        JSONObject checked = OrderScript.validate(script);
+        assertEquals("success", checked.getString("status"), checked.toString());
+        assertEquals(limit + 2, checked.getLong("orders"));
+
+        OrderScript orders = new OrderScript(trader.getAccountWallet(), 50);
+        orders.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.currentTimeMillis();
+        JSONObject summary = orders.run(script, results);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals("success", summary.getString("status"), summary.toString());
+        assertEquals(limit + 3, summary.getLong("succeeded"));
+        // The orders after the sixth waited for the first two to leave the window, and no longer
+        long waited = summary.getLong("rateWaitMs");
+        assertTrue(waited > WINDOW_MS / 2 && waited <= WINDOW_MS, "paced, waited " + waited + "ms");
+        assertTrue(elapsed >= waited, "took " + elapsed + "ms");
+
+        List<String> written = Files.readAllLines(results);
+        assertEquals(limit + 3, written.size());
+        for (String line : written)
+        {
+            JSONObject result = new JSONObject(line);
+            assertEquals("success", result.getString("status"), line);
+            assertTrue(result.has("latencyMs"), line);
+        }
+        // Numbered as in the script, after its header
+        assertEquals(2, new JSONObject(written.get(0)).getLong("line"));
+        assertEquals(limit + 4, new JSONObject(written.get(limit + 2)).getLong("line"));
+    }
+
+    @Test
+    public void reportsInvalidLines() throws Exception
+    {
+        Path script = Files.write(dir.resolve("bad.csv"), List.of("sell,0.001,30500", "sell,-1,30500", "hold,1"));
+        JSONObject checked = OrderScript.validate(script);
+        assertEquals("failure", checked.getString("status"));
+        assertEquals(2, checked.getLong("invalid"));
+        assertEquals(2, checked.getJSONArray("errors").length());
+    }
+}
@@ -0,0 +1,58 @@
+package aethertrader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the daily loss limit against the equity the day started with.
+ */
+public class RiskEngineTest
+{
+    private static final RiskEngine.Funds FUNDS = new RiskEngine.Funds()
+    {
+        public double getAvailableBase()
+        {
+            return 1;
+        }
+
+        public double getAvailableQuote()
+        {
+            return 10000;
+        }
+
+        public double getBaseBalance()
+        {
+            return 0;
+        }
+    };
+
+    @Test
+    public void countsLossesMadeBeforeTheDaysFirstOrder()
+    {
+        double[] equity = {10000};
+        RiskEngine risk = new RiskEngine(CurrencyPair.BTCEUR, FUNDS, () -> equity[0]);
+        long now = System.currentTimeMillis();
+        risk.mark(30000, now);
+
+        // The default limit is 500, lost before any order is checked today
+        equity[0] = 9400;
+        risk.mark(29000, now);
+        assertEquals(RiskEngine.Reason.DAILY_LOSS, risk.checkLimit(0, 0.001, 29000));
+        // Selling only reduces the position
+        assertEquals(RiskEngine.Reason.ACCEPTED, risk.checkLimit(1, 0.001, 29000));
+    }
+
+    @Test
+    public void measuresFromTheFirstCheckWithoutAnEquityAtTheFirstMark()
+    {
+        double[] equity = {Double.NaN};
+        RiskEngine risk = new RiskEngine(CurrencyPair.BTCEUR, FUNDS, () -> equity[0]);
+        risk.mark(30000, System.currentTimeMillis());
+
+        equity[0] = 9400;
+        assertEquals(RiskEngine.Reason.ACCEPTED, risk.checkLimit(0, 0.001, 30000));
+        equity[0] = 8800;
+        assertEquals(RiskEngine.Reason.DAILY_LOSS, risk.checkLimit(0, 0.001, 30000));
+    }
+}
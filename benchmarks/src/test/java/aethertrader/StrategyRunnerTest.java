@@ -0,0 +1,45 @@
+package aethertrader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that each strategy's P&L is kept in its pair's currencies, at its account's fee.
+ */
+public class StrategyRunnerTest
+{
+    private AetherTrader trader;
+
+    @AfterEach
+    public void tearDown()
+    {
+        if (trader != null)
+        {
+            trader.stopAuto();
+        }
+    }
+
+    @Test
+    public void chargesTheAccountsFee()
+    {
+        MockBitstampServer mock = new MockBitstampServer("testkey", "testsecret", 7);
+        trader = new AetherTrader(CurrencyPair.BTCEUR, BitstampAPIConnection.withKeys(mock, "testkey", "testsecret"));
+        StrategyRunner runner = trader.addStrategy("idle", (ticker, signals, context) -> { }, trader.getAccountWallet());
+
+        // The mock charges 0.5%
+        runner.getPnl().onFill(0, 0.01, 30000);
+        assertEquals(1.5, runner.getPnl().getFees(), 1e-9);
+    }
+
+    @Test
+    public void namesGaugesAfterThePairsCurrencies()
+    {
+        new PnlEngine(PnlEngine.CostBasis.FIFO, 0).registerMetrics(CurrencyPair.parse("etheur"), "test_book");
+        String metrics = Metrics.toPrometheus();
+        assertTrue(metrics.contains("aether_pnl_position_eth{pair=\"etheur\",book=\"test_book\"}"), metrics);
+        assertTrue(metrics.contains("aether_pnl_net_eur{pair=\"etheur\",book=\"test_book\"}"), metrics);
+    }
+}
@@ -0,0 +1,78 @@
+package aethertrader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Records a short tape as the live feed and auto trader would, and replays it into a test wallet.
+ */
+public class TapeRecorderTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    public void recordsTradesInTimeOrderAcrossRestarts() throws Exception
+    {
+        try (TapeRecorder tape = new TapeRecorder(dir, CurrencyPair.BTCEUR))
+        {
+            tape.onTrade(1000, 30000, 0.5, 0);
+            tape.onTrade(2000, 30010.5, 0.01, 1);
+            // Reported late, so stored at the newest time
+            tape.onTrade(1500, 30005, 0.2, 0);
+            tape.onTicker(new Strategy.Ticker(2000, 30005, 30004, Double.NaN));
+        }
+        try (TapeRecorder tape = new TapeRecorder(dir, CurrencyPair.BTCEUR))
+        {
+            tape.onTrade(3000, 29990, 1, 1);
+
+            List<Long> times = new ArrayList<Long>();
+            List<Double> prices = new ArrayList<Double>();
+            assertEquals(4, tape.getTrades().scan(0, Long.MAX_VALUE, (timestamp, values) ->
+            {
+                times.add(timestamp);
+                prices.add(values[TickStore.TRADE_PRICE]);
+            }));
+            assertEquals(List.of(1000L, 2000L, 2000L, 3000L), times);
+            assertEquals(List.of(30000.0, 30010.5, 30005.0, 29990.0), prices);
+
+            double[] snapshot = new double[TickStore.TICKER_FIELDS];
+            assertEquals(1, tape.getTicker().scan(0, Long.MAX_VALUE, (timestamp, values) -> System.arraycopy(values, 0, snapshot, 0, values.length)));
+            assertEquals(30004, snapshot[TickStore.TICKER_BID]);
+            assertEquals(Double.NaN, snapshot[TickStore.TICKER_ASK]);
+        }
+    }
+
+    @Test
+    public void replaysTradesIntoATestWallet() throws Exception
+    {
+        try (TapeRecorder tape = new TapeRecorder(dir, CurrencyPair.BTCEUR))
+        {
+            for (int i = 0; i < 3000; i++)
+            {
+                // Falls from 30000 to 29700 and back
+                tape.onTrade(1000L * i, 30000 - 0.2 * Math.min(i, 3000 - i), 0.001, i % 2);
+            }
+
+            TestWallet wallet = new TestWallet(new BigDecimal(0), new BigDecimal(1000), false);
+            wallet.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+            wallet.processPrice(30000);
+            wallet.placeBuyLimitOrder(new BigDecimal("0.01"), 29800);
+            // The first 100 seconds only reach 29980.20
+            assertEquals(100, wallet.replay(tape.getTrades(), 0, 100000));
+            assertEquals(0, wallet.getBaseBalance());
+            assertEquals(3000, wallet.replay(tape.getTrades(), 0, Long.MAX_VALUE));
+            assertEquals(0.01, wallet.getBaseBalance(), 1e-9);
+            wallet.close();
+        }
+    }
+}